@@ -7,12 +7,12 @@
 #include <android/bitmap.h>
 #include <android/log.h>
 
+#include "raster_op.h"
+
 #define WHITE 0xffffff
 #define BLACK 0x000000
 #define printf(...) __android_log_print(ANDROID_LOG_DEBUG, "System.out", __VA_ARGS__);
 
-enum GCFunction {GCF_CLEAR, GCF_AND, GCF_AND_REVERSE, GCF_COPY, GCF_AND_INVERTED, GCF_NO_OP, GCF_XOR, GCF_OR, GCF_NOR, GCF_EQUIV, GCF_INVERT, GCF_OR_REVERSE, GCF_COPY_INVERTED, GCF_OR_INVERTED, GCF_NAND, GCF_SET};
-
 static int packColor(int8_t r, int8_t g, int8_t b) {
     return ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF);
 }
@@ -34,44 +34,6 @@ static int getBitmapBytePad(int width) {
     return ((width + 32 - 1) >> 5) << 2;
 }
 
-static int setPixelOp(int srcColor, int dstColor, enum GCFunction gcFunction) {
-    switch (gcFunction) {
-        case GCF_CLEAR :
-            return BLACK;
-        case GCF_AND :
-            return srcColor & dstColor;
-        case GCF_AND_REVERSE :
-            return srcColor & ~dstColor;
-        case GCF_COPY :
-            return srcColor;
-        case GCF_AND_INVERTED :
-            return ~srcColor & dstColor;
-        case GCF_XOR :
-            return srcColor ^ dstColor;
-        case GCF_OR :
-            return srcColor | dstColor;
-        case GCF_NOR :
-            return ~srcColor & ~dstColor;
-        case GCF_EQUIV :
-            return ~srcColor ^ dstColor;
-        case GCF_INVERT :
-            return ~dstColor;
-        case GCF_OR_REVERSE :
-            return srcColor | ~dstColor;
-        case GCF_COPY_INVERTED :
-            return ~srcColor;
-        case GCF_OR_INVERTED :
-            return ~srcColor | dstColor;
-        case GCF_NAND :
-            return ~srcColor | ~dstColor;
-        case GCF_SET :
-            return WHITE;
-        case GCF_NO_OP :
-        default:
-            return dstColor;
-    }
-}
-
 JNIEXPORT void JNICALL
 Java_com_winlator_xserver_Drawable_drawBitmap(JNIEnv *env, jclass obj,
                                               jshort width, jshort height, jobject srcData,
@@ -128,29 +90,17 @@ Java_com_winlator_xserver_Drawable_copyAreaOp(JNIEnv *env, jclass obj, jshort sr
                                               jshort srcY, jshort dstX, jshort dstY,
                                               jshort width, jshort height, jshort srcStride,
                                               jshort dstStride, jobject srcData,
-                                              jobject dstData, int gcFunction) {
-    uint8_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
-    uint8_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
+                                              jobject dstData, int gcFunction, int planeMask) {
+    uint32_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
+    uint32_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
 
     if (!srcDataAddr || !dstDataAddr) {
         printf("Error: NULL buffer address in copyAreaOp\n");
         return;
     }
 
-    for (int16_t y = 0; y < height; y++) {
-        for (int16_t x = 0; x < width; x++) {
-            int i = (x + srcX + (y + srcY) * srcStride) * 4;
-            int j = (x + dstX + (y + dstY) * dstStride) * 4;
-            int srcColor = (srcDataAddr[i+0] << 16) | (srcDataAddr[i+1] << 8) | srcDataAddr[i+2];
-            int dstColor = (dstDataAddr[j+0] << 16) | (dstDataAddr[j+1] << 8) | dstDataAddr[j+2];
-
-            dstColor = setPixelOp(srcColor, dstColor, gcFunction);
-
-            dstDataAddr[j+0] = (dstColor >> 16) & 0xff;
-            dstDataAddr[j+1] = (dstColor >> 8) & 0xff;
-            dstDataAddr[j+2] = dstColor & 0xff;
-        }
-    }
+    raster_op_rect(dstDataAddr, dstX, dstY, dstStride, srcDataAddr, srcX, srcY, srcStride,
+                   width, height, gcFunction, (uint32_t)planeMask);
 }
 
 JNIEXPORT void JNICALL
@@ -182,6 +132,97 @@ Java_com_winlator_xserver_Drawable_fillRect(JNIEnv *env, jclass obj, jshort x, j
     free(row);
 }
 
+enum DrawCommandOp {DRAW_OP_FILL_RECT = 1, DRAW_OP_LINE = 2};
+
+/* Layout shared with com.winlator.xserver.DrawCommandBuffer */
+typedef struct {
+    int16_t op;
+    int16_t a, b, c, d, e;
+    int32_t color;
+} DrawCommand;
+
+static int clampInt(int value, int min, int max) {
+    return value < min ? min : (value > max ? max : value);
+}
+
+static void fillRectPixels(uint32_t *pixels, int x, int y, int width, int height, uint32_t color, int stride) {
+    uint32_t *first = pixels + x + y * stride;
+    for (int i = 0; i < width; i++) first[i] = color;
+
+    size_t rowBytes = (size_t)width * 4;
+    for (int i = 1; i < height; i++) memcpy(first + i * stride, first, rowBytes);
+}
+
+static void drawLinePixels(uint32_t *pixels, int x0, int y0, int x1, int y1, uint32_t color, int lineWidth, int stride) {
+    int dx =  abs(x1-x0);
+    int dy = -abs(y1-y0);
+    int sx = x0 < x1 ? 1 : -1;
+    int sy = y0 < y1 ? 1 : -1;
+    int e1 = dx + dy, e2;
+
+    while (true) {
+        for (int i = 0; i < lineWidth; i++) {
+            uint32_t *row = pixels + x0 + (i + y0) * stride;
+            for (int j = 0; j < lineWidth; j++) row[j] = color;
+        }
+        if (x0 == x1 && y0 == y1) break;
+
+        e2 = e1 * 2;
+        if (e2 >= dy) {
+            e1 += dy;
+            x0 += sx;
+        }
+        if (e2 <= dx) {
+            e1 += dx;
+            y0 += sy;
+        }
+    }
+}
+
+/* Executes a batch of DrawCommands, clipping them the same way Drawable.fillRect and
+ * Drawable.drawLine do for single calls. */
+JNIEXPORT void JNICALL
+Java_com_winlator_xserver_Drawable_drawCommands(JNIEnv *env, jclass obj, jobject commands,
+                                                jint count, jshort width, jshort height,
+                                                jshort stride, jobject data) {
+    DrawCommand *command = (*env)->GetDirectBufferAddress(env, commands);
+    uint32_t *pixels = (*env)->GetDirectBufferAddress(env, data);
+
+    if (!command || !pixels) {
+        printf("Error: NULL buffer address in drawCommands\n");
+        return;
+    }
+
+    for (int n = 0; n < count; n++, command++) {
+        uint32_t color = 0xff000000 | (command->color & 0xffffff);
+        switch (command->op) {
+            case DRAW_OP_FILL_RECT: {
+                int x = clampInt(command->a, 0, width-1);
+                int y = clampInt(command->b, 0, height-1);
+                int w = command->c;
+                int h = command->d;
+                if (x + w > width) w = width - x;
+                if (y + h > height) h = height - y;
+                if (w > 0 && h > 0) fillRectPixels(pixels, x, y, w, h, color, stride);
+                break;
+            }
+            case DRAW_OP_LINE: {
+                int lineWidth = command->e;
+                if (lineWidth <= 0 || lineWidth > width || lineWidth > height) break;
+                int x0 = clampInt(command->a, 0, width-lineWidth);
+                int y0 = clampInt(command->b, 0, height-lineWidth);
+                int x1 = clampInt(command->c, 0, width-lineWidth);
+                int y1 = clampInt(command->d, 0, height-lineWidth);
+                drawLinePixels(pixels, x0, y0, x1, y1, color, lineWidth, stride);
+                break;
+            }
+            default:
+                printf("Error: Unknown draw command %d\n", command->op);
+                return;
+        }
+    }
+}
+
 JNIEXPORT void JNICALL
 Java_com_winlator_xserver_Drawable_drawLine(JNIEnv *env, jclass obj, jshort x0, jshort y0,
                                             jshort x1, jshort y1, jint color, jshort lineWidth,
@@ -0,0 +1,73 @@
+#include "raster_op.h"
+
+#include <stdlib.h>
+#include <string.h>
+
+#define COLOR_BITS 0x00ffffffu
+
+/* One tight loop per function so the compiler can vectorize each of them (NEON on arm64) */
+#define ROP_LOOP(expr) \
+    for (int i = 0; i < width; i++) { \
+        uint32_t s = src[i], d = dst[i]; \
+        (void)s; \
+        dst[i] = (d & keep) | ((expr) & mask); \
+    }
+
+void raster_op_row(uint32_t *restrict dst, const uint32_t *restrict src, int width, int op, uint32_t planeMask) {
+    uint32_t mask = planeMask & COLOR_BITS;
+    uint32_t keep = ~mask;
+    if (mask == 0) return;
+
+    switch (op) {
+        case ROP_CLEAR:         ROP_LOOP(0u) break;
+        case ROP_AND:           ROP_LOOP(s & d) break;
+        case ROP_AND_REVERSE:   ROP_LOOP(s & ~d) break;
+        case ROP_COPY:          ROP_LOOP(s) break;
+        case ROP_AND_INVERTED:  ROP_LOOP(~s & d) break;
+        case ROP_NO_OP:         break;
+        case ROP_XOR:           ROP_LOOP(s ^ d) break;
+        case ROP_OR:            ROP_LOOP(s | d) break;
+        case ROP_NOR:           ROP_LOOP(~(s | d)) break;
+        case ROP_EQUIV:         ROP_LOOP(~s ^ d) break;
+        case ROP_INVERT:        ROP_LOOP(~d) break;
+        case ROP_OR_REVERSE:    ROP_LOOP(s | ~d) break;
+        case ROP_COPY_INVERTED: ROP_LOOP(~s) break;
+        case ROP_OR_INVERTED:   ROP_LOOP(~s | d) break;
+        case ROP_NAND:          ROP_LOOP(~(s & d)) break;
+        case ROP_SET:           ROP_LOOP(~0u) break;
+        default: break;
+    }
+}
+
+void raster_op_rect(uint32_t *dst, int dstX, int dstY, int dstStride,
+                    const uint32_t *src, int srcX, int srcY, int srcStride,
+                    int width, int height, int op, uint32_t planeMask) {
+    if (width <= 0 || height <= 0 || op == ROP_NO_OP || (planeMask & COLOR_BITS) == 0) return;
+
+    uint32_t *dstRow = dst + dstX + dstY * dstStride;
+    const uint32_t *srcRow = src + srcX + srcY * srcStride;
+
+    const uint32_t *srcEnd = srcRow + (height - 1) * srcStride + width;
+    const uint32_t *dstEnd = dstRow + (height - 1) * dstStride + width;
+    int overlaps = srcRow < dstEnd && dstRow < srcEnd;
+
+    if (!overlaps) {
+        for (int y = 0; y < height; y++) {
+            raster_op_row(dstRow + y * dstStride, srcRow + y * srcStride, width, op, planeMask);
+        }
+        return;
+    }
+
+    /* Overlapping areas behave as if the source had been read before any write: walk rows
+     * away from the destination and stage each source row before combining it. */
+    uint32_t *tmp = malloc((size_t)width * sizeof(uint32_t));
+    if (!tmp) return;
+
+    int bottomUp = dstRow > srcRow;
+    for (int n = 0; n < height; n++) {
+        int y = bottomUp ? height - 1 - n : n;
+        memcpy(tmp, srcRow + y * srcStride, (size_t)width * sizeof(uint32_t));
+        raster_op_row(dstRow + y * dstStride, tmp, width, op, planeMask);
+    }
+    free(tmp);
+}
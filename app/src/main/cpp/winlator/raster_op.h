@@ -0,0 +1,22 @@
+#ifndef WINLATOR_RASTER_OP_H
+#define WINLATOR_RASTER_OP_H
+
+#include <stdint.h>
+
+/* X11 GC functions, in protocol order (GraphicsContext.Function) */
+enum RasterOp {
+    ROP_CLEAR, ROP_AND, ROP_AND_REVERSE, ROP_COPY, ROP_AND_INVERTED, ROP_NO_OP, ROP_XOR, ROP_OR,
+    ROP_NOR, ROP_EQUIV, ROP_INVERT, ROP_OR_REVERSE, ROP_COPY_INVERTED, ROP_OR_INVERTED, ROP_NAND, ROP_SET
+};
+
+/* Combines one row of 32-bit pixels: dst = (op(src, dst) & planeMask) | (dst & ~planeMask).
+ * Only the 24 color bits take part; the alpha byte of dst is preserved. */
+void raster_op_row(uint32_t *dst, const uint32_t *src, int width, int op, uint32_t planeMask);
+
+/* Applies raster_op_row to a width x height area. src may be the same buffer as dst, with the
+ * areas overlapping, as for a CopyArea within one drawable. Strides are in pixels. */
+void raster_op_rect(uint32_t *dst, int dstX, int dstY, int dstStride,
+                    const uint32_t *src, int srcX, int srcY, int srcStride,
+                    int width, int height, int op, uint32_t planeMask);
+
+#endif
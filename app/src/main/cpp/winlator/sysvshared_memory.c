@@ -111,3 +111,10 @@ Java_com_winlator_sysvshm_SysVSharedMemory_createMemoryFd(JNIEnv *env, jclass ob
 
     return fd;
 }
+
+JNIEXPORT jlong JNICALL
+Java_com_winlator_sysvshm_SysVSharedMemory_getMemoryFdSize(JNIEnv *env, jclass obj, jint fd) {
+    struct stat st;
+    if (fstat(fd, &st) < 0) return -1;
+    return st.st_size;
+}
@@ -0,0 +1,29 @@
+#define _GNU_SOURCE
+#include <sched.h>
+#include <jni.h>
+
+#define MAX_MASK_CPUS 32
+
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_cpu_ThreadPlacementManager_setThreadAffinity(JNIEnv *env, jclass obj, jint tid,
+                                                               jint mask) {
+    cpu_set_t cpuSet;
+    CPU_ZERO(&cpuSet);
+    for (int cpu = 0; cpu < MAX_MASK_CPUS; cpu++) {
+        if (mask & (1 << cpu)) CPU_SET(cpu, &cpuSet);
+    }
+    return sched_setaffinity(tid, sizeof(cpu_set_t), &cpuSet) == 0;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_winlator_cpu_ThreadPlacementManager_getThreadAffinity(JNIEnv *env, jclass obj, jint tid) {
+    cpu_set_t cpuSet;
+    CPU_ZERO(&cpuSet);
+    if (sched_getaffinity(tid, sizeof(cpu_set_t), &cpuSet) != 0) return 0;
+
+    int mask = 0;
+    for (int cpu = 0; cpu < MAX_MASK_CPUS; cpu++) {
+        if (CPU_ISSET(cpu, &cpuSet)) mask |= 1 << cpu;
+    }
+    return mask;
+}
@@ -6,7 +6,9 @@ import androidx.navigation.NavController
 import app.gamenative.events.AndroidEvent
 import app.gamenative.events.EventDispatcher
 import app.gamenative.service.DownloadService
+import app.gamenative.utils.BestConfigService
 import app.gamenative.utils.ContainerMigrator
+import app.gamenative.utils.GameCompatibilityCache
 import app.gamenative.utils.IntentLaunchManager
 import com.google.android.play.core.splitcompat.SplitCompatApplication
 import com.posthog.PersonProfiles
@@ -67,6 +69,10 @@ class PluviaApp : SplitCompatApplication() {
         // Initialize GOGConstants
         app.gamenative.service.gog.GOGConstants.init(this)
 
+        // Bind the compatibility and best config caches to their files
+        GameCompatibilityCache.init(this)
+        BestConfigService.init(this)
+
         DownloadService.populateDownloadService(this)
 
         appScope.launch {
@@ -822,6 +822,17 @@ object PrefManager {
         get() = getPref(ENABLE_WINE_DEBUG, false)
         set(value) = setPref(ENABLE_WINE_DEBUG, value)
 
+    // In-process PulseAudio server instead of the pulseaudio daemon, still experimental
+    private val USE_BUILTIN_PULSE_SERVER = booleanPreferencesKey("use_builtin_pulse_server")
+    var useBuiltinPulseServer: Boolean
+        get() = getPref(USE_BUILTIN_PULSE_SERVER, false)
+        set(value) = setPref(USE_BUILTIN_PULSE_SERVER, value)
+
+    private val CAPTURE_FRAME_TIMES = booleanPreferencesKey("capture_frame_times")
+    var captureFrameTimes: Boolean
+        get() = getPref(CAPTURE_FRAME_TIMES, false)
+        set(value) = setPref(CAPTURE_FRAME_TIMES, value)
+
     // Add new setting for wine debug channels
     private val WINE_DEBUG_CHANNELS = stringPreferencesKey("wine_debug_channels")
     var wineDebugChannels: String
@@ -4,43 +4,99 @@ import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
 import timber.log.Timber
 import java.io.File
 import java.util.concurrent.CopyOnWriteArrayList
-
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Progress of one download. Updated from many downloader threads at once, so recording a chunk
+ * only touches atomics: per-depot progress and the byte count are atomic, speed is sampled into
+ * a fixed ring at most every [SPEED_SAMPLE_INTERVAL_MS], and listeners and [progressFlow] are
+ * only notified when the progress moved by at least 0.1%.
+ */
 data class DownloadInfo(
     val jobCount: Int = 1,
     val gameId: Int,
     var downloadingAppIds: CopyOnWriteArrayList<Int>,
 ) {
+    @Volatile
     private var downloadJob: Job? = null
-    private val downloadProgressListeners = mutableListOf<((Float) -> Unit)>()
-    private val progresses: Array<Float> = Array(jobCount) { 0f }
 
-    private val weights    = FloatArray(jobCount) { 1f }     // ⇐ new
-    private var weightSum  = jobCount.toFloat()
+    // Per-depot progress as raw float bits, and their weighted sum as raw double bits
+    private val progresses = AtomicIntegerArray(jobCount)
+    private val weightedProgress = AtomicLong(0.0.toRawBits())
+
+    private val weights = FloatArray(jobCount) { 1f }
+    @Volatile
+    private var weightSum = jobCount.toFloat()
 
     // === Bytes / speed tracking for more stable ETA ===
+    @Volatile
     private var totalExpectedBytes: Long = 0L
-    private var bytesDownloaded: Long = 0L
+    private val bytesDownloaded = AtomicLong()
+    @Volatile
     private var persistencePath: String? = null
-
-    private data class SpeedSample(val timeMs: Long, val bytes: Long)
-
-    private val speedSamples = CopyOnWriteArrayList<SpeedSample>()
+    private val lastPersistTime = AtomicLong(Long.MIN_VALUE)
+
+    // Ring of (time, bytes) samples, written at most once per SPEED_SAMPLE_INTERVAL_MS
+    private val sampleLock = Any()
+    private val sampleTimes = LongArray(SPEED_SAMPLE_CAPACITY)
+    private val sampleBytes = LongArray(SPEED_SAMPLE_CAPACITY)
+    private var sampleHead = 0
+    private var sampleCount = 0
+    private val lastSampleTime = AtomicLong(Long.MIN_VALUE)
     private var emaSpeedBytesPerSec: Double = 0.0
     private var hasEmaSpeed: Boolean = false
+
+    @Volatile
     private var isActive: Boolean = true
     private val statusMessage = MutableStateFlow<String?>(null)
+    private val failed = MutableStateFlow(false)
+
+    // Listeners are replaced as a whole so dispatch can iterate without locking or allocating
+    private val listenerLock = Any()
+    @Volatile
+    private var downloadProgressListeners: Array<(Float) -> Unit> = emptyArray()
+    private val progress = MutableStateFlow(0f)
+    private val dispatching = AtomicBoolean()
+    @Volatile
+    private var lastDispatchedPermille = 0
+
+    /**
+     * Progress as seen by the UI, conflated to changes of at least 0.1%.
+     */
+    val progressFlow: StateFlow<Float> = progress.asStateFlow()
+
+    /**
+     * Whether the download ended in failure. Kept apart from the progress, which is computed
+     * from bytes once [setTotalExpectedBytes] was called and so cannot carry a failure value.
+     */
+    val failedFlow: StateFlow<Boolean> = failed.asStateFlow()
+
+    fun isFailed(): Boolean = failed.value
 
     fun cancel() {
         cancel("Cancelled by user")
     }
 
     fun failedToDownload() {
+        failed.value = true
         cancel("Failed to download")
     }
 
+    /**
+     * Marks the download as failed from within its own job, where cancelling the job is not wanted.
+     */
+    fun markFailed() {
+        failed.value = true
+        persistProgressSnapshot()
+        setActive(false)
+    }
+
     fun cancel(message: String) {
         // Persist the most recent progress so a resume can pick up where it left off.
         persistProgressSnapshot()
@@ -57,28 +113,41 @@ data class DownloadInfo(
 
     fun getProgress(): Float {
         // Always use bytes-based progress when available for accuracy
-        if (totalExpectedBytes > 0L) {
-            val bytesProgress = (bytesDownloaded.toFloat() / totalExpectedBytes.toFloat()).coerceIn(0f, 1f)
-            return bytesProgress
+        val total = totalExpectedBytes
+        if (total > 0L) {
+            return (bytesDownloaded.get().toFloat() / total.toFloat()).coerceIn(0f, 1f)
         }
 
         // Fallback to depot-based progress only if we don't have byte tracking
-        var total = 0f
-        for (i in progresses.indices) {
-            total += progresses[i] * weights[i]   // weight each depot
-        }
-        return if (weightSum == 0f) 0f else total / weightSum
+        val sum = weightSum
+        return if (sum == 0f) 0f else (Double.fromBits(weightedProgress.get()) / sum).toFloat()
     }
 
-
     fun setProgress(amount: Float, jobIndex: Int = 0) {
-        progresses[jobIndex] = amount
+        val previous = Float.fromBits(progresses.getAndSet(jobIndex, amount.toRawBits()))
+        addWeightedProgress((amount - previous).toDouble() * weights[jobIndex])
         emitProgressChange()
     }
 
-    fun setWeight(jobIndex: Int, weightBytes: Long) {        // tiny helper
-        weights[jobIndex] = weightBytes.toFloat()
-        weightSum = weights.sum()
+    fun setWeight(jobIndex: Int, weightBytes: Long) {
+        // Weights are set before the download starts; recompute the weighted sum from scratch
+        synchronized(weights) {
+            weights[jobIndex] = weightBytes.toFloat()
+            weightSum = weights.sum()
+            var total = 0.0
+            for (i in 0 until jobCount) {
+                total += Float.fromBits(progresses.get(i)).toDouble() * weights[i]
+            }
+            weightedProgress.set(total.toRawBits())
+        }
+    }
+
+    private fun addWeightedProgress(delta: Double) {
+        while (true) {
+            val current = weightedProgress.get()
+            val updated = (Double.fromBits(current) + delta).toRawBits()
+            if (weightedProgress.compareAndSet(current, updated)) return
+        }
     }
 
     // --- Bytes / speed / ETA helpers ---
@@ -91,13 +160,9 @@ data class DownloadInfo(
      * Initialize bytesDownloaded with a persisted value (used on resume).
      */
     fun initializeBytesDownloaded(value: Long) {
-        bytesDownloaded = if (value < 0L) 0L else value
+        bytesDownloaded.set(if (value < 0L) 0L else value)
     }
 
-    /**
-     * Record that [deltaBytes] have just been downloaded at [timestampMs].
-     * This is used to derive recent download speed over a sliding window.
-     */
     fun setPersistencePath(appDirPath: String?) {
         persistencePath = appDirPath
     }
@@ -106,18 +171,28 @@ data class DownloadInfo(
         persistencePath?.let { persistBytesDownloaded(it) }
     }
 
+    /**
+     * Like [persistProgressSnapshot], but writes at most once per [PERSIST_INTERVAL_MS] so it
+     * can be called for every chunk from the downloader threads.
+     */
+    fun persistProgressSnapshotThrottled(timestampMs: Long = System.currentTimeMillis()) {
+        val last = lastPersistTime.get()
+        if (last != Long.MIN_VALUE && timestampMs - last < PERSIST_INTERVAL_MS) return
+        // Only the thread that claims this interval writes the file
+        if (!lastPersistTime.compareAndSet(last, timestampMs)) return
+        persistProgressSnapshot()
+    }
+
+    /**
+     * Record that [deltaBytes] have just been downloaded at [timestampMs].
+     * This is used to derive recent download speed over a sliding window.
+     */
     fun updateBytesDownloaded(deltaBytes: Long, timestampMs: Long = System.currentTimeMillis()) {
         if (!isActive) return
-        if (deltaBytes <= 0L) {
-            // Still record a sample to advance the time window, but do not change the count.
-            addSpeedSample(timestampMs)
-            return
-        }
-
-        bytesDownloaded += deltaBytes
-        if (bytesDownloaded < 0L) {
-            bytesDownloaded = 0L
+        if (deltaBytes > 0L) {
+            bytesDownloaded.addAndGet(deltaBytes)
         }
+        // Zero deltas still record a sample to advance the time window
         addSpeedSample(timestampMs)
     }
 
@@ -128,21 +203,26 @@ data class DownloadInfo(
     fun getStatusMessageFlow(): StateFlow<String?> = statusMessage
 
     private fun addSpeedSample(timestampMs: Long) {
-        speedSamples.add(SpeedSample(timestampMs, bytesDownloaded))
-        trimOldSamples(timestampMs)
-    }
-
-    private fun trimOldSamples(nowMs: Long, windowMs: Long = 30_000L) {
-        val cutoff = nowMs - windowMs
-        while (speedSamples.isNotEmpty() && speedSamples.first().timeMs < cutoff) {
-            speedSamples.removeAt(0)
+        val last = lastSampleTime.get()
+        if (last != Long.MIN_VALUE && timestampMs - last < SPEED_SAMPLE_INTERVAL_MS) return
+        // Only the thread that claims this interval writes the sample
+        if (!lastSampleTime.compareAndSet(last, timestampMs)) return
+        synchronized(sampleLock) {
+            sampleTimes[sampleHead] = timestampMs
+            sampleBytes[sampleHead] = bytesDownloaded.get()
+            sampleHead = (sampleHead + 1) % SPEED_SAMPLE_CAPACITY
+            if (sampleCount < SPEED_SAMPLE_CAPACITY) sampleCount++
         }
     }
 
     fun resetSpeedTracking() {
-        speedSamples.clear()
-        emaSpeedBytesPerSec = 0.0
-        hasEmaSpeed = false
+        synchronized(sampleLock) {
+            sampleHead = 0
+            sampleCount = 0
+            lastSampleTime.set(Long.MIN_VALUE)
+            emaSpeedBytesPerSec = 0.0
+            hasEmaSpeed = false
+        }
     }
 
     fun setActive(active: Boolean) {
@@ -162,15 +242,16 @@ data class DownloadInfo(
     /**
      * Returns the cumulative bytes downloaded so far.
      */
-    fun getBytesDownloaded(): Long = bytesDownloaded
+    fun getBytesDownloaded(): Long = bytesDownloaded.get()
 
     /**
      * Returns a pair of (downloaded bytes, total expected bytes).
      * Returns (0, 0) if total expected bytes is 0 or not yet set.
      */
     fun getBytesProgress(): Pair<Long, Long> {
-        return if (totalExpectedBytes > 0L) {
-            bytesDownloaded.coerceAtMost(totalExpectedBytes) to totalExpectedBytes
+        val total = totalExpectedBytes
+        return if (total > 0L) {
+            bytesDownloaded.get().coerceAtMost(total) to total
         } else {
             0L to 0L
         }
@@ -182,64 +263,108 @@ data class DownloadInfo(
      */
     fun getEstimatedTimeRemaining(windowSeconds: Int = 30): Long? {
         if (!isActive) return null
-        if (totalExpectedBytes <= 0L) return null
-        if (bytesDownloaded >= totalExpectedBytes) return null
-
-        val now = System.currentTimeMillis()
-        trimOldSamples(now, windowSeconds * 1000L)
-
-        if (speedSamples.size < 2) return null
+        val total = totalExpectedBytes
+        val downloaded = bytesDownloaded.get()
+        if (total <= 0L) return null
+        if (downloaded >= total) return null
+
+        val cutoff = System.currentTimeMillis() - windowSeconds * 1000L
+
+        synchronized(sampleLock) {
+            // Oldest sample still inside the window, and the newest one
+            val newest = (sampleHead - 1 + SPEED_SAMPLE_CAPACITY) % SPEED_SAMPLE_CAPACITY
+            var oldest = -1
+            for (age in sampleCount - 1 downTo 0) {
+                val slot = (sampleHead - 1 - age + 2 * SPEED_SAMPLE_CAPACITY) % SPEED_SAMPLE_CAPACITY
+                if (sampleTimes[slot] >= cutoff) {
+                    oldest = slot
+                    break
+                }
+            }
+            if (oldest < 0 || oldest == newest) return null
 
-        val first = speedSamples.first()
-        val last = speedSamples.last()
-        val elapsedMs = last.timeMs - first.timeMs
-        if (elapsedMs <= 0L) return null
+            val elapsedMs = sampleTimes[newest] - sampleTimes[oldest]
+            if (elapsedMs <= 0L) return null
 
-        val bytesDelta = last.bytes - first.bytes
-        if (bytesDelta <= 0L) return null
+            val bytesDelta = sampleBytes[newest] - sampleBytes[oldest]
+            if (bytesDelta <= 0L) return null
 
-        val currentSpeedBytesPerSec = bytesDelta.toDouble() / (elapsedMs.toDouble() / 1000.0)
-        if (currentSpeedBytesPerSec <= 0.0) return null
+            val currentSpeedBytesPerSec = bytesDelta.toDouble() / (elapsedMs.toDouble() / 1000.0)
+            if (currentSpeedBytesPerSec <= 0.0) return null
 
-        // Exponential moving average to smooth fluctuations.
-        val alpha = 0.3
-        val smoothedSpeed = if (!hasEmaSpeed) {
-            hasEmaSpeed = true
-            emaSpeedBytesPerSec = currentSpeedBytesPerSec
-            currentSpeedBytesPerSec
-        } else {
-            emaSpeedBytesPerSec = alpha * currentSpeedBytesPerSec + (1 - alpha) * emaSpeedBytesPerSec
-            emaSpeedBytesPerSec
-        }
+            // Exponential moving average to smooth fluctuations.
+            val alpha = 0.3
+            val smoothedSpeed = if (!hasEmaSpeed) {
+                hasEmaSpeed = true
+                emaSpeedBytesPerSec = currentSpeedBytesPerSec
+                currentSpeedBytesPerSec
+            } else {
+                emaSpeedBytesPerSec = alpha * currentSpeedBytesPerSec + (1 - alpha) * emaSpeedBytesPerSec
+                emaSpeedBytesPerSec
+            }
 
-        if (smoothedSpeed <= 0.0) return null
+            if (smoothedSpeed <= 0.0) return null
 
-        val remainingBytes = totalExpectedBytes - bytesDownloaded
-        if (remainingBytes <= 0L) return null
+            val remainingBytes = total - downloaded
+            if (remainingBytes <= 0L) return null
 
-        val etaSeconds = remainingBytes / smoothedSpeed
-        if (etaSeconds.isNaN() || etaSeconds.isInfinite() || etaSeconds <= 0.0) return null
+            val etaSeconds = remainingBytes / smoothedSpeed
+            if (etaSeconds.isNaN() || etaSeconds.isInfinite() || etaSeconds <= 0.0) return null
 
-        return (etaSeconds * 1000.0).toLong()
+            return (etaSeconds * 1000.0).toLong()
+        }
     }
 
     fun addProgressListener(listener: (Float) -> Unit) {
-        downloadProgressListeners.add(listener)
+        synchronized(listenerLock) {
+            downloadProgressListeners += listener
+        }
     }
 
     fun removeProgressListener(listener: (Float) -> Unit) {
-        downloadProgressListeners.remove(listener)
+        synchronized(listenerLock) {
+            val index = downloadProgressListeners.indexOf(listener)
+            if (index >= 0) {
+                downloadProgressListeners = downloadProgressListeners.filterIndexed { i, _ -> i != index }.toTypedArray()
+            }
+        }
     }
 
+    /**
+     * Notifies listeners and [progressFlow] if the progress moved by at least 0.1% since the last
+     * notification. One thread dispatches at a time; updates arriving meanwhile are picked up by
+     * it before it lets go, so the last value is never lost.
+     */
     fun emitProgressChange() {
-        for (listener in downloadProgressListeners) {
-            listener(getProgress())
+        while (true) {
+            if (toPermille(getProgress()) == lastDispatchedPermille) return
+            if (!dispatching.compareAndSet(false, true)) return
+            try {
+                val current = getProgress()
+                lastDispatchedPermille = toPermille(current)
+                progress.value = current
+                val listeners = downloadProgressListeners
+                for (i in listeners.indices) {
+                    listeners[i](current)
+                }
+            } finally {
+                dispatching.set(false)
+            }
         }
     }
 
+    private fun toPermille(value: Float): Int = (value * 1000f).toInt()
+
     // --- Persistence helpers ---
 
     companion object {
+        private const val SPEED_SAMPLE_INTERVAL_MS = 500L
+
+        // Enough samples to cover the default 30 second ETA window
+        private const val SPEED_SAMPLE_CAPACITY = 64
+
+        private const val PERSIST_INTERVAL_MS = 1_000L
+
         private const val PERSISTENCE_DIR = ".DownloadInfo"
         private const val PERSISTENCE_FILE = "bytes_downloaded.txt"
     }
@@ -254,7 +379,7 @@ data class DownloadInfo(
                 dir.mkdirs()
             }
             val file = File(dir, PERSISTENCE_FILE)
-            file.writeText(bytesDownloaded.toString())
+            file.writeText(bytesDownloaded.get().toString())
         } catch (e: Exception) {
             Timber.e(e, "Failed to persist bytes downloaded to $appDirPath")
         }
@@ -0,0 +1,21 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * One app granted by a [SteamLicense], normalized out of [SteamLicense.appIds] so that
+ * ownership can be resolved with an index lookup instead of scanning every license.
+ */
+@Entity(
+    "license_app",
+    primaryKeys = ["package_id", "app_id"],
+    indices = [Index("app_id")],
+)
+data class LicenseApp(
+    @ColumnInfo("package_id")
+    val packageId: Int,
+    @ColumnInfo("app_id")
+    val appId: Int,
+)
@@ -0,0 +1,14 @@
+package app.gamenative.data
+
+import androidx.room.ColumnInfo
+
+/**
+ * The columns of a [SteamApp] needed to decide whether a PICS update has to be applied.
+ */
+data class SteamAppPicsState(
+    val id: Int,
+    @ColumnInfo("package_id")
+    val packageId: Int,
+    @ColumnInfo("last_change_number")
+    val lastChangeNumber: Int,
+)
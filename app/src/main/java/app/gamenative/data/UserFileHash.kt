@@ -0,0 +1,22 @@
+package app.gamenative.data
+
+import androidx.room.Entity
+
+/**
+ * Journal entry remembering the SHA-1 of a save file as it was last seen on disk,
+ * so that unchanged files do not need to be rehashed on every cloud sync.
+ *
+ * @param path the absolute path of the file
+ * @param lastModified the value in milliseconds, since the epoch (1970-01-01T00:00:00Z)
+ * @param fileKey the file system key (device and inode) of the file, or empty if unavailable
+ * @param sha the SHA-1 of the file contents as a lowercase hex string
+ */
+@Entity("app_file_hashes", primaryKeys = ["appId", "path"])
+data class UserFileHash(
+    val appId: Int,
+    val path: String,
+    val size: Long,
+    val lastModified: Long,
+    val fileKey: String,
+    val sha: String,
+)
@@ -12,6 +12,8 @@ import app.gamenative.data.CachedLicense
 import app.gamenative.data.DownloadingAppInfo
 import app.gamenative.data.EncryptedAppTicket
 import app.gamenative.data.GOGGame
+import app.gamenative.data.LicenseApp
+import app.gamenative.data.UserFileHash
 import app.gamenative.db.converters.AppConverter
 import app.gamenative.db.converters.ByteArrayConverter
 import app.gamenative.db.converters.FriendConverter
@@ -28,6 +30,8 @@ import app.gamenative.db.dao.CachedLicenseDao
 import app.gamenative.db.dao.DownloadingAppInfoDao
 import app.gamenative.db.dao.EncryptedAppTicketDao
 import app.gamenative.db.dao.GOGGameDao
+import app.gamenative.db.dao.LicenseAppDao
+import app.gamenative.db.dao.UserFileHashDao
 
 const val DATABASE_NAME = "pluvia.db"
 
@@ -41,9 +45,11 @@ const val DATABASE_NAME = "pluvia.db"
         SteamApp::class,
         SteamLicense::class,
         GOGGame::class,
-        DownloadingAppInfo::class
+        DownloadingAppInfo::class,
+        UserFileHash::class,
+        LicenseApp::class,
     ],
-    version = 10,
+    version = 12,
     exportSchema = false, // Should export once stable.
 )
 @TypeConverters(
@@ -74,4 +80,8 @@ abstract class PluviaDatabase : RoomDatabase() {
     abstract fun gogGameDao(): GOGGameDao
 
     abstract fun downloadingAppInfoDao(): DownloadingAppInfoDao
+
+    abstract fun userFileHashDao(): UserFileHashDao
+
+    abstract fun licenseAppDao(): LicenseAppDao
 }
@@ -4,9 +4,11 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
 import app.gamenative.data.AppInfo
 import app.gamenative.data.DepotInfo
+import kotlin.math.min
 
 @Dao
 interface AppInfoDao {
@@ -26,6 +28,22 @@ interface AppInfoDao {
     @Query("SELECT * FROM app_info WHERE id = :appId")
     suspend fun get(appId: Int): AppInfo?
 
+    @Query("SELECT * FROM app_info WHERE id IN (:appIds)")
+    suspend fun _getInstalledApps(appIds: List<Int>): List<AppInfo>
+
+    /**
+     * Looks up many installed apps at once, chunked to stay under SQLite's variable limit.
+     */
+    @Transaction
+    suspend fun getInstalledApps(appIds: List<Int>): List<AppInfo> {
+        val out = mutableListOf<AppInfo>()
+        for (i in appIds.indices step SQLITE_MAX_VARS) {
+            val end = min(i + SQLITE_MAX_VARS, appIds.size)
+            out += _getInstalledApps(appIds.subList(i, end))
+        }
+        return out
+    }
+
     @Query("DELETE from app_info WHERE id = :appId")
     suspend fun deleteApp(appId: Int)
 
@@ -0,0 +1,48 @@
+package app.gamenative.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import app.gamenative.data.LicenseApp
+import kotlin.math.min
+
+@Dao
+interface LicenseAppDao {
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertAll(licenseApps: List<LicenseApp>)
+
+    @Query("DELETE FROM license_app WHERE package_id = :packageId")
+    suspend fun deleteByPackageId(packageId: Int)
+
+    @Query("SELECT app_id FROM license_app WHERE package_id = :packageId")
+    suspend fun getAppIds(packageId: Int): List<Int>
+
+    @Query("SELECT package_id FROM license_app WHERE app_id = :appId")
+    suspend fun getPackageIds(appId: Int): List<Int>
+
+    /**
+     * Replaces the apps granted by a package, mirroring [SteamLicenseDao.updateApps].
+     */
+    @Transaction
+    suspend fun replaceApps(packageId: Int, appIds: List<Int>) {
+        deleteByPackageId(packageId)
+        insertAll(appIds.distinct().map { LicenseApp(packageId, it) })
+    }
+
+    @Query("DELETE FROM license_app WHERE package_id IN (:packageIds)")
+    suspend fun _deleteByPackageIds(packageIds: List<Int>)
+
+    @Transaction
+    suspend fun deleteByPackageIds(packageIds: List<Int>) {
+        for (i in packageIds.indices step SQLITE_MAX_VARS) {
+            val end = min(i + SQLITE_MAX_VARS, packageIds.size)
+            _deleteByPackageIds(packageIds.subList(i, end))
+        }
+    }
+
+    @Query("DELETE from license_app")
+    suspend fun deleteAll()
+}
@@ -4,9 +4,12 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
 import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppPicsState
 import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
+import kotlin.math.min
 import kotlinx.coroutines.flow.Flow
 
 @Dao
@@ -18,6 +21,9 @@ interface SteamAppDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertAll(apps: List<SteamApp>)
 
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertAllIgnore(apps: List<SteamApp>)
+
     @Update
     suspend fun update(app: SteamApp)
 
@@ -46,22 +52,72 @@ interface SteamAppDao {
 
     @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots <> '{}' AND " +
             " EXISTS (" +
-            "   SELECT * FROM steam_license AS license " +
-            "     WHERE license.license_type <> 0 AND " +
-            "       REPLACE(REPLACE(license.app_ids, '[', ','), ']', ',') LIKE ('%,' || app.id || ',%') " +
+            "   SELECT 1 FROM license_app " +
+            "     INNER JOIN steam_license AS license ON license.packageId = license_app.package_id " +
+            "     WHERE license_app.app_id = app.id AND license.license_type <> 0" +
             ")"
     )
     suspend fun findDownloadableDLCApps(appId: Int): List<SteamApp>?
 
     @Query("SELECT * FROM steam_app AS app WHERE dlc_for_app_id = :appId AND depots = '{}' AND " +
             " EXISTS (" +
-            "   SELECT * FROM steam_license AS license " +
-            "     WHERE license.license_type <> 0 AND " +
-            "       REPLACE(REPLACE(license.app_ids, '[', ','), ']', ',') LIKE ('%,' || app.id || ',%') " +
+            "   SELECT 1 FROM license_app " +
+            "     INNER JOIN steam_license AS license ON license.packageId = license_app.package_id " +
+            "     WHERE license_app.app_id = app.id AND license.license_type <> 0" +
             ")"
     )
     suspend fun findHiddenDLCApps(appId: Int): List<SteamApp>?
 
+    @Query("SELECT id, package_id, last_change_number FROM steam_app WHERE id IN (:appIds)")
+    suspend fun _findPicsStates(appIds: List<Int>): List<SteamAppPicsState>
+
+    @Query("SELECT * FROM steam_app WHERE id IN (:appIds)")
+    suspend fun _findApps(appIds: List<Int>): List<SteamApp>
+
+    @Query("UPDATE steam_app SET package_id = :packageId WHERE id IN (:appIds)")
+    suspend fun _updatePackageId(packageId: Int, appIds: List<Int>)
+
+    /**
+     * Looks up the PICS state of many apps at once, chunked to stay under SQLite's variable limit.
+     */
+    @Transaction
+    suspend fun findPicsStates(appIds: List<Int>): List<SteamAppPicsState> {
+        val out = mutableListOf<SteamAppPicsState>()
+        for (i in appIds.indices step SQLITE_MAX_VARS) {
+            val end = min(i + SQLITE_MAX_VARS, appIds.size)
+            out += _findPicsStates(appIds.subList(i, end))
+        }
+        return out
+    }
+
+    /**
+     * Looks up many apps at once, chunked to stay under SQLite's variable limit.
+     */
+    @Transaction
+    suspend fun findApps(appIds: List<Int>): List<SteamApp> {
+        val out = mutableListOf<SteamApp>()
+        for (i in appIds.indices step SQLITE_MAX_VARS) {
+            val end = min(i + SQLITE_MAX_VARS, appIds.size)
+            out += _findApps(appIds.subList(i, end))
+        }
+        return out
+    }
+
+    /**
+     * Points the given apps at [packageId], inserting stub rows for apps not yet in the database.
+     * Only the package_id column of existing rows is touched.
+     */
+    @Transaction
+    suspend fun upsertPackageId(packageId: Int, appIds: List<Int>) {
+        insertAllIgnore(appIds.map { SteamApp(id = it, packageId = packageId) })
+
+        val chunkSize = SQLITE_MAX_VARS - 1
+        for (i in appIds.indices step chunkSize) {
+            val end = min(i + chunkSize, appIds.size)
+            _updatePackageId(packageId, appIds.subList(i, end))
+        }
+    }
+
     @Query("DELETE from steam_app")
     suspend fun deleteAll()
 
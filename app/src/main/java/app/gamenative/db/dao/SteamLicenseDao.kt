@@ -48,6 +48,9 @@ interface SteamLicenseDao {
     )
     suspend fun _deleteStaleLicenses(packageIds: List<Int>)
 
+    @Query("SELECT * FROM steam_license WHERE packageId IN (:packageIds)")
+    suspend fun _findLicenses(packageIds: List<Int>): List<SteamLicense>
+
     /* ----------------------------------------------------------
        PUBLIC wrappers – chunk the list so we never exceed
        SQLite’s 999-parameter ceiling.  These replace the old
@@ -80,6 +83,16 @@ interface SteamLicenseDao {
         }
     }
 
+    @Transaction
+    suspend fun findLicenses(packageIds: List<Int>): List<SteamLicense> {
+        val out = mutableListOf<SteamLicense>()
+        for (i in packageIds.indices step SQLITE_MAX_VARS) {
+            val end = min(i + SQLITE_MAX_VARS, packageIds.size)
+            out += _findLicenses(packageIds.subList(i, end))
+        }
+        return out
+    }
+
     @Query("DELETE from steam_license")
     suspend fun deleteAll()
 }
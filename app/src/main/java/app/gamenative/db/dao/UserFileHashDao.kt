@@ -0,0 +1,32 @@
+package app.gamenative.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import app.gamenative.data.UserFileHash
+
+@Dao
+interface UserFileHashDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertAll(userFileHashes: List<UserFileHash>)
+
+    @Query("SELECT * FROM app_file_hashes WHERE appId = :appId")
+    suspend fun getByAppId(appId: Int): List<UserFileHash>
+
+    @Query("DELETE FROM app_file_hashes WHERE appId = :appId")
+    suspend fun deleteByAppId(appId: Int)
+
+    /**
+     * Replaces the journal of an app with the given entries.
+     */
+    @Transaction
+    suspend fun replace(appId: Int, userFileHashes: List<UserFileHash>) {
+        deleteByAppId(appId)
+        insertAll(userFileHashes)
+    }
+
+    @Query("DELETE from app_file_hashes")
+    suspend fun deleteAll()
+}
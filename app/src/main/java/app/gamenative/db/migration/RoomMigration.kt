@@ -14,3 +14,55 @@ internal val ROOM_MIGRATION_V7_to_V8 = object : Migration(7, 8) {
         connection.execSQL(DROP_TABLE + "steam_friend")
     }
 }
+
+internal val ROOM_MIGRATION_V10_to_V11 = object : Migration(10, 11) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Journal of save file hashes used by SteamAutoCloud
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `app_file_hashes` (" +
+                "`appId` INTEGER NOT NULL, " +
+                "`path` TEXT NOT NULL, " +
+                "`size` INTEGER NOT NULL, " +
+                "`lastModified` INTEGER NOT NULL, " +
+                "`fileKey` TEXT NOT NULL, " +
+                "`sha` TEXT NOT NULL, " +
+                "PRIMARY KEY(`appId`, `path`))",
+        )
+    }
+}
+
+internal val ROOM_MIGRATION_V11_to_V12 = object : Migration(11, 12) {
+    override fun migrate(connection: SQLiteConnection) {
+        // Normalized license -> app relation used for DLC ownership lookups
+        connection.execSQL(
+            "CREATE TABLE IF NOT EXISTS `license_app` (" +
+                "`package_id` INTEGER NOT NULL, " +
+                "`app_id` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`package_id`, `app_id`))",
+        )
+        connection.execSQL("CREATE INDEX IF NOT EXISTS `index_license_app_app_id` ON `license_app` (`app_id`)")
+        connection.execSQL("CREATE INDEX IF NOT EXISTS `index_steam_app_dlc_for_app_id` ON `steam_app` (`dlc_for_app_id`)")
+
+        // Backfill from the JSON app id lists already stored on each license
+        val licenseApps = mutableListOf<Pair<Long, Long>>()
+        connection.prepare("SELECT `packageId`, `app_ids` FROM `steam_license`").use { statement ->
+            while (statement.step()) {
+                val packageId = statement.getLong(0)
+                statement.getText(1)
+                    .trim('[', ']')
+                    .split(',')
+                    .mapNotNull { it.trim().toLongOrNull() }
+                    .forEach { licenseApps += packageId to it }
+            }
+        }
+
+        connection.prepare("INSERT OR IGNORE INTO `license_app` (`package_id`, `app_id`) VALUES (?, ?)").use { statement ->
+            licenseApps.forEach { (packageId, appId) ->
+                statement.bindLong(1, packageId)
+                statement.bindLong(2, appId)
+                statement.step()
+                statement.reset()
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@ import app.gamenative.db.dao.AppInfoDao
 import app.gamenative.db.dao.CachedLicenseDao
 import app.gamenative.db.dao.DownloadingAppInfoDao
 import app.gamenative.db.dao.EncryptedAppTicketDao
+import app.gamenative.db.dao.LicenseAppDao
+import app.gamenative.db.dao.UserFileHashDao
+import app.gamenative.db.migration.ROOM_MIGRATION_V10_to_V11
+import app.gamenative.db.migration.ROOM_MIGRATION_V11_to_V12
 import app.gamenative.db.migration.ROOM_MIGRATION_V7_to_V8
 import dagger.Module
 import dagger.Provides
@@ -26,7 +30,7 @@ class DatabaseModule {
         // The db will be considered unstable during development.
         // Once stable we should add a (room) db migration
         return Room.databaseBuilder(context, PluviaDatabase::class.java, DATABASE_NAME)
-            .addMigrations(ROOM_MIGRATION_V7_to_V8)
+            .addMigrations(ROOM_MIGRATION_V7_to_V8, ROOM_MIGRATION_V10_to_V11, ROOM_MIGRATION_V11_to_V12)
             .fallbackToDestructiveMigration(true)
             .build()
     }
@@ -66,4 +70,12 @@ class DatabaseModule {
     @Provides
     @Singleton
     fun provideDownloadingAppInfoDao(db: PluviaDatabase): DownloadingAppInfoDao = db.downloadingAppInfoDao()
+
+    @Provides
+    @Singleton
+    fun provideUserFileHashDao(db: PluviaDatabase): UserFileHashDao = db.userFileHashDao()
+
+    @Provides
+    @Singleton
+    fun provideLicenseAppDao(db: PluviaDatabase): LicenseAppDao = db.licenseAppDao()
 }
@@ -0,0 +1,284 @@
+package app.gamenative.service
+
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.BitSet
+import java.util.zip.CRC32
+import timber.log.Timber
+
+/**
+ * Append-only journal of the chunks of a download that are safely on disk, so a download that
+ * was cancelled, failed or killed resumes by skipping them instead of fetching or verifying
+ * them again.
+ *
+ * Chunks belong to a group, usually the file they are written to. Records are checksummed, so a
+ * record torn by a crash is dropped along with everything after it. Appends are made durable in
+ * batches: every [syncEvery] records or [syncIntervalMs], [syncData] is called first to force the
+ * chunk data to disk, then the journal itself is forced. A chunk is therefore never journaled
+ * before its data is durable; at worst a few chunks from the last batch are fetched again.
+ *
+ * Completed groups collapse to a single record, and the file is rewritten without the records
+ * they replace once those make up most of it.
+ */
+class DownloadJournal(
+    private val file: File,
+    private val syncEvery: Int = DEFAULT_SYNC_EVERY,
+    private val syncIntervalMs: Long = DEFAULT_SYNC_INTERVAL_MS,
+    private val syncData: () -> Unit = {},
+) : Closeable {
+
+    private val lock = Any()
+
+    private val chunks = HashMap<String, BitSet>()
+    private val completedGroups = HashSet<String>()
+
+    private var output: FileOutputStream
+    private var writer: DataOutputStream
+    private val record = ByteArrayOutputStream()
+    private val recordWriter = DataOutputStream(record)
+    private val crc = CRC32()
+
+    private var unsynced = 0
+    private var lastSync = System.currentTimeMillis()
+    private var records = 0
+
+    /** Records in the file that a compaction would drop. */
+    private var obsoleteRecords = 0
+
+    init {
+        file.parentFile?.mkdirs()
+        val validLength = load()
+        output = openForAppend(validLength)
+        writer = DataOutputStream(BufferedOutputStream(output, BUFFER_SIZE))
+        if (obsoleteRecords > COMPACT_MIN_RECORDS && obsoleteRecords > records / 2) {
+            compact()
+        }
+    }
+
+    fun isComplete(group: String, index: Int): Boolean = synchronized(lock) {
+        group in completedGroups || chunks[group]?.get(index) == true
+    }
+
+    fun isGroupComplete(group: String): Boolean = synchronized(lock) { group in completedGroups }
+
+    /** Number of journaled chunks of [group], or -1 when the whole group is complete. */
+    fun completedChunks(group: String): Int = synchronized(lock) {
+        if (group in completedGroups) -1 else chunks[group]?.cardinality() ?: 0
+    }
+
+    fun complete(group: String, index: Int) {
+        synchronized(lock) {
+            if (group in completedGroups) return
+            val set = chunks.getOrPut(group) { BitSet() }
+            if (set.get(index)) return
+            set.set(index)
+            append(TYPE_CHUNK, group, index)
+        }
+    }
+
+    /**
+     * Marks all chunks of [group] complete, replacing its chunk records.
+     */
+    fun completeGroup(group: String) {
+        synchronized(lock) {
+            if (!completedGroups.add(group)) return
+            obsoleteRecords += chunks.remove(group)?.cardinality() ?: 0
+            append(TYPE_GROUP, group, 0)
+        }
+    }
+
+    /**
+     * Drops everything journaled for [group], e.g. because its file had to be recreated.
+     */
+    fun forget(group: String) {
+        synchronized(lock) {
+            val known = chunks.remove(group)?.cardinality() ?: 0
+            val wasComplete = completedGroups.remove(group)
+            if (known == 0 && !wasComplete) return
+            obsoleteRecords += known + (if (wasComplete) 1 else 0) + 1
+            append(TYPE_FORGET, group, 0)
+        }
+    }
+
+    /**
+     * Forces the chunk data and then the journal to disk.
+     */
+    fun sync() {
+        synchronized(lock) { syncLocked() }
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            try {
+                syncLocked()
+                if (obsoleteRecords > COMPACT_MIN_RECORDS && obsoleteRecords > records / 2) compact()
+            } finally {
+                writer.close()
+            }
+        }
+    }
+
+    private fun append(type: Int, group: String, index: Int) {
+        writeRecord(writer, type, group, index)
+        records++
+        unsynced++
+        if (unsynced >= syncEvery || System.currentTimeMillis() - lastSync >= syncIntervalMs) {
+            syncLocked()
+            if (obsoleteRecords > COMPACT_MIN_RECORDS && obsoleteRecords > records / 2) compact()
+        }
+    }
+
+    private fun writeRecord(out: DataOutputStream, type: Int, group: String, index: Int) {
+        record.reset()
+        recordWriter.writeByte(type)
+        recordWriter.writeUTF(group)
+        recordWriter.writeInt(index)
+        crc.reset()
+        crc.update(record.toByteArray())
+        recordWriter.writeInt(crc.value.toInt())
+        record.writeTo(out)
+    }
+
+    private fun syncLocked() {
+        if (unsynced == 0) return
+        syncData()
+        writer.flush()
+        output.fd.sync()
+        unsynced = 0
+        lastSync = System.currentTimeMillis()
+    }
+
+    /**
+     * Reads the journal and returns the length of its valid prefix.
+     */
+    private fun load(): Long {
+        if (!file.exists()) return 0L
+        var valid = 0L
+        try {
+            DataInputStream(file.inputStream().buffered(BUFFER_SIZE)).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    Timber.w("Ignoring download journal ${file.path} with an unknown format")
+                    return 0L
+                }
+                valid = HEADER_SIZE.toLong()
+                val check = CRC32()
+                val bytes = ByteArrayOutputStream()
+                val data = DataOutputStream(bytes)
+                while (true) {
+                    val type = try {
+                        input.readUnsignedByte()
+                    } catch (e: EOFException) {
+                        break
+                    }
+                    val group = input.readUTF()
+                    val index = input.readInt()
+                    val stored = input.readInt()
+
+                    bytes.reset()
+                    data.writeByte(type)
+                    data.writeUTF(group)
+                    data.writeInt(index)
+                    check.reset()
+                    check.update(bytes.toByteArray())
+                    if (check.value.toInt() != stored) break
+
+                    apply(type, group, index)
+                    records++
+                    valid += bytes.size() + 4
+                }
+            }
+        } catch (e: EOFException) {
+            // A record torn by a crash; everything before it is intact
+        } catch (e: IOException) {
+            Timber.w(e, "Could not fully read download journal ${file.path}")
+        }
+        return valid
+    }
+
+    private fun apply(type: Int, group: String, index: Int) {
+        when (type) {
+            TYPE_CHUNK -> if (group !in completedGroups) chunks.getOrPut(group) { BitSet() }.set(index)
+            TYPE_GROUP -> {
+                completedGroups += group
+                obsoleteRecords += chunks.remove(group)?.cardinality() ?: 0
+            }
+            TYPE_FORGET -> {
+                obsoleteRecords += (chunks.remove(group)?.cardinality() ?: 0) + 1
+                if (completedGroups.remove(group)) obsoleteRecords++
+            }
+        }
+    }
+
+    private fun openForAppend(validLength: Long): FileOutputStream {
+        if (validLength == 0L) {
+            val out = FileOutputStream(file, false)
+            DataOutputStream(out).apply {
+                writeInt(MAGIC)
+                writeInt(VERSION)
+                flush()
+            }
+            return out
+        }
+        // Cut off a torn tail so new records follow the last intact one
+        val out = FileOutputStream(file, true)
+        if (out.channel.size() != validLength) {
+            out.channel.truncate(validLength)
+        }
+        return out
+    }
+
+    /**
+     * Rewrites the journal with one record per completed group and per outstanding chunk.
+     */
+    private fun compact() {
+        syncLocked()
+        writer.close()
+
+        val tmp = File(file.parentFile, "${file.name}.tmp")
+        FileOutputStream(tmp).use { out ->
+            val data = DataOutputStream(BufferedOutputStream(out, BUFFER_SIZE))
+            data.writeInt(MAGIC)
+            data.writeInt(VERSION)
+            completedGroups.forEach { writeRecord(data, TYPE_GROUP, it, 0) }
+            chunks.forEach { (group, set) ->
+                var index = set.nextSetBit(0)
+                while (index >= 0) {
+                    writeRecord(data, TYPE_CHUNK, group, index)
+                    index = set.nextSetBit(index + 1)
+                }
+            }
+            data.flush()
+            out.fd.sync()
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+
+        records = completedGroups.size + chunks.values.sumOf { it.cardinality() }
+        obsoleteRecords = 0
+        output = FileOutputStream(file, true)
+        writer = DataOutputStream(BufferedOutputStream(output, BUFFER_SIZE))
+    }
+
+    companion object {
+        private const val MAGIC = 0x444C4A4E // "DLJN"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 8
+
+        private const val TYPE_CHUNK = 1
+        private const val TYPE_GROUP = 2
+        private const val TYPE_FORGET = 3
+
+        private const val DEFAULT_SYNC_EVERY = 32
+        private const val DEFAULT_SYNC_INTERVAL_MS = 2_000L
+        private const val COMPACT_MIN_RECORDS = 256
+        private const val BUFFER_SIZE = 16 * 1024
+    }
+}
@@ -0,0 +1,348 @@
+package app.gamenative.service
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import okhttp3.Interceptor
+import okhttp3.ResponseBody.Companion.asResponseBody
+import okio.Buffer
+import okio.ForwardingSource
+import okio.Source
+import okio.buffer
+import timber.log.Timber
+
+/**
+ * Shares one budget of in-flight CDN chunk requests between every Steam download.
+ *
+ * DepotDownloader fixes its concurrency when it is created, so the budget is enforced below it:
+ * [interceptor] sits on the Steam HTTP client and holds each chunk request until a slot is
+ * free. The number of slots adapts to what the connection delivers, AIMD-style: it grows by one
+ * per round of requests while throughput keeps improving or latency stays near the best seen,
+ * and shrinks by a quarter on failures, or when latency inflates without any throughput gain.
+ *
+ * Downloads are registered with a [Priority]. Foreground chunks are always let through first,
+ * and background downloads such as updates get at most a quarter of the slots while a
+ * foreground download is running.
+ */
+class DownloadScheduler(
+    maxInFlight: Int,
+    initialInFlight: Int = maxInFlight / 2,
+    private val minInFlight: Int = MIN_IN_FLIGHT,
+    private val nanoTime: () -> Long = System::nanoTime,
+) {
+    enum class Priority { FOREGROUND, BACKGROUND }
+
+    /**
+     * A granted slot. Hand it back to [release] once the chunk was received or failed.
+     */
+    class Ticket internal constructor(val priority: Priority, internal val startNanos: Long)
+
+    private val lock = ReentrantLock()
+    private val slotFreed = lock.newCondition()
+
+    private var ceiling = maxInFlight.coerceAtLeast(minInFlight)
+    private var window = initialInFlight.coerceIn(minInFlight, ceiling)
+    private val inFlight = IntArray(Priority.entries.size)
+    private val waiting = IntArray(Priority.entries.size)
+
+    // appId -> priority, and depotId -> the registered apps downloading it. A depot can be
+    // shared, e.g. between a game and its DLC, so every (appId, depotId) pair is kept.
+    private val apps = HashMap<Int, Priority>()
+    private val depotOwners = HashMap<Int, HashSet<Int>>()
+
+    // Current round of samples
+    private var roundStart = 0L
+    private var roundCompletions = 0
+    private var roundBytes = 0L
+    private var roundLatency = 0L
+    private var roundMinLatency = Long.MAX_VALUE
+    private var lastThroughput = 0.0
+    private var grewLastRound = false
+    private var baseLatency = Long.MAX_VALUE
+
+    /** Number of chunk requests waiting for a slot. */
+    internal val waitingRequests: Int
+        get() = lock.withLock { waiting.sum() }
+
+    /** Current number of chunk requests allowed in flight. */
+    val inFlightLimit: Int
+        get() = lock.withLock { window }
+
+    val maxInFlight: Int
+        get() = lock.withLock { ceiling }
+
+    /**
+     * Changes the upper bound of the budget, e.g. after the download speed setting changed.
+     */
+    fun setMaxInFlight(value: Int) {
+        lock.withLock {
+            ceiling = value.coerceAtLeast(minInFlight)
+            window = window.coerceIn(minInFlight, ceiling)
+            slotFreed.signalAll()
+        }
+    }
+
+    fun register(appId: Int, priority: Priority, depotIds: Collection<Int>) {
+        lock.withLock {
+            apps[appId] = priority
+            depotIds.forEach { depotOwners.getOrPut(it) { HashSet() } += appId }
+            slotFreed.signalAll()
+        }
+    }
+
+    fun unregister(appId: Int) {
+        lock.withLock {
+            apps.remove(appId)
+            depotOwners.values.removeIf { owners -> owners.remove(appId) && owners.isEmpty() }
+            slotFreed.signalAll()
+        }
+    }
+
+    /**
+     * Priority of chunks of [depotId]: foreground if any app downloading it is, or if no
+     * registered app claims it.
+     */
+    fun priorityOfDepot(depotId: Int): Priority = lock.withLock {
+        val owners = depotOwners[depotId] ?: return Priority.FOREGROUND
+        if (owners.any { apps[it] == Priority.FOREGROUND }) Priority.FOREGROUND else Priority.BACKGROUND
+    }
+
+    /**
+     * Blocks until a chunk request of [priority] may start. [isCanceled] is polled while
+     * waiting; an [IOException] is thrown once it returns true.
+     */
+    fun acquire(priority: Priority, isCanceled: () -> Boolean = { false }): Ticket {
+        lock.withLock {
+            waiting[priority.ordinal]++
+            try {
+                while (!mayStart(priority)) {
+                    if (isCanceled()) throw IOException("Canceled while waiting for a download slot")
+                    slotFreed.await(CANCEL_POLL_MS, TimeUnit.MILLISECONDS)
+                }
+            } finally {
+                waiting[priority.ordinal]--
+            }
+            inFlight[priority.ordinal]++
+            if (roundStart == 0L) roundStart = nanoTime()
+            return Ticket(priority, nanoTime())
+        }
+    }
+
+    /**
+     * Returns the slot of [ticket]. [bytes] is the size of the received chunk and [success]
+     * whether it arrived; failures back the budget off straight away.
+     */
+    fun release(ticket: Ticket, bytes: Long, success: Boolean) {
+        lock.withLock {
+            inFlight[ticket.priority.ordinal]--
+            if (success) {
+                sample(bytes, nanoTime() - ticket.startNanos)
+            } else {
+                decrease()
+            }
+            slotFreed.signalAll()
+        }
+    }
+
+    private fun mayStart(priority: Priority): Boolean {
+        val total = inFlight.sum()
+        if (total >= window) return false
+        if (priority == Priority.FOREGROUND) return true
+
+        // Background chunks wait for queued foreground ones and keep to a share of the slots
+        if (waiting[Priority.FOREGROUND.ordinal] > 0) return false
+        val foregroundActive = apps.values.any { it == Priority.FOREGROUND }
+        val backgroundLimit = if (foregroundActive) (window / BACKGROUND_SHARE).coerceAtLeast(1) else window
+        return inFlight[Priority.BACKGROUND.ordinal] < backgroundLimit
+    }
+
+    private fun sample(bytes: Long, latency: Long) {
+        roundCompletions++
+        roundBytes += bytes
+        roundLatency += latency
+        roundMinLatency = minOf(roundMinLatency, latency)
+
+        // One round is a window's worth of completed requests
+        if (roundCompletions < window) return
+
+        val now = nanoTime()
+        val elapsed = (now - roundStart).coerceAtLeast(1)
+        val throughput = roundBytes * 1e9 / elapsed
+        val averageLatency = roundLatency / roundCompletions
+
+        // Let the baseline drift up slowly so a route that got slower for good is re-learned
+        baseLatency = minOf(
+            roundMinLatency,
+            if (baseLatency == Long.MAX_VALUE) Long.MAX_VALUE else (baseLatency * BASE_LATENCY_DRIFT).toLong(),
+        )
+
+        // One more slot on an idle link adds about 1/window of throughput; count at least half
+        // of that as an improvement
+        val improved = throughput > lastThroughput * (1 + THROUGHPUT_GAIN / window)
+        val congested = averageLatency > baseLatency * LATENCY_BACKOFF_FACTOR
+        val grew = when {
+            congested && !improved -> {
+                decrease()
+                false
+            }
+            // The last slot added nothing: hold for a round before probing again
+            grewLastRound && !improved -> false
+            window < ceiling -> {
+                window++
+                true
+            }
+            else -> false
+        }
+
+        grewLastRound = grew
+        lastThroughput = throughput
+        roundStart = now
+        roundCompletions = 0
+        roundBytes = 0
+        roundLatency = 0
+        roundMinLatency = Long.MAX_VALUE
+    }
+
+    private fun decrease() {
+        window = (window * DECREASE_FACTOR).toInt().coerceIn(minInFlight, ceiling)
+    }
+
+    /**
+     * OkHttp interceptor holding each CDN chunk request until it gets a slot. The slot is kept
+     * until the caller has read the response body to its end or closed it, so the budget covers
+     * the transfer itself without buffering the chunk here.
+     */
+    val interceptor = Interceptor { chain ->
+        val request = chain.request()
+        val depotId = CHUNK_PATH.find(request.url.encodedPath)?.groupValues?.get(1)?.toIntOrNull()
+            ?: return@Interceptor chain.proceed(request)
+
+        val ticket = acquire(priorityOfDepot(depotId)) { chain.call().isCanceled() }
+        val response = try {
+            chain.proceed(request)
+        } catch (e: Exception) {
+            release(ticket, 0, success = false)
+            throw e
+        }
+        if (!response.isSuccessful) {
+            release(ticket, 0, success = false)
+            return@Interceptor response
+        }
+
+        val body = response.body
+        val source = TicketSource(body.source(), ticket, body.contentLength())
+        response.newBuilder()
+            .body(source.buffer().asResponseBody(body.contentType(), body.contentLength()))
+            .build()
+    }
+
+    /**
+     * Counts the bytes of a chunk body as they are read and returns [ticket] once the body is
+     * exhausted, fails or is closed.
+     */
+    private inner class TicketSource(
+        delegate: Source,
+        private val ticket: Ticket,
+        private val contentLength: Long,
+    ) : ForwardingSource(delegate) {
+        private var bytes = 0L
+        private val released = AtomicBoolean()
+
+        override fun read(sink: Buffer, byteCount: Long): Long {
+            val read = try {
+                super.read(sink, byteCount)
+            } catch (e: IOException) {
+                finish(success = false)
+                throw e
+            }
+            if (read == -1L) finish(success = true) else bytes += read
+            return read
+        }
+
+        override fun close() {
+            // Closing right after the last byte, without reading the end, still counts as received
+            finish(success = contentLength >= 0 && bytes == contentLength)
+            super.close()
+        }
+
+        private fun finish(success: Boolean) {
+            if (released.compareAndSet(false, true)) release(ticket, bytes, success)
+        }
+    }
+
+    companion object {
+        private const val MIN_IN_FLIGHT = 2
+        private const val BACKGROUND_SHARE = 4
+        private const val CANCEL_POLL_MS = 250L
+
+        private const val DECREASE_FACTOR = 0.75
+        private const val THROUGHPUT_GAIN = 0.5
+        private const val LATENCY_BACKOFF_FACTOR = 2.0
+        private const val BASE_LATENCY_DRIFT = 1.002
+
+        private val CHUNK_PATH = Regex("/depot/(\\d+)/chunk/")
+
+        private const val WRITE_PROBE_BYTES = 8 * 1024 * 1024
+        private val fileWriters = ConcurrentHashMap<String, Int>()
+
+        /**
+         * Number of parallel file writers for downloads into [dir], from the measured sequential
+         * write speed of its storage. Measured once per volume.
+         */
+        fun fileWritersFor(dir: File): Int {
+            val existing = generateSequence(dir.absoluteFile) { it.parentFile }.firstOrNull { it.isDirectory }
+                ?: return 1
+            val volume = try {
+                Files.getFileStore(existing.toPath()).toString()
+            } catch (e: IOException) {
+                existing.path
+            }
+            return fileWriters.getOrPut(volume) {
+                val bytesPerSecond = measureWriteSpeed(existing)
+                val writers = when {
+                    bytesPerSecond <= 0 -> 1
+                    bytesPerSecond < 80L * 1024 * 1024 -> 1
+                    bytesPerSecond < 250L * 1024 * 1024 -> 2
+                    else -> 4
+                }
+                Timber.i("Storage at ${existing.path} writes ${bytesPerSecond / (1024 * 1024)} MiB/s, using $writers file writer(s)")
+                writers
+            }
+        }
+
+        private fun measureWriteSpeed(dir: File): Long {
+            val probe = File(dir, ".write_probe")
+            return try {
+                val buffer = ByteBuffer.allocateDirect(1024 * 1024)
+                val start = System.nanoTime()
+                FileChannel.open(
+                    probe.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                ).use { channel ->
+                    repeat(WRITE_PROBE_BYTES / buffer.capacity()) {
+                        buffer.clear()
+                        while (buffer.hasRemaining()) channel.write(buffer)
+                    }
+                    channel.force(true)
+                }
+                val elapsed = (System.nanoTime() - start).coerceAtLeast(1)
+                WRITE_PROBE_BYTES * 1_000_000_000L / elapsed
+            } catch (e: IOException) {
+                Timber.w(e, "Could not measure write speed of ${dir.path}")
+                0L
+            } finally {
+                probe.delete()
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package app.gamenative.service
+
+import androidx.room.withTransaction
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppPicsState
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
+import app.gamenative.utils.generateSteamApp
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import `in`.dragonbra.javasteam.types.KeyValue
+import java.util.EnumSet
+import java.util.concurrent.atomic.AtomicLong
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import timber.log.Timber
+
+/**
+ * Writes PICS product info into the database in stages: one batched lookup of the apps and
+ * licenses a response refers to, parallel decoding of the app KeyValues, and a single bulk
+ * write per response. Written apps are dropped from [catalog] as soon as the write commits.
+ */
+class PicsIngestor(
+    private val db: PluviaDatabase,
+    private val decodeParallelism: Int = DEFAULT_DECODE_PARALLELISM,
+    private val catalog: SteamAppCatalog? = null,
+) {
+    /**
+     * The parts of a PICS app result the ingestor needs.
+     */
+    data class PicsApp(
+        val id: Int,
+        val changeNumber: Int,
+        val keyValues: KeyValue,
+    )
+
+    /**
+     * The app ids granted by a PICS package result.
+     */
+    data class PicsPackage(
+        val id: Int,
+        val appIds: List<Int>,
+        val depotIds: List<Int>,
+    )
+
+    private val appsIngested = AtomicLong()
+    private val ingestNanos = AtomicLong()
+
+    /** Total number of apps written since this ingestor was created. */
+    val totalAppsIngested: Long
+        get() = appsIngested.get()
+
+    /** Average ingestion rate since this ingestor was created. */
+    val appsPerSecond: Double
+        get() = ingestNanos.get().takeIf { it > 0 }?.let { appsIngested.get() * 1e9 / it } ?: 0.0
+
+    /**
+     * Stores the apps of one PICS response, skipping those whose change number is unchanged.
+     * Returns the number of apps written.
+     */
+    suspend fun ingestApps(apps: Collection<PicsApp>): Int {
+        if (apps.isEmpty()) return 0
+        val start = System.nanoTime()
+
+        val appDao = db.steamAppDao()
+        val states = appDao.findPicsStates(apps.map { it.id }).associateBy { it.id }
+        val packageIds = states.values.map { it.packageId }.filter { it != INVALID_PKG_ID }.distinct()
+        val licenses = db.steamLicenseDao().findLicenses(packageIds).associateBy { it.packageId }
+
+        val steamApps = decodeApps(apps, states, licenses, decodeParallelism)
+        if (steamApps.isNotEmpty()) {
+            db.withTransaction { appDao.insertAll(steamApps) }
+            catalog?.invalidateApps(steamApps.map { it.id })
+        }
+
+        val elapsed = System.nanoTime() - start
+        appsIngested.addAndGet(steamApps.size.toLong())
+        ingestNanos.addAndGet(elapsed)
+        Timber.i(
+            "Ingested ${steamApps.size} of ${apps.size} PICS app(s) in ${elapsed / 1_000_000}ms " +
+                "(${"%.1f".format(appsPerSecond)} apps/s overall)",
+        )
+
+        return steamApps.size
+    }
+
+    /**
+     * Stores the app and depot lists of one PICS package response and points every granted app
+     * at its package, inserting stub rows for apps not seen yet. Returns all granted app ids.
+     */
+    suspend fun ingestPackages(packages: Collection<PicsPackage>): List<Int> {
+        val licenseDao = db.steamLicenseDao()
+        val licenseAppDao = db.licenseAppDao()
+        val appDao = db.steamAppDao()
+
+        db.withTransaction {
+            packages.forEach { pkg ->
+                licenseDao.updateApps(pkg.id, pkg.appIds)
+                licenseAppDao.replaceApps(pkg.id, pkg.appIds)
+                licenseDao.updateDepots(pkg.id, pkg.depotIds)
+                appDao.upsertPackageId(pkg.id, pkg.appIds)
+            }
+        }
+
+        val appIds = packages.flatMap { it.appIds }
+        catalog?.invalidateLicenses()
+        catalog?.invalidateApps(appIds)
+
+        return appIds
+    }
+
+    companion object {
+        private val DEFAULT_DECODE_PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
+
+        /**
+         * Decodes the apps that changed since they were last stored, splitting the work into
+         * [parallelism] slices. Ownership is copied from the app's stored license.
+         */
+        suspend fun decodeApps(
+            apps: Collection<PicsApp>,
+            states: Map<Int, SteamAppPicsState>,
+            licenses: Map<Int, SteamLicense>,
+            parallelism: Int = DEFAULT_DECODE_PARALLELISM,
+        ): List<SteamApp> = coroutineScope {
+            val changed = apps.filter { it.changeNumber != states[it.id]?.lastChangeNumber }
+            if (changed.isEmpty()) return@coroutineScope emptyList()
+
+            val sliceSize = (changed.size + parallelism - 1) / parallelism.coerceAtLeast(1)
+            changed.chunked(sliceSize.coerceAtLeast(1)).map { slice ->
+                async(Dispatchers.Default) {
+                    slice.map { app ->
+                        val packageId = states[app.id]?.packageId ?: INVALID_PKG_ID
+                        val license = licenses[packageId]
+
+                        // Apps with -1 for the ownerAccountId should be added.
+                        //  This can help with friend game names.
+                        app.keyValues.generateSteamApp().copy(
+                            packageId = packageId,
+                            ownerAccountId = license?.ownerAccountId ?: emptyList(),
+                            receivedPICS = true,
+                            lastChangeNumber = app.changeNumber,
+                            licenseFlags = license?.licenseFlags ?: EnumSet.noneOf(ELicenseFlags::class.java),
+                        )
+                    }
+                }
+            }.awaitAll().flatten()
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package app.gamenative.service
+
+import androidx.room.InvalidationTracker
+import app.gamenative.data.AppInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.service.SteamService.Companion.INVALID_PKG_ID
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import timber.log.Timber
+
+/**
+ * Read-through cache of the Steam app catalog, so UI and launch code can look up apps, installed
+ * app info, licenses and DLC lists without a database round trip per call.
+ *
+ * Each kind of lookup is kept in its own bounded LRU section. Sections are cleared when Room
+ * reports a write to one of their tables, and writers that need the change visible right away
+ * (PICS ingestion, download completion) can invalidate explicitly. Lookups that miss are also
+ * cached, so asking for an app the database does not have does not query it again.
+ */
+class SteamAppCatalog(
+    private val db: PluviaDatabase,
+    maxApps: Int = DEFAULT_MAX_APPS,
+) {
+    /**
+     * One LRU map with a generation counter. A load only stores its result if no invalidation
+     * happened while it was reading, so a slow read can never put back data a writer just
+     * replaced.
+     */
+    private class Section<V>(private val maxEntries: Int) {
+        // Nullable values are wrapped so a cached miss can be told apart from no entry
+        class Slot<V>(val value: V?)
+
+        private val lock = Any()
+        private val entries = LinkedHashMap<Int, Slot<V>>(16, 0.75f, true)
+        private val generation = AtomicLong()
+
+        fun peek(key: Int): Slot<V>? = synchronized(lock) { entries[key] }
+
+        fun currentGeneration(): Long = generation.get()
+
+        fun putAll(values: Map<Int, V?>, loadedAt: Long) {
+            synchronized(lock) {
+                if (generation.get() != loadedAt) return
+                values.forEach { (key, value) -> entries[key] = Slot(value) }
+                val iterator = entries.values.iterator()
+                while (entries.size > maxEntries && iterator.hasNext()) {
+                    iterator.next()
+                    iterator.remove()
+                }
+            }
+        }
+
+        fun remove(keys: Collection<Int>) {
+            synchronized(lock) {
+                generation.incrementAndGet()
+                keys.forEach { entries.remove(it) }
+            }
+        }
+
+        fun clear() {
+            synchronized(lock) {
+                generation.incrementAndGet()
+                entries.clear()
+            }
+        }
+
+        fun size(): Int = synchronized(lock) { entries.size }
+    }
+
+    private val apps = Section<SteamApp>(maxApps)
+    private val installedApps = Section<AppInfo>(maxApps)
+    private val licenses = Section<SteamLicense>(maxApps)
+    private val downloadableDlc = Section<List<SteamApp>>(maxApps)
+    private val hiddenDlc = Section<List<SteamApp>>(maxApps)
+
+    private val hits = AtomicInteger()
+    private val misses = AtomicInteger()
+
+    private val observer = object : InvalidationTracker.Observer(TABLE_NAMES) {
+        override fun onInvalidated(tables: Set<String>) {
+            invalidateTables(tables)
+        }
+    }
+
+    @Volatile
+    private var observing = false
+
+    /** Number of lookups answered from memory. */
+    val hitCount: Int
+        get() = hits.get()
+
+    /** Number of lookups that went to the database. */
+    val missCount: Int
+        get() = misses.get()
+
+    /**
+     * Starts clearing cached entries whenever Room reports a write to the catalog's tables.
+     */
+    fun startObserving() {
+        if (observing) return
+        observing = true
+        db.invalidationTracker.addObserver(observer)
+    }
+
+    fun stopObserving() {
+        if (!observing) return
+        observing = false
+        db.invalidationTracker.removeObserver(observer)
+    }
+
+    /*
+     * Non-blocking lookups. These only answer from memory and return null when the entry has
+     * not been loaded yet, which callers on the main thread can use as a placeholder.
+     */
+
+    fun peekApp(appId: Int): SteamApp? = apps.peek(appId)?.value
+
+    fun peekInstalledApp(appId: Int): AppInfo? = installedApps.peek(appId)?.value
+
+    /**
+     * Returns whether [appId] is cached, including a cached miss.
+     */
+    fun isAppCached(appId: Int): Boolean = apps.peek(appId) != null
+
+    fun isInstalledAppCached(appId: Int): Boolean = installedApps.peek(appId) != null
+
+    /*
+     * Read-through lookups.
+     */
+
+    suspend fun app(appId: Int): SteamApp? = load(apps, appId) { db.steamAppDao().findApp(appId) }
+
+    suspend fun installedApp(appId: Int): AppInfo? = load(installedApps, appId) { db.appInfoDao().getInstalledApp(appId) }
+
+    suspend fun license(packageId: Int): SteamLicense? = load(licenses, packageId) { db.steamLicenseDao().findLicense(packageId) }
+
+    /**
+     * Returns the license of the package that grants [appId].
+     */
+    suspend fun licenseOfApp(appId: Int): SteamLicense? = license(app(appId)?.packageId ?: INVALID_PKG_ID)
+
+    suspend fun downloadableDlcApps(appId: Int): List<SteamApp>? =
+        load(downloadableDlc, appId) { db.steamAppDao().findDownloadableDLCApps(appId) }
+
+    suspend fun hiddenDlcApps(appId: Int): List<SteamApp>? =
+        load(hiddenDlc, appId) { db.steamAppDao().findHiddenDLCApps(appId) }
+
+    /**
+     * Loads every uncached app and installed app info in [appIds] with one query each, so a
+     * library page can be bound from memory.
+     */
+    suspend fun preload(appIds: Collection<Int>) {
+        val missingApps = appIds.filter { apps.peek(it) == null }.distinct()
+        if (missingApps.isNotEmpty()) {
+            val generation = apps.currentGeneration()
+            val found = db.steamAppDao().findApps(missingApps).associateBy { it.id }
+            misses.addAndGet(missingApps.size)
+            apps.putAll(missingApps.associateWith { found[it] }, generation)
+        }
+
+        val missingInstalled = appIds.filter { installedApps.peek(it) == null }.distinct()
+        if (missingInstalled.isNotEmpty()) {
+            val generation = installedApps.currentGeneration()
+            val found = db.appInfoDao().getInstalledApps(missingInstalled).associateBy { it.id }
+            misses.addAndGet(missingInstalled.size)
+            installedApps.putAll(missingInstalled.associateWith { found[it] }, generation)
+        }
+    }
+
+    /*
+     * Invalidation.
+     */
+
+    /**
+     * Drops the given apps and every DLC list, which may include them.
+     */
+    fun invalidateApps(appIds: Collection<Int>) {
+        apps.remove(appIds)
+        downloadableDlc.clear()
+        hiddenDlc.clear()
+    }
+
+    fun invalidateInstalledApps(appIds: Collection<Int>) {
+        installedApps.remove(appIds)
+    }
+
+    /**
+     * Drops license lookups and the DLC lists that depend on them.
+     */
+    fun invalidateLicenses() {
+        licenses.clear()
+        downloadableDlc.clear()
+        hiddenDlc.clear()
+    }
+
+    fun invalidateAll() {
+        apps.clear()
+        installedApps.clear()
+        licenses.clear()
+        downloadableDlc.clear()
+        hiddenDlc.clear()
+    }
+
+    fun size(): Int = apps.size() + installedApps.size() + licenses.size() + downloadableDlc.size() + hiddenDlc.size()
+
+    private fun invalidateTables(tables: Set<String>) {
+        Timber.tag("SteamAppCatalog").d("Invalidated by writes to $tables")
+        if (TABLE_STEAM_APP in tables) {
+            apps.clear()
+            downloadableDlc.clear()
+            hiddenDlc.clear()
+        }
+        if (TABLE_APP_INFO in tables) {
+            installedApps.clear()
+        }
+        if (TABLE_STEAM_LICENSE in tables || TABLE_LICENSE_APP in tables) {
+            invalidateLicenses()
+        }
+    }
+
+    private suspend fun <V> load(section: Section<V>, key: Int, loader: suspend () -> V?): V? {
+        section.peek(key)?.let {
+            hits.incrementAndGet()
+            return it.value
+        }
+
+        misses.incrementAndGet()
+        val generation = section.currentGeneration()
+        val value = loader()
+        section.putAll(mapOf(key to value), generation)
+        return value
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_APPS = 4096
+
+        private const val TABLE_STEAM_APP = "steam_app"
+        private const val TABLE_APP_INFO = "app_info"
+        private const val TABLE_STEAM_LICENSE = "steam_license"
+        private const val TABLE_LICENSE_APP = "license_app"
+
+        private val TABLE_NAMES = arrayOf(TABLE_STEAM_APP, TABLE_APP_INFO, TABLE_STEAM_LICENSE, TABLE_LICENSE_APP)
+    }
+}
@@ -17,7 +17,6 @@ import `in`.dragonbra.javasteam.enums.EResult
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.AppFileChangeList
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.AppFileInfo
 import `in`.dragonbra.javasteam.steam.handlers.steamcloud.SteamCloud
-import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
 import java.io.FileOutputStream
 import java.io.InputStream
 import java.io.RandomAccessFile
@@ -184,28 +183,29 @@ object SteamAutoCloud {
                 }
             }
 
-        val getLocalUserFilesAsPrefixMap: () -> Map<String, List<UserFileInfo>> = {
+        val getLocalUserFilesAsPrefixMap: suspend () -> Map<String, List<UserFileInfo>> = {
+            val hashJournal = UserFileHashJournal(appInfo.id, steamInstance.userFileHashDao.getByAppId(appInfo.id))
             val savePatterns = appInfo.ufs.saveFilePatterns.filter { userFile -> userFile.root.isWindows }
 
-            if (savePatterns.isNotEmpty()) {
+            val prefixMap = if (savePatterns.isNotEmpty()) {
                 savePatterns.associate { userFile ->
                     val basePath = Paths.get(prefixToPath(userFile.root.toString()), userFile.substitutedPath)
 
                     Timber.i("Looking for saves in $basePath with pattern ${userFile.pattern} (prefix ${userFile.prefix})")
 
-                    val files = FileUtils.findFilesRecursive(
+                    val paths = FileUtils.findFilesRecursive(
                         rootPath = basePath,
                         pattern = userFile.pattern,
                         maxDepth = 5,
-                    ).map {
-                        val sha = CryptoHelper.shaHash(Files.readAllBytes(it))
+                    ).collect(Collectors.toList())
 
+                    val files = paths.zip(hashJournal.hashAll(paths)).map { (it, sha) ->
                         Timber.i("Found ${it.pathString}\n\tin ${userFile.prefix}\n\twith sha [${sha.joinToString(", ")}]")
 
                         val relativePath = basePath.relativize(it).pathString
 
                         UserFileInfo(userFile.root, userFile.substitutedPath, relativePath, Files.getLastModifiedTime(it).toMillis(), sha)
-                    }.collect(Collectors.toList())
+                    }
 
                     Timber.i("Found ${files.size} file(s) in $basePath for pattern ${userFile.pattern}")
 
@@ -218,25 +218,31 @@ object SteamAutoCloud {
 
                 Timber.i("No UFS patterns; scanning $basePath recursively (depth 5) under ${rootType.name}")
 
-                val files = FileUtils.findFilesRecursive(
+                val paths = FileUtils.findFilesRecursive(
                     rootPath = basePath,
                     pattern = "*",
                     maxDepth = 5,
-                ).map {
-                    val sha = CryptoHelper.shaHash(Files.readAllBytes(it))
+                ).collect(Collectors.toList())
 
+                val files = paths.zip(hashJournal.hashAll(paths)).map { (it, sha) ->
                     val relativePath = basePath.relativize(it).pathString
 
                     Timber.i("Found ${it.pathString}\n\tin %${rootType.name}%\n\twith sha [${sha.joinToString(", ")}]")
 
                     // Store relative path in filename; empty path component
                     UserFileInfo(rootType, "", relativePath, Files.getLastModifiedTime(it).toMillis(), sha)
-                }.collect(Collectors.toList())
+                }
 
                 Timber.i("Found ${files.size} file(s) in $basePath for fallback recursive scan")
 
                 mapOf(Paths.get("%${rootType.name}%").pathString to files)
             }
+
+            Timber.i("Hashed ${hashJournal.filesHashed} file(s), reused ${hashJournal.filesReused} journaled hash(es)")
+
+            steamInstance.userFileHashDao.replace(appInfo.id, hashJournal.entries())
+
+            prefixMap
         }
 
         val fileChangeListToUserFiles: (AppFileChangeList) -> List<UserFileInfo> = { appFileListChange ->
@@ -30,6 +30,8 @@ import app.gamenative.db.dao.ChangeNumbersDao
 import app.gamenative.db.dao.FileChangeListsDao
 import app.gamenative.db.dao.SteamAppDao
 import app.gamenative.db.dao.SteamLicenseDao
+import app.gamenative.db.dao.LicenseAppDao
+import app.gamenative.db.dao.UserFileHashDao
 import app.gamenative.db.dao.CachedLicenseDao
 import app.gamenative.enums.LoginResult
 import app.gamenative.enums.OS
@@ -38,6 +40,7 @@ import app.gamenative.enums.SaveLocation
 import app.gamenative.enums.SyncResult
 import app.gamenative.events.AndroidEvent
 import app.gamenative.events.SteamEvent
+import app.gamenative.utils.InstallFileIndex
 import app.gamenative.utils.SteamUtils
 import app.gamenative.utils.MarkerUtils
 import app.gamenative.enums.Marker
@@ -94,7 +97,6 @@ import java.io.Closeable
 import java.io.File
 import java.nio.file.Files
 import java.nio.file.Paths
-import java.util.Collections
 import java.util.EnumSet
 import java.util.concurrent.CancellationException
 import java.util.concurrent.ConcurrentHashMap
@@ -148,6 +150,7 @@ import java.io.InputStream
 import java.io.OutputStream
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLongArray
 
 @AndroidEntryPoint
 class SteamService : Service(), IChallengeUrlChanged {
@@ -179,6 +182,16 @@ class SteamService : Service(), IChallengeUrlChanged {
     @Inject
     lateinit var downloadingAppInfoDao: DownloadingAppInfoDao
 
+    @Inject
+    lateinit var userFileHashDao: UserFileHashDao
+
+    @Inject
+    lateinit var licenseAppDao: LicenseAppDao
+
+    internal val catalog by lazy { SteamAppCatalog(db) }
+
+    private val picsIngestor by lazy { PicsIngestor(db, catalog = catalog) }
+
     private lateinit var notificationHelper: NotificationHelper
 
     internal var callbackManager: CallbackManager? = null
@@ -270,6 +283,34 @@ class SteamService : Service(), IChallengeUrlChanged {
 
         private val downloadJobs = ConcurrentHashMap<Int, DownloadInfo>()
 
+        /**
+         * Budget of in-flight CDN chunk requests shared by all downloads, see [DownloadScheduler].
+         * Its ceiling comes from the download speed setting and is only changed with the setting.
+         */
+        val downloadScheduler by lazy { DownloadScheduler(maxInFlight = chunkBudgetFor(PrefManager.downloadSpeed)) }
+
+        /**
+         * Share of the CPU cores used for chunk downloads and decompression at a download speed
+         * setting. File writers are sized from the measured speed of the target storage, which on
+         * most mobile devices ends up at 1; maximum throughput is a ratio of 1.0.
+         */
+        private fun downloadSpeedRatio(downloadSpeed: Int): Double = when (downloadSpeed) {
+            8 -> 0.3
+            16 -> 0.5
+            24 -> 0.8
+            32 -> 1.0
+            else -> 0.0
+        }
+
+        /** Upper bound of in-flight chunk requests at a download speed setting. */
+        fun chunkBudgetFor(downloadSpeed: Int): Int =
+            (Runtime.getRuntime().availableProcessors() * downloadSpeedRatio(downloadSpeed) * 2).toInt().coerceAtLeast(1)
+
+        /** Applies a changed download speed setting to the shared chunk budget. */
+        fun onDownloadSpeedChanged(downloadSpeed: Int) {
+            downloadScheduler.setMaxInFlight(chunkBudgetFor(downloadSpeed))
+        }
+
         private fun notifyDownloadStarted(appId: Int) {
             PluviaApp.events.emit(AndroidEvent.DownloadStatusChanged(appId, true))
         }
@@ -425,16 +466,46 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
+        /*
+         * App catalog lookups. The blocking variants answer from the in-memory catalog and only
+         * block on the first lookup of an entry; coroutine callers should use the suspend
+         * load* variants, and the main thread can use peekAppInfoOf for a placeholder.
+         */
+
         fun getPkgInfoOf(appId: Int): SteamLicense? {
-            return runBlocking(Dispatchers.IO) {
-                instance?.licenseDao?.findLicense(
-                    instance?.appDao?.findApp(appId)?.packageId ?: INVALID_PKG_ID,
-                )
-            }
+            val catalog = instance?.catalog ?: return null
+            return runBlocking(Dispatchers.IO) { catalog.licenseOfApp(appId) }
         }
 
         fun getAppInfoOf(appId: Int): SteamApp? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findApp(appId) }
+            val catalog = instance?.catalog ?: return null
+            if (catalog.isAppCached(appId)) return catalog.peekApp(appId)
+            return runBlocking(Dispatchers.IO) { catalog.app(appId) }
+        }
+
+        fun peekAppInfoOf(appId: Int): SteamApp? = instance?.catalog?.peekApp(appId)
+
+        suspend fun loadAppInfoOf(appId: Int): SteamApp? = withContext(Dispatchers.IO) {
+            instance?.catalog?.app(appId)
+        }
+
+        suspend fun loadPkgInfoOf(appId: Int): SteamLicense? = withContext(Dispatchers.IO) {
+            instance?.catalog?.licenseOfApp(appId)
+        }
+
+        suspend fun loadInstalledApp(appId: Int): AppInfo? = withContext(Dispatchers.IO) {
+            instance?.catalog?.installedApp(appId)
+        }
+
+        suspend fun loadDownloadableDlcAppsOf(appId: Int): List<SteamApp>? = withContext(Dispatchers.IO) {
+            instance?.catalog?.downloadableDlcApps(appId)
+        }
+
+        /**
+         * Warms the catalog for a page of library items so binding them does not hit the database.
+         */
+        suspend fun preloadAppInfos(appIds: Collection<Int>) = withContext(Dispatchers.IO) {
+            instance?.catalog?.preload(appIds)
         }
 
         fun getDownloadingAppInfoOf(appId: Int): DownloadingAppInfo? {
@@ -442,15 +513,19 @@ class SteamService : Service(), IChallengeUrlChanged {
         }
 
         fun getDownloadableDlcAppsOf(appId: Int): List<SteamApp>? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findDownloadableDLCApps(appId) }
+            val catalog = instance?.catalog ?: return null
+            return runBlocking(Dispatchers.IO) { catalog.downloadableDlcApps(appId) }
         }
 
         fun getHiddenDlcAppsOf(appId: Int): List<SteamApp>? {
-            return runBlocking(Dispatchers.IO) { instance?.appDao?.findHiddenDLCApps(appId) }
+            val catalog = instance?.catalog ?: return null
+            return runBlocking(Dispatchers.IO) { catalog.hiddenDlcApps(appId) }
         }
 
         fun getInstalledApp(appId: Int): AppInfo? {
-            return runBlocking(Dispatchers.IO) { instance?.appInfoDao?.getInstalledApp(appId) }
+            val catalog = instance?.catalog ?: return null
+            if (catalog.isInstalledAppCached(appId)) return catalog.peekInstalledApp(appId)
+            return runBlocking(Dispatchers.IO) { catalog.installedApp(appId) }
         }
 
         fun getInstalledDepotsOf(appId: Int): List<Int>? {
@@ -743,12 +818,12 @@ class SteamService : Service(), IChallengeUrlChanged {
         /* -------------------------------------------------------------------------- */
 
         private fun scoreExe(
-            file: FileData,
+            fileName: String,
             gameName: String,
             hasExeFlag: Boolean,
         ): Int {
             var s = 0
-            val path = file.fileName.lowercase()
+            val path = fileName.lowercase()
 
             // 1️⃣ UE shipping or binaries folder bonus
             if (UE_SHIPPING.matches(path)) s += 300
@@ -762,7 +837,7 @@ class SteamService : Service(), IChallengeUrlChanged {
 
             // 4️⃣ obvious tool / crash-dumper penalty
             if (NEGATIVE_KEYWORDS.any { it in path }) s -= 150
-            if (GENERIC_NAME.matches(file.fileName)) s -= 200   // ← new
+            if (GENERIC_NAME.matches(fileName)) s -= 200   // ← new
 
             // 5️⃣ Executable | CustomExecutable flag
             if (hasExeFlag) s += 50
@@ -772,7 +847,11 @@ class SteamService : Service(), IChallengeUrlChanged {
             return s
         }
 
-        fun FileData.isStub(): Boolean {
+        fun FileData.isStub(): Boolean = isStubExe(fileName, totalSize)
+
+        fun InstallFileIndex.Entry.isStub(): Boolean = isStubExe(path, size)
+
+        private fun isStubExe(fileName: String, totalSize: Long): Boolean {
             /* stub detector (same short rules) */
             val generic = Regex("^[a-z]\\d{1,3}\\.exe$", RegexOption.IGNORE_CASE)
             val bad = listOf("launcher", "steam", "crash", "handler", "setup", "unins", "eac")
@@ -787,8 +866,8 @@ class SteamService : Service(), IChallengeUrlChanged {
             files: List<FileData>?,
             gameName: String,
         ): FileData? = files?.maxWithOrNull { a, b ->
-            val sa = scoreExe(a, gameName, isExecutable(a.flags))   // <- fixed
-            val sb = scoreExe(b, gameName, isExecutable(b.flags))
+            val sa = scoreExe(a.fileName, gameName, isExecutable(a.flags))   // <- fixed
+            val sb = scoreExe(b.fileName, gameName, isExecutable(b.flags))
 
             when {
                 sa != sb -> sa - sb                                 // higher score wins
@@ -796,6 +875,63 @@ class SteamService : Service(), IChallengeUrlChanged {
             }
         }
 
+        /**
+         * Picks the primary EXE from an install's file index built from its depot manifests,
+         * using the same launch-entry and scoring rules as the manifest path.
+         */
+        private fun chooseIndexedExe(index: InstallFileIndex, launchTargets: Set<String>, gameName: String): String? {
+            val candidates = index.executables()
+            val targets = launchTargets.map { it.replace('\\', '/') }.toSet()
+
+            candidates.firstOrNull { it.path.lowercase() in targets && !it.isStub() }?.let {
+                Timber.i("Picked via launch entry (index): ${it.path}")
+                return it.path
+            }
+
+            val pool = candidates.filterNot { it.isStub() }.ifEmpty { candidates }
+            return pool.maxWithOrNull { a, b ->
+                val sa = scoreExe(a.path, gameName, a.hasExecutableFlag)
+                val sb = scoreExe(b.path, gameName, b.hasExecutableFlag)
+                if (sa != sb) sa - sb else a.size.compareTo(b.size)
+            }?.path?.also { Timber.i("Picked via scorer (index): $it") }
+        }
+
+        /**
+         * Builds the install's file index from the depot manifests DepotDownloader left in the
+         * install, falling back to a directory walk when there are none.
+         */
+        private fun indexInstalledFiles(appDirPath: String) {
+            val appDir = File(appDirPath)
+            // Keep the newest manifest of each depot; older ones belong to previous builds
+            val manifestFiles = File(appDir, ".DepotDownloader")
+                .listFiles { file -> file.extension == "manifest" }
+                .orEmpty()
+                .groupBy { it.name.substringBefore('_') }
+                .values
+                .map { files -> files.maxBy { it.lastModified() } }
+
+            val manifests = manifestFiles.mapNotNull { DepotManifest.loadFromFile(it.absolutePath) }
+            if (manifests.isEmpty()) {
+                InstallFileIndex.rebuild(appDir)
+                return
+            }
+
+            val entries = manifests.flatMap { manifest ->
+                manifest.files
+                    .filterNot { it.flags.contains(EDepotFileFlag.Directory) }
+                    .map { file ->
+                        InstallFileIndex.Entry(
+                            path = file.fileName,
+                            size = file.totalSize,
+                            mtime = 0L,
+                            flags = if (isExecutable(file.flags)) InstallFileIndex.FLAG_EXECUTABLE else 0,
+                        )
+                    }
+            }
+            val index = InstallFileIndex.create(appDir, entries)
+            Timber.i("Indexed ${index.fileCount} files (${index.totalSize} bytes) in $appDirPath")
+        }
+
         /**
          * Picks the real shipped EXE for a Steam app.
          *
@@ -821,6 +957,11 @@ class SteamService : Service(), IChallengeUrlChanged {
 
             Timber.i("Launch targets from appinfo: $launchTargets")
 
+            InstallFileIndex.peek(File(getAppDirPath(appId)))
+                ?.takeIf { it.fromManifest }
+                ?.let { chooseIndexedExe(it, launchTargets, installDir.lowercase()) }
+                ?.let { return it }
+
             /* ---------------------------------------------------------- */
             val flagged = mutableListOf<Pair<FileData, Long>>()   // (file, depotSize)
             var largestDepotSize = 0L
@@ -908,12 +1049,14 @@ class SteamService : Service(), IChallengeUrlChanged {
                             changeNumbersDao.deleteByAppId(dlcAppId)
                             fileChangeListsDao.deleteByAppId(dlcAppId)
                         }
+                        catalog.invalidateInstalledApps(listOf(appId) + indirectDlcAppIds)
                     }
                 }
             }
 
             val appDirPath = getAppDirPath(appId)
 
+            InstallFileIndex.forget(File(appDirPath))
             return File(appDirPath).deleteRecursively()
         }
 
@@ -1231,38 +1374,15 @@ class SteamService : Service(), IChallengeUrlChanged {
                             return@launch
                         }
 
-                        // Some notes here:
-                        // Write should always be 1 in mobile device, as normally it does not use a SSD for storage
-                        // And to have maximum throughput, set downloadRatio = decompressRatio = 1.0 x CPU Cores
-                        var downloadRatio = 0.0
-                        var decompressRatio = 0.0
-
-                        when (PrefManager.downloadSpeed) {
-                            8 -> {
-                                downloadRatio = 0.3
-                                decompressRatio = 0.3
-                            }
-                            16 -> {
-                                downloadRatio = 0.5
-                                decompressRatio = 0.5
-                            }
-                            24 -> {
-                                downloadRatio = 0.8
-                                decompressRatio = 0.8
-                            }
-                            32 -> {
-                                downloadRatio = 1.0
-                                decompressRatio = 1.0
-                            }
-                        }
-
+                        // The speed setting bounds the shared chunk budget; within it the scheduler
+                        // adapts to the connection, so DepotDownloader may issue up to the bound
                         val cpuCores = Runtime.getRuntime().availableProcessors()
-                        val maxDownloads = (cpuCores * downloadRatio).toInt().coerceAtLeast(1)
-                        val maxDecompress = (cpuCores * decompressRatio).toInt().coerceAtLeast(1)
-                        val maxFileWrites = 1
+                        val maxDownloads = downloadScheduler.maxInFlight
+                        val maxDecompress = (cpuCores * downloadSpeedRatio(PrefManager.downloadSpeed)).toInt().coerceAtLeast(1)
+                        val maxFileWrites = DownloadScheduler.fileWritersFor(File(appDirPath))
 
                         Timber.i("CPU Cores: $cpuCores,")
-                        Timber.i("maxDownloads: $maxDownloads")
+                        Timber.i("maxDownloads: $maxDownloads (adaptive, currently ${downloadScheduler.inFlightLimit})")
                         Timber.i("maxDecompress: $maxDecompress")
                         Timber.i("maxFileWrites: $maxFileWrites")
 
@@ -1279,6 +1399,12 @@ class SteamService : Service(), IChallengeUrlChanged {
                             autoStartDownload = false,
                         )
 
+                        downloadScheduler.register(
+                            appId,
+                            if (isUpdateOrVerify) DownloadScheduler.Priority.BACKGROUND else DownloadScheduler.Priority.FOREGROUND,
+                            selectedDepots.keys,
+                        )
+
                         // Create listeners for DLC apps
                         val depotIdToIndex = selectedDepots.keys.mapIndexed { index, depotId -> depotId to index }.toMap()
                         val listener = AppDownloadListener(di, depotIdToIndex)
@@ -1359,6 +1485,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                     }
                 }
                 downloadJob.invokeOnCompletion { throwable ->
+                    downloadScheduler.unregister(appId)
                     if (throwable is kotlinx.coroutines.CancellationException) {
                         Timber.d(throwable, "Download canceled for app $appId")
                         removeDownloadJob(appId)
@@ -1407,6 +1534,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                     ),
                 )
             }
+            instance?.catalog?.invalidateInstalledApps(listOf(downloadingAppId))
 
             // Remove completed appId from downloadInfo.dlcAppIds
             downloadInfo.downloadingAppIds.removeIf { it == downloadingAppId }
@@ -1418,6 +1546,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                     MarkerUtils.addMarker(appDirPath, Marker.DOWNLOAD_COMPLETE_MARKER)
                     MarkerUtils.removeMarker(appDirPath, Marker.STEAM_DLL_REPLACED)
                     MarkerUtils.removeMarker(appDirPath, Marker.STEAM_COLDCLIENT_USED)
+                    indexInstalledFiles(appDirPath)
                 }
                 PluviaApp.events.emit(AndroidEvent.LibraryInstallStatusChanged(downloadInfo.gameId))
 
@@ -1433,9 +1562,30 @@ class SteamService : Service(), IChallengeUrlChanged {
             private val downloadInfo: DownloadInfo,
             private val depotIdToIndex: Map<Int, Int>,
         ) : IDownloadListener {
+            // Depot ids and their job indexes side by side, so chunk callbacks find their depot
+            // without boxing the id
+            private val depotIds = depotIdToIndex.keys.toIntArray()
+            private val jobIndexes = IntArray(depotIds.size) { depotIdToIndex.getValue(depotIds[it]) }
+
             // Track cumulative uncompressed bytes per depot to calculate deltas
-            // (uncompressedBytes from onChunkCompleted is cumulative per depot)
-            private val depotCumulativeUncompressedBytes = mutableMapOf<Int, Long>()
+            // (uncompressedBytes from onChunkCompleted is cumulative per depot).
+            // Chunk callbacks arrive from many downloader threads at once.
+            private val depotCumulativeUncompressedBytes = AtomicLongArray(depotIds.size)
+
+            /**
+             * Records the cumulative [uncompressedBytes] of [depotId] and returns its job index,
+             * or -1 for a depot that is not part of this download.
+             */
+            private fun recordDepotBytes(depotId: Int, uncompressedBytes: Long): Int {
+                val slot = depotIds.indexOf(depotId)
+                if (slot < 0) return -1
+                val deltaBytes = uncompressedBytes - depotCumulativeUncompressedBytes.getAndSet(slot, uncompressedBytes)
+                if (deltaBytes > 0L) {
+                    downloadInfo.updateBytesDownloaded(deltaBytes, System.currentTimeMillis())
+                }
+                return jobIndexes[slot]
+            }
+
             override fun onItemAdded(item: DownloadItem) {
                 Timber.d("Item ${item.appId} added to queue")
             }
@@ -1480,44 +1630,27 @@ class SteamService : Service(), IChallengeUrlChanged {
                 compressedBytes: Long,
                 uncompressedBytes: Long,
             ) {
-                val isFirstCallForDepot = !depotCumulativeUncompressedBytes.containsKey(depotId)
-
                 // uncompressedBytes is cumulative per depot, so calculate delta
-                val previousBytes = depotCumulativeUncompressedBytes[depotId] ?: 0L
-                val deltaBytes = uncompressedBytes - previousBytes
-                depotCumulativeUncompressedBytes[depotId] = uncompressedBytes
-
-                if (deltaBytes > 0L) {
-                    // Normal case: add the delta
-                    downloadInfo.updateBytesDownloaded(deltaBytes, System.currentTimeMillis())
-                }
-
-                depotIdToIndex[depotId]?.let { index ->
+                val index = recordDepotBytes(depotId, uncompressedBytes)
+                if (index >= 0) {
                     downloadInfo.setProgress(depotPercentComplete, index)
                 }
 
-                // Persist progress snapshot
-                downloadInfo.persistProgressSnapshot()
+                // Persist progress snapshot, at most once a second
+                downloadInfo.persistProgressSnapshotThrottled()
             }
 
             override fun onDepotCompleted(depotId: Int, compressedBytes: Long, uncompressedBytes: Long) {
                 Timber.i("Depot $depotId completed (compressed: $compressedBytes, uncompressed: $uncompressedBytes)")
 
                 // Ensure we capture any remaining bytes
-                val previousBytes = depotCumulativeUncompressedBytes[depotId] ?: 0L
-                val deltaBytes = uncompressedBytes - previousBytes
-                depotCumulativeUncompressedBytes[depotId] = uncompressedBytes
-
-                if (deltaBytes > 0L) {
-                    downloadInfo.updateBytesDownloaded(deltaBytes, System.currentTimeMillis())
-                }
-
-                depotIdToIndex[depotId]?.let { index ->
+                val index = recordDepotBytes(depotId, uncompressedBytes)
+                if (index >= 0) {
                     downloadInfo.setProgress(1f, index)
                 }
 
                 // Persist progress snapshot
-                downloadInfo.persistProgressSnapshot()
+                downloadInfo.persistProgressSnapshotThrottled()
             }
         }
 
@@ -2040,9 +2173,12 @@ class SteamService : Service(), IChallengeUrlChanged {
                         changeNumbersDao.deleteAll()
                         fileChangeListsDao.deleteAll()
                         licenseDao.deleteAll()
+                        licenseAppDao.deleteAll()
                         encryptedAppTicketDao.deleteAll()
                         downloadingAppInfoDao.deleteAll()
+                        userFileHashDao.deleteAll()
                     }
+                    catalog.invalidateAll()
                 }
             }
         }
@@ -2179,6 +2315,8 @@ class SteamService : Service(), IChallengeUrlChanged {
         super.onCreate()
         instance = this
 
+        catalog.startObserving()
+
         // JavaSteam logger CME hot-fix
         runCatching {
             val clazz = Class.forName("in.dragonbra.javasteam.util.log.LogManager")
@@ -2278,6 +2416,7 @@ class SteamService : Service(), IChallengeUrlChanged {
                         .connectTimeout(10, TimeUnit.SECONDS)   // Time to establish connection
                         .readTimeout(60, TimeUnit.SECONDS)      // Max inactivity between reads
                         .writeTimeout(30, TimeUnit.SECONDS)     // Time for writes
+                        .addInterceptor(downloadScheduler.interceptor)
                         .build(),
                 )
             }
@@ -2360,6 +2499,8 @@ class SteamService : Service(), IChallengeUrlChanged {
         // Unregister Wi-Fi connectivity callback
         connectivityManager.unregisterNetworkCallback(networkCallback)
 
+        catalog.stopObserving()
+
         scope.launch { stop() }
     }
 
@@ -2715,7 +2856,9 @@ class SteamService : Service(), IChallengeUrlChanged {
                     Timber.i("Removing ${licensesToRemove.size} (stale) licenses")
                     val packageIds = licensesToRemove.map { it.packageId }
                     licenseDao.deleteStaleLicenses(packageIds)
+                    licenseAppDao.deleteByPackageIds(packageIds)
                 }
+                catalog.invalidateLicenses()
 
                 // Get PICS information with the current license database.
                 licenseDao.getAllLicenses()
@@ -2866,36 +3009,11 @@ class SteamService : Service(), IChallengeUrlChanged {
                         )
 
                         ensureActive()
-                        val steamAppsMap = picsCallback.apps.values.mapNotNull { app ->
-                            val appFromDb = appDao.findApp(app.id)
-                            val packageId = appFromDb?.packageId ?: INVALID_PKG_ID
-                            val packageFromDb = if (packageId != INVALID_PKG_ID) licenseDao.findLicense(packageId) else null
-                            val ownerAccountId = packageFromDb?.ownerAccountId ?: emptyList()
-
-                            // Apps with -1 for the ownerAccountId should be added.
-                            //  This can help with friend game names.
-
-                            // TODO maybe apps with -1 for the ownerAccountId can be stripped with necessities and name.
-
-                            if (app.changeNumber != appFromDb?.lastChangeNumber) {
-                                app.keyValues.generateSteamApp().copy(
-                                    packageId = packageId,
-                                    ownerAccountId = ownerAccountId,
-                                    receivedPICS = true,
-                                    lastChangeNumber = app.changeNumber,
-                                    licenseFlags = packageFromDb?.licenseFlags ?: EnumSet.noneOf(ELicenseFlags::class.java),
-                                )
-                            } else {
-                                null
-                            }
-                        }
-
-                        if (steamAppsMap.isNotEmpty()) {
-                            Timber.i("Inserting ${steamAppsMap.size} PICS apps to database")
-                            db.withTransaction {
-                                appDao.insertAll(steamAppsMap)
-                            }
-                        }
+                        picsIngestor.ingestApps(
+                            picsCallback.apps.values.map { app ->
+                                PicsIngestor.PicsApp(app.id, app.changeNumber, app.keyValues)
+                            },
+                        )
                     }
                 }
         }
@@ -2919,30 +3037,16 @@ class SteamService : Service(), IChallengeUrlChanged {
                     callback.results.forEach { picsCallback ->
                         // Don't race the queue.
                         if (!isLoggedIn) return@collect
-                        val queue = Collections.synchronizedList(mutableListOf<Int>())
-
-                        db.withTransaction {
-                            picsCallback.packages.values.forEach { pkg ->
-                                val appIds = pkg.keyValues["appids"].children.map { it.asInteger() }
-                                licenseDao.updateApps(pkg.id, appIds)
-
-                                val depotIds = pkg.keyValues["depotids"].children.map { it.asInteger() }
-                                licenseDao.updateDepots(pkg.id, depotIds)
-
-                                // Insert a stub row (or update) of SteamApps to the database.
-                                appIds.forEach { appid ->
-                                    val steamApp = appDao.findApp(appid)?.copy(packageId = pkg.id)
-                                    if (steamApp != null) {
-                                        appDao.update(steamApp)
-                                    } else {
-                                        val stubSteamApp = SteamApp(id = appid, packageId = pkg.id)
-                                        appDao.insert(stubSteamApp)
-                                    }
-                                }
-
-                                queue.addAll(appIds)
-                            }
-                        }
+                        // Insert a stub row (or update) of SteamApps to the database.
+                        val queue = picsIngestor.ingestPackages(
+                            picsCallback.packages.values.map { pkg ->
+                                PicsIngestor.PicsPackage(
+                                    id = pkg.id,
+                                    appIds = pkg.keyValues["appids"].children.map { it.asInteger() },
+                                    depotIds = pkg.keyValues["depotids"].children.map { it.asInteger() },
+                                )
+                            },
+                        )
 
                         try {
                             // TODO: This could be an issue. (Stalling)
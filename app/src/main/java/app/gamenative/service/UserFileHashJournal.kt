@@ -0,0 +1,130 @@
+package app.gamenative.service
+
+import app.gamenative.data.UserFileHash
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Hashes user files for [SteamAutoCloud], reusing the SHA-1 remembered from a previous sync
+ * whenever a file's size, modification time and file key are unchanged.
+ *
+ * Files that do need hashing are streamed through a fixed size buffer and hashed concurrently.
+ */
+class UserFileHashJournal(
+    private val appId: Int,
+    previousEntries: List<UserFileHash>,
+    private val parallelism: Int = DEFAULT_PARALLELISM,
+) {
+    private val previous = previousEntries.associateBy { it.path }
+
+    private val current = ConcurrentHashMap<String, UserFileHash>()
+
+    private val hashed = AtomicInteger()
+
+    private val reused = AtomicInteger()
+
+    /** Number of files whose contents had to be read since this journal was created. */
+    val filesHashed: Int
+        get() = hashed.get()
+
+    /** Number of files whose hash was taken from the journal since this journal was created. */
+    val filesReused: Int
+        get() = reused.get()
+
+    /**
+     * Returns the SHA-1 of each of the given files, in the same order.
+     */
+    suspend fun hashAll(paths: List<Path>): List<ByteArray> = coroutineScope {
+        val permits = Semaphore(parallelism.coerceAtLeast(1))
+
+        paths.map { path ->
+            async(Dispatchers.IO) {
+                permits.withPermit { hash(path) }
+            }
+        }.awaitAll()
+    }
+
+    /**
+     * Returns the SHA-1 of the file, reading it only if it changed since it was last journaled.
+     */
+    fun hash(path: Path): ByteArray {
+        val key = path.toAbsolutePath().toString()
+        val attrs = Files.readAttributes(path, BasicFileAttributes::class.java)
+        val size = attrs.size()
+        val lastModified = attrs.lastModifiedTime().toMillis()
+        val fileKey = attrs.fileKey()?.toString() ?: ""
+
+        val cached = previous[key]
+        if (cached != null &&
+            cached.size == size &&
+            cached.lastModified == lastModified &&
+            cached.fileKey == fileKey
+        ) {
+            reused.incrementAndGet()
+            current[key] = cached
+            return cached.sha.hexToBytes()
+        }
+
+        val sha = sha1(path)
+        hashed.incrementAndGet()
+        current[key] = UserFileHash(
+            appId = appId,
+            path = key,
+            size = size,
+            lastModified = lastModified,
+            fileKey = fileKey,
+            sha = sha.toHex(),
+        )
+
+        return sha
+    }
+
+    /**
+     * The journal entries of every file hashed through this instance, to be persisted
+     * once the sync has finished. Files that were not seen are dropped from the journal.
+     */
+    fun entries(): List<UserFileHash> = current.values.toList()
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+
+        private val DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
+
+        /**
+         * Computes the SHA-1 of a file without loading it into memory.
+         */
+        fun sha1(path: Path): ByteArray {
+            val digest = MessageDigest.getInstance("SHA-1")
+            val buffer = ByteBuffer.allocate(BUFFER_SIZE)
+
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                while (channel.read(buffer) != -1) {
+                    buffer.flip()
+                    digest.update(buffer)
+                    buffer.clear()
+                }
+            }
+
+            return digest.digest()
+        }
+
+        private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+
+        private fun String.hexToBytes(): ByteArray = ByteArray(length / 2) {
+            substring(it * 2, it * 2 + 2).toInt(16).toByte()
+        }
+    }
+}
@@ -3,22 +3,15 @@ package app.gamenative.service.gog
 import android.content.Context
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
-import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.Request
-import okhttp3.RequestBody.Companion.toRequestBody
 import okhttp3.OkHttpClient
 import org.json.JSONArray
 import org.json.JSONObject
 import timber.log.Timber
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileOutputStream
-import java.security.MessageDigest
 import java.time.Instant
 import java.time.ZoneOffset
 import java.time.format.DateTimeFormatter
-import java.util.zip.GZIPInputStream
-import java.util.zip.GZIPOutputStream
 import java.util.concurrent.TimeUnit
 
 
@@ -31,9 +24,14 @@ class GOGCloudSavesManager(
     .readTimeout(30, TimeUnit.SECONDS)
     .build()
 
+    private val transferEngine = GOGCloudTransferEngine(
+        httpClient = httpClient,
+        digestCacheFile = File(context.filesDir, "gog_cloud_digests.json"),
+    )
+
     companion object {
-        private const val CLOUD_STORAGE_BASE_URL = "https://cloudstorage.gog.com"
-        private const val USER_AGENT = "GOGGalaxyCommunicationService/2.0.13.27 (Windows_32bit) dont_sync_marker/true installation_source/gog"
+        private const val CLOUD_STORAGE_BASE_URL = GOGConstants.GOG_CLOUD_STORAGE_BASE_URL
+        private const val USER_AGENT = GOGConstants.GOG_CLOUD_USER_AGENT
         private const val DELETION_MD5 = "aadd86936a80ee8a369579c3926f1b3c"
     }
 
@@ -56,8 +54,9 @@ class GOGCloudSavesManager(
     ) {
         /**
          * Calculate MD5 hash and metadata for this file
+         * @param engine when given, its digest cache is used to skip rehashing unchanged files
          */
-        suspend fun calculateMetadata() = withContext(Dispatchers.IO) {
+        suspend fun calculateMetadata(engine: GOGCloudTransferEngine? = null) = withContext(Dispatchers.IO) {
             try {
                 val file = File(absolutePath)
                 if (!file.exists() || !file.isFile) {
@@ -72,21 +71,7 @@ class GOGCloudSavesManager(
                 updateTimestamp = timestamp / 1000 // Convert to seconds
 
                 // Calculate MD5 of gzipped content (matching Python implementation)
-                FileInputStream(file).use { fis ->
-                    val digest = MessageDigest.getInstance("MD5")
-                    val buffer = java.io.ByteArrayOutputStream()
-
-                    GZIPOutputStream(buffer).use { gzipOut ->
-                        val fileBuffer = ByteArray(8192)
-                        var bytesRead: Int
-                        while (fis.read(fileBuffer).also { bytesRead = it } != -1) {
-                            gzipOut.write(fileBuffer, 0, bytesRead)
-                        }
-                    }
-
-                    md5Hash = digest.digest(buffer.toByteArray())
-                        .joinToString("") { "%02x".format(it) }
-                }
+                md5Hash = engine?.digest(file) ?: GOGCloudTransferEngine.gzipMd5(file)
 
                 Timber.d("Calculated metadata for $relativePath: md5=$md5Hash, timestamp=$updateTimestamp")
             } catch (e: Exception) {
@@ -187,17 +172,13 @@ class GOGCloudSavesManager(
             when {
                 localFiles.isNotEmpty() && cloudFiles.isEmpty() -> {
                     Timber.tag("GOG-CloudSaves").i("No files in cloud, uploading ${localFiles.size} file(s)")
-                    localFiles.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
+                    transferEngine.uploadAll(credentials.userId, clientId, dirname, localFiles, credentials.accessToken)
                     return@withContext currentTimestamp()
                 }
 
                 localFiles.isEmpty() && downloadableCloud.isNotEmpty() -> {
                     Timber.tag("GOG-CloudSaves").i("No files locally, downloading ${downloadableCloud.size} file(s)")
-                    downloadableCloud.forEach { file ->
-                        downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                    }
+                    transferEngine.downloadAll(credentials.userId, clientId, dirname, downloadableCloud, syncDir, credentials.accessToken)
                     return@withContext currentTimestamp()
                 }
 
@@ -210,17 +191,13 @@ class GOGCloudSavesManager(
             // Handle preferred action
             if (preferredAction == "download" && downloadableCloud.isNotEmpty()) {
                 Timber.tag("GOG-CloudSaves").i("Forcing download of ${downloadableCloud.size} file(s) (user requested)")
-                downloadableCloud.forEach { file ->
-                    downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                }
+                transferEngine.downloadAll(credentials.userId, clientId, dirname, downloadableCloud, syncDir, credentials.accessToken)
                 return@withContext currentTimestamp()
             }
 
             if (preferredAction == "upload" && localFiles.isNotEmpty()) {
                 Timber.tag("GOG-CloudSaves").i("Forcing upload of ${localFiles.size} file(s) (user requested)")
-                localFiles.forEach { file ->
-                    uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                }
+                transferEngine.uploadAll(credentials.userId, clientId, dirname, localFiles, credentials.accessToken)
                 return@withContext currentTimestamp()
             }
 
@@ -229,24 +206,16 @@ class GOGCloudSavesManager(
             when (classifier.determineAction()) {
                 SyncAction.DOWNLOAD -> {
                     Timber.tag("GOG-CloudSaves").i("Downloading ${classifier.updatedCloud.size} updated cloud file(s)")
-                    classifier.updatedCloud.forEach { file ->
-                        downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                    }
-                    classifier.notExistingLocally.forEach { file ->
-                        if (!file.isDeleted) {
-                            downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                        }
-                    }
+                    // A file can be both updated and missing locally; fetch it once
+                    val toDownload = (classifier.updatedCloud + classifier.notExistingLocally.filter { !it.isDeleted })
+                        .distinctBy { it.relativePath }
+                    transferEngine.downloadAll(credentials.userId, clientId, dirname, toDownload, syncDir, credentials.accessToken)
                 }
 
                 SyncAction.UPLOAD -> {
                     Timber.tag("GOG-CloudSaves").i("Uploading ${classifier.updatedLocal.size} updated local file(s)")
-                    classifier.updatedLocal.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
-                    classifier.notExistingRemotely.forEach { file ->
-                        uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                    }
+                    val toUpload = (classifier.updatedLocal + classifier.notExistingRemotely).distinctBy { it.relativePath }
+                    transferEngine.uploadAll(credentials.userId, clientId, dirname, toUpload, credentials.accessToken)
                 }
 
                 SyncAction.CONFLICT -> {
@@ -300,17 +269,13 @@ class GOGCloudSavesManager(
                     // Execute uploads
                     if (toUpload.isNotEmpty()) {
                         Timber.tag("GOG-CloudSaves").i("Uploading ${toUpload.size} file(s) based on timestamp comparison")
-                        toUpload.forEach { file ->
-                            uploadFile(credentials.userId, clientId, dirname, file, credentials.accessToken)
-                        }
+                        transferEngine.uploadAll(credentials.userId, clientId, dirname, toUpload.distinctBy { it.relativePath }, credentials.accessToken)
                     }
 
                     // Execute downloads
                     if (toDownload.isNotEmpty()) {
                         Timber.tag("GOG-CloudSaves").i("Downloading ${toDownload.size} file(s) based on timestamp comparison")
-                        toDownload.forEach { file ->
-                            downloadFile(credentials.userId, clientId, dirname, file, syncDir, credentials.accessToken)
-                        }
+                        transferEngine.downloadAll(credentials.userId, clientId, dirname, toDownload.distinctBy { it.relativePath }, syncDir, credentials.accessToken)
                     }
                 }
                 SyncAction.NONE -> {
@@ -349,7 +314,7 @@ class GOGCloudSavesManager(
         scanRecursive(directory, directory.absolutePath)
 
         // Calculate metadata for all files
-        files.forEach { it.calculateMetadata() }
+        transferEngine.calculateMetadata(files)
 
         files
     }
@@ -437,111 +402,6 @@ class GOGCloudSavesManager(
         }
     }
 
-    /**
-     * Upload file to GOG cloud storage
-     */
-    private suspend fun uploadFile(
-        userId: String,
-        clientId: String,
-        dirname: String,
-        file: SyncFile,
-        authToken: String
-    ) = withContext(Dispatchers.IO) {
-        try {
-            val localFile = File(file.absolutePath)
-            val fileSize = localFile.length()
-
-            Timber.tag("GOG-CloudSaves").i("Uploading: ${file.relativePath} (${fileSize} bytes)")
-
-            val url = "$CLOUD_STORAGE_BASE_URL/v1/$userId/$clientId/$dirname/${file.relativePath}"
-
-            val requestBody = localFile.readBytes().toRequestBody("application/octet-stream".toMediaType())
-
-            val requestBuilder = Request.Builder()
-                .url(url)
-                .put(requestBody)
-                .header("Authorization", "Bearer $authToken")
-                .header("User-Agent", USER_AGENT)
-                .header("X-Object-Meta-User-Agent", USER_AGENT)
-                .header("Content-Type", "application/octet-stream")
-
-            // Add last modified timestamp header if available
-            file.updateTime?.let { timestamp ->
-                requestBuilder.header("X-Object-Meta-LocalLastModified", timestamp)
-            }
-
-            val response = httpClient.newCall(requestBuilder.build()).execute()
-            response.use {
-                if (response.isSuccessful) {
-                    Timber.tag("GOG-CloudSaves").i("Successfully uploaded: ${file.relativePath}")
-                } else {
-                    val errorBody = response.body?.string() ?: "No response body"
-                    Timber.tag("GOG-CloudSaves").e("Failed to upload ${file.relativePath}: HTTP ${response.code}")
-                    Timber.tag("GOG-CloudSaves").e("Upload error body: $errorBody")
-                }
-            }
-
-        } catch (e: Exception) {
-            Timber.tag("GOG-CloudSaves").e(e, "Failed to upload ${file.relativePath}")
-        }
-    }
-
-    /**
-     * Download file from GOG cloud storage
-     */
-    private suspend fun downloadFile(
-        userId: String,
-        clientId: String,
-        dirname: String,
-        file: CloudFile,
-        syncDir: File,
-        authToken: String
-    ) = withContext(Dispatchers.IO) {
-        try {
-            Timber.tag("GOG-CloudSaves").i("Downloading: ${file.relativePath}")
-
-            val url = "$CLOUD_STORAGE_BASE_URL/v1/$userId/$clientId/$dirname/${file.relativePath}"
-
-            val request = Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer $authToken")
-                .header("User-Agent", USER_AGENT)
-                .header("X-Object-Meta-User-Agent", USER_AGENT)
-                .build()
-
-            val response = httpClient.newCall(request).execute()
-            response.use {
-                if (!response.isSuccessful) {
-                    val errorBody = response.body?.string() ?: "No response body"
-                    Timber.tag("GOG-CloudSaves").e("Failed to download ${file.relativePath}: HTTP ${response.code}")
-                    Timber.tag("GOG-CloudSaves").e("Download error body: $errorBody")
-                    return@withContext
-                }
-
-                val bytes = response.body?.bytes() ?: return@withContext
-                Timber.tag("GOG-CloudSaves").d("Downloaded ${bytes.size} bytes for ${file.relativePath}")
-
-                // Save to local file
-                val localFile = File(syncDir, file.relativePath)
-                localFile.parentFile?.mkdirs()
-
-                FileOutputStream(localFile).use { fos ->
-                    fos.write(bytes)
-                }
-
-                // Preserve timestamp if available
-                file.updateTimestamp?.let { timestamp ->
-                    localFile.setLastModified(timestamp * 1000)
-                }
-
-                Timber.tag("GOG-CloudSaves").i("Successfully downloaded: ${file.relativePath}")
-            }
-
-        } catch (e: Exception) {
-            Timber.tag("GOG-CloudSaves").e(e, "Failed to download ${file.relativePath}")
-        }
-    }
-
     /**
      * Classify files for sync decision
      */
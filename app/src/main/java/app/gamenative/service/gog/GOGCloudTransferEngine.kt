@@ -0,0 +1,370 @@
+package app.gamenative.service.gog
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.asRequestBody
+import timber.log.Timber
+
+/**
+ * Moves save files between the device and GOG cloud storage.
+ *
+ * Digests are computed in a single streaming pass (gzip into MD5, nothing buffered) and cached by
+ * file size and modification time. Uploads and downloads run concurrently with bounded parallelism
+ * and are retried on transient failures.
+ *
+ * @param baseUrl the cloud storage endpoint, overridable so that tests can point at a local server
+ * @param digestCacheFile where digests are persisted between syncs, or null to keep them in memory only
+ */
+class GOGCloudTransferEngine(
+    private val httpClient: OkHttpClient = defaultHttpClient(),
+    private val baseUrl: String = GOGConstants.GOG_CLOUD_STORAGE_BASE_URL,
+    private val digestCacheFile: File? = null,
+    private val maxParallelTransfers: Int = DEFAULT_PARALLEL_TRANSFERS,
+    private val maxAttempts: Int = DEFAULT_MAX_ATTEMPTS,
+) {
+
+    @Serializable
+    private data class DigestEntry(
+        val size: Long,
+        val lastModified: Long,
+        val md5: String,
+    )
+
+    /**
+     * Totals for a batch of transfers.
+     */
+    data class TransferStats(
+        val filesTransferred: Int,
+        val filesFailed: Int,
+        val bytesTransferred: Long,
+        val elapsedMillis: Long,
+    ) {
+        val bytesPerSecond: Long
+            get() = if (elapsedMillis > 0) bytesTransferred * 1000 / elapsedMillis else bytesTransferred
+    }
+
+    private val digestCache = ConcurrentHashMap<String, DigestEntry>()
+
+    @Volatile
+    private var digestCacheDirty = false
+
+    init {
+        loadDigestCache()
+    }
+
+    /**
+     * Returns the MD5 of the gzipped file contents, which is what GOG cloud storage reports as
+     * the object hash. Reuses the cached digest when the file size and modification time match.
+     */
+    fun digest(file: File): String {
+        val key = file.absolutePath
+        val size = file.length()
+        val lastModified = file.lastModified()
+
+        digestCache[key]?.let { cached ->
+            if (cached.size == size && cached.lastModified == lastModified) {
+                return cached.md5
+            }
+        }
+
+        val md5 = gzipMd5(file)
+        digestCache[key] = DigestEntry(size, lastModified, md5)
+        digestCacheDirty = true
+
+        return md5
+    }
+
+    /**
+     * Computes metadata for all files concurrently and persists any newly computed digests.
+     */
+    suspend fun calculateMetadata(files: List<GOGCloudSavesManager.SyncFile>) = coroutineScope {
+        val permits = Semaphore(maxParallelTransfers)
+
+        files.map { file ->
+            async(Dispatchers.IO) {
+                permits.withPermit { file.calculateMetadata(this@GOGCloudTransferEngine) }
+            }
+        }.awaitAll()
+
+        saveDigestCache()
+    }
+
+    suspend fun uploadAll(
+        userId: String,
+        clientId: String,
+        dirname: String,
+        files: List<GOGCloudSavesManager.SyncFile>,
+        authToken: String,
+    ): TransferStats = transferAll(files) { file ->
+        upload(userId, clientId, dirname, file, authToken)
+    }
+
+    suspend fun downloadAll(
+        userId: String,
+        clientId: String,
+        dirname: String,
+        files: List<GOGCloudSavesManager.CloudFile>,
+        syncDir: File,
+        authToken: String,
+    ): TransferStats = transferAll(files) { file ->
+        download(userId, clientId, dirname, file, syncDir, authToken)
+    }
+
+    private suspend fun <T> transferAll(files: List<T>, transfer: (T) -> Long?): TransferStats = coroutineScope {
+        if (files.isEmpty()) {
+            return@coroutineScope TransferStats(0, 0, 0L, 0L)
+        }
+
+        val permits = Semaphore(maxParallelTransfers)
+        val transferred = AtomicInteger()
+        val failed = AtomicInteger()
+        val bytes = AtomicLong()
+        val start = System.currentTimeMillis()
+
+        files.map { file ->
+            async(Dispatchers.IO) {
+                permits.withPermit {
+                    val size = withRetry(file) { transfer(file) }
+                    if (size != null) {
+                        transferred.incrementAndGet()
+                        bytes.addAndGet(size)
+                    } else {
+                        failed.incrementAndGet()
+                    }
+                }
+            }
+        }.awaitAll()
+
+        TransferStats(transferred.get(), failed.get(), bytes.get(), System.currentTimeMillis() - start).also {
+            Timber.tag("GOG-CloudSaves").i(
+                "Transferred ${it.filesTransferred} file(s), ${it.bytesTransferred} bytes in ${it.elapsedMillis}ms " +
+                    "(${it.bytesPerSecond} B/s), ${it.filesFailed} failed",
+            )
+        }
+    }
+
+    /**
+     * Runs [block] until it returns a non-null result, retrying transient failures with a linear backoff.
+     * Any other exception fails only this file, so one bad file never cancels the rest of the batch.
+     */
+    private suspend fun <T> withRetry(file: T, block: () -> Long?): Long? {
+        for (attempt in 1..maxAttempts) {
+            try {
+                return block()
+            } catch (e: RetryableTransferException) {
+                Timber.tag("GOG-CloudSaves").w("Attempt $attempt/$maxAttempts for $file failed: ${e.message}")
+            } catch (e: IOException) {
+                Timber.tag("GOG-CloudSaves").w(e, "Attempt $attempt/$maxAttempts for $file failed")
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Timber.tag("GOG-CloudSaves").e(e, "Transfer of $file failed")
+                return null
+            }
+
+            if (attempt < maxAttempts) {
+                delay(RETRY_BACKOFF_MS * attempt)
+            }
+        }
+
+        return null
+    }
+
+    /**
+     * @return the number of bytes uploaded, or null if the server permanently rejected the file
+     */
+    private fun upload(
+        userId: String,
+        clientId: String,
+        dirname: String,
+        file: GOGCloudSavesManager.SyncFile,
+        authToken: String,
+    ): Long? {
+        val localFile = File(file.absolutePath)
+        val fileSize = localFile.length()
+
+        Timber.tag("GOG-CloudSaves").i("Uploading: ${file.relativePath} ($fileSize bytes)")
+
+        val requestBuilder = Request.Builder()
+            .url("$baseUrl/v1/$userId/$clientId/$dirname/${file.relativePath}")
+            .put(localFile.asRequestBody(OCTET_STREAM))
+            .header("Authorization", "Bearer $authToken")
+            .header("User-Agent", GOGConstants.GOG_CLOUD_USER_AGENT)
+            .header("X-Object-Meta-User-Agent", GOGConstants.GOG_CLOUD_USER_AGENT)
+            .header("Content-Type", "application/octet-stream")
+
+        file.updateTime?.let { timestamp ->
+            requestBuilder.header("X-Object-Meta-LocalLastModified", timestamp)
+        }
+
+        httpClient.newCall(requestBuilder.build()).execute().use { response ->
+            if (response.isSuccessful) {
+                Timber.tag("GOG-CloudSaves").i("Successfully uploaded: ${file.relativePath}")
+                return fileSize
+            }
+
+            if (response.code.isRetryable()) {
+                throw RetryableTransferException("HTTP ${response.code}")
+            }
+
+            val errorBody = response.body?.string() ?: "No response body"
+            Timber.tag("GOG-CloudSaves").e("Failed to upload ${file.relativePath}: HTTP ${response.code}")
+            Timber.tag("GOG-CloudSaves").e("Upload error body: $errorBody")
+            return null
+        }
+    }
+
+    /**
+     * Streams the object into a temporary file next to its destination and moves it into place
+     * once complete, so an interrupted download never leaves a truncated save behind.
+     *
+     * @return the number of bytes downloaded, or null if the server permanently rejected the request
+     */
+    private fun download(
+        userId: String,
+        clientId: String,
+        dirname: String,
+        file: GOGCloudSavesManager.CloudFile,
+        syncDir: File,
+        authToken: String,
+    ): Long? {
+        Timber.tag("GOG-CloudSaves").i("Downloading: ${file.relativePath}")
+
+        val request = Request.Builder()
+            .url("$baseUrl/v1/$userId/$clientId/$dirname/${file.relativePath}")
+            .header("Authorization", "Bearer $authToken")
+            .header("User-Agent", GOGConstants.GOG_CLOUD_USER_AGENT)
+            .header("X-Object-Meta-User-Agent", GOGConstants.GOG_CLOUD_USER_AGENT)
+            .build()
+
+        httpClient.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                if (response.code.isRetryable()) {
+                    throw RetryableTransferException("HTTP ${response.code}")
+                }
+
+                val errorBody = response.body?.string() ?: "No response body"
+                Timber.tag("GOG-CloudSaves").e("Failed to download ${file.relativePath}: HTTP ${response.code}")
+                Timber.tag("GOG-CloudSaves").e("Download error body: $errorBody")
+                return null
+            }
+
+            val body = response.body ?: return null
+
+            val localFile = File(syncDir, file.relativePath)
+            localFile.parentFile?.mkdirs()
+            val partFile = File(localFile.parentFile, "${localFile.name}.part")
+
+            val bytes = body.byteStream().use { input ->
+                partFile.outputStream().use { output -> input.copyTo(output, BUFFER_SIZE) }
+            }
+
+            if (!partFile.renameTo(localFile)) {
+                localFile.delete()
+                if (!partFile.renameTo(localFile)) {
+                    partFile.delete()
+                    throw IOException("Could not move ${partFile.name} into place")
+                }
+            }
+
+            file.updateTimestamp?.let { timestamp ->
+                localFile.setLastModified(timestamp * 1000)
+            }
+
+            Timber.tag("GOG-CloudSaves").i("Successfully downloaded: ${file.relativePath} ($bytes bytes)")
+            return bytes
+        }
+    }
+
+    private fun loadDigestCache() {
+        val cacheFile = digestCacheFile ?: return
+        if (!cacheFile.exists()) return
+
+        try {
+            digestCache.putAll(Json.decodeFromString<Map<String, DigestEntry>>(cacheFile.readText()))
+        } catch (e: Exception) {
+            Timber.tag("GOG-CloudSaves").w(e, "Discarding unreadable digest cache")
+            cacheFile.delete()
+        }
+    }
+
+    /**
+     * Persists the digest cache if any digest was computed since it was last saved.
+     * Entries for files that no longer exist are dropped.
+     */
+    fun saveDigestCache() {
+        val cacheFile = digestCacheFile ?: return
+        if (!digestCacheDirty) return
+
+        try {
+            digestCache.keys.removeAll { !File(it).exists() }
+            cacheFile.parentFile?.mkdirs()
+            cacheFile.writeText(Json.encodeToString(digestCache.toMap()))
+            digestCacheDirty = false
+        } catch (e: Exception) {
+            Timber.tag("GOG-CloudSaves").w(e, "Failed to persist digest cache")
+        }
+    }
+
+    private class RetryableTransferException(message: String) : IOException(message)
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val DEFAULT_PARALLEL_TRANSFERS = 4
+        private const val DEFAULT_MAX_ATTEMPTS = 3
+        private const val RETRY_BACKOFF_MS = 500L
+
+        private val OCTET_STREAM = "application/octet-stream".toMediaType()
+
+        private fun defaultHttpClient() = OkHttpClient.Builder()
+            .connectTimeout(30, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build()
+
+        private fun Int.isRetryable(): Boolean = this == 408 || this == 429 || this >= 500
+
+        /**
+         * Computes the MD5 of the gzipped file contents while streaming, discarding the
+         * compressed bytes as soon as they have been digested.
+         */
+        fun gzipMd5(file: File): String {
+            val digest = MessageDigest.getInstance("MD5")
+            val sink = object : OutputStream() {
+                override fun write(b: Int) = Unit
+
+                override fun write(b: ByteArray, off: Int, len: Int) = Unit
+            }
+
+            FileInputStream(file).use { input ->
+                GZIPOutputStream(DigestOutputStream(sink, digest), BUFFER_SIZE).use { gzipOut ->
+                    input.copyTo(gzipOut, BUFFER_SIZE)
+                }
+            }
+
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+    }
+}
@@ -23,6 +23,10 @@ object GOGConstants {
     const val GOG_AUTH_URL = "https://auth.gog.com"
     const val GOG_EMBED_URL = "https://embed.gog.com"
     const val GOG_GAMESDB_URL = "https://gamesdb.gog.com"
+    const val GOG_CLOUD_STORAGE_BASE_URL = "https://cloudstorage.gog.com"
+
+    // Cloud storage expects requests to look like they come from Galaxy
+    const val GOG_CLOUD_USER_AGENT = "GOGGalaxyCommunicationService/2.0.13.27 (Windows_32bit) dont_sync_marker/true installation_source/gog"
 
     // GOG Client ID for authentication
     const val GOG_CLIENT_ID = "46899977096215655"
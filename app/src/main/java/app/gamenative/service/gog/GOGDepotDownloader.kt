@@ -0,0 +1,672 @@
+package app.gamenative.service.gog
+
+import app.gamenative.data.DownloadInfo
+import app.gamenative.service.DownloadJournal
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.security.DigestInputStream
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+import java.util.zip.ZipException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonArray
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonArray
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.contentOrNull
+import kotlinx.serialization.json.jsonArray
+import kotlinx.serialization.json.jsonObject
+import kotlinx.serialization.json.jsonPrimitive
+import kotlinx.serialization.json.longOrNull
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import timber.log.Timber
+
+/**
+ * Native downloader for GOG Galaxy generation 2 builds.
+ *
+ * Replaces the gogdl `download` command for fresh installs: chunks are fetched concurrently on
+ * coroutines, inflated and MD5-verified while streaming, and written with positioned writes into
+ * pre-allocated files. Completed chunks are recorded in a [DownloadJournal] in the install
+ * directory, after their data was forced to disk, so an interrupted or killed download resumes
+ * where it stopped.
+ *
+ * Generation 1 builds and updates of an existing install (which need gogdl's diff and xdelta patch
+ * handling) are rejected with [UnsupportedBuildException] so the caller can fall back to gogdl.
+ *
+ * The endpoint URLs are overridable so the downloader can be exercised against a local server.
+ */
+class GOGDepotDownloader(
+    private val accessToken: String,
+    private val httpClient: OkHttpClient = defaultHttpClient(),
+    private val contentSystemUrl: String = CONTENT_SYSTEM_URL,
+    private val cdnUrl: String = CDN_URL,
+    private val embedUrl: String = GOGConstants.GOG_EMBED_URL,
+    private val maxParallelChunks: Int = DEFAULT_PARALLEL_CHUNKS,
+) {
+
+    /**
+     * Thrown when a build cannot be handled natively and gogdl should be used instead.
+     */
+    class UnsupportedBuildException(message: String) : Exception(message)
+
+    private data class Chunk(
+        val md5: String,
+        val compressedMd5: String,
+        val size: Long,
+        val compressedSize: Long,
+        val offset: Long,
+    )
+
+    /** A CDN endpoint and when its link expires, in epoch milliseconds. */
+    private class Link(val endpoint: JsonObject, val expiresAt: Long)
+
+    /**
+     * Channels of the files being written. A file is closed as soon as its last chunk is in, and
+     * journal syncs only force the channels written since the previous sync.
+     */
+    private class OpenFiles {
+        private val channels = ConcurrentHashMap<String, FileChannel>()
+        private val written = ConcurrentHashMap.newKeySet<FileChannel>()
+
+        fun get(target: File): FileChannel = channels.computeIfAbsent(target.path) {
+            FileChannel.open(target.toPath(), StandardOpenOption.WRITE)
+        }
+
+        fun written(channel: FileChannel) {
+            written.add(channel)
+        }
+
+        fun forceWritten() {
+            val iterator = written.iterator()
+            while (iterator.hasNext()) {
+                val channel = iterator.next()
+                iterator.remove()
+                try {
+                    channel.force(false)
+                } catch (e: ClosedChannelException) {
+                    // Closed once complete, after being forced
+                }
+            }
+        }
+
+        /** Forces and closes a finished file. */
+        fun close(target: File) {
+            val channel = channels.remove(target.path) ?: return
+            channel.use {
+                it.force(false)
+                written.remove(it)
+            }
+        }
+
+        fun closeAll() {
+            channels.values.forEach { it.close() }
+            channels.clear()
+            written.clear()
+        }
+    }
+
+    private data class ChunkTask(
+        val target: File,
+        val file: DepotFile,
+        val index: Int,
+        val endpointKey: String,
+    ) {
+        val chunk: Chunk
+            get() = file.chunks[index]
+    }
+
+    private data class DepotFile(
+        val path: String,
+        val isSupport: Boolean,
+        val productId: String,
+        val chunks: List<Chunk>,
+    ) {
+        val size: Long = chunks.sumOf { it.size }
+
+        /** Journal group of the file, stable across install locations. */
+        val journalGroup: String
+            get() = if (isSupport) "support/$path" else path
+    }
+
+    /**
+     * Summary of a completed download.
+     */
+    data class DownloadResult(
+        val installPath: String,
+        val filesWritten: Int,
+        val chunksDownloaded: Int,
+        val chunksResumed: Int,
+        val bytesDownloaded: Long,
+        val elapsedMillis: Long,
+    )
+
+    /**
+     * Downloads [productId] into [installPath]/&lt;installDirectory&gt;, matching the layout gogdl produces.
+     *
+     * @param supportDir where files flagged as support (redistributable installers) are written
+     * @param manifestsDir where gogdl keeps installed manifests; the build meta is stored there on
+     * completion so later gogdl updates and verification can diff against it
+     */
+    suspend fun download(
+        productId: String,
+        installPath: String,
+        supportDir: File,
+        manifestsDir: File?,
+        downloadInfo: DownloadInfo?,
+        language: String = "en-US",
+        withDlcs: Boolean = true,
+    ): Result<DownloadResult> = withContext(Dispatchers.IO) {
+        try {
+            if (manifestsDir != null && File(manifestsDir, productId).exists()) {
+                throw UnsupportedBuildException("An installed manifest exists for $productId, updates are handled by gogdl")
+            }
+
+            val build = getBuild(productId)
+            val meta = getZlibJson(build.string("link") ?: throw IOException("Build has no meta link")).jsonObject
+            val buildId = build.string("build_id") ?: "unknown"
+
+            val dlcs = if (withDlcs) ownedDlcs(productId, meta) else emptyList()
+            val productIds = setOf(productId) + dlcs.map { it.first }
+
+            val installDir = File(installPath, meta.string("installDirectory") ?: productId)
+            val journalDir = File(installDir, JOURNAL_DIR)
+
+            val depots = meta.array("depots").map { it.jsonObject }.filter { depot ->
+                depot.string("productId") in productIds &&
+                    depot.array("languages").any { matchesLanguage(it.jsonPrimitive.content, language) }
+            }
+
+            Timber.tag("GOG-Download").i("Build $buildId: ${depots.size} depot(s) for products $productIds")
+
+            val files = mutableListOf<DepotFile>()
+            val directories = mutableListOf<String>()
+            val links = mutableListOf<Pair<String, String>>()
+            depots.forEach { depot ->
+                val manifestUrl = "$cdnUrl/content-system/v2/meta/${galaxyPath(depot.string("manifest")!!)}"
+                parseDepotItems(getZlibJson(manifestUrl).jsonObject, depot.string("productId")!!, files, directories, links)
+            }
+
+            val dependencyFiles = dependencyFiles(meta)
+            files += dependencyFiles
+
+            val endpoints = SecureLinks(if (dependencyFiles.isNotEmpty()) productIds + REDIST_PRODUCT else productIds)
+
+            directories.forEach { File(installDir, it).mkdirs() }
+
+            val tasks = files.flatMap { file ->
+                val target = if (file.isSupport) File(supportDir, file.path) else File(installDir, file.path)
+                file.chunks.indices.map { ChunkTask(target, file, it, file.productId) }
+            }
+
+            // Chunk data is forced to disk before the journal records it
+            val openFiles = OpenFiles()
+            val journal = DownloadJournal(File(journalDir, "$buildId.journal")) { openFiles.forceWritten() }
+            val result = try {
+                journal.use {
+                    preallocate(files, installDir, supportDir, journal)
+                    runTasks(tasks, endpoints, journal, openFiles, downloadInfo)
+                }
+            } finally {
+                openFiles.closeAll()
+            }
+
+            links.forEach { (path, target) -> createLink(File(installDir, path), target) }
+
+            manifestsDir?.let { writeInstalledManifest(it, productId, meta, language, dlcs) }
+            journalDir.deleteRecursively()
+
+            Result.success(result.copy(installPath = installDir.absolutePath, filesWritten = files.size))
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Result.failure(e)
+        }
+    }
+
+    private fun getBuild(productId: String): JsonObject {
+        val builds = getJson("$contentSystemUrl/products/$productId/os/windows/builds?generation=2").jsonObject
+        val build = builds.array("items").firstOrNull()?.jsonObject
+            ?: throw IOException("No builds found for $productId")
+
+        val generation = build["generation"]?.jsonPrimitive?.longOrNull ?: 2L
+        if (generation != 2L) {
+            throw UnsupportedBuildException("Build ${build.string("build_id")} of $productId is generation $generation")
+        }
+
+        return build
+    }
+
+    /**
+     * DLCs listed in the build meta that the user owns, as (productId, name) pairs.
+     * As in gogdl, ownership is assumed when the user data cannot be fetched.
+     */
+    private fun ownedDlcs(productId: String, meta: JsonObject): List<Pair<String, String>> {
+        val owned = try {
+            getJson("$embedUrl/userData.json").jsonObject.array("owned").map { it.jsonPrimitive.content }.toSet()
+        } catch (e: Exception) {
+            Timber.tag("GOG-Download").w(e, "Could not fetch owned products, assuming DLCs are owned")
+            null
+        }
+
+        return meta.array("products").map { it.jsonObject }
+            .mapNotNull { product ->
+                val id = product.string("productId") ?: return@mapNotNull null
+                if (id == productId || (owned != null && id !in owned)) return@mapNotNull null
+                id to (product.string("name") ?: id)
+            }
+    }
+
+    /**
+     * Files of dependencies that live inside the game directory. Dependencies installed globally
+     * under `__redist` are left to the container setup, as gogdl does for game downloads.
+     */
+    private fun dependencyFiles(meta: JsonObject): List<DepotFile> {
+        val ids = meta.array("dependencies").map { it.jsonPrimitive.content }.toSet()
+        if (ids.isEmpty()) return emptyList()
+
+        val repositoryBuild = getJson("$contentSystemUrl/dependencies/repository?generation=2").jsonObject
+        val repository = getZlibJson(repositoryBuild.string("repository_manifest")!!).jsonObject
+
+        val files = mutableListOf<DepotFile>()
+        repository.array("depots").map { it.jsonObject }
+            .filter { depot ->
+                depot.string("dependencyId") in ids &&
+                    depot["executable"]?.jsonObject?.string("path")?.startsWith("__redist") != true
+            }
+            .forEach { depot ->
+                val manifestUrl = "$cdnUrl/content-system/v2/dependencies/meta/${galaxyPath(depot.string("manifest")!!)}"
+                parseDepotItems(getZlibJson(manifestUrl).jsonObject, REDIST_PRODUCT, files, mutableListOf(), mutableListOf())
+            }
+
+        return files
+    }
+
+    private fun parseDepotItems(
+        manifest: JsonObject,
+        productId: String,
+        files: MutableList<DepotFile>,
+        directories: MutableList<String>,
+        links: MutableList<Pair<String, String>>,
+    ) {
+        manifest["depot"]!!.jsonObject.array("items").map { it.jsonObject }.forEach { item ->
+            val path = item.string("path")!!.replace('\\', '/').trim('/')
+            when (item.string("type")) {
+                "DepotFile" -> {
+                    val flags = item.array("flags").map { it.jsonPrimitive.content }
+                    val isSupport = "support" in flags
+                    var offset = 0L
+                    val chunks = item.array("chunks").map { it.jsonObject }.map { chunk ->
+                        Chunk(
+                            md5 = chunk.string("md5")!!,
+                            compressedMd5 = chunk.string("compressedMd5")!!,
+                            size = chunk.long("size"),
+                            compressedSize = chunk.long("compressedSize"),
+                            offset = offset,
+                        ).also { offset += it.size }
+                    }
+                    files += DepotFile(
+                        path = if (isSupport) "$productId/$path" else path,
+                        isSupport = isSupport,
+                        productId = productId,
+                        chunks = chunks,
+                    )
+                }
+
+                "DepotLink" -> links += path to item.string("target")!!
+                else -> directories += path
+            }
+        }
+    }
+
+    /**
+     * Creates every file at its final size up front so chunks can be written in any order.
+     * Files that already have the right size are kept as they are, since they may hold
+     * chunks journaled by an earlier attempt.
+     */
+    private fun preallocate(files: List<DepotFile>, installDir: File, supportDir: File, journal: DownloadJournal) {
+        files.forEach { file ->
+            val target = if (file.isSupport) File(supportDir, file.path) else File(installDir, file.path)
+            target.parentFile?.mkdirs()
+
+            if (target.length() != file.size || !target.exists()) {
+                journal.forget(file.journalGroup)
+                RandomAccessFile(target, "rw").use { it.setLength(file.size) }
+            }
+        }
+    }
+
+    private suspend fun runTasks(
+        tasks: List<ChunkTask>,
+        endpoints: SecureLinks,
+        journal: DownloadJournal,
+        openFiles: OpenFiles,
+        downloadInfo: DownloadInfo?,
+    ): DownloadResult {
+        val pending = tasks.filterNot { journal.isComplete(it.file.journalGroup, it.index) }
+        val resumedBytes = tasks.sumOf { it.chunk.compressedSize } - pending.sumOf { it.chunk.compressedSize }
+
+        downloadInfo?.let {
+            synchronized(it) {
+                it.setTotalExpectedBytes(tasks.sumOf { task -> task.chunk.compressedSize })
+                it.initializeBytesDownloaded(resumedBytes)
+                it.emitProgressChange()
+            }
+        }
+
+        Timber.tag("GOG-Download").i(
+            "${pending.size} of ${tasks.size} chunk(s) to download, ${tasks.size - pending.size} already on disk",
+        )
+
+        // Chunks still missing per file, to collapse a file's records once it is complete
+        val remaining = HashMap<String, AtomicInteger>()
+        pending.forEach { remaining.getOrPut(it.file.journalGroup) { AtomicInteger() }.incrementAndGet() }
+
+        val next = AtomicInteger()
+        val downloaded = AtomicInteger()
+        val bytes = AtomicLong()
+        val start = System.currentTimeMillis()
+
+        coroutineScope {
+            repeat(maxParallelChunks.coerceAtMost(pending.size.coerceAtLeast(1))) {
+                launch(Dispatchers.IO) {
+                    val buffer = ByteArray(BUFFER_SIZE)
+                    while (true) {
+                        ensureActive()
+                        val task = pending.getOrNull(next.getAndIncrement()) ?: break
+                        val channel = openFiles.get(task.target)
+
+                        fetchChunk(task, endpoints, channel, buffer)
+                        openFiles.written(channel)
+                        journal.complete(task.file.journalGroup, task.index)
+                        if (remaining.getValue(task.file.journalGroup).decrementAndGet() == 0) {
+                            // The file is done, so it no longer holds a descriptor or joins journal syncs
+                            openFiles.close(task.target)
+                            journal.completeGroup(task.file.journalGroup)
+                        }
+                        downloaded.incrementAndGet()
+                        bytes.addAndGet(task.chunk.compressedSize)
+
+                        downloadInfo?.let {
+                            it.updateBytesDownloaded(task.chunk.compressedSize)
+                            it.emitProgressChange()
+                        }
+                    }
+                }
+            }
+        }
+
+        val elapsed = System.currentTimeMillis() - start
+        Timber.tag("GOG-Download").i(
+            "Downloaded ${downloaded.get()} chunk(s), ${bytes.get()} bytes in ${elapsed}ms " +
+                "(${if (elapsed > 0) bytes.get() * 1000 / elapsed else bytes.get()} B/s)",
+        )
+
+        return DownloadResult("", 0, downloaded.get(), tasks.size - pending.size, bytes.get(), elapsed)
+    }
+
+    /**
+     * Fetches one chunk, inflating it straight into its place in the target file while
+     * verifying both the compressed and uncompressed MD5. A link the CDN rejects is fetched
+     * again before the next attempt.
+     */
+    private suspend fun fetchChunk(task: ChunkTask, endpoints: SecureLinks, channel: FileChannel, buffer: ByteArray) {
+        val chunk = task.chunk
+
+        for (attempt in 1..MAX_ATTEMPTS) {
+            try {
+                val endpoint = endpoints.get(task.endpointKey)
+                val request = Request.Builder().url(chunkUrl(endpoint, chunk.compressedMd5)).build()
+                httpClient.newCall(request).execute().use { response ->
+                    if (response.code == 401 || response.code == 403) {
+                        endpoints.refresh(task.endpointKey, endpoint)
+                        throw IOException("HTTP ${response.code} for chunk ${chunk.compressedMd5}, link refreshed")
+                    }
+                    if (!response.isSuccessful) {
+                        throw IOException("HTTP ${response.code} for chunk ${chunk.compressedMd5}")
+                    }
+
+                    val compressedDigest = MessageDigest.getInstance("MD5")
+                    val digest = MessageDigest.getInstance("MD5")
+                    var written = 0L
+
+                    val inflater = Inflater()
+                    try {
+                        DigestInputStream(response.body!!.byteStream(), compressedDigest).use { raw ->
+                            // Not closed directly: that would close the raw stream before it is drained
+                            val inflated = InflaterInputStream(raw, inflater, BUFFER_SIZE)
+                            while (true) {
+                                val read = inflated.read(buffer)
+                                if (read == -1) break
+                                digest.update(buffer, 0, read)
+                                writeFully(channel, ByteBuffer.wrap(buffer, 0, read), chunk.offset + written)
+                                written += read
+                            }
+                            drain(raw, buffer)
+                        }
+                    } finally {
+                        inflater.end()
+                    }
+
+                    if (written != chunk.size) {
+                        throw IOException("Chunk ${chunk.compressedMd5} inflated to $written bytes, expected ${chunk.size}")
+                    }
+                    if (compressedDigest.digest().toHex() != chunk.compressedMd5) {
+                        throw IOException("Compressed MD5 mismatch for chunk ${chunk.compressedMd5}")
+                    }
+                    if (digest.digest().toHex() != chunk.md5) {
+                        throw IOException("MD5 mismatch for chunk ${chunk.md5}")
+                    }
+                }
+                return
+            } catch (e: IOException) {
+                if (attempt == MAX_ATTEMPTS) throw e
+                Timber.tag("GOG-Download").w("Chunk ${chunk.compressedMd5} attempt $attempt failed: ${e.message}")
+                delay(RETRY_BACKOFF_MS * attempt)
+            }
+        }
+    }
+
+    private fun writeFully(channel: FileChannel, data: ByteBuffer, position: Long) {
+        var pos = position
+        while (data.hasRemaining()) {
+            pos += channel.write(data, pos)
+        }
+    }
+
+    private fun drain(input: InputStream, buffer: ByteArray) {
+        while (input.read(buffer) != -1) {
+            // Trailing bytes after the zlib stream still count towards the compressed MD5
+        }
+    }
+
+    private fun createLink(link: File, target: String) {
+        try {
+            link.parentFile?.mkdirs()
+            Files.deleteIfExists(link.toPath())
+            Files.createSymbolicLink(link.toPath(), Paths.get(target.replace('\\', '/')))
+        } catch (e: Exception) {
+            Timber.tag("GOG-Download").w(e, "Could not create link ${link.path} -> $target")
+        }
+    }
+
+    /**
+     * CDN endpoints per product. Secure links expire, so a link is fetched again shortly before
+     * the expiry it carries and whenever the CDN rejects a chunk with 401 or 403.
+     */
+    private inner class SecureLinks(keys: Collection<String>) {
+        private val links = ConcurrentHashMap<String, Link>()
+
+        init {
+            keys.forEach { links[it] = fetch(it) }
+        }
+
+        fun get(key: String): JsonObject {
+            val link = links.getValue(key)
+            if (System.currentTimeMillis() < link.expiresAt - LINK_REFRESH_MARGIN_MS) return link.endpoint
+            return refresh(key, link.endpoint)
+        }
+
+        /** Fetches a new link for [key], unless another chunk already replaced [stale]. */
+        fun refresh(key: String, stale: JsonObject): JsonObject {
+            synchronized(this) {
+                val current = links.getValue(key)
+                if (current.endpoint !== stale) return current.endpoint
+
+                Timber.tag("GOG-Download").i("Refreshing CDN link for $key")
+                return fetch(key).also { links[key] = it }.endpoint
+            }
+        }
+
+        private fun fetch(key: String): Link {
+            val url = if (key == REDIST_PRODUCT) {
+                "$contentSystemUrl/open_link?generation=2&_version=2&path=/dependencies/store/"
+            } else {
+                "$contentSystemUrl/products/$key/secure_link?_version=2&generation=2&path=/"
+            }
+            val endpoint = getJson(url).jsonObject.array("urls").first().jsonObject
+            val expiresAt = endpoint["parameters"]?.jsonObject?.long("expires_at") ?: 0L
+            return Link(endpoint, if (expiresAt > 0) expiresAt * 1000 else Long.MAX_VALUE)
+        }
+    }
+
+    private fun writeInstalledManifest(
+        manifestsDir: File,
+        productId: String,
+        meta: JsonObject,
+        language: String,
+        dlcs: List<Pair<String, String>>,
+    ) {
+        val installed = buildJsonObject {
+            meta.forEach { (key, value) -> put(key, value) }
+            put("HGLInstallLanguage", JsonPrimitive(language))
+            put(
+                "HGLdlcs",
+                buildJsonArray {
+                    dlcs.forEach { (id, title) ->
+                        add(buildJsonObject {
+                            put("title", JsonPrimitive(title))
+                            put("id", JsonPrimitive(id))
+                        })
+                    }
+                },
+            )
+        }
+
+        manifestsDir.mkdirs()
+        File(manifestsDir, productId).writeText(installed.toString())
+    }
+
+    private fun getJson(url: String): JsonElement {
+        val request = Request.Builder()
+            .url(url)
+            .header("Authorization", "Bearer $accessToken")
+            .header("Accept", "application/json")
+            .build()
+
+        httpClient.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("HTTP ${response.code} for $url")
+            }
+            return Json.parseToJsonElement(response.body!!.string())
+        }
+    }
+
+    /**
+     * Fetches a JSON document that may be zlib-compressed, as build metas and depot manifests are.
+     */
+    private fun getZlibJson(url: String): JsonElement {
+        val request = Request.Builder()
+            .url(url)
+            .header("Authorization", "Bearer $accessToken")
+            .build()
+
+        httpClient.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("HTTP ${response.code} for $url")
+            }
+
+            val bytes = response.body!!.bytes()
+            val text = try {
+                InflaterInputStream(bytes.inputStream()).use { it.readBytes() }.decodeToString()
+            } catch (e: ZipException) {
+                bytes.decodeToString()
+            }
+
+            return Json.parseToJsonElement(text)
+        }
+    }
+
+    companion object {
+        const val CONTENT_SYSTEM_URL = "https://content-system.gog.com"
+        const val CDN_URL = "https://gog-cdn-fastly.gog.com"
+
+        private const val JOURNAL_DIR = ".gogdl-native"
+        private const val REDIST_PRODUCT = "redist"
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val MAX_ATTEMPTS = 3
+        private const val RETRY_BACKOFF_MS = 500L
+        private const val LINK_REFRESH_MARGIN_MS = 60_000L
+
+        private val DEFAULT_PARALLEL_CHUNKS = (Runtime.getRuntime().availableProcessors() * 2).coerceIn(4, 16)
+
+        private fun defaultHttpClient() = OkHttpClient.Builder()
+            .connectTimeout(30, TimeUnit.SECONDS)
+            .readTimeout(60, TimeUnit.SECONDS)
+            .build()
+
+        /**
+         * Splits a hash into the `ab/cd/abcd...` layout used by the content system.
+         */
+        fun galaxyPath(hash: String): String =
+            if (hash.contains('/')) hash else "${hash.substring(0, 2)}/${hash.substring(2, 4)}/$hash"
+
+        private fun chunkUrl(endpoint: JsonObject, compressedMd5: String): String {
+            val format = endpoint.string("url_format")
+                ?: return "${endpoint.string("url")}/${galaxyPath(compressedMd5)}"
+
+            var url = format
+            endpoint["parameters"]?.jsonObject?.forEach { (key, value) ->
+                var param = value.jsonPrimitive.content
+                if (key == "path") param += "/${galaxyPath(compressedMd5)}"
+                url = url.replace("{$key}", param)
+            }
+            return url
+        }
+
+        private fun matchesLanguage(depotLanguage: String, language: String): Boolean =
+            depotLanguage == "*" ||
+                depotLanguage.equals(language, ignoreCase = true) ||
+                depotLanguage.equals(language.substringBefore('-'), ignoreCase = true)
+
+        private fun JsonObject.string(key: String): String? = (this[key] as? JsonPrimitive)?.contentOrNull
+
+        private fun JsonObject.long(key: String): Long = this[key]?.jsonPrimitive?.longOrNull ?: 0L
+
+        private fun JsonObject.array(key: String): JsonArray = (this[key] as? JsonArray) ?: JsonArray(emptyList())
+
+        private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+    }
+}
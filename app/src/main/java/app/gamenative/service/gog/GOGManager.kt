@@ -15,6 +15,7 @@ import app.gamenative.data.GameSource
 import app.gamenative.enums.PathType
 import okhttp3.Request
 import okhttp3.OkHttpClient
+import app.gamenative.utils.InstallFileIndex
 import app.gamenative.utils.Net
 import app.gamenative.db.dao.GOGGameDao
 import app.gamenative.enums.AppType
@@ -69,7 +70,8 @@ data class GameSizeInfo(
  * - Wine launch commands
  * - File system operations
  *
- * Uses GOGPythonBridge for all GOGDL command execution.
+ * Uses GOGDepotDownloader for generation 2 game downloads and GOGPythonBridge for
+ * all other GOGDL command execution.
  * Uses GOGAuthManager for authentication checks.
  */
 @Singleton
@@ -460,30 +462,16 @@ class GOGManager @Inject constructor(
     }
 
     /**
-     * Calculate the total size of a directory recursively
+     * Total size of an install directory, from its file index.
      *
      * @param directory The directory to calculate size for
      * @return Total size in bytes
      */
     private fun calculateDirectorySize(directory: File): Long {
-        var size = 0L
-        try {
-            if (!directory.exists() || !directory.isDirectory) {
-                return 0L
-            }
-
-            val files = directory.listFiles() ?: return 0L
-            for (file in files) {
-                size += if (file.isDirectory) {
-                    calculateDirectorySize(file)
-                } else {
-                    file.length()
-                }
-            }
-        } catch (e: Exception) {
-            Timber.w(e, "Error calculating directory size for ${directory.name}")
+        if (!directory.exists() || !directory.isDirectory) {
+            return 0L
         }
-        return size
+        return InstallFileIndex.forInstall(directory).totalSize
     }
 
     suspend fun refreshSingleGame(gameId: String, context: Context): Result<GOGGame?> {
@@ -572,24 +560,30 @@ class GOGManager @Inject constructor(
                     app.gamenative.events.AndroidEvent.DownloadStatusChanged(gameId.toIntOrNull() ?: 0, true)
                 )
 
-                val result = GOGPythonBridge.executeCommandWithCallback(
-                    downloadInfo,
-                    "--auth-config-path", authConfigPath,
-                    "download", numericGameId,
-                    "--platform", "windows",
-                    "--path", installPath,
-                    "--support", supportDir.absolutePath,
-                    "--with-dlcs",
-                    "--lang", "en-US",
-                    "--max-workers", "1",
-                )
+                val nativeResult = downloadWithDepotDownloader(context, numericGameId, installPath, supportDir, downloadInfo)
+                val result = if (nativeResult.exceptionOrNull() is GOGDepotDownloader.UnsupportedBuildException) {
+                    Timber.i("[Download] ${nativeResult.exceptionOrNull()?.message}, falling back to GOGDL")
+                    GOGPythonBridge.executeCommandWithCallback(
+                        downloadInfo,
+                        "--auth-config-path", authConfigPath,
+                        "download", numericGameId,
+                        "--platform", "windows",
+                        "--path", installPath,
+                        "--support", supportDir.absolutePath,
+                        "--with-dlcs",
+                        "--lang", "en-US",
+                        "--max-workers", "1",
+                    )
+                } else {
+                    nativeResult.map { }
+                }
 
                 if (result.isSuccess) {
                     downloadInfo.setProgress(1.0f)
                     Timber.i("[Download] GOGDL download completed successfully for game $gameId")
 
-                    // Calculate actual disk size
-                    val diskSize = calculateDirectorySize(File(installPath))
+                    // Index the fresh install and take the disk size from it
+                    val diskSize = InstallFileIndex.rebuild(File(installPath)).totalSize
                     Timber.d("[Download] Calculated install size: $diskSize bytes (${diskSize / 1_000_000} MB)")
 
                     // Update or create database entry
@@ -648,7 +642,7 @@ class GOGManager @Inject constructor(
 
                     Result.success(Unit)
                 } else {
-                    downloadInfo.setProgress(-1.0f)
+                    downloadInfo.markFailed()
                     val error = result.exceptionOrNull()
                     Timber.e(error, "[Download] GOGDL download failed for game $gameId")
 
@@ -661,7 +655,7 @@ class GOGManager @Inject constructor(
                 }
             } catch (e: Exception) {
                 Timber.e(e, "[Download] Exception during download for game $gameId")
-                downloadInfo.setProgress(-1.0f)
+                downloadInfo.markFailed()
 
                 // Emit download stopped event on exception
                 app.gamenative.PluviaApp.events.emitJava(
@@ -673,6 +667,36 @@ class GOGManager @Inject constructor(
         }
     }
 
+    /**
+     * Downloads a generation 2 build with [GOGDepotDownloader]. Fails with
+     * [GOGDepotDownloader.UnsupportedBuildException] when the build has to go through GOGDL.
+     */
+    private suspend fun downloadWithDepotDownloader(
+        context: Context,
+        numericGameId: String,
+        installPath: String,
+        supportDir: File,
+        downloadInfo: DownloadInfo,
+    ): Result<GOGDepotDownloader.DownloadResult> {
+        val credentials = GOGAuthManager.getStoredCredentials(context).getOrElse {
+            return Result.failure(it)
+        }
+
+        val downloader = GOGDepotDownloader(accessToken = credentials.accessToken, httpClient = httpClient)
+        return downloader.download(
+            productId = numericGameId,
+            installPath = installPath,
+            supportDir = supportDir,
+            manifestsDir = File(context.filesDir, "manifests"),
+            downloadInfo = downloadInfo,
+        ).onSuccess {
+            Timber.i(
+                "[Download] Native download finished: ${it.chunksDownloaded} chunk(s) fetched, " +
+                    "${it.chunksResumed} resumed, ${it.bytesDownloaded} bytes in ${it.elapsedMillis}ms",
+            )
+        }
+    }
+
     suspend fun deleteGame(context: Context, libraryItem: LibraryItem): Result<Unit> {
         return withContext(Dispatchers.IO) {
             try {
@@ -689,6 +713,7 @@ class GOGManager @Inject constructor(
 
                 // Delete game files
                 if (installDir.exists()) {
+                    InstallFileIndex.forget(installDir)
                     val success = installDir.deleteRecursively()
                     if (success) {
                         Timber.i("Successfully deleted game directory: $installPath")
@@ -4,6 +4,8 @@ import android.app.Service
 import android.content.Context
 import android.content.Intent
 import android.os.IBinder
+import android.widget.Toast
+import app.gamenative.R
 import app.gamenative.data.DownloadInfo
 import app.gamenative.data.GOGCredentials
 import app.gamenative.data.GOGGame
@@ -312,8 +314,7 @@ class GOGService : Service() {
 
                     if (result.isFailure) {
                         Timber.e(result.exceptionOrNull(), "[Download] Failed for game $gameId")
-                        downloadInfo.setProgress(-1.0f)
-                        downloadInfo.setActive(false)
+                        instance.onDownloadFailed(downloadInfo)
                     } else {
                         Timber.i("[Download] Completed successfully for game $gameId")
                         downloadInfo.setProgress(1.0f)
@@ -321,8 +322,7 @@ class GOGService : Service() {
                     }
                 } catch (e: Exception) {
                     Timber.e(e, "[Download] Exception for game $gameId")
-                    downloadInfo.setProgress(-1.0f)
-                    downloadInfo.setActive(false)
+                    instance.onDownloadFailed(downloadInfo)
                 } finally {
                     // Remove from activeDownloads for both success and failure
                     // so UI knows download is complete and to prevent stale entries
@@ -522,6 +522,17 @@ class GOGService : Service() {
 
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
+    private fun onDownloadFailed(downloadInfo: DownloadInfo) {
+        downloadInfo.markFailed()
+        scope.launch(Dispatchers.Main) {
+            Toast.makeText(
+                applicationContext,
+                getString(R.string.download_failed_try_again),
+                Toast.LENGTH_LONG,
+            ).show()
+        }
+    }
+
     // Track active downloads by game ID
     private val activeDownloads = ConcurrentHashMap<String, DownloadInfo>()
 
@@ -22,6 +22,7 @@ import app.gamenative.events.AndroidEvent
 import app.gamenative.utils.CustomGameScanner
 import app.gamenative.utils.GameCompatibilityCache
 import app.gamenative.utils.GameCompatibilityService
+import app.gamenative.utils.LibraryIndex
 import app.gamenative.data.GameCompatibilityStatus
 import com.winlator.core.GPUInformation
 import dagger.hilt.android.lifecycle.HiltViewModel
@@ -35,9 +36,12 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.drop
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import timber.log.Timber
 import kotlin.math.max
 import kotlin.math.min
@@ -69,9 +73,15 @@ class LibraryViewModel @Inject constructor(
     private var paginationCurrentPage: Int = 0;
     private var lastPageInCurrentFilter: Int = 0;
 
-    // Complete and unfiltered app list
-    private var appList: List<SteamApp> = emptyList()
-    private var gogGameList: List<GOGGame> = emptyList()
+    // Every Steam, GOG and custom entry, kept up to date from the DAO flows
+    private val libraryIndex = LibraryIndex()
+
+    // Inputs the index was last synced with, so unchanged ones are not re-applied. Filter runs
+    // sync from concurrent IO coroutines, so these are only touched under indexSyncMutex.
+    private val indexSyncMutex = Mutex()
+    private var indexedDownloadDirs: Set<String>? = null
+    private var indexedCustomFolders: Set<String>? = null
+    private var indexedCustomChanges: Long = -1
 
     // Track if this is the first load to apply minimum load time
     private var isFirstLoad = true
@@ -99,9 +109,9 @@ class LibraryViewModel @Inject constructor(
                 // ownerIds = SteamService.familyMembers.ifEmpty { listOf(SteamService.userSteamId!!.accountID.toInt()) },
             ).collect { apps ->
                 Timber.tag("LibraryViewModel").d("Collecting ${apps.size} apps")
-                // Check if the list has actually changed before triggering a re-filter
-                if (appList.size != apps.size) {
-                    appList = apps
+                // Only re-filter when an entry actually changed
+                val downloadDirs = DownloadService.getDownloadDirectoryApps().toHashSet()
+                if (libraryIndex.replaceSource(GameSource.STEAM, apps.map { steamEntry(it, downloadDirs) })) {
                     onFilterApps(paginationCurrentPage)
                 }
             }
@@ -111,14 +121,20 @@ class LibraryViewModel @Inject constructor(
         viewModelScope.launch(Dispatchers.IO) {
             gogGameDao.getAll().collect { games ->
                 Timber.tag("LibraryViewModel").d("Collecting ${games.size} GOG games")
-                // Check if the list has actually changed before triggering a re-filter
-                if (gogGameList != games) {
-                    gogGameList = games
+                // Only re-filter when an entry actually changed
+                if (libraryIndex.replaceSource(GameSource.GOG, games.map { gogEntry(it) })) {
                     onFilterApps(paginationCurrentPage)
                 }
             }
         }
 
+        // Re-scan custom games when one of their folders changed on disk
+        viewModelScope.launch(Dispatchers.IO) {
+            CustomGameScanner.changes.drop(1).collect {
+                onFilterApps(paginationCurrentPage)
+            }
+        }
+
         PluviaApp.events.on<AndroidEvent.LibraryInstallStatusChanged, Unit>(onInstallStatusChanged)
         PluviaApp.events.on<AndroidEvent.CustomGameImagesFetched, Unit>(onCustomGameImagesFetched)
     }
@@ -211,6 +227,7 @@ class LibraryViewModel @Inject constructor(
             } catch (e: Exception) {
                 Timber.tag("LibraryViewModel").e(e, "Failed to refresh owned games from server")
             } finally {
+                invalidateCustomFolders()
                 onFilterApps(0).join()
                 _state.update { it.copy(isRefreshing = false) }
             }
@@ -233,176 +250,129 @@ class LibraryViewModel @Inject constructor(
             }
 
             CustomGameScanner.invalidateCache()
+            invalidateCustomFolders()
             onFilterApps(paginationCurrentPage)
         }
     }
 
+    private fun steamEntry(app: SteamApp, downloadDirs: Set<String>): LibraryIndex.Entry {
+        val dirName = SteamService.getAppDirName(app)
+        return LibraryIndex.Entry(
+            item = LibraryItem(
+                index = 0, // re-indexed by the library index query
+                appId = "${GameSource.STEAM.name}_${app.id}",
+                name = app.name,
+                iconHash = app.clientIconHash,
+                isShared = (PrefManager.steamUserAccountId != 0 && !app.ownerAccountId.contains(PrefManager.steamUserAccountId)),
+            ),
+            type = app.type,
+            installed = downloadDirs.contains(dirName),
+            ownerAccountIds = app.ownerAccountId,
+            installDirName = dirName,
+        )
+    }
+
+    private fun gogEntry(game: GOGGame) = LibraryIndex.Entry(
+        item = LibraryItem(
+            index = 0,
+            appId = "${GameSource.GOG.name}_${game.id}",
+            name = game.title,
+            iconHash = game.imageUrl.ifEmpty { game.iconUrl },
+            isShared = false,
+            gameSource = GameSource.GOG,
+        ),
+        installed = game.isInstalled,
+    )
+
+    /**
+     * Brings the parts of the index that are not fed by a DAO flow up to date: Steam install
+     * state from the download directories and the custom game folders.
+     */
+    private suspend fun syncLibraryIndex() = indexSyncMutex.withLock {
+        val downloadDirs = DownloadService.getDownloadDirectoryApps().toHashSet()
+        if (downloadDirs != indexedDownloadDirs) {
+            indexedDownloadDirs = downloadDirs
+            libraryIndex.updateInstalled(GameSource.STEAM) { it.installDirName in downloadDirs }
+        }
+
+        // Only folders that changed since they were last scanned are listed again
+        val customFolders = PrefManager.customGameManualFolders
+        val customChanges = CustomGameScanner.changes.value
+        if (customFolders != indexedCustomFolders || customChanges != indexedCustomChanges) {
+            indexedCustomFolders = customFolders
+            indexedCustomChanges = customChanges
+            val customItems = CustomGameScanner.scanAsLibraryItems()
+            libraryIndex.replaceSource(GameSource.CUSTOM_GAME, customItems.map { LibraryIndex.Entry(it, installed = true) })
+        }
+    }
+
+    /** Makes the next sync list the custom game folders again. */
+    private suspend fun invalidateCustomFolders() = indexSyncMutex.withLock {
+        indexedCustomFolders = null
+    }
+
     private fun onFilterApps(paginationPage: Int = 0): Job {
-        Timber.tag("LibraryViewModel").d("onFilterApps - appList.size: ${appList.size}, isFirstLoad: $isFirstLoad")
+        Timber.tag("LibraryViewModel").d("onFilterApps - indexed: ${libraryIndex.size}, isFirstLoad: $isFirstLoad")
         return viewModelScope.launch(Dispatchers.IO) {
             _state.update { it.copy(isLoading = true) }
 
             val currentState = _state.value
-            val currentFilter = AppFilter.getAppType(currentState.appInfoSortType)
-
-            // Fetch download directory apps once on IO thread and cache as a HashSet for O(1) lookups
-            val downloadDirectoryApps = DownloadService.getDownloadDirectoryApps()
-            val downloadDirectorySet = downloadDirectoryApps.toHashSet()
-
-            // Filter Steam apps first (no pagination yet)
-            // Note: Don't sort individual lists - we'll sort the combined list for consistent ordering
-            val filteredSteamApps: List<SteamApp> = appList
-                .asSequence()
-                .filter { item ->
-                    SteamService.familyMembers.ifEmpty {
-                        // Handle the case where userSteamId might be null
-                        SteamService.userSteamId?.let { steamId ->
-                            listOf(steamId.accountID.toInt())
-                        } ?: emptyList()
-                    }.let { owners ->
-                        if (owners.isEmpty()) {
-                            true                       // no owner info ⇒ don’t filter the item out
-                        } else {
-                            owners.any { item.ownerAccountId.contains(it) }
-                        }
-                    }
-                }
-                .filter { item ->
-                    currentFilter.any { item.type == it }
-                }
-                .filter { item ->
-                    if (currentState.appInfoSortType.contains(AppFilter.SHARED)) {
-                        true
-                    } else {
-                        item.ownerAccountId.contains(PrefManager.steamUserAccountId) || PrefManager.steamUserAccountId == 0
-                    }
-                }
-                .filter { item ->
-                    if (currentState.searchQuery.isNotEmpty()) {
-                        item.name.contains(currentState.searchQuery, ignoreCase = true)
-                    } else {
-                        true
-                    }
-                }
-                .filter { item ->
-                    if (currentState.appInfoSortType.contains(AppFilter.INSTALLED)) {
-                        downloadDirectoryApps.contains(SteamService.getAppDirName(item))
-                    } else {
-                        true
-                    }
-                }
-                .sortedWith(
-                    compareByDescending<SteamApp> {
-                        downloadDirectorySet.contains(SteamService.getAppDirName(it))
-                    }.thenBy { it.name.lowercase() }
-                )
-                .toList()
-
-            // Map Steam apps to UI items
-            data class LibraryEntry(val item: LibraryItem, val isInstalled: Boolean)
-            val steamEntries: List<LibraryEntry> = filteredSteamApps.map { item ->
-                val isInstalled = downloadDirectorySet.contains(SteamService.getAppDirName(item))
-                LibraryEntry(
-                    item = LibraryItem(
-                        index = 0, // temporary, will be re-indexed after combining and paginating
-                        appId = "${GameSource.STEAM.name}_${item.id}",
-                        name = item.name,
-                        iconHash = item.clientIconHash,
-                        isShared = (PrefManager.steamUserAccountId != 0 && !item.ownerAccountId.contains(PrefManager.steamUserAccountId)),
-                    ),
-                    isInstalled = isInstalled,
-                )
-            }
+            syncLibraryIndex()
 
-            // Scan Custom Games roots and create UI items (filtered by search query inside scanner)
-            // Only include custom games if GAME filter is selected
-            val customGameItems = if (currentState.appInfoSortType.contains(AppFilter.GAME)) {
-                CustomGameScanner.scanAsLibraryItems(
-                    query = currentState.searchQuery
-                )
-            } else {
-                emptyList()
-            }
-            val customEntries = customGameItems.map { LibraryEntry(it, true) }
-
-            // Filter GOG games
-            val filteredGOGGames = gogGameList
-                .asSequence()
-                .filter { game ->
-                    if (currentState.searchQuery.isNotEmpty()) {
-                        game.title.contains(currentState.searchQuery, ignoreCase = true)
-                    } else {
-                        true
-                    }
-                }
-                .filter { game ->
-                    if (currentState.appInfoSortType.contains(AppFilter.INSTALLED)) {
-                        game.isInstalled
-                    } else {
-                        true
-                    }
-                }
-                .toList()
-
-            val gogEntries = filteredGOGGames.map { game ->
-                LibraryEntry(
-                    item = LibraryItem(
-                        index = 0,
-                        appId = "${GameSource.GOG.name}_${game.id}",
-                        name = game.title,
-                        iconHash = game.imageUrl.ifEmpty { game.iconUrl },
-                        isShared = false,
-                        gameSource = GameSource.GOG,
-                    ),
-                    isInstalled = game.isInstalled,
-                )
+            val owners = SteamService.familyMembers.ifEmpty {
+                // Handle the case where userSteamId might be null
+                SteamService.userSteamId?.let { steamId ->
+                    listOf(steamId.accountID.toInt())
+                } ?: emptyList()
             }
+            val showShared = currentState.appInfoSortType.contains(AppFilter.SHARED)
+            val steamUserAccountId = PrefManager.steamUserAccountId
+
+            val query = LibraryIndex.Query(
+                text = currentState.searchQuery,
+                sources = buildSet {
+                    if (currentState.showSteamInLibrary) add(GameSource.STEAM)
+                    if (currentState.showCustomGamesInLibrary) add(GameSource.CUSTOM_GAME)
+                    if (currentState.showGOGInLibrary) add(GameSource.GOG)
+                },
+                steamTypes = AppFilter.getAppType(currentState.appInfoSortType),
+                installedOnly = currentState.appInfoSortType.contains(AppFilter.INSTALLED),
+                // Custom games only show up with the GAME filter, and are always treated as installed
+                excludedSources = if (currentState.appInfoSortType.contains(AppFilter.GAME)) emptySet() else setOf(GameSource.CUSTOM_GAME),
+                steamFilter = { entry ->
+                    // no owner info ⇒ don't filter the item out
+                    val ownedByFamily = owners.isEmpty() || owners.any { entry.ownerAccountIds.contains(it) }
+                    val sharedAllowed = showShared || steamUserAccountId == 0 || entry.ownerAccountIds.contains(steamUserAccountId)
+                    ownedByFamily && sharedAllowed
+                },
+            )
+
+            // Determine how many pages to produce for incremental loading
+            val pageSize = PrefManager.itemsPerPage
+            val result = libraryIndex.query(query, limit = (paginationPage + 1) * pageSize)
 
-            val gogInstalledCount = filteredGOGGames.count { it.isInstalled }
             // Save game counts for skeleton loaders (only when not searching, to get accurate counts)
-            // This needs to happen before filtering by source, so we save the total counts
+            // These are counted before filtering by source, so they are the total counts
             if (currentState.searchQuery.isEmpty()) {
-                PrefManager.customGamesCount = customGameItems.size
-                PrefManager.steamGamesCount = filteredSteamApps.size
-                PrefManager.gogGamesCount = filteredGOGGames.size
+                val customCount = result.countBySource[GameSource.CUSTOM_GAME] ?: 0
+                val steamCount = result.countBySource[GameSource.STEAM] ?: 0
+                val gogCount = result.countBySource[GameSource.GOG] ?: 0
+                val gogInstalledCount = result.installedCountBySource[GameSource.GOG] ?: 0
+                PrefManager.customGamesCount = customCount
+                PrefManager.steamGamesCount = steamCount
+                PrefManager.gogGamesCount = gogCount
                 PrefManager.gogInstalledGamesCount = gogInstalledCount
-                Timber.tag("LibraryViewModel").d("Saved counts - Custom: ${customGameItems.size}, Steam: ${filteredSteamApps.size}, GOG: ${filteredGOGGames.size}, GOG installed: $gogInstalledCount")
+                Timber.tag("LibraryViewModel").d("Saved counts - Custom: $customCount, Steam: $steamCount, GOG: $gogCount, GOG installed: $gogInstalledCount")
             }
 
-            // Apply App Source filters
-            val includeSteam = _state.value.showSteamInLibrary
-            val includeOpen = _state.value.showCustomGamesInLibrary
-            val includeGOG = _state.value.showGOGInLibrary
-
-            // Combine all lists and sort: installed games first, then alphabetically
-            val combined = buildList<LibraryEntry> {
-                if (includeSteam) addAll(steamEntries)
-                if (includeOpen) addAll(customEntries)
-                if (includeGOG) addAll(gogEntries)
-            }.sortedWith(
-                // Primary sort: installed status (0 = installed at top, 1 = not installed at bottom)
-                // Secondary sort: alphabetically by name (case-insensitive)
-                compareBy<LibraryEntry> { entry ->
-                    if (entry.isInstalled) 0 else 1
-                }.thenBy { it.item.name.lowercase() }
-            ).also { sortedList ->
-                if (sortedList.isNotEmpty()) {
-                    val installedCount = sortedList.count { it.isInstalled }
-                    val first10 = sortedList.take(10)
-                }
-            }.mapIndexed { idx, entry -> entry.item.copy(index = idx) }
-
             // Total count for the current filter
-            val totalFound = combined.size
+            val totalFound = result.total
 
-            // Determine how many pages and slice the list for incremental loading
-            val pageSize = PrefManager.itemsPerPage
             // Update internal pagination state
             paginationCurrentPage = paginationPage
             lastPageInCurrentFilter = if (totalFound == 0) 0 else (totalFound - 1) / pageSize
-            // Calculate how many items to show: (pagesLoaded * pageSize)
-            val endIndex = min((paginationPage + 1) * pageSize, totalFound)
-            val pagedList = combined.take(endIndex)
+            // The query already stopped at (pagesLoaded * pageSize) items
+            val pagedList = result.items
 
             Timber.tag("LibraryViewModel").d("Filtered list size (with Custom Games): ${totalFound}")
 
@@ -413,6 +383,9 @@ class LibraryViewModel @Inject constructor(
             // Fetch compatibility for current page games
             fetchCompatibilityForPage(pagedList.map { it.name })
 
+            // Load the page's Steam apps into the catalog so binding the items stays off the database
+            SteamService.preloadAppInfos(pagedList.filter { it.gameSource == GameSource.STEAM }.map { it.gameId })
+
             _state.update {
                 it.copy(
                     appInfoList = pagedList,
@@ -427,7 +400,8 @@ class LibraryViewModel @Inject constructor(
 
     /**
      * Fetches compatibility information for games in paginated batches.
-     * Checks cache first, then fetches uncached games in batches of 50.
+     * Served from the persistent cache where possible; uncached games are fetched in batches of 50,
+     * and games already being fetched by an earlier page load are not requested again.
      */
     private fun fetchCompatibilityForPage(gameNames: List<String>) {
         if (gameNames.isEmpty()) {
@@ -445,45 +419,17 @@ class LibraryViewModel @Inject constructor(
 
         viewModelScope.launch(Dispatchers.IO) {
             try {
-                // Separate cached and uncached games
-                val uncachedGames = mutableListOf<String>()
-                val cachedResults = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
-
-                for (gameName in gameNames) {
-                    val cached = GameCompatibilityCache.getCached(gameName)
-                    if (cached != null) {
-                        cachedResults[gameName] = cached
-                        Timber.tag("LibraryViewModel").d("Using cached result for: $gameName")
-                    } else {
-                        uncachedGames.add(gameName)
-                    }
-                }
-
-                Timber.tag("LibraryViewModel").d("Cached: ${cachedResults.size}, Uncached: ${uncachedGames.size}")
+                // Skip games whose status is already known
+                val knownGames = _state.value.compatibilityMap.keys
+                val pendingGames = gameNames.filter { it !in knownGames }.distinct()
 
-                // Fetch uncached games in batches of 50
                 val batchSize = 50
-                val fetchedResults = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
-
-                for (i in uncachedGames.indices step batchSize) {
-                    val batch = uncachedGames.subList(i, min(i + batchSize, uncachedGames.size))
-                    Timber.tag("LibraryViewModel").d("Fetching batch ${i / batchSize + 1} with ${batch.size} games")
-                    val batchResults = GameCompatibilityService.fetchCompatibility(batch, gpuName)
-
-                    if (batchResults != null) {
-                        Timber.tag("LibraryViewModel").d("Received ${batchResults.size} results from API")
-                        // Cache all results
-                        batchResults.forEach { (gameName, response) ->
-                            GameCompatibilityCache.cache(gameName, response)
-                            fetchedResults[gameName] = response
-                        }
-                    } else {
-                        Timber.tag("LibraryViewModel").w("API returned null for batch")
-                    }
+                val allResults = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
+
+                for (batch in pendingGames.chunked(batchSize)) {
+                    allResults.putAll(GameCompatibilityCache.getOrFetch(batch, gpuName))
                 }
 
-                // Combine cached and fetched results
-                val allResults = cachedResults + fetchedResults
                 Timber.tag("LibraryViewModel").d("Total results: ${allResults.size}")
 
                 // Convert to compatibility status map
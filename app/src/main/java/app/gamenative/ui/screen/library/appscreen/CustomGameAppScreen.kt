@@ -306,7 +306,7 @@ class CustomGameAppScreen : BaseAppScreen() {
                             if (exeFile.exists()) {
                                 val outIco = java.io.File(exeFile.parentFile, exeFile.nameWithoutExtension + ".extracted.ico")
                                 Timber.tag("CustomGameAppScreen").d("Attempting to extract icon to: ${outIco.absolutePath}")
-                                val extracted = app.gamenative.utils.ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)
+                                val extracted = CustomGameScanner.extractIcon(exeFile, outIco)
                                 Timber.tag("CustomGameAppScreen").d("Icon extraction result: $extracted")
 
                                 if (extracted) {
@@ -331,7 +331,7 @@ class CustomGameAppScreen : BaseAppScreen() {
                             // Only extract if we haven't already extracted from the selected exe
                             if (!outIco.exists()) {
                                 Timber.tag("CustomGameAppScreen").d("Attempting to extract icon to: ${outIco.absolutePath}")
-                                val extracted = app.gamenative.utils.ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)
+                                val extracted = CustomGameScanner.extractIcon(exeFile, outIco)
                                 Timber.tag("CustomGameAppScreen").d("Icon extraction result: $extracted")
 
                                 if (extracted) {
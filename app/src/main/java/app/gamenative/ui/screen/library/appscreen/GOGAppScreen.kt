@@ -185,8 +185,9 @@ class GOGAppScreen : BaseAppScreen() {
         val downloadInfo = GOGService.getDownloadInfo(libraryItem.gameId.toString())
         val progress = downloadInfo?.getProgress() ?: 0f
         val isActive = downloadInfo?.isActive() ?: false
-        val downloading = downloadInfo != null && isActive && progress < 1f
-        Timber.tag(TAG).d("isDownloading: appId=${libraryItem.appId}, hasDownloadInfo=${downloadInfo != null}, active=$isActive, progress=$progress, result=$downloading")
+        val failed = downloadInfo?.isFailed() ?: false
+        val downloading = downloadInfo != null && isActive && !failed && progress < 1f
+        Timber.tag(TAG).d("isDownloading: appId=${libraryItem.appId}, hasDownloadInfo=${downloadInfo != null}, active=$isActive, failed=$failed, progress=$progress, result=$downloading")
         return downloading
     }
 
@@ -209,7 +210,7 @@ class GOGAppScreen : BaseAppScreen() {
         // GOGService expects numeric gameId
         val gameId = libraryItem.gameId.toString()
         val downloadInfo = GOGService.getDownloadInfo(gameId)
-        val isDownloading = downloadInfo != null && (downloadInfo.getProgress() ?: 0f) < 1f
+        val isDownloading = downloadInfo != null && !downloadInfo.isFailed() && (downloadInfo.getProgress() ?: 0f) < 1f
         val installed = isInstalled(context, libraryItem)
 
         Timber.tag(TAG).d("onDownloadInstallClick: appId=${libraryItem.appId}, isDownloading=$isDownloading, installed=$installed")
@@ -325,7 +326,7 @@ class GOGAppScreen : BaseAppScreen() {
         // GOGService expects numeric gameId
         val gameId = libraryItem.gameId.toString()
         val downloadInfo = GOGService.getDownloadInfo(gameId)
-        val isDownloading = downloadInfo != null && (downloadInfo.getProgress() ?: 0f) < 1f
+        val isDownloading = downloadInfo != null && !downloadInfo.isFailed() && (downloadInfo.getProgress() ?: 0f) < 1f
         val isInstalled = isInstalled(context, libraryItem)
         Timber.tag(TAG).d("onDeleteDownloadClick: appId=${libraryItem.appId}, isDownloading=$isDownloading, isInstalled=$isInstalled")
 
@@ -167,9 +167,9 @@ class SteamAppScreen : BaseAppScreen() {
         libraryItem: LibraryItem
     ): GameDisplayInfo {
         val gameId = libraryItem.gameId
-        val appInfo = remember(libraryItem.appId) {
-            SteamService.getAppInfoOf(gameId)
-        } ?: return GameDisplayInfo(
+        val appInfo = produceState(SteamService.peekAppInfoOf(gameId), libraryItem.appId) {
+            value = SteamService.loadAppInfoOf(gameId)
+        }.value ?: return GameDisplayInfo(
             name = libraryItem.name,
             developer = "",
             releaseDate = 0L,
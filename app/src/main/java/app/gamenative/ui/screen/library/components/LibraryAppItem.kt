@@ -36,7 +36,6 @@ import androidx.compose.material3.MaterialTheme
 import androidx.compose.material3.Surface
 import androidx.compose.material3.Text
 import androidx.compose.runtime.Composable
-import androidx.compose.runtime.DisposableEffect
 import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableFloatStateOf
@@ -457,15 +456,10 @@ internal fun GameInfoBlock(
         }
     }
 
-    // Listen to real-time progress updates via listener
-    DisposableEffect(downloadInfo) {
-        val onDownloadProgress: (Float) -> Unit = { progress ->
-            downloadProgress = progress
-        }
-        downloadInfo?.addProgressListener(onDownloadProgress)
-
-        onDispose {
-            downloadInfo?.removeProgressListener(onDownloadProgress)
+    // Follow the conflated progress flow rather than every chunk update
+    LaunchedEffect(downloadInfo) {
+        downloadInfo?.progressFlow?.collect {
+            downloadProgress = downloadInfo.getProgress()
         }
     }
 
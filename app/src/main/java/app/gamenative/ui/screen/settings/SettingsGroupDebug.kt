@@ -73,6 +73,8 @@ fun SettingsGroupDebug() {
     // states for debug toggles
     var enableWineDebugPref by rememberSaveable { mutableStateOf(PrefManager.enableWineDebug) }
     var enableBox86Logs by rememberSaveable { mutableStateOf(WinlatorPrefManager.getBoolean("enable_box86_64_logs", false)) }
+    var useBuiltinPulseServer by rememberSaveable { mutableStateOf(PrefManager.useBuiltinPulseServer) }
+    var captureFrameTimes by rememberSaveable { mutableStateOf(PrefManager.captureFrameTimes) }
     var latestCrashFile: File? by rememberSaveable { mutableStateOf(null) }
     LaunchedEffect(Unit) {
         val crashDir = File(context.getExternalFilesDir(null), "crash_logs")
@@ -189,6 +191,26 @@ fun SettingsGroupDebug() {
                 WinlatorPrefManager.putBoolean("enable_box86_64_logs", it)
             },
         )
+        SettingsSwitch(
+            colors = settingsTileColorsAlt(),
+            state = useBuiltinPulseServer,
+            title = { Text(text = stringResource(R.string.settings_debug_builtin_pulse_server_title)) },
+            subtitle = { Text(text = stringResource(R.string.settings_debug_builtin_pulse_server_subtitle)) },
+            onCheckedChange = {
+                useBuiltinPulseServer = it
+                PrefManager.useBuiltinPulseServer = it
+            },
+        )
+        SettingsSwitch(
+            colors = settingsTileColorsAlt(),
+            state = captureFrameTimes,
+            title = { Text(text = stringResource(R.string.settings_debug_capture_frame_times_title)) },
+            subtitle = { Text(text = stringResource(R.string.settings_debug_capture_frame_times_subtitle)) },
+            onCheckedChange = {
+                captureFrameTimes = it
+                PrefManager.captureFrameTimes = it
+            },
+        )
         SettingsMenuLink(
             colors = settingsTileColors(),
             title = { Text(text = stringResource(R.string.settings_debug_view_crash_title)) },
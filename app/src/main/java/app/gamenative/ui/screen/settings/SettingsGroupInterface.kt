@@ -66,6 +66,7 @@ import kotlinx.coroutines.withContext
 import kotlinx.coroutines.launch
 import app.gamenative.utils.LocaleHelper
 import app.gamenative.ui.component.dialog.GOGLoginDialog
+import app.gamenative.service.SteamService
 import app.gamenative.service.gog.GOGService
 import android.content.Context
 import kotlinx.coroutines.CoroutineScope
@@ -366,6 +367,7 @@ fun SettingsGroupInterface(
                     downloadSpeedValue = newIndex
                     val index = newIndex.roundToInt().coerceIn(0, 3)
                     PrefManager.downloadSpeed = downloadSpeedValues[index]
+                    SteamService.onDownloadSpeedChanged(downloadSpeedValues[index])
                 },
                 valueRange = 0f..3f,
                 steps = 2, // Creates exactly 4 positions: 0, 1, 2, 3
@@ -116,8 +116,10 @@ import com.winlator.xenvironment.components.GlibcProgramLauncherComponent
 import com.winlator.xenvironment.components.GuestProgramLauncherComponent
 import com.winlator.xenvironment.components.NetworkInfoUpdateComponent
 import com.winlator.xenvironment.components.PulseAudioComponent
+import com.winlator.xenvironment.components.PulseServerComponent
 import com.winlator.xenvironment.components.SteamClientComponent
 import com.winlator.xenvironment.components.SysVSharedMemoryComponent
+import com.winlator.xenvironment.components.ThreadPlacementComponent
 import com.winlator.xenvironment.components.VirGLRendererComponent
 import com.winlator.xenvironment.components.VortekRendererComponent
 import com.winlator.xenvironment.components.XServerComponent
@@ -575,9 +577,8 @@ fun XServerScreen(
                                 xServerState.value.winStarted = true
                             }
                             if (window.id == frameRatingWindowId) {
-                                (context as? Activity)?.runOnUiThread {
-                                    frameRating?.update()
-                                }
+                                // Timed here, on the X server thread, where Present completions land
+                                frameRating?.update()
                             }
                         }
 
@@ -858,6 +859,25 @@ fun XServerScreen(
             }
             frameRating = FrameRating(context)
             frameRating?.setVisibility(View.GONE)
+            frameRating?.setCompositorRecorder(xServerView.renderer.frameTimes)
+            frameRating?.setCaptureToFile(PrefManager.captureFrameTimes)
+            frameRating?.setSessionTags(
+                linkedMapOf(
+                    "game" to currentAppInfo?.name.toString(),
+                    "container" to container.name,
+                    "device" to "${Build.MANUFACTURER} ${Build.MODEL} (${Build.HARDWARE})",
+                    "android" to Build.VERSION.RELEASE,
+                    "screen_size" to container.screenSize,
+                    "wine" to container.wineVersion,
+                    "graphics_driver" to "${container.graphicsDriver} ${container.graphicsDriverVersion}",
+                    "graphics_driver_config" to container.graphicsDriverConfig,
+                    "dx_wrapper" to container.dxWrapper,
+                    "dx_wrapper_config" to container.dxWrapperConfig,
+                    "emulator" to container.emulator,
+                    "box64" to "${container.box64Version} ${container.box64Preset}",
+                    "fexcore" to "${container.fexCoreVersion} ${container.fexCorePreset}",
+                ),
+            )
 
             if (container.isShowFPS()) {
                 Timber.i("Attempting to show FPS")
@@ -1371,6 +1391,14 @@ private fun shiftXEnvironmentToContext(
     if (pulseComponent != null) {
         environment.addComponent(pulseComponent)
     }
+    val pulseServerComponent = xEnvironment.getComponent<PulseServerComponent>(PulseServerComponent::class.java)
+    if (pulseServerComponent != null) {
+        environment.addComponent(pulseServerComponent)
+    }
+    val threadPlacementComponent = xEnvironment.getComponent<ThreadPlacementComponent>(ThreadPlacementComponent::class.java)
+    if (threadPlacementComponent != null) {
+        environment.addComponent(threadPlacementComponent)
+    }
     var virglComponent: VirGLRendererComponent? =
         xEnvironment.getComponent<VirGLRendererComponent>(VirGLRendererComponent::class.java)
     if (virglComponent != null) {
@@ -1561,6 +1589,9 @@ private fun setupXEnvironment(
     environment.addComponent(XServerComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH)))
     environment.addComponent(NetworkInfoUpdateComponent())
     environment.addComponent(SteamClientComponent())
+    val guestAffinityMask = ProcessHelper.getAffinityMask(container.getCPUList(true)) or
+        ProcessHelper.getAffinityMask(container.getCPUListWoW64(true))
+    environment.addComponent(ThreadPlacementComponent(guestAffinityMask))
 
     // environment.addComponent(SteamClientComponent(UnixSocketConfig.createSocket(
     //     rootPath,
@@ -1576,7 +1607,12 @@ private fun setupXEnvironment(
         environment.addComponent(ALSAServerComponent(UnixSocketConfig.createSocket(imageFs.getRootDir().getPath(), UnixSocketConfig.ALSA_SERVER_PATH), options))
     } else if (xServerState.value.audioDriver == "pulseaudio") {
         envVars.put("PULSE_SERVER", imageFs.getRootDir().getPath() + UnixSocketConfig.PULSE_SERVER_PATH)
-        environment.addComponent(PulseAudioComponent(UnixSocketConfig.createSocket(imageFs.getRootDir().getPath(), UnixSocketConfig.PULSE_SERVER_PATH)))
+        if (PrefManager.useBuiltinPulseServer) {
+            val options = ALSAClient.Options.fromKeyValueSet(null)
+            environment.addComponent(PulseServerComponent(UnixSocketConfig.createSocket(imageFs.getRootDir().getPath(), UnixSocketConfig.PULSE_SERVER_PATH), options))
+        } else {
+            environment.addComponent(PulseAudioComponent(UnixSocketConfig.createSocket(imageFs.getRootDir().getPath(), UnixSocketConfig.PULSE_SERVER_PATH)))
+        }
     }
 
     if (xServerState.value.graphicsDriver == "virgl") {
@@ -13,6 +13,9 @@ import com.winlator.core.KeyValueSet
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.JsonPrimitive
@@ -23,8 +26,8 @@ import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
 import org.json.JSONObject
 import timber.log.Timber
+import java.io.File
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Service for fetching best configurations for games from GameNative API.
@@ -32,18 +35,27 @@ import java.util.concurrent.ConcurrentHashMap
 object BestConfigService {
     private const val API_BASE_URL = "https://gamenative-best-config-worker.gamenative.workers.dev/api/best-config"
     private const val TIMEOUT_SECONDS = 10L
+    private const val CACHE_FILE = "best_config_cache.json"
 
     private val httpClient = OkHttpClient.Builder()
         .connectTimeout(10, TimeUnit.SECONDS)
         .readTimeout(10, TimeUnit.SECONDS)
         .build()
 
-    // In-memory cache keyed by "${gameName}_${gpuName}"
-    private val cache = ConcurrentHashMap<String, BestConfigResponse>()
+    // Persistent cache keyed by "${gameName}_${gpuName}"
+    private val cache = ResponseCache("best config")
+
+    /**
+     * Binds the cache to its file in the app's cache directory.
+     */
+    fun init(context: Context) {
+        cache.attach(File(context.cacheDir, CACHE_FILE))
+    }
 
     /**
      * Data class for API response.
      */
+    @Serializable
     data class BestConfigResponse(
         val bestConfig: JsonObject,
         val matchType: String, // "exact_gpu_match" | "gpu_family_match" | "fallback_match" | "no_match"
@@ -62,6 +74,7 @@ object BestConfigService {
     /**
      * Fetches best configuration for a game.
      * Returns cached response if available, otherwise makes API call.
+     * Concurrent requests for the same game and GPU share a single API call.
      */
     suspend fun fetchBestConfig(
         gameName: String,
@@ -69,13 +82,18 @@ object BestConfigService {
     ): BestConfigResponse? = withContext(Dispatchers.IO) {
         val cacheKey = "${gameName}_${gpuName}"
 
-        // Check cache first
-        cache[cacheKey]?.let {
-            Timber.tag("BestConfigService").d("Using cached config for $cacheKey")
-            return@withContext it
+        val cached = cache.getOrLoad(cacheKey) {
+            requestBestConfig(gameName, gpuName)?.let { Json.encodeToString(it) }
         }
 
-        try {
+        cached?.let { Json.decodeFromString<BestConfigResponse>(it) }
+    }
+
+    private suspend fun requestBestConfig(
+        gameName: String,
+        gpuName: String
+    ): BestConfigResponse? {
+        return try {
             withTimeout(TIMEOUT_SECONDS * 1000) {
                 val requestBody = JSONObject().apply {
                     put("gameName", gameName)
@@ -112,9 +130,6 @@ object BestConfigService {
                     matchedDeviceId = jsonResponse.getInt("matchedDeviceId")
                 )
 
-                // Cache the response
-                cache[cacheKey] = bestConfigResponse
-
                 Timber.tag("BestConfigService")
                     .d("Fetched best config for $gameName on $gpuName (matchType: ${bestConfigResponse.matchType})")
 
@@ -12,6 +12,7 @@ import app.gamenative.utils.CustomGameScanner
 import com.winlator.container.Container
 import com.winlator.container.ContainerData
 import com.winlator.container.ContainerManager
+import com.winlator.container.ContainerRegistry
 import com.winlator.core.DefaultVersion
 import com.winlator.core.FileUtils
 import com.winlator.core.GPUInformation
@@ -480,17 +481,12 @@ object ContainerUtils {
     }
 
     fun hasContainer(context: Context, appId: String): Boolean {
-        val containerManager = ContainerManager(context)
-        return containerManager.hasContainer(appId)
+        return ContainerRegistry.get(context).hasContainer(appId)
     }
 
     fun getContainer(context: Context, appId: String): Container {
-        val containerManager = ContainerManager(context)
-        return if (containerManager.hasContainer(appId)) {
-            containerManager.getContainerById(appId)
-        } else {
-            throw Exception("Container does not exist for game $appId")
-        }
+        return ContainerRegistry.get(context).getContainer(appId)
+            ?: throw Exception("Container does not exist for game $appId")
     }
 
     private fun createNewContainer(
@@ -0,0 +1,501 @@
+package app.gamenative.utils
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.ClosedWatchServiceException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.runBlocking
+import timber.log.Timber
+
+/**
+ * Cache of what custom game discovery found in each game folder: its executables, images and
+ * stored game ID, so library refreshes do not list every game folder again.
+ *
+ * A folder is listed again only once its modification time, or that of one of its immediate
+ * subfolders, changed. While [startWatching] is active, scanned folders are also registered with
+ * a file system watcher and trusted until it reports a change, so unchanged folders are not even
+ * stat'ed. Records are keyed by absolute path and persisted to [storeFile].
+ *
+ * Icon extraction for every custom game runs on one worker pool of [parallelism] workers.
+ */
+class CustomGameDiscovery(
+    private val storeFile: File,
+    private val readGameId: (File) -> Int?,
+    parallelism: Int = DEFAULT_PARALLELISM,
+) : Closeable {
+
+    /**
+     * What one scan of a game folder found. Paths are relative to the folder and use '/'.
+     */
+    data class Record(
+        val path: String,
+        val mtime: Long,
+        /** Modification times of the immediate subfolders, by name. */
+        val subdirs: Map<String, Long>,
+        /** Executables in the folder root or its immediate subfolders, uninstallers excluded. */
+        val executables: List<String>,
+        /** .ico and .png files in the folder root or its immediate subfolders. */
+        val images: List<String>,
+        /** SteamGridDB logo in the folder root, if any. */
+        val logo: String?,
+        /** Game ID stored in the folder's metadata at scan time. */
+        val gameId: Int?,
+    ) {
+        val folder: File
+            get() = File(path)
+
+        /** The executable, if the folder has exactly one. */
+        val uniqueExecutable: String?
+            get() = executables.singleOrNull()
+
+        val hasExtractedIcon: Boolean
+            get() = images.any { it.endsWith(EXTRACTED_ICON_SUFFIX, ignoreCase = true) }
+    }
+
+    private val lock = Any()
+    private val records = HashMap<String, Record>()
+
+    // Folders registered with the watcher that did not change since they were scanned
+    private val trusted = HashSet<String>()
+    private var loaded = false
+    private var dirty = false
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO.limitedParallelism(parallelism))
+    private val iconJobs = ConcurrentHashMap<String, Deferred<Boolean>>()
+    private val failedIcons = ConcurrentHashMap.newKeySet<String>()
+
+    @Volatile
+    private var watcher: Watcher? = null
+
+    private val _changes = MutableStateFlow(0L)
+
+    /** Incremented whenever a discovered folder was reported or marked as changed. */
+    val changes: StateFlow<Long> = _changes.asStateFlow()
+
+    private val scans = AtomicInteger()
+
+    /** Number of folders listed since this instance was created. */
+    val scanCount: Int
+        get() = scans.get()
+
+    val size: Int
+        get() = synchronized(lock) {
+            loadLocked()
+            records.size
+        }
+
+    /**
+     * Returns what [folder] contains, listing it only if it changed since the stored scan.
+     * Returns null if the folder does not exist.
+     */
+    fun discover(folder: File): Record? {
+        val path = folder.absolutePath
+        val cached = synchronized(lock) {
+            loadLocked()
+            records[path]?.also { if (path in trusted) return it }
+        }
+
+        if (cached != null && isUnchanged(cached)) {
+            watch(cached)
+            return cached
+        }
+
+        if (!folder.isDirectory) {
+            synchronized(lock) {
+                if (records.remove(path) != null) dirty = true
+                trusted.remove(path)
+            }
+            watcher?.unregister(path)
+            return null
+        }
+
+        val record = scan(folder)
+        synchronized(lock) {
+            records[path] = record
+            dirty = true
+        }
+        watch(record)
+        return record
+    }
+
+    /**
+     * Returns the stored record of [folder] without checking it against the file system.
+     */
+    fun peek(folder: File): Record? = synchronized(lock) {
+        loadLocked()
+        records[folder.absolutePath]
+    }
+
+    /**
+     * Forces [folder] to be listed again on next use, e.g. after the app wrote files into it.
+     */
+    fun invalidate(folder: File) {
+        val path = folder.absolutePath
+        synchronized(lock) {
+            loadLocked()
+            if (records.remove(path) == null) return
+            trusted.remove(path)
+            dirty = true
+        }
+        _changes.update { it + 1 }
+    }
+
+    /**
+     * Drops the records of every folder not in [paths], e.g. folders removed from the library.
+     */
+    fun retainOnly(paths: Collection<String>) {
+        val keep = paths.mapTo(HashSet()) { File(it).absolutePath }
+        val dropped = synchronized(lock) {
+            loadLocked()
+            val stale = records.keys.filter { it !in keep }
+            stale.forEach {
+                records.remove(it)
+                trusted.remove(it)
+            }
+            if (stale.isNotEmpty()) dirty = true
+            stale
+        }
+        dropped.forEach { watcher?.unregister(it) }
+    }
+
+    /**
+     * Extracts the main icon of [exeFile] into [outIcoFile] on the worker pool. Concurrent
+     * requests for the same icon share one extraction, and executables that have no icon are
+     * not parsed again until they change.
+     */
+    fun extractIconAsync(exeFile: File, outIcoFile: File): Deferred<Boolean> {
+        val failureKey = "${exeFile.absolutePath}:${exeFile.lastModified()}"
+        if (failureKey in failedIcons) return CompletableDeferred(false)
+
+        val key = outIcoFile.absolutePath
+        val job = iconJobs.computeIfAbsent(key) {
+            scope.async {
+                val extracted = try {
+                    ExeIconExtractor.tryExtractMainIcon(exeFile, outIcoFile)
+                } catch (e: Exception) {
+                    Timber.tag("CustomGameDiscovery").d(e, "Icon extraction failed for ${exeFile.name}")
+                    false
+                }
+                if (!extracted) failedIcons += failureKey
+                extracted
+            }
+        }
+        job.invokeOnCompletion { iconJobs.remove(key, job) }
+        return job
+    }
+
+    /**
+     * Blocking variant of [extractIconAsync] for callers that need the icon right away.
+     */
+    fun extractIcon(exeFile: File, outIcoFile: File): Boolean = runBlocking {
+        extractIconAsync(exeFile, outIcoFile).await()
+    }
+
+    /**
+     * Starts watching scanned folders for changes. Returns false if the platform offers no
+     * file system watcher, in which case folders are checked by modification time only.
+     */
+    fun startWatching(): Boolean {
+        if (watcher != null) return true
+        val service = try {
+            FileSystems.getDefault().newWatchService()
+        } catch (e: Exception) {
+            Timber.tag("CustomGameDiscovery").w(e, "File system watcher not available")
+            return false
+        }
+        synchronized(this) {
+            if (watcher != null) {
+                service.close()
+                return true
+            }
+            watcher = Watcher(service).also { it.start() }
+        }
+        return true
+    }
+
+    fun stopWatching() {
+        val stopped = synchronized(this) {
+            watcher.also { watcher = null }
+        } ?: return
+        stopped.close()
+        synchronized(lock) { trusted.clear() }
+    }
+
+    /**
+     * Writes the records to [storeFile] if they changed since they were loaded.
+     */
+    fun save() {
+        val snapshot = synchronized(lock) {
+            if (!dirty) return
+            dirty = false
+            records.values.toList()
+        }
+        write(snapshot)
+    }
+
+    override fun close() {
+        stopWatching()
+        save()
+        scope.cancel()
+    }
+
+    private fun isUnchanged(record: Record): Boolean {
+        if (File(record.path).lastModified() != record.mtime) return false
+        return record.subdirs.all { (name, mtime) -> File(record.path, name).lastModified() == mtime }
+    }
+
+    private fun watch(record: Record) {
+        val watcher = watcher ?: return
+        if (watcher.register(record)) {
+            synchronized(lock) {
+                if (records[record.path] === record) trusted += record.path
+            }
+        }
+    }
+
+    private fun onFolderChanged(path: String) {
+        val wasTrusted = synchronized(lock) { trusted.remove(path) }
+        // Only the first event after a scan is reported, so a folder a game keeps writing to
+        // does not keep refreshing the library
+        if (wasTrusted) _changes.update { it + 1 }
+    }
+
+    private fun onAllChanged() {
+        synchronized(lock) { trusted.clear() }
+        _changes.update { it + 1 }
+    }
+
+    private fun scan(folder: File): Record {
+        scans.incrementAndGet()
+        val executables = mutableListOf<String>()
+        val images = mutableListOf<String>()
+        val subdirs = LinkedHashMap<String, Long>()
+        var logo: String? = null
+
+        val children = folder.listFiles() ?: emptyArray()
+        for (child in children) {
+            if (child.isDirectory) {
+                subdirs[child.name] = child.lastModified()
+                continue
+            }
+            if (!child.isFile) continue
+            if (child.isValidExe()) executables += child.name
+            if (child.isImage()) images += child.name
+            if (logo == null && child.isSteamGridLogo()) logo = child.name
+        }
+        for (name in subdirs.keys) {
+            File(folder, name).listFiles()?.forEach { f ->
+                if (!f.isFile) return@forEach
+                if (f.isValidExe()) executables += "$name/${f.name}"
+                if (f.isImage()) images += "$name/${f.name}"
+            }
+        }
+
+        return Record(
+            path = folder.absolutePath,
+            mtime = folder.lastModified(),
+            subdirs = subdirs,
+            executables = executables.distinct(),
+            images = images,
+            logo = logo,
+            gameId = readGameId(folder),
+        )
+    }
+
+    private fun loadLocked() {
+        if (loaded) return
+        loaded = true
+        read()?.forEach { records[it.path] = it }
+    }
+
+    private fun read(): List<Record>? {
+        if (!storeFile.isFile) return null
+        return try {
+            DataInputStream(BufferedInputStream(storeFile.inputStream())).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) return null
+                val count = input.readInt()
+                val out = ArrayList<Record>(count)
+                repeat(count) {
+                    val path = input.readUTF()
+                    val mtime = input.readLong()
+                    val subdirs = LinkedHashMap<String, Long>()
+                    repeat(input.readInt()) { subdirs[input.readUTF()] = input.readLong() }
+                    val executables = List(input.readInt()) { input.readUTF() }
+                    val images = List(input.readInt()) { input.readUTF() }
+                    val logo = if (input.readBoolean()) input.readUTF() else null
+                    val gameId = input.readInt().takeIf { it > 0 }
+                    out += Record(path, mtime, subdirs, executables, images, logo, gameId)
+                }
+                out
+            }
+        } catch (e: IOException) {
+            Timber.tag("CustomGameDiscovery").w(e, "Discarding unreadable discovery cache ${storeFile.absolutePath}")
+            storeFile.delete()
+            null
+        }
+    }
+
+    private fun write(snapshot: Collection<Record>) {
+        val tmp = File(storeFile.path + ".tmp")
+        try {
+            storeFile.parentFile?.mkdirs()
+            DataOutputStream(BufferedOutputStream(tmp.outputStream())).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(snapshot.size)
+                snapshot.forEach { record ->
+                    output.writeUTF(record.path)
+                    output.writeLong(record.mtime)
+                    output.writeInt(record.subdirs.size)
+                    record.subdirs.forEach { (name, mtime) ->
+                        output.writeUTF(name)
+                        output.writeLong(mtime)
+                    }
+                    output.writeInt(record.executables.size)
+                    record.executables.forEach { output.writeUTF(it) }
+                    output.writeInt(record.images.size)
+                    record.images.forEach { output.writeUTF(it) }
+                    output.writeBoolean(record.logo != null)
+                    record.logo?.let { output.writeUTF(it) }
+                    output.writeInt(record.gameId ?: 0)
+                }
+            }
+            Files.move(tmp.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        } catch (e: IOException) {
+            Timber.tag("CustomGameDiscovery").w(e, "Failed to write discovery cache ${storeFile.absolutePath}")
+            tmp.delete()
+        }
+    }
+
+    /**
+     * Watches each scanned game folder and its immediate subfolders for added and removed
+     * entries, on a single daemon thread.
+     */
+    private class Registration(val dirs: List<String>, val keys: List<WatchKey>)
+
+    private inner class Watcher(private val service: WatchService) : Thread("CustomGameWatcher") {
+        private val folders = ConcurrentHashMap<WatchKey, String>()
+        private val registrations = ConcurrentHashMap<String, Registration>()
+        private val registeredDirs = AtomicInteger()
+
+        init {
+            isDaemon = true
+        }
+
+        fun register(record: Record): Boolean {
+            val dirs = listOf(record.path) + record.subdirs.keys.map { "${record.path}/$it" }
+            registrations[record.path]?.let { existing ->
+                // Still watching the same directories
+                if (existing.dirs == dirs && existing.keys.all { it.isValid }) return true
+                unregister(record.path)
+            }
+            if (registeredDirs.get() + dirs.size > MAX_WATCHED_DIRS) return false
+
+            val registered = mutableListOf<WatchKey>()
+            try {
+                dirs.forEach { dir ->
+                    val key = File(dir).toPath().register(
+                        service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                    )
+                    folders[key] = record.path
+                    registered += key
+                }
+            } catch (e: Exception) {
+                Timber.tag("CustomGameDiscovery").d(e, "Could not watch ${record.path}")
+                registered.forEach {
+                    it.cancel()
+                    folders.remove(it)
+                }
+                return false
+            }
+            registrations[record.path] = Registration(dirs, registered)
+            registeredDirs.addAndGet(registered.size)
+            return true
+        }
+
+        fun unregister(path: String) {
+            val removed = registrations.remove(path) ?: return
+            removed.keys.forEach {
+                it.cancel()
+                folders.remove(it)
+            }
+            registeredDirs.addAndGet(-removed.keys.size)
+        }
+
+        override fun run() {
+            while (true) {
+                val key = try {
+                    service.take()
+                } catch (e: ClosedWatchServiceException) {
+                    return
+                } catch (e: InterruptedException) {
+                    return
+                }
+                val overflow = key.pollEvents().any { it.kind() == StandardWatchEventKinds.OVERFLOW }
+                val path = folders[key]
+                if (!key.reset() && path != null) unregister(path)
+                when {
+                    overflow -> onAllChanged()
+                    path != null -> onFolderChanged(path)
+                }
+            }
+        }
+
+        fun close() {
+            try {
+                service.close()
+            } catch (e: IOException) {
+                Timber.tag("CustomGameDiscovery").d(e, "Error closing file system watcher")
+            }
+        }
+    }
+
+    companion object {
+        const val EXTRACTED_ICON_SUFFIX = ".extracted.ico"
+
+        private const val DEFAULT_PARALLELISM = 2
+
+        // Keeps well clear of the per-user inotify watch limit
+        private const val MAX_WATCHED_DIRS = 4096
+
+        private const val MAGIC = 0x43474443 // "CGDC"
+        private const val VERSION = 1
+
+        private fun File.isValidExe(): Boolean =
+            name.endsWith(".exe", ignoreCase = true) && !name.startsWith("unins", ignoreCase = true)
+
+        private fun File.isImage(): Boolean =
+            name.endsWith(".ico", ignoreCase = true) || name.endsWith(".png", ignoreCase = true)
+
+        private fun File.isSteamGridLogo(): Boolean =
+            name.startsWith("steamgriddb_logo", ignoreCase = true) &&
+                (name.endsWith(".png", ignoreCase = true) ||
+                    name.endsWith(".jpg", ignoreCase = true) ||
+                    name.endsWith(".webp", ignoreCase = true))
+    }
+}
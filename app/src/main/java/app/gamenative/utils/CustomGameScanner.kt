@@ -17,12 +17,26 @@ import app.gamenative.service.DownloadService
 import com.winlator.container.ContainerManager
 import java.io.File
 import kotlin.math.abs
-import kotlinx.coroutines.launch
+import kotlinx.coroutines.flow.StateFlow
 import timber.log.Timber
 import org.json.JSONObject
 
 object CustomGameScanner {
 
+    // What was found in each game folder, persisted so unchanged folders are not listed again
+    private val discovery by lazy {
+        CustomGameDiscovery(
+            storeFile = File(DownloadService.baseDataDirPath, ".custom_game_discovery"),
+            readGameId = { folder -> readGameIdFromFile(folder) },
+        ).also { it.startWatching() }
+    }
+
+    /**
+     * Incremented whenever a Custom Game folder changed on disk, so the library can re-scan.
+     */
+    val changes: StateFlow<Long>
+        get() = discovery.changes
+
     // Default root path for Custom Games. Always use the app's external storage sandbox
     // (Android/data/<package>/CustomGames) when available; fall back to internal only if external is unavailable.
     // This ensures the folder is visible via MTP/file managers.
@@ -102,22 +116,17 @@ object CustomGameScanner {
      */
     fun findIconFileForCustomGame(appId: String): String? {
         val folderPath = getFolderPathFromAppId(appId) ?: return null
-        val folder = File(folderPath)
-        if (!folder.exists() || !folder.isDirectory) return null
-
-        val steamGridLogo = folder.listFiles { file ->
-            file.isFile && file.name.startsWith("steamgriddb_logo", ignoreCase = true) &&
-            (file.name.endsWith(".png", ignoreCase = true) ||
-             file.name.endsWith(".jpg", ignoreCase = true) ||
-             file.name.endsWith(".webp", ignoreCase = true))
-        }?.firstOrNull()
-        if (steamGridLogo != null) {
+        val record = discovery.discover(File(folderPath)) ?: return null
+        val folder = record.folder
+
+        if (record.logo != null) {
+            val steamGridLogo = File(folder, record.logo)
             Timber.tag("CustomGameScanner").d("Found SteamGridDB logo: ${steamGridLogo.absolutePath}")
             return steamGridLogo.absolutePath
         }
 
         // 2) If we can uniquely identify an exe, try extracting embedded icon(s)
-        val uniqueExeRel = findUniqueExeRelativeToFolder(folder)
+        val uniqueExeRel = record.uniqueExecutable
         if (!uniqueExeRel.isNullOrEmpty()) {
             val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
             if (exeFile.exists()) {
@@ -125,33 +134,24 @@ object CustomGameScanner {
                 // Use cache if up to date, else (re)extract
                 val useCached = outIco.exists() && outIco.lastModified() >= exeFile.lastModified()
                 if (useCached) return outIco.absolutePath
-                try {
-                    if (ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)) {
-                        return outIco.absolutePath
-                    }
-                } catch (e: Exception) {
-                    // swallow and fall back
+                if (discovery.extractIcon(exeFile, outIco)) {
+                    return outIco.absolutePath
                 }
             }
         }
 
         // Fallback to nearby images if extraction was not possible
-        return findNearbyImageIcon(folder, uniqueExeRel)
+        return findNearbyImageIcon(record, uniqueExeRel)
     }
 
     // New: Context-aware variant that prefers the selected container executable's icon
     fun findIconFileForCustomGame(context: Context, appId: String): String? {
         val folderPath = getFolderPathFromAppId(appId) ?: return null
-        val folder = File(folderPath)
-        if (!folder.exists() || !folder.isDirectory) return null
-
-        val steamGridLogo = folder.listFiles { file ->
-            file.isFile && file.name.startsWith("steamgriddb_logo", ignoreCase = true) &&
-            (file.name.endsWith(".png", ignoreCase = true) ||
-             file.name.endsWith(".jpg", ignoreCase = true) ||
-             file.name.endsWith(".webp", ignoreCase = true))
-        }?.firstOrNull()
-        if (steamGridLogo != null) {
+        val record = discovery.discover(File(folderPath)) ?: return null
+        val folder = record.folder
+
+        if (record.logo != null) {
+            val steamGridLogo = File(folder, record.logo)
             Timber.tag("CustomGameScanner").d("Found SteamGridDB logo: ${steamGridLogo.absolutePath}")
             return steamGridLogo.absolutePath
         }
@@ -171,14 +171,11 @@ object CustomGameScanner {
                             Timber.tag("CustomGameScanner").d("Found cached icon at ${outIco.absolutePath}")
                             return outIco.absolutePath
                         }
-                        try {
-                            if (ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)) {
-                                Timber.tag("CustomGameScanner").d("Extracted icon to ${outIco.absolutePath}")
-                                return outIco.absolutePath
-                            }
-                        } catch (e: Exception) {
-                            Timber.tag("CustomGameScanner").d(e, "Failed to extract icon from ${exeFile.name}")
+                        if (discovery.extractIcon(exeFile, outIco)) {
+                            Timber.tag("CustomGameScanner").d("Extracted icon to ${outIco.absolutePath}")
+                            return outIco.absolutePath
                         }
+                        Timber.tag("CustomGameScanner").d("Failed to extract icon from ${exeFile.name}")
                     } else {
                         Timber.tag("CustomGameScanner").d("Executable file does not exist: ${exeFile.absolutePath}")
                     }
@@ -200,7 +197,7 @@ object CustomGameScanner {
         }
 
         // 4) As last resort, image heuristic
-        val fromHeuristic = findNearbyImageIcon(folder, null)
+        val fromHeuristic = findNearbyImageIcon(record, null)
         if (fromHeuristic != null) {
             Timber.tag("CustomGameScanner").d("Found icon from heuristic: $fromHeuristic")
         } else {
@@ -210,14 +207,9 @@ object CustomGameScanner {
     }
 
     // Shared helper for .ico/.png heuristic
-    private fun findNearbyImageIcon(folder: File, uniqueExeRel: String?): String? {
-        fun File.icoFiles(): List<File> = this.listFiles { f ->
-            f.isFile && (f.name.endsWith(".ico", ignoreCase = true) || f.name.endsWith(".png", ignoreCase = true))
-        }?.toList() ?: emptyList()
-
-        val rootIcons = folder.icoFiles()
-        val subdirIcons = folder.listFiles { f -> f.isDirectory }?.flatMap { it.icoFiles() } ?: emptyList()
-        val allIcons = (rootIcons + subdirIcons)
+    private fun findNearbyImageIcon(record: CustomGameDiscovery.Record, uniqueExeRel: String?): String? {
+        val folder = record.folder
+        val allIcons = record.images.map { File(folder, it) }
         if (allIcons.isEmpty()) {
             Timber.tag("CustomGameScanner").d("findNearbyImageIcon - No icon files found in $folder")
             return null
@@ -226,7 +218,7 @@ object CustomGameScanner {
         Timber.tag("CustomGameScanner").d("findNearbyImageIcon - Found ${allIcons.size} icon file(s): ${allIcons.map { it.name }}")
 
         // First priority: prefer .extracted.ico files (these are extracted from executables)
-        val extractedIcons = allIcons.filter { it.name.endsWith(".extracted.ico", ignoreCase = true) }
+        val extractedIcons = allIcons.filter { it.name.endsWith(CustomGameDiscovery.EXTRACTED_ICON_SUFFIX, ignoreCase = true) }
         if (extractedIcons.isNotEmpty()) {
             // If there's exactly one extracted icon, use it
             if (extractedIcons.size == 1) {
@@ -283,36 +275,7 @@ object CustomGameScanner {
      */
     fun findUniqueExeRelativeToFolder(folderPath: String): String? = findUniqueExeRelativeToFolder(File(folderPath))
 
-    fun findUniqueExeRelativeToFolder(folder: File): String? {
-        if (!folder.exists() || !folder.isDirectory) return null
-
-        fun File.isValidExe(): Boolean = this.isFile && this.name.endsWith(".exe", ignoreCase = true) &&
-                !this.name.startsWith("unins", ignoreCase = true)
-
-        val candidates = mutableListOf<String>()
-
-        folder.listFiles { f ->
-            f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-            !f.name.startsWith("unins", ignoreCase = true)
-        }?.forEach { f ->
-            candidates.add(f.name)
-        }
-
-        val subDirs = folder.listFiles { f -> f.isDirectory } ?: emptyArray()
-        for (sd in subDirs) {
-            sd.listFiles { f ->
-                f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                !f.name.startsWith("unins", ignoreCase = true)
-            }?.forEach { f ->
-                val rel = sd.name + "/" + f.name
-                candidates.add(rel)
-            }
-        }
-
-        // Keep only unique items
-        val unique = candidates.distinct()
-        return if (unique.size == 1) unique.first() else null
-    }
+    fun findUniqueExeRelativeToFolder(folder: File): String? = discovery.discover(folder)?.uniqueExecutable
 
     /**
      * Find all valid executable files in a game folder.
@@ -323,34 +286,7 @@ object CustomGameScanner {
      */
     fun findAllValidExeFiles(folderPath: String): List<String> = findAllValidExeFiles(File(folderPath))
 
-    fun findAllValidExeFiles(folder: File): List<String> {
-        if (!folder.exists() || !folder.isDirectory) return emptyList()
-
-        fun File.isValidExe(): Boolean = this.isFile && this.name.endsWith(".exe", ignoreCase = true) &&
-                !this.name.startsWith("unins", ignoreCase = true)
-
-        val candidates = mutableListOf<String>()
-
-        folder.listFiles { f ->
-            f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-            !f.name.startsWith("unins", ignoreCase = true)
-        }?.forEach { f ->
-            candidates.add(f.name)
-        }
-
-        val subDirs = folder.listFiles { f -> f.isDirectory } ?: emptyArray()
-        for (sd in subDirs) {
-            sd.listFiles { f ->
-                f.isFile && f.name.endsWith(".exe", ignoreCase = true) &&
-                !f.name.startsWith("unins", ignoreCase = true)
-            }?.forEach { f ->
-                val rel = sd.name + "/" + f.name
-                candidates.add(rel)
-            }
-        }
-
-        return candidates.distinct()
-    }
+    fun findAllValidExeFiles(folder: File): List<String> = discovery.discover(folder)?.executables ?: emptyList()
 
     /**
      * Checks if we have permission to access a given path.
@@ -435,55 +371,52 @@ object CustomGameScanner {
             }
         }
 
+        // Forget folders that were removed from the library
+        if (q.isEmpty()) discovery.retainOnly(manualFolders)
+        discovery.save()
+
         return items
     }
 
-    private fun handleCustomGameDetection(folder: File, appId: String, idPart: Int) {
-        CustomGameCache.addEntry(idPart, folder.absolutePath)
-
-        kotlinx.coroutines.CoroutineScope(kotlinx.coroutines.Dispatchers.IO).launch {
-            try {
-                val hasExtractedIcon = folder.listFiles { file ->
-                    file.isFile && file.name.endsWith(".extracted.ico", ignoreCase = true)
-                }?.isNotEmpty() == true
-
-                if (!hasExtractedIcon) {
-                    val uniqueExeRel = findUniqueExeRelativeToFolder(folder)
-                    if (!uniqueExeRel.isNullOrEmpty()) {
-                        val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
-                        if (exeFile.exists()) {
-                            val outIco = File(exeFile.parentFile, exeFile.nameWithoutExtension + ".extracted.ico")
-                            if (!outIco.exists() || outIco.lastModified() < exeFile.lastModified()) {
-                                if (ExeIconExtractor.tryExtractMainIcon(exeFile, outIco)) {
-                                    Timber.tag("CustomGameScanner").d("Extracted icon for ${folder.name} from ${exeFile.name}")
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (e: Exception) {
-                Timber.tag("CustomGameScanner").d(e, "Icon extraction failed for ${folder.name}")
+    /**
+     * Extracts the main icon of [exeFile] into [outIcoFile] on the shared icon worker pool.
+     */
+    fun extractIcon(exeFile: File, outIcoFile: File): Boolean = discovery.extractIcon(exeFile, outIcoFile)
+
+    private fun handleCustomGameDetection(record: CustomGameDiscovery.Record, idPart: Int) {
+        CustomGameCache.addEntry(idPart, record.path)
+
+        if (record.hasExtractedIcon) return
+        val uniqueExeRel = record.uniqueExecutable ?: return
+        val folder = record.folder
+        val exeFile = File(folder, uniqueExeRel.replace('/', File.separatorChar))
+        val outIco = File(exeFile.parentFile, exeFile.nameWithoutExtension + CustomGameDiscovery.EXTRACTED_ICON_SUFFIX)
+        if (outIco.exists() && outIco.lastModified() >= exeFile.lastModified()) return
+
+        // Queued on the shared icon workers rather than a coroutine per folder
+        discovery.extractIconAsync(exeFile, outIco).invokeOnCompletion { error ->
+            if (error == null && outIco.exists()) {
+                Timber.tag("CustomGameScanner").d("Extracted icon for ${folder.name} from ${exeFile.name}")
             }
         }
     }
 
     fun createLibraryItemFromFolder(folderPath: String): LibraryItem? {
-        val folder = File(folderPath)
-        if (!folder.exists() || !folder.isDirectory) {
+        val record = discovery.discover(File(folderPath))
+        if (record == null) {
             Timber.tag("CustomGameScanner").w("Folder does not exist or is not a directory: $folderPath")
             return null
         }
 
-
-        val idPart = getOrGenerateGameId(folder)
+        val idPart = record.gameId ?: getOrGenerateGameId(record.folder)
         val appId = "${GameSource.CUSTOM_GAME.name}_$idPart"
 
-        handleCustomGameDetection(folder, appId, idPart)
+        handleCustomGameDetection(record, idPart)
 
         return LibraryItem(
             index = 0,
             appId = appId,
-            name = folder.name,
+            name = record.folder.name,
             iconHash = "",
             isShared = false,
             gameSource = GameSource.CUSTOM_GAME,
@@ -514,6 +447,8 @@ object CustomGameScanner {
             app.gamenative.utils.GameMetadata(appId = gameId)
         }
         app.gamenative.utils.GameMetadataManager.write(folder, metadata)
+        // The stored record still has the ID the folder had before
+        discovery.invalidate(folder)
     }
 
     /**
@@ -531,7 +466,7 @@ object CustomGameScanner {
     private fun getOrRebuildCache(): Map<Int, String> {
         return CustomGameCache.getOrRebuildCache(
             getManualFolders = { PrefManager.customGameManualFolders },
-            readGameIdFromFile = { folder -> readGameIdFromFile(folder) }
+            readGameIdFromFile = { folder -> discovery.discover(folder)?.gameId }
         )
     }
 
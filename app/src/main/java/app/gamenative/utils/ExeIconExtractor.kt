@@ -1,10 +1,18 @@
 package app.gamenative.utils
 
 import timber.log.Timber
+import java.io.EOFException
 import java.io.File
-import java.io.RandomAccessFile
+import java.io.IOException
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 
 /**
  * Minimal PE resource parser to extract icon(s) from a Windows EXE/DLL.
@@ -13,6 +21,9 @@ import java.nio.ByteOrder
  * rebuilds a standard .ico file containing all images referenced by the group,
  * and writes it to [outIcoFile].
  *
+ * The executable is read with positioned reads, so only the headers, the section
+ * table, the resource tree and the icon images are read, however large the file is.
+ *
  * Notes/limits:
  * - Designed for common PE32/PE32+ files that store icons in the standard
  *   resource layout. Exotic layouts may not be supported.
@@ -25,199 +36,34 @@ object ExeIconExtractor {
     private const val RT_GROUP_CURSOR = 12
     private const val RT_GROUP_ICON = 14
 
-    fun tryExtractMainIcon(exeFile: File, outIcoFile: File): Boolean {
-        return try {
-            RandomAccessFile(exeFile, "r").use { raf ->
-                val size = raf.length()
-                if (size < 0x100) return false
-                val buf = ByteArray(size.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
-                raf.readFully(buf)
-                val bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN)
-
-                val peHeaderOff = bb.getInt(0x3C)
-                if (peHeaderOff <= 0 || peHeaderOff + 4 > bb.capacity()) return false
-                if (bb.get(peHeaderOff).toInt() != 'P'.code || bb.get(peHeaderOff + 1).toInt() != 'E'.code) return false
-
-                val coffStart = peHeaderOff + 4
-                val numberOfSections = bb.getShort(coffStart + 2).toInt() and 0xFFFF
-                val sizeOfOptionalHeader = bb.getShort(coffStart + 16).toInt() and 0xFFFF
-                val optionalHeaderStart = coffStart + 20
-                val magic = bb.getShort(optionalHeaderStart).toInt() and 0xFFFF
-                // Optional header data directories location depends on PE32/PE32+
-                val dataDirectoriesStart = optionalHeaderStart + when (magic) {
-                    0x10B -> 96 // PE32
-                    0x20B -> 112 // PE32+
-                    else -> return false
-                }
-                val resourceDirRva = bb.getInt(dataDirectoriesStart + 2 * 8) // index 2 = IMAGE_DIRECTORY_ENTRY_RESOURCE
-                val resourceDirSize = bb.getInt(dataDirectoriesStart + 2 * 8 + 4)
-
-                // Sections table
-                var secTable = optionalHeaderStart + sizeOfOptionalHeader
-                if (secTable + numberOfSections * 40 > bb.capacity()) return false
-
-                fun rvaToFileOffset(rva: Int): Int {
-                    for (i in 0 until numberOfSections) {
-                        val base = secTable + i * 40
-                        val virtualAddress = bb.getInt(base + 12)
-                        val sizeOfRawData = bb.getInt(base + 16)
-                        val pointerToRawData = bb.getInt(base + 20)
-                        if (rva >= virtualAddress && rva < virtualAddress + sizeOfRawData &&
-                            pointerToRawData > 0
-                        ) {
-                            val off = pointerToRawData + (rva - virtualAddress)
-                            if (off >= 0 && off < bb.capacity()) return off
-                        }
-                    }
-                    return -1
-                }
+    private const val PAGE_SIZE = 4096
 
-                val resRootOff = rvaToFileOffset(resourceDirRva)
-                if (resRootOff < 0 || resRootOff + 16 > bb.capacity()) return false
-
-                // Resource directory traversal helpers
-                data class Dir(val off: Int)
-                data class Entry(val nameOrId: Int, val dataOrSubdirRva: Int, val isSubdir: Boolean, val isNamed: Boolean)
-
-                fun readDirectory(offset: Int): Pair<List<Entry>, Int> {
-                    val entryCountNamed = bb.getShort(offset + 12).toInt() and 0xFFFF
-                    val entryCountId = bb.getShort(offset + 14).toInt() and 0xFFFF
-                    val total = entryCountNamed + entryCountId
-                    val entries = ArrayList<Entry>(total)
-                    var eoff = offset + 16
-                    repeat(total) {
-                        if (eoff + 8 > bb.capacity()) return Pair(emptyList(), 0)
-                        val name = bb.getInt(eoff)
-                        val dataRva = bb.getInt(eoff + 4)
-                        val isDir = (dataRva and 0x80000000.toInt()) != 0
-                        val isNamed = (name and 0x80000000.toInt()) != 0
-                        entries.add(Entry(name, dataRva and 0x7FFFFFFF.toInt(), isDir, isNamed))
-                        eoff += 8
-                    }
-                    return Pair(entries, total)
-                }
+    // Icon images are at most a few hundred KB; anything larger is a corrupt entry
+    private const val MAX_ICON_BYTES = 16 * 1024 * 1024
 
-                fun subdirOffset(dirRva: Int): Int {
-                    val off = rvaToFileOffset(resourceDirRva + dirRva)
-                    return if (off >= 0) off else -1
-                }
+    private const val DEFAULT_PARALLELISM = 2
 
-                // Locate RT_GROUP_ICON node: Type(14) -> first ID -> first LANG
-                val (typeEntries, _) = readDirectory(resRootOff)
-                val groupType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_GROUP_ICON }
-                    ?: return false
-                if (!groupType.isSubdir) return false
-                val groupTypeDirOff = subdirOffset(groupType.dataOrSubdirRva)
-                if (groupTypeDirOff < 0) return false
-                val (idEntries, _) = readDirectory(groupTypeDirOff)
-                val groupId = idEntries.firstOrNull() ?: return false
-                if (!groupId.isSubdir) return false
-                val groupIdDirOff = subdirOffset(groupId.dataOrSubdirRva)
-                if (groupIdDirOff < 0) return false
-                val (langEntries, _) = readDirectory(groupIdDirOff)
-                val groupLang = langEntries.firstOrNull() ?: return false
-                val groupDataEntryOff = rvaToFileOffset(resourceDirRva + groupLang.dataOrSubdirRva)
-                if (groupDataEntryOff < 0 || groupDataEntryOff + 16 > bb.capacity()) return false
-                val groupDataRva = bb.getInt(groupDataEntryOff)
-                val groupSize = bb.getInt(groupDataEntryOff + 4)
-                val groupDataOff = rvaToFileOffset(groupDataRva)
-                if (groupDataOff < 0 || groupDataOff + groupSize > bb.capacity()) return false
-
-                // Parse GRPICONDIR
-                val reserved = bb.getShort(groupDataOff).toInt() and 0xFFFF
-                val type = bb.getShort(groupDataOff + 2).toInt() and 0xFFFF
-                val count = bb.getShort(groupDataOff + 4).toInt() and 0xFFFF
-                if (reserved != 0 || type != 1 || count <= 0 || count > 64) return false
-
-                data class GroupEntry(
-                    val width: Int,
-                    val height: Int,
-                    val colorCount: Int,
-                    val planes: Int,
-                    val bitCount: Int,
-                    val bytesInRes: Int,
-                    val id: Int,
-                )
-
-                val groupEntries = ArrayList<GroupEntry>(count)
-                var ptr = groupDataOff + 6
-                repeat(count) {
-                    if (ptr + 14 > groupDataOff + groupSize) return false
-                    val w = bb.get(ptr).toInt() and 0xFF
-                    val h = bb.get(ptr + 1).toInt() and 0xFF
-                    val cc = bb.get(ptr + 2).toInt() and 0xFF
-                    /* reserved */
-                    val planes = bb.getShort(ptr + 4).toInt() and 0xFFFF
-                    val bitcount = bb.getShort(ptr + 6).toInt() and 0xFFFF
-                    val bytes = bb.getInt(ptr + 8)
-                    val id = bb.getShort(ptr + 12).toInt() and 0xFFFF
-                    groupEntries.add(GroupEntry(w, h, cc, planes, bitcount, bytes, id))
-                    ptr += 14
-                }
+    data class IconRequest(val exeFile: File, val outIcoFile: File)
 
-                // Build map of RT_ICON id -> data
-                val iconType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_ICON }
-                    ?: return false
-                if (!iconType.isSubdir) return false
-                val iconTypeDirOff = subdirOffset(iconType.dataOrSubdirRva)
-                if (iconTypeDirOff < 0) return false
-                val (iconIdEntries, _) = readDirectory(iconTypeDirOff)
-
-                fun findIconDataById(id: Int): ByteArray? {
-                    val idEntry = iconIdEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == id } ?: return null
-                    if (!idEntry.isSubdir) return null
-                    val langDirOff = subdirOffset(idEntry.dataOrSubdirRva)
-                    if (langDirOff < 0) return null
-                    val (langs, _) = readDirectory(langDirOff)
-                    val lang = langs.firstOrNull() ?: return null
-                    val dataEntryOff = rvaToFileOffset(resourceDirRva + lang.dataOrSubdirRva)
-                    if (dataEntryOff < 0 || dataEntryOff + 16 > bb.capacity()) return null
-                    val dataRva = bb.getInt(dataEntryOff)
-                    val dataSize = bb.getInt(dataEntryOff + 4)
-                    val dataOff = rvaToFileOffset(dataRva)
-                    if (dataOff < 0 || dataOff + dataSize > bb.capacity()) return null
-                    val bytes = ByteArray(dataSize)
-                    System.arraycopy(buf, dataOff, bytes, 0, dataSize)
-                    return bytes
-                }
+    /**
+     * Extracts the main icon of each request with at most [parallelism] executables open at
+     * once. Returns whether each extraction succeeded, in the same order.
+     */
+    suspend fun extractIcons(requests: List<IconRequest>, parallelism: Int = DEFAULT_PARALLELISM): List<Boolean> = coroutineScope {
+        val permits = Semaphore(parallelism.coerceAtLeast(1))
 
-                // Build ICO: header + entries + concatenated images
-                val images = ArrayList<ByteArray>(groupEntries.size)
-                val entriesBytes = ByteArray(groupEntries.size * 16)
-                var imageOffset = 6 + entriesBytes.size // after header+entries
-                var ei = 0
-                for (ge in groupEntries) {
-                    val data = findIconDataById(ge.id) ?: continue
-                    images.add(data)
-                    val base = ei * 16
-                    entriesBytes[base + 0] = ge.width.coerceAtMost(255).toByte()
-                    entriesBytes[base + 1] = ge.height.coerceAtMost(255).toByte()
-                    entriesBytes[base + 2] = ge.colorCount.coerceAtMost(255).toByte()
-                    entriesBytes[base + 3] = 0 // reserved
-                    putShort(entriesBytes, base + 4, ge.planes)
-                    putShort(entriesBytes, base + 6, ge.bitCount)
-                    putInt(entriesBytes, base + 8, data.size)
-                    putInt(entriesBytes, base + 12, imageOffset)
-                    imageOffset += data.size
-                    ei++
-                }
-                if (images.isEmpty()) return false
-
-                val out = ByteArray(6 + entriesBytes.size + images.sumOf { it.size })
-                // ICONDIR
-                putShort(out, 0, 0) // reserved
-                putShort(out, 2, 1) // type ico
-                putShort(out, 4, images.size)
-                // entries
-                System.arraycopy(entriesBytes, 0, out, 6, entriesBytes.size)
-                // images
-                var off = 6 + entriesBytes.size
-                for (img in images) {
-                    System.arraycopy(img, 0, out, off, img.size)
-                    off += img.size
-                }
+        requests.map { request ->
+            async(Dispatchers.IO) {
+                permits.withPermit { tryExtractMainIcon(request.exeFile, request.outIcoFile) }
+            }
+        }.awaitAll()
+    }
 
-                outIcoFile.outputStream().use { it.write(out) }
+    fun tryExtractMainIcon(exeFile: File, outIcoFile: File): Boolean {
+        return try {
+            FileChannel.open(exeFile.toPath(), StandardOpenOption.READ).use { channel ->
+                val ico = readMainIcon(PeReader(channel)) ?: return false
+                outIcoFile.outputStream().use { it.write(ico) }
                 true
             }
         } catch (e: Exception) {
@@ -226,6 +72,239 @@ object ExeIconExtractor {
         }
     }
 
+    /**
+     * Returns the bytes of a .ico file holding the images of the first icon group, or null if
+     * the executable has none.
+     */
+    private fun readMainIcon(pe: PeReader): ByteArray? {
+        val size = pe.size
+        if (size < 0x100) return null
+
+        val peHeaderOff = pe.i32(0x3C).toLong()
+        if (peHeaderOff <= 0 || peHeaderOff + 4 > size) return null
+        if (pe.u8(peHeaderOff) != 'P'.code || pe.u8(peHeaderOff + 1) != 'E'.code) return null
+
+        val coffStart = peHeaderOff + 4
+        val numberOfSections = pe.u16(coffStart + 2)
+        val sizeOfOptionalHeader = pe.u16(coffStart + 16)
+        val optionalHeaderStart = coffStart + 20
+        val magic = pe.u16(optionalHeaderStart)
+        // Optional header data directories location depends on PE32/PE32+
+        val dataDirectoriesStart = optionalHeaderStart + when (magic) {
+            0x10B -> 96 // PE32
+            0x20B -> 112 // PE32+
+            else -> return null
+        }
+        val resourceDirRva = pe.u32(dataDirectoriesStart + 2 * 8) // index 2 = IMAGE_DIRECTORY_ENTRY_RESOURCE
+
+        // Sections table, read once
+        val secTable = optionalHeaderStart + sizeOfOptionalHeader
+        if (secTable + numberOfSections * 40L > size) return null
+
+        class Section(val virtualAddress: Long, val sizeOfRawData: Long, val pointerToRawData: Long)
+
+        val sections = List(numberOfSections) { i ->
+            val base = secTable + i * 40L
+            Section(pe.u32(base + 12), pe.u32(base + 16), pe.u32(base + 20))
+        }
+
+        fun rvaToFileOffset(rva: Long): Long {
+            for (section in sections) {
+                if (rva >= section.virtualAddress && rva < section.virtualAddress + section.sizeOfRawData &&
+                    section.pointerToRawData > 0
+                ) {
+                    val off = section.pointerToRawData + (rva - section.virtualAddress)
+                    if (off in 0 until size) return off
+                }
+            }
+            return -1
+        }
+
+        val resRootOff = rvaToFileOffset(resourceDirRva)
+        if (resRootOff < 0 || resRootOff + 16 > size) return null
+
+        // Resource directory traversal helpers
+        data class Entry(val nameOrId: Int, val dataOrSubdirRva: Long, val isSubdir: Boolean, val isNamed: Boolean)
+
+        fun readDirectory(offset: Long): List<Entry> {
+            val entryCountNamed = pe.u16(offset + 12)
+            val entryCountId = pe.u16(offset + 14)
+            val total = entryCountNamed + entryCountId
+            val entries = ArrayList<Entry>(total)
+            var eoff = offset + 16
+            repeat(total) {
+                if (eoff + 8 > size) return emptyList()
+                val name = pe.i32(eoff)
+                val dataRva = pe.i32(eoff + 4)
+                val isDir = (dataRva and 0x80000000.toInt()) != 0
+                val isNamed = (name and 0x80000000.toInt()) != 0
+                entries.add(Entry(name, (dataRva and 0x7FFFFFFF).toLong(), isDir, isNamed))
+                eoff += 8
+            }
+            return entries
+        }
+
+        fun subdirOffset(dirRva: Long): Long = rvaToFileOffset(resourceDirRva + dirRva)
+
+        /**
+         * Resolves the first language of a resource ID directory entry to the file offset and
+         * size of its data, or null if it is out of bounds.
+         */
+        fun dataOf(idEntry: Entry): Pair<Long, Int>? {
+            if (!idEntry.isSubdir) return null
+            val langDirOff = subdirOffset(idEntry.dataOrSubdirRva)
+            if (langDirOff < 0) return null
+            val lang = readDirectory(langDirOff).firstOrNull() ?: return null
+            val dataEntryOff = rvaToFileOffset(resourceDirRva + lang.dataOrSubdirRva)
+            if (dataEntryOff < 0 || dataEntryOff + 16 > size) return null
+            val dataRva = pe.u32(dataEntryOff)
+            val dataSize = pe.u32(dataEntryOff + 4)
+            val dataOff = rvaToFileOffset(dataRva)
+            if (dataOff < 0 || dataSize > MAX_ICON_BYTES || dataOff + dataSize > size) return null
+            return dataOff to dataSize.toInt()
+        }
+
+        // Locate RT_GROUP_ICON node: Type(14) -> first ID -> first LANG
+        val typeEntries = readDirectory(resRootOff)
+        val groupType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_GROUP_ICON }
+            ?: return null
+        if (!groupType.isSubdir) return null
+        val groupTypeDirOff = subdirOffset(groupType.dataOrSubdirRva)
+        if (groupTypeDirOff < 0) return null
+        val groupId = readDirectory(groupTypeDirOff).firstOrNull() ?: return null
+        val (groupDataOff, groupSize) = dataOf(groupId) ?: return null
+
+        // Parse GRPICONDIR
+        val reserved = pe.u16(groupDataOff)
+        val type = pe.u16(groupDataOff + 2)
+        val count = pe.u16(groupDataOff + 4)
+        if (reserved != 0 || type != 1 || count <= 0 || count > 64) return null
+
+        data class GroupEntry(
+            val width: Int,
+            val height: Int,
+            val colorCount: Int,
+            val planes: Int,
+            val bitCount: Int,
+            val bytesInRes: Int,
+            val id: Int,
+        )
+
+        val groupEntries = ArrayList<GroupEntry>(count)
+        var ptr = groupDataOff + 6
+        repeat(count) {
+            if (ptr + 14 > groupDataOff + groupSize) return null
+            val w = pe.u8(ptr)
+            val h = pe.u8(ptr + 1)
+            val cc = pe.u8(ptr + 2)
+            /* reserved */
+            val planes = pe.u16(ptr + 4)
+            val bitcount = pe.u16(ptr + 6)
+            val bytes = pe.i32(ptr + 8)
+            val id = pe.u16(ptr + 12)
+            groupEntries.add(GroupEntry(w, h, cc, planes, bitcount, bytes, id))
+            ptr += 14
+        }
+
+        // Build map of RT_ICON id -> data
+        val iconType = typeEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == RT_ICON }
+            ?: return null
+        if (!iconType.isSubdir) return null
+        val iconTypeDirOff = subdirOffset(iconType.dataOrSubdirRva)
+        if (iconTypeDirOff < 0) return null
+        val iconIdEntries = readDirectory(iconTypeDirOff)
+
+        fun findIconDataById(id: Int): ByteArray? {
+            val idEntry = iconIdEntries.firstOrNull { !it.isNamed && (it.nameOrId and 0x7FFFFFFF) == id } ?: return null
+            val (dataOff, dataSize) = dataOf(idEntry) ?: return null
+            return pe.readBytes(dataOff, dataSize)
+        }
+
+        // Build ICO: header + entries + concatenated images
+        val images = ArrayList<ByteArray>(groupEntries.size)
+        val entriesBytes = ByteArray(groupEntries.size * 16)
+        var imageOffset = 6 + entriesBytes.size // after header+entries
+        var ei = 0
+        for (ge in groupEntries) {
+            val data = findIconDataById(ge.id) ?: continue
+            images.add(data)
+            val base = ei * 16
+            entriesBytes[base + 0] = ge.width.coerceAtMost(255).toByte()
+            entriesBytes[base + 1] = ge.height.coerceAtMost(255).toByte()
+            entriesBytes[base + 2] = ge.colorCount.coerceAtMost(255).toByte()
+            entriesBytes[base + 3] = 0 // reserved
+            putShort(entriesBytes, base + 4, ge.planes)
+            putShort(entriesBytes, base + 6, ge.bitCount)
+            putInt(entriesBytes, base + 8, data.size)
+            putInt(entriesBytes, base + 12, imageOffset)
+            imageOffset += data.size
+            ei++
+        }
+        if (images.isEmpty()) return null
+
+        val out = ByteArray(6 + entriesBytes.size + images.sumOf { it.size })
+        // ICONDIR
+        putShort(out, 0, 0) // reserved
+        putShort(out, 2, 1) // type ico
+        putShort(out, 4, images.size)
+        // entries
+        System.arraycopy(entriesBytes, 0, out, 6, entriesBytes.size)
+        // images
+        var off = 6 + entriesBytes.size
+        for (img in images) {
+            System.arraycopy(img, 0, out, off, img.size)
+            off += img.size
+        }
+        return out
+    }
+
+    /**
+     * Little-endian reads at file offsets. Header and resource tree reads go through the
+     * pages read so far, so each page is read from the file once.
+     */
+    private class PeReader(private val channel: FileChannel) {
+        val size: Long = channel.size()
+
+        private val pages = HashMap<Long, ByteArray>()
+
+        fun u8(offset: Long): Int {
+            if (offset < 0 || offset >= size) throw EOFException("Offset $offset outside of $size byte file")
+            val page = pages.getOrPut(offset / PAGE_SIZE) { readPage(offset / PAGE_SIZE) }
+            return page[(offset % PAGE_SIZE).toInt()].toInt() and 0xFF
+        }
+
+        fun u16(offset: Long): Int = u8(offset) or (u8(offset + 1) shl 8)
+
+        fun i32(offset: Long): Int = u16(offset) or (u16(offset + 2) shl 16)
+
+        fun u32(offset: Long): Long = i32(offset).toLong() and 0xFFFFFFFFL
+
+        /**
+         * Reads [length] bytes at [offset] straight from the file, bypassing the page cache.
+         */
+        fun readBytes(offset: Long, length: Int): ByteArray {
+            val bytes = ByteArray(length)
+            readFully(ByteBuffer.wrap(bytes), offset)
+            return bytes
+        }
+
+        private fun readPage(index: Long): ByteArray {
+            val start = index * PAGE_SIZE
+            val bytes = ByteArray(minOf(PAGE_SIZE.toLong(), size - start).toInt())
+            readFully(ByteBuffer.wrap(bytes), start)
+            return bytes
+        }
+
+        private fun readFully(buffer: ByteBuffer, offset: Long) {
+            var position = offset
+            while (buffer.hasRemaining()) {
+                val read = channel.read(buffer, position)
+                if (read < 0) throw IOException("Unexpected end of file at $position")
+                position += read
+            }
+        }
+    }
+
     private fun putShort(arr: ByteArray, off: Int, v: Int) {
         arr[off] = (v and 0xFF).toByte()
         arr[off + 1] = ((v ushr 8) and 0xFF).toByte()
@@ -1,34 +1,74 @@
 package app.gamenative.utils
 
+import android.content.Context
+import java.io.File
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
 import timber.log.Timber
 
 /**
- * In-memory cache for game compatibility responses.
- * Caches all games to avoid re-checking every time user navigates back to library.
+ * Persistent cache for game compatibility responses, keyed by game and GPU.
+ * Survives process death so the library does not re-check every game after a restart.
  */
 object GameCompatibilityCache {
-    private val cache = mutableMapOf<String, GameCompatibilityService.GameCompatibilityResponse>()
+    private const val CACHE_FILE = "game_compatibility_cache.json"
+
+    private val cache = ResponseCache("compatibility")
 
     /**
-     * Gets cached compatibility response for a game, if available.
+     * Binds the cache to its file in the app's cache directory.
      */
-    fun getCached(gameName: String): GameCompatibilityService.GameCompatibilityResponse? {
-        return cache[gameName]
+    fun init(context: Context) {
+        cache.attach(File(context.cacheDir, CACHE_FILE))
+    }
+
+    private fun key(gameName: String, gpuName: String) = "$gpuName|$gameName"
+
+    /**
+     * Gets cached compatibility response for a game, if available and not expired.
+     */
+    fun getCached(gameName: String, gpuName: String): GameCompatibilityService.GameCompatibilityResponse? {
+        return cache.get(key(gameName, gpuName))?.let { Json.decodeFromString(it) }
     }
 
     /**
      * Caches a compatibility response for a game.
      */
-    fun cache(gameName: String, response: GameCompatibilityService.GameCompatibilityResponse) {
-        cache[gameName] = response
+    fun cache(gameName: String, gpuName: String, response: GameCompatibilityService.GameCompatibilityResponse) {
+        cache.put(key(gameName, gpuName), Json.encodeToString(response))
         Timber.tag("GameCompatibilityCache").d("Cached compatibility for: $gameName")
     }
 
     /**
      * Checks if a game's compatibility is cached.
      */
-    fun isCached(gameName: String): Boolean {
-        return cache.containsKey(gameName)
+    fun isCached(gameName: String, gpuName: String): Boolean {
+        return cache.get(key(gameName, gpuName)) != null
+    }
+
+    /**
+     * Returns compatibility for the given games, serving cached entries and fetching all misses
+     * with a single [GameCompatibilityService.fetchCompatibility] call. Games that are already
+     * being fetched by another caller are awaited instead of requested again.
+     */
+    suspend fun getOrFetch(
+        gameNames: List<String>,
+        gpuName: String,
+    ): Map<String, GameCompatibilityService.GameCompatibilityResponse> {
+        val keys = gameNames.associateBy { key(it, gpuName) }
+
+        val values = cache.getOrLoadAll(keys.keys) { missing ->
+            val names = missing.map { keys.getValue(it) }
+            Timber.tag("GameCompatibilityCache").d("Fetching ${names.size} uncached games")
+            GameCompatibilityService.fetchCompatibility(names, gpuName)
+                ?.mapKeys { (gameName, _) -> key(gameName, gpuName) }
+                ?.mapValues { (_, response) -> Json.encodeToString(response) }
+        }
+
+        return values.entries.associate { (key, value) ->
+            keys.getValue(key) to Json.decodeFromString<GameCompatibilityService.GameCompatibilityResponse>(value)
+        }
     }
 
     /**
@@ -42,6 +82,5 @@ object GameCompatibilityCache {
     /**
      * Gets the current cache size.
      */
-    fun size(): Int = cache.size
+    fun size(): Int = cache.size()
 }
-
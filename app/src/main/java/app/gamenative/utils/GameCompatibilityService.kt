@@ -3,6 +3,7 @@ package app.gamenative.utils
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
+import kotlinx.serialization.Serializable
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.Request
@@ -34,6 +35,7 @@ object GameCompatibilityService {
     /**
      * Data class for API response per game.
      */
+    @Serializable
     data class GameCompatibilityResponse(
         val gameName: String,
         val totalPlayableCount: Int,
@@ -0,0 +1,412 @@
+package app.gamenative.utils
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import timber.log.Timber
+
+/**
+ * Index of the files in one game install, so size, executable and DLL lookups do not have to
+ * walk the whole install tree each time.
+ *
+ * The index is built once when a download completes, from the depot manifests where available
+ * or by a single walk otherwise, and is kept up to date by the code that changes files in the
+ * install afterwards. It is stored next to the download markers in the install directory and
+ * cached in memory per directory. Files added or removed from outside (launcher updates, mods,
+ * steam_settings) are picked up by [validate] when a stored index is loaded, from the
+ * modification times of the directories alone. A file rewritten in place keeps its indexed size
+ * until [update] is called for it.
+ */
+class InstallFileIndex private constructor(
+    val rootDir: File,
+    /** Whether the executable flags came from depot manifests rather than file names. */
+    val fromManifest: Boolean,
+    initialEntries: Collection<Entry>,
+    initialDirs: Map<String, Long>,
+    /** Whether [save] writes the index to the install directory. */
+    private val stored: Boolean,
+) {
+    /**
+     * One file of the install. [path] is relative to the install directory and uses '/'.
+     */
+    data class Entry(
+        val path: String,
+        val size: Long,
+        val mtime: Long,
+        val flags: Int = 0,
+    ) {
+        val name: String
+            get() = path.substringAfterLast('/')
+
+        /** Directory depth of the file, 1 for files directly in the install directory. */
+        val depth: Int
+            get() = path.count { it == '/' } + 1
+
+        val hasExecutableFlag: Boolean
+            get() = (flags and FLAG_EXECUTABLE) != 0
+
+        val isExecutable: Boolean
+            get() = hasExecutableFlag || path.endsWith(".exe", ignoreCase = true)
+    }
+
+    private val lock = Any()
+    private val entries = HashMap<String, Entry>(initialEntries.size * 2).apply {
+        initialEntries.forEach { put(it.path, it) }
+    }
+    /** Modification time of each directory below the install directory, by relative path. */
+    private val dirs = HashMap(initialDirs)
+    private var totalBytes = initialEntries.sumOf { it.size }
+    private var dirty = false
+
+    val fileCount: Int
+        get() = synchronized(lock) { entries.size }
+
+    val totalSize: Long
+        get() = synchronized(lock) { totalBytes }
+
+    fun get(path: String): Entry? = synchronized(lock) { entries[normalize(path)] }
+
+    /**
+     * Returns the files matching [predicate] that are at most [maxDepth] directories deep.
+     */
+    fun find(maxDepth: Int = Int.MAX_VALUE, predicate: (Entry) -> Boolean): List<Entry> {
+        val snapshot = synchronized(lock) { entries.values.toList() }
+        return snapshot.filter { it.depth <= maxDepth && predicate(it) }.sortedBy { it.path }
+    }
+
+    /**
+     * Returns the files whose name matches [pattern], ignoring case.
+     */
+    fun findByName(pattern: Regex, maxDepth: Int = Int.MAX_VALUE): List<Entry> {
+        val ignoreCase = if (RegexOption.IGNORE_CASE in pattern.options) pattern else Regex(pattern.pattern, pattern.options + RegexOption.IGNORE_CASE)
+        return find(maxDepth) { ignoreCase.matches(it.name) }
+    }
+
+    fun executables(): List<Entry> = find { it.isExecutable }
+
+    fun fileOf(entry: Entry): File = File(rootDir, entry.path)
+
+    /**
+     * Re-reads the size and modification time of [file], or drops it from the index if it no
+     * longer exists. Flags of an existing entry are kept unless [flags] is given.
+     */
+    fun update(file: File, flags: Int? = null) {
+        val path = relativePath(file) ?: return
+        synchronized(lock) {
+            val previous = entries.remove(path)
+            if (previous != null) totalBytes -= previous.size
+            if (file.isFile) {
+                val entry = Entry(path, file.length(), file.lastModified(), flags ?: previous?.flags ?: 0)
+                entries[path] = entry
+                totalBytes += entry.size
+            }
+            dirty = true
+        }
+    }
+
+    fun remove(file: File) {
+        val path = relativePath(file) ?: return
+        synchronized(lock) {
+            val previous = entries.remove(path) ?: return
+            totalBytes -= previous.size
+            dirty = true
+        }
+    }
+
+    /**
+     * Checks the index against the disk by directory: directories whose modification time moved,
+     * and the install directory itself, are listed again to find files added or removed since the
+     * index was built, and the files in them are read again. Files in unchanged directories are
+     * not touched. Returns whether anything changed.
+     */
+    fun validate(): Boolean {
+        val (knownFiles, knownDirs) = synchronized(lock) { entries.values.toList() to HashMap(dirs) }
+
+        val removedDirs = HashSet<String>()
+        val changedDirs = HashMap<String, Long>()
+        // Writing the index itself touches the install directory, so it is always listed
+        val relist = mutableListOf("")
+        for ((path, mtime) in knownDirs) {
+            val dir = File(rootDir, path)
+            val modified = dir.lastModified()
+            if (!dir.isDirectory) {
+                removedDirs += path
+            } else if (modified != mtime) {
+                changedDirs[path] = modified
+                relist += path
+            }
+        }
+
+        val filesByDir = knownFiles.groupBy { it.path.substringBeforeLast('/', "") }
+        // New entry per changed path, null for files that are gone
+        val changed = HashMap<String, Entry?>()
+        removedDirs.forEach { dir -> filesByDir[dir]?.forEach { changed[it.path] = null } }
+
+        val added = mutableListOf<Entry>()
+        for (path in relist) {
+            val children = (if (path.isEmpty()) rootDir else File(rootDir, path)).listFiles() ?: continue
+            val known = filesByDir[path].orEmpty().associateByTo(HashMap()) { it.path }
+            for (child in children) {
+                val childPath = if (path.isEmpty()) child.name else "$path/${child.name}"
+                if (child.isDirectory) {
+                    if (childPath !in knownDirs) scan(rootDir, child, added, changedDirs)
+                } else if (child.isFile && !isIndexFile(childPath)) {
+                    val previous = known.remove(childPath)
+                    val size = child.length()
+                    val mtime = child.lastModified()
+                    if (previous == null) {
+                        added += Entry(childPath, size, mtime)
+                    } else if (size != previous.size || mtime != previous.mtime) {
+                        changed[childPath] = previous.copy(size = size, mtime = mtime)
+                    }
+                }
+            }
+            known.keys.forEach { changed[it] = null }
+        }
+        added.forEach { changed[it.path] = it }
+
+        if (changed.isEmpty() && removedDirs.isEmpty() && changedDirs.isEmpty()) return false
+        synchronized(lock) {
+            changed.forEach { (path, entry) ->
+                entries.remove(path)?.let { totalBytes -= it.size }
+                if (entry != null) {
+                    entries[path] = entry
+                    totalBytes += entry.size
+                }
+            }
+            removedDirs.forEach { dirs.remove(it) }
+            dirs.putAll(changedDirs)
+            dirty = true
+        }
+        if (changed.isNotEmpty()) Timber.i("File index of ${rootDir.absolutePath} caught up with ${changed.size} changed files")
+        return true
+    }
+
+    /**
+     * Writes the index to the install directory if it changed since it was loaded.
+     */
+    fun save() {
+        if (!stored) return
+        val (snapshot, dirSnapshot) = synchronized(lock) {
+            if (!dirty) return
+            dirty = false
+            entries.values.toList() to HashMap(dirs)
+        }
+        write(rootDir, fromManifest, snapshot, dirSnapshot)
+    }
+
+    private fun relativePath(file: File): String? {
+        val relative = file.absoluteFile.toRelativeString(rootDir.absoluteFile)
+        if (relative.isEmpty() || relative.startsWith("..")) return null
+        return normalize(relative)
+    }
+
+    companion object {
+        const val FLAG_EXECUTABLE = 1
+
+        const val INDEX_FILE_NAME = ".file_index"
+
+        private const val MAGIC = 0x47494458 // "GIDX"
+        private const val VERSION = 2
+
+        private val indexes = ConcurrentHashMap<String, InstallFileIndex>()
+
+        /**
+         * Returns the index of the install directory [rootDir], loading it from disk or walking
+         * the directory once and storing the result if none has been built yet.
+         */
+        fun forInstall(rootDir: File): InstallFileIndex {
+            peek(rootDir)?.let { return it }
+            return rebuild(rootDir)
+        }
+
+        /**
+         * Returns the index of [rootDir] if one was built, or a one-off walk of the directory
+         * otherwise. Unlike [forInstall] nothing is stored, so any directory can be passed.
+         */
+        fun get(rootDir: File): InstallFileIndex {
+            peek(rootDir)?.let { return it }
+            val entries = ArrayList<Entry>()
+            val dirs = HashMap<String, Long>()
+            scan(rootDir, rootDir, entries, dirs)
+            return InstallFileIndex(rootDir, false, entries, dirs, stored = false)
+        }
+
+        /**
+         * Returns the index of [rootDir] only if one was already built. An index read from disk
+         * is validated once, when it is loaded.
+         */
+        fun peek(rootDir: File): InstallFileIndex? {
+            val key = keyOf(rootDir)
+            indexes[key]?.let { return it }
+            val loaded = read(rootDir) ?: return null
+            if (loaded.validate()) loaded.save()
+            return indexes.putIfAbsent(key, loaded) ?: loaded
+        }
+
+        /**
+         * Builds the index of [rootDir] with a single walk and stores it.
+         */
+        fun rebuild(rootDir: File): InstallFileIndex {
+            val entries = ArrayList<Entry>()
+            val dirs = HashMap<String, Long>()
+            scan(rootDir, rootDir, entries, dirs)
+            // Nothing to keep for a directory that does not exist yet
+            val stored = rootDir.isDirectory
+            val index = InstallFileIndex(rootDir, false, entries, dirs, stored)
+            if (stored) {
+                write(rootDir, false, entries, dirs)
+                indexes[keyOf(rootDir)] = index
+            }
+            return index
+        }
+
+        /**
+         * Stores an index built from depot manifest [entries]. Sizes come from the manifests;
+         * modification times are read from the installed files.
+         */
+        fun create(rootDir: File, entries: Collection<Entry>): InstallFileIndex {
+            val stamped = entries.map { entry ->
+                val path = normalize(entry.path)
+                entry.copy(path = path, mtime = File(rootDir, path).lastModified())
+            }
+            val dirs = HashMap<String, Long>()
+            stamped.forEach { entry ->
+                var dir = entry.path.substringBeforeLast('/', "")
+                while (dir.isNotEmpty() && dir !in dirs) {
+                    dirs[dir] = File(rootDir, dir).lastModified()
+                    dir = dir.substringBeforeLast('/', "")
+                }
+            }
+            val index = InstallFileIndex(rootDir, true, stamped, dirs, stored = true)
+            write(rootDir, true, stamped, dirs)
+            indexes[keyOf(rootDir)] = index
+            return index
+        }
+
+        /**
+         * Drops the in-memory copy of the index of [rootDir]; the stored index is read again on
+         * next use.
+         */
+        fun release(rootDir: File) {
+            indexes.remove(keyOf(rootDir))
+        }
+
+        /**
+         * Drops the index of [rootDir], e.g. before the install is deleted or rewritten.
+         */
+        fun forget(rootDir: File) {
+            indexes.remove(keyOf(rootDir))
+            File(rootDir, INDEX_FILE_NAME).delete()
+        }
+
+        private fun keyOf(rootDir: File): String = rootDir.absoluteFile.normalize().path
+
+        private fun normalize(path: String): String = path.replace('\\', '/').trimStart('/')
+
+        private fun isIndexFile(path: String): Boolean = path.startsWith(INDEX_FILE_NAME) && '/' !in path
+
+        /**
+         * Walks [start], a directory inside [rootDir], adding its files to [entries] and its
+         * directories to [dirs].
+         */
+        private fun scan(rootDir: File, start: File, entries: MutableList<Entry>, dirs: MutableMap<String, Long>) {
+            if (!start.isDirectory) return
+            val root = rootDir.toPath()
+            try {
+                Files.walkFileTree(
+                    start.toPath(),
+                    object : SimpleFileVisitor<Path>() {
+                        override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                            val path = normalize(root.relativize(dir).toString())
+                            if (path.isNotEmpty()) dirs[path] = attrs.lastModifiedTime().toMillis()
+                            return FileVisitResult.CONTINUE
+                        }
+
+                        override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                            if (attrs.isRegularFile) {
+                                val path = normalize(root.relativize(file).toString())
+                                if (!isIndexFile(path)) {
+                                    entries += Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis())
+                                }
+                            }
+                            return FileVisitResult.CONTINUE
+                        }
+
+                        override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                            Timber.w(exc, "Could not index $file")
+                            return FileVisitResult.CONTINUE
+                        }
+                    },
+                )
+            } catch (e: IOException) {
+                Timber.w(e, "Error indexing ${start.absolutePath}")
+            }
+        }
+
+        private fun read(rootDir: File): InstallFileIndex? {
+            val file = File(rootDir, INDEX_FILE_NAME)
+            if (!file.isFile) return null
+            return try {
+                DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                    if (input.readInt() != MAGIC || input.readInt() != VERSION) return null
+                    val fromManifest = input.readBoolean()
+                    val count = input.readInt()
+                    val entries = ArrayList<Entry>(count)
+                    repeat(count) {
+                        entries += Entry(input.readUTF(), input.readLong(), input.readLong(), input.readInt())
+                    }
+                    val dirCount = input.readInt()
+                    val dirs = HashMap<String, Long>(dirCount * 2)
+                    repeat(dirCount) {
+                        dirs[input.readUTF()] = input.readLong()
+                    }
+                    InstallFileIndex(rootDir, fromManifest, entries, dirs, stored = true)
+                }
+            } catch (e: IOException) {
+                Timber.w(e, "Discarding unreadable file index in ${rootDir.absolutePath}")
+                file.delete()
+                null
+            }
+        }
+
+        private fun write(rootDir: File, fromManifest: Boolean, entries: Collection<Entry>, dirs: Map<String, Long>) {
+            if (!rootDir.isDirectory) return
+            val file = File(rootDir, INDEX_FILE_NAME)
+            val tmp = File(rootDir, "$INDEX_FILE_NAME.tmp")
+            try {
+                DataOutputStream(BufferedOutputStream(tmp.outputStream())).use { output ->
+                    output.writeInt(MAGIC)
+                    output.writeInt(VERSION)
+                    output.writeBoolean(fromManifest)
+                    output.writeInt(entries.size)
+                    entries.forEach {
+                        output.writeUTF(it.path)
+                        output.writeLong(it.size)
+                        output.writeLong(it.mtime)
+                        output.writeInt(it.flags)
+                    }
+                    output.writeInt(dirs.size)
+                    dirs.forEach { (path, mtime) ->
+                        output.writeUTF(path)
+                        output.writeLong(mtime)
+                    }
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: IOException) {
+                Timber.w(e, "Failed to write file index in ${rootDir.absolutePath}")
+                tmp.delete()
+            }
+        }
+    }
+}
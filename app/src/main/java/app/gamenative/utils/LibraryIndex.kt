@@ -0,0 +1,310 @@
+package app.gamenative.utils
+
+import app.gamenative.data.GameSource
+import app.gamenative.data.LibraryItem
+import app.gamenative.enums.AppType
+import java.util.BitSet
+import java.util.PriorityQueue
+
+/**
+ * In-memory index over the library entries of every game source, so searching, filtering and
+ * paging the library does not re-filter and re-sort the whole list on every keystroke.
+ *
+ * Each entry gets a slot number. Sources, app types and install state are kept as bitsets over
+ * the slots, and names are indexed by trigram so a search only verifies the entries that contain
+ * every trigram of the query. Each source keeps its entries pre-sorted (installed first, then by
+ * name) and a page is produced by merging the sorted sources, stopping once the page is full.
+ *
+ * Sources are replaced wholesale with [replaceSource]; only entries that actually changed are
+ * re-indexed, and a source is only re-sorted after one of its entries changed.
+ */
+class LibraryIndex {
+
+    /**
+     * One library entry. [item] is returned as-is in query results, re-numbered by position.
+     */
+    data class Entry(
+        val item: LibraryItem,
+        val type: AppType = AppType.game,
+        val installed: Boolean = false,
+        val ownerAccountIds: List<Int> = emptyList(),
+        /** Name of the install directory, used to resolve install state for Steam apps. */
+        val installDirName: String = "",
+    ) {
+        val key: String
+            get() = item.appId
+
+        val source: GameSource
+            get() = item.gameSource
+
+        internal val sortName: String = item.name.lowercase()
+    }
+
+    data class Query(
+        val text: String = "",
+        val sources: Set<GameSource> = GameSource.entries.toSet(),
+        /** App types a Steam entry must have. Other sources are not filtered by type. */
+        val steamTypes: Set<AppType> = setOf(AppType.game),
+        val installedOnly: Boolean = false,
+        /** Sources that are left out entirely, e.g. custom games when games are filtered out. */
+        val excludedSources: Set<GameSource> = emptySet(),
+        /** Extra check for Steam entries, such as account ownership. */
+        val steamFilter: ((Entry) -> Boolean)? = null,
+    )
+
+    class Result(
+        /** The first `limit` matches, in display order. */
+        val items: List<LibraryItem>,
+        /** Number of matches in the sources of the query. */
+        val total: Int,
+        /** Number of matches per source, counted whether or not the source is shown. */
+        val countBySource: Map<GameSource, Int>,
+        val installedCountBySource: Map<GameSource, Int>,
+    )
+
+    private val lock = Any()
+
+    private val entries = ArrayList<Entry?>()
+    private val slots = HashMap<String, Int>()
+    private val freeSlots = ArrayDeque<Int>()
+
+    private val sourceBits = HashMap<GameSource, BitSet>()
+    private val typeBits = HashMap<AppType, BitSet>()
+    private val installedBits = BitSet()
+    private val trigrams = HashMap<Long, BitSet>()
+
+    // Slots of each source in display order, rebuilt lazily after the source changes
+    private val sortedSlots = HashMap<GameSource, IntArray>()
+
+    val size: Int
+        get() = synchronized(lock) { slots.size }
+
+    /**
+     * Replaces the entries of [source] with [newEntries]. Returns whether anything changed.
+     */
+    fun replaceSource(source: GameSource, newEntries: Collection<Entry>): Boolean = synchronized(lock) {
+        val incoming = newEntries.filter { it.source == source }.associateBy { it.key }
+        var changed = false
+
+        val stale = slots.keys.filter { key ->
+            val slot = slots.getValue(key)
+            entries[slot]!!.source == source && key !in incoming
+        }
+        stale.forEach { removeLocked(it) }
+        changed = changed || stale.isNotEmpty()
+
+        incoming.values.forEach { entry ->
+            val existing = slots[entry.key]?.let { entries[it] }
+            if (existing != entry) {
+                putLocked(entry)
+                changed = true
+            }
+        }
+
+        if (changed) sortedSlots.remove(source)
+        changed
+    }
+
+    fun put(entry: Entry) {
+        synchronized(lock) {
+            putLocked(entry)
+            sortedSlots.remove(entry.source)
+        }
+    }
+
+    fun remove(key: String) {
+        synchronized(lock) {
+            val source = slots[key]?.let { entries[it]!!.source } ?: return
+            removeLocked(key)
+            sortedSlots.remove(source)
+        }
+    }
+
+    /**
+     * Updates the install state of every entry of [source] from [isInstalled].
+     */
+    fun updateInstalled(source: GameSource, isInstalled: (Entry) -> Boolean) {
+        synchronized(lock) {
+            var changed = false
+            sourceBits[source]?.forEachSlot { slot ->
+                val entry = entries[slot]!!
+                val installed = isInstalled(entry)
+                if (installed != entry.installed) {
+                    entries[slot] = entry.copy(installed = installed)
+                    installedBits[slot] = installed
+                    changed = true
+                }
+            }
+            if (changed) sortedSlots.remove(source)
+        }
+    }
+
+    /**
+     * Returns the first [limit] matches of [query] in display order, along with match counts.
+     */
+    fun query(query: Query, limit: Int = Int.MAX_VALUE): Result = synchronized(lock) {
+        val text = query.text.trim().lowercase()
+        val candidates = candidatesFor(text)
+
+        val perSource = GameSource.entries.associateWith { source ->
+            matchingSlots(source, query, text, candidates)
+        }
+
+        val countBySource = perSource.mapValues { it.value.cardinality() }
+        val installedCountBySource = perSource.mapValues { (_, bits) ->
+            (bits.clone() as BitSet).apply { and(installedBits) }.cardinality()
+        }
+
+        val shown = perSource.filterKeys { it in query.sources }
+        val total = shown.values.sumOf { it.cardinality() }
+        val items = merge(shown, limit)
+
+        Result(items, total, countBySource, installedCountBySource)
+    }
+
+    private fun matchingSlots(source: GameSource, query: Query, text: String, candidates: BitSet?): BitSet {
+        val bits = sourceBits[source]?.clone() as BitSet? ?: return BitSet()
+        if (source in query.excludedSources) return BitSet()
+
+        if (source == GameSource.STEAM) {
+            val typed = BitSet()
+            query.steamTypes.forEach { type -> typeBits[type]?.let { typed.or(it) } }
+            bits.and(typed)
+        }
+        if (query.installedOnly) bits.and(installedBits)
+        if (candidates != null) bits.and(candidates)
+
+        val steamFilter = query.steamFilter.takeIf { source == GameSource.STEAM }
+        bits.forEachSlot { slot ->
+            val entry = entries[slot]!!
+            val matches = (text.isEmpty() || entry.sortName.contains(text)) &&
+                (steamFilter == null || steamFilter(entry))
+            if (!matches) bits.clear(slot)
+        }
+        return bits
+    }
+
+    /**
+     * Slots containing every trigram of [text], or null when the query is too short to narrow
+     * anything down and every entry has to be checked.
+     */
+    private fun candidatesFor(text: String): BitSet? {
+        if (text.length < 3) return null
+        var result: BitSet? = null
+        for (i in 0..text.length - 3) {
+            val posting = trigrams[trigramOf(text, i)] ?: return BitSet()
+            if (result == null) {
+                result = posting.clone() as BitSet
+            } else {
+                result.and(posting)
+            }
+            if (result.isEmpty) break
+        }
+        return result
+    }
+
+    /**
+     * Merges the sorted slots of each source, keeping only slots set in its match bitset.
+     */
+    private fun merge(matches: Map<GameSource, BitSet>, limit: Int): List<LibraryItem> {
+        class Cursor(val source: GameSource, val order: IntArray, val bits: BitSet) {
+            var position = -1
+            var slot = -1
+
+            fun advance(): Boolean {
+                while (++position < order.size) {
+                    if (bits[order[position]]) {
+                        slot = order[position]
+                        return true
+                    }
+                }
+                return false
+            }
+        }
+
+        val heap = PriorityQueue<Cursor> { a, b ->
+            compareSlots(a.slot, b.slot).takeIf { it != 0 } ?: a.source.ordinal.compareTo(b.source.ordinal)
+        }
+        matches.forEach { (source, bits) ->
+            if (bits.isEmpty) return@forEach
+            val cursor = Cursor(source, sortedSlotsOf(source), bits)
+            if (cursor.advance()) heap.add(cursor)
+        }
+
+        val out = ArrayList<LibraryItem>(minOf(limit, matches.values.sumOf { it.cardinality() }))
+        while (out.size < limit) {
+            val cursor = heap.poll() ?: break
+            out += entries[cursor.slot]!!.item.copy(index = out.size)
+            if (cursor.advance()) heap.add(cursor)
+        }
+        return out
+    }
+
+    private fun sortedSlotsOf(source: GameSource): IntArray = sortedSlots.getOrPut(source) {
+        val slotsOfSource = ArrayList<Int>()
+        sourceBits[source]?.forEachSlot { slotsOfSource += it }
+        slotsOfSource.sortedWith { a, b -> compareSlots(a, b) }.toIntArray()
+    }
+
+    private fun compareSlots(a: Int, b: Int): Int {
+        val ea = entries[a]!!
+        val eb = entries[b]!!
+        if (ea.installed != eb.installed) return if (ea.installed) -1 else 1
+        val byName = ea.sortName.compareTo(eb.sortName)
+        if (byName != 0) return byName
+        return ea.key.compareTo(eb.key)
+    }
+
+    private fun putLocked(entry: Entry) {
+        slots[entry.key]?.let { previous ->
+            // Re-index in place when the name, type and source did not change
+            val old = entries[previous]!!
+            if (old.sortName == entry.sortName && old.type == entry.type && old.source == entry.source) {
+                entries[previous] = entry
+                installedBits[previous] = entry.installed
+                return
+            }
+            removeLocked(entry.key)
+            sortedSlots.remove(old.source)
+        }
+
+        val slot = freeSlots.removeFirstOrNull() ?: entries.size.also { entries.add(null) }
+        entries[slot] = entry
+        slots[entry.key] = slot
+        sourceBits.getOrPut(entry.source) { BitSet() }.set(slot)
+        typeBits.getOrPut(entry.type) { BitSet() }.set(slot)
+        installedBits[slot] = entry.installed
+        forEachTrigram(entry.sortName) { trigrams.getOrPut(it) { BitSet() }.set(slot) }
+    }
+
+    private fun removeLocked(key: String) {
+        val slot = slots.remove(key) ?: return
+        val entry = entries[slot]!!
+        sourceBits[entry.source]?.clear(slot)
+        typeBits[entry.type]?.clear(slot)
+        installedBits.clear(slot)
+        forEachTrigram(entry.sortName) { gram ->
+            trigrams[gram]?.let { posting ->
+                posting.clear(slot)
+                if (posting.isEmpty) trigrams.remove(gram)
+            }
+        }
+        entries[slot] = null
+        freeSlots.addLast(slot)
+    }
+
+    private inline fun forEachTrigram(name: String, action: (Long) -> Unit) {
+        for (i in 0..name.length - 3) action(trigramOf(name, i))
+    }
+
+    private fun trigramOf(text: String, start: Int): Long =
+        (text[start].code.toLong() shl 32) or (text[start + 1].code.toLong() shl 16) or text[start + 2].code.toLong()
+
+    private inline fun BitSet.forEachSlot(action: (Int) -> Unit) {
+        var slot = nextSetBit(0)
+        while (slot >= 0) {
+            action(slot)
+            slot = nextSetBit(slot + 1)
+        }
+    }
+}
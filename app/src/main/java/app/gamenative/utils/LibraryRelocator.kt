@@ -0,0 +1,277 @@
+package app.gamenative.utils
+
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.LinkOption
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.min
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.yield
+import timber.log.Timber
+
+/**
+ * Moves everything in [sourceDir] into [targetDir].
+ *
+ * Each top-level entry (usually one game) is renamed in one step when both directories are on
+ * the same volume. Otherwise its files are copied [parallelism] at a time with channel
+ * transfers, into a `.part` file that is size-checked and renamed into place before the source
+ * file is deleted. Symbolic links are recreated at the target rather than followed.
+ *
+ * Files that reached their final place are appended to a journal in the target directory, so
+ * a move that was interrupted picks up where it stopped instead of starting over.
+ */
+class LibraryRelocator(
+    private val sourceDir: Path,
+    private val targetDir: Path,
+    private val parallelism: Int = DEFAULT_PARALLELISM,
+    private val transferSize: Long = DEFAULT_TRANSFER_SIZE,
+    /** Whether same-volume entries may be renamed instead of copied. */
+    private val allowRename: Boolean = true,
+) {
+    data class Progress(
+        val currentFile: String,
+        val fileProgress: Float,
+        val movedFiles: Int,
+        val totalFiles: Int,
+        val movedBytes: Long,
+    )
+
+    data class Result(
+        /** Top-level entries that were moved with a single rename. */
+        val renamedEntries: Int,
+        val copiedFiles: Int,
+        /** Files found finished in the journal of an earlier, interrupted move. */
+        val resumedFiles: Int,
+        val copiedBytes: Long,
+    )
+
+    private class CopyTask(val source: Path, val relative: String, val size: Long, val isLink: Boolean = false)
+
+    private val journalFile: Path = targetDir.resolve(JOURNAL_FILE_NAME)
+    private val journalLock = Any()
+
+    private val movedFiles = AtomicInteger()
+    private val movedBytes = AtomicLong()
+
+    suspend fun run(onProgress: suspend (Progress) -> Unit = {}): Result = withContext(Dispatchers.IO) {
+        Files.createDirectories(targetDir)
+        val finished = readJournal()
+
+        val entries = Files.newDirectoryStream(sourceDir).use { it.toList() }.sortedBy { it.fileName.toString() }
+        val sameVolume = allowRename && isSameVolume(sourceDir, targetDir)
+
+        // Files are counted up front so renamed and copied entries report against the same total
+        val plan = entries.map { it to collectFiles(it) }
+        val totalFiles = plan.sumOf { (_, files) -> files.size }
+
+        // Same-volume entries are moved in one rename each; whatever cannot be renamed is copied
+        var renamed = 0
+        val toCopy = mutableListOf<Path>()
+        val tasks = mutableListOf<CopyTask>()
+        for ((entry, files) in plan) {
+            val target = targetDir.resolve(entry.fileName.toString())
+            if (sameVolume && !Files.exists(target, LinkOption.NOFOLLOW_LINKS) && rename(entry, target)) {
+                renamed++
+                movedBytes.addAndGet(files.sumOf { it.size })
+                onProgress(Progress(entry.fileName.toString(), 1f, movedFiles.addAndGet(files.size), totalFiles, movedBytes.get()))
+            } else {
+                toCopy += entry
+                tasks += files
+            }
+        }
+        val resumed = AtomicInteger()
+        val copied = AtomicInteger()
+        val copiedBytes = AtomicLong()
+        val permits = Semaphore(parallelism.coerceAtLeast(1))
+
+        coroutineScope {
+            tasks.map { task ->
+                async(Dispatchers.IO) {
+                    permits.withPermit {
+                        val target = targetDir.resolve(task.relative)
+                        if (task.relative in finished && isFinished(task, target)) {
+                            // Copied before the last move was interrupted; only the source was left
+                            Files.deleteIfExists(task.source)
+                            resumed.incrementAndGet()
+                        } else if (task.isLink) {
+                            copyLink(task, target)
+                            copied.incrementAndGet()
+                        } else {
+                            copyFile(task, target) { fileProgress ->
+                                onProgress(Progress(task.relative, fileProgress, movedFiles.get(), totalFiles, movedBytes.get()))
+                            }
+                            copied.incrementAndGet()
+                            copiedBytes.addAndGet(task.size)
+                        }
+                        onProgress(Progress(task.relative, 1f, movedFiles.incrementAndGet(), totalFiles, movedBytes.get()))
+                    }
+                }
+            }.awaitAll()
+        }
+
+        toCopy.forEach { deleteEmptyDirectories(it) }
+        Files.deleteIfExists(journalFile)
+
+        Result(renamed, copied.get(), resumed.get(), copiedBytes.get())
+    }
+
+    private fun rename(source: Path, target: Path): Boolean = try {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE)
+        true
+    } catch (e: AtomicMoveNotSupportedException) {
+        false
+    } catch (e: IOException) {
+        // e.g. EXDEV between two mount points of the same storage
+        Timber.d(e, "Could not rename $source, copying instead")
+        false
+    }
+
+    private fun collectFiles(entry: Path): List<CopyTask> {
+        val out = mutableListOf<CopyTask>()
+        Files.walkFileTree(
+            entry,
+            object : SimpleFileVisitor<Path>() {
+                override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                    if (attrs.isRegularFile) {
+                        out += CopyTask(file, sourceDir.relativize(file).toString(), attrs.size())
+                    } else if (attrs.isSymbolicLink) {
+                        out += CopyTask(file, sourceDir.relativize(file).toString(), 0L, isLink = true)
+                    }
+                    return FileVisitResult.CONTINUE
+                }
+
+                override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                    Timber.e(exc, "Failed to visit file: $file")
+                    return FileVisitResult.CONTINUE
+                }
+            },
+        )
+        return out
+    }
+
+    private fun isFinished(task: CopyTask, target: Path): Boolean = if (task.isLink) {
+        Files.isSymbolicLink(target)
+    } else {
+        Files.isRegularFile(target) && Files.size(target) == task.size
+    }
+
+    /** Recreates the symbolic link [task] at [target], pointing where the source points. */
+    private fun copyLink(task: CopyTask, target: Path) {
+        Files.createDirectories(target.parent)
+        Files.deleteIfExists(target)
+        Files.createSymbolicLink(target, Files.readSymbolicLink(task.source))
+        appendToJournal(task.relative)
+        Files.delete(task.source)
+    }
+
+    private suspend fun copyFile(task: CopyTask, target: Path, onFileProgress: suspend (Float) -> Unit) {
+        Files.createDirectories(target.parent)
+        val part = target.resolveSibling("${target.fileName}$PART_SUFFIX")
+
+        FileChannel.open(task.source, StandardOpenOption.READ).use { input ->
+            FileChannel.open(
+                part,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+            ).use { output ->
+                val size = input.size()
+                var position = 0L
+                while (position < size) {
+                    val transferred = input.transferTo(position, min(transferSize, size - position), output)
+                    if (transferred <= 0) throw IOException("Transfer of ${task.source} stalled at $position of $size bytes")
+                    position += transferred
+                    movedBytes.addAndGet(transferred)
+                    onFileProgress(position.toFloat() / size)
+                    yield()
+                }
+                output.force(true)
+            }
+        }
+
+        val copiedSize = Files.size(part)
+        if (copiedSize != task.size) {
+            Files.deleteIfExists(part)
+            throw IOException("Size mismatch moving ${task.relative}: expected ${task.size}, got $copiedSize")
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING)
+        appendToJournal(task.relative)
+        Files.delete(task.source)
+    }
+
+    private fun readJournal(): Set<String> {
+        if (!Files.isRegularFile(journalFile)) return emptySet()
+        return try {
+            val lines = Files.readAllLines(journalFile)
+            // A journal of a move from somewhere else does not apply
+            if (lines.firstOrNull() != sourceDir.toAbsolutePath().toString()) {
+                emptySet()
+            } else {
+                lines.drop(1).toHashSet()
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Ignoring unreadable relocation journal")
+            emptySet()
+        }
+    }
+
+    private fun appendToJournal(relative: String) {
+        synchronized(journalLock) {
+            if (!Files.exists(journalFile)) {
+                Files.write(journalFile, listOf(sourceDir.toAbsolutePath().toString()))
+            }
+            Files.write(journalFile, listOf(relative), StandardOpenOption.APPEND)
+        }
+    }
+
+    private fun deleteEmptyDirectories(entry: Path) {
+        if (!Files.isDirectory(entry)) return
+        Files.walkFileTree(
+            entry,
+            object : SimpleFileVisitor<Path>() {
+                override fun postVisitDirectory(dir: Path, exc: IOException?): FileVisitResult {
+                    if (exc == null) {
+                        try {
+                            val isEmpty = Files.newDirectoryStream(dir).use { !it.iterator().hasNext() }
+                            if (isEmpty) Files.delete(dir)
+                        } catch (e: Exception) {
+                            Timber.e(e, "Failed to delete directory: $dir")
+                        }
+                    }
+                    return FileVisitResult.CONTINUE
+                }
+            },
+        )
+    }
+
+    companion object {
+        const val JOURNAL_FILE_NAME = ".relocation_journal"
+
+        private const val PART_SUFFIX = ".part"
+
+        private const val DEFAULT_PARALLELISM = 4
+
+        private const val DEFAULT_TRANSFER_SIZE = 8L * 1024 * 1024
+
+        private fun isSameVolume(a: Path, b: Path): Boolean = try {
+            Files.getFileStore(a) == Files.getFileStore(b)
+        } catch (e: IOException) {
+            false
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Deferred
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import timber.log.Timber
+
+/**
+ * Small persistent cache for API responses, stored as serialized strings.
+ *
+ * Entries expire after [ttlMillis] and the least recently used entries are evicted once
+ * [maxEntries] is exceeded. Concurrent loads of the same key are coalesced into a single
+ * request, and [getOrLoadAll] sends every miss of a batch to the loader in one call.
+ *
+ * The cache is kept in memory and every change is appended to [file] as one JSON line, so
+ * responses survive process death without rewriting the whole cache on each load. The file is
+ * compacted once it holds more than twice the live entries. A null [file] keeps the cache in
+ * memory only.
+ */
+class ResponseCache(
+    private val name: String,
+    private val ttlMillis: Long = DEFAULT_TTL_MILLIS,
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val clock: () -> Long = System::currentTimeMillis,
+) {
+    private data class Entry(val key: String, val value: String, val storedAt: Long)
+
+    /** One line of the cache file: a stored entry, or the removal of [key] when [value] is null. */
+    @Serializable
+    private data class Record(val key: String, val value: String? = null, val storedAt: Long = 0L)
+
+    private val lock = Any()
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+
+    private val inFlight = ConcurrentHashMap<String, Deferred<String?>>()
+
+    private val hits = AtomicInteger()
+    private val misses = AtomicInteger()
+
+    @Volatile
+    private var file: File? = null
+
+    @Volatile
+    private var loaded = false
+
+    /** Lines in [file], live or superseded. */
+    private var records = 0
+
+    /** Number of lookups answered from the cache. */
+    val hitCount: Int
+        get() = hits.get()
+
+    /** Number of lookups that had to go to the loader. */
+    val missCount: Int
+        get() = misses.get()
+
+    /**
+     * Binds the cache to a file, loading any entries persisted by a previous process.
+     */
+    fun attach(file: File) {
+        synchronized(lock) {
+            this.file = file
+            loaded = false
+        }
+    }
+
+    /**
+     * Returns the cached value for [key] if present and not expired.
+     */
+    fun get(key: String): String? = synchronized(lock) {
+        ensureLoaded()
+        val entry = entries[key] ?: return null
+        if (clock() - entry.storedAt > ttlMillis) {
+            entries.remove(key)
+            return null
+        }
+        entry.value
+    }
+
+    fun put(key: String, value: String) {
+        putAll(mapOf(key to value))
+    }
+
+    fun putAll(values: Map<String, String>) {
+        if (values.isEmpty()) return
+        synchronized(lock) {
+            ensureLoaded()
+            val now = clock()
+            val changed = values.map { (key, value) -> Record(key, value, now) }
+            values.forEach { (key, value) -> entries[key] = Entry(key, value, now) }
+            append(changed + trim().map { Record(it) })
+        }
+    }
+
+    fun remove(key: String) {
+        synchronized(lock) {
+            ensureLoaded()
+            if (entries.remove(key) != null) append(listOf(Record(key)))
+        }
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+            loaded = true
+            compact()
+        }
+    }
+
+    fun size(): Int = synchronized(lock) {
+        ensureLoaded()
+        entries.size
+    }
+
+    /**
+     * Returns the value for [key], calling [loader] on a miss. Callers asking for a key that is
+     * already being loaded wait for that load instead of starting their own.
+     * A null result from [loader] is returned but not cached.
+     */
+    suspend fun getOrLoad(key: String, loader: suspend () -> String?): String? {
+        return getOrLoadAll(listOf(key)) { keys ->
+            loader()?.let { mapOf(keys.single() to it) }
+        }[key]
+    }
+
+    /**
+     * Returns the values for [keys], sending all misses to [loader] in a single call.
+     * Keys already being loaded by another caller are awaited rather than requested again.
+     * Keys missing from the loader's result are left out of the returned map.
+     */
+    suspend fun getOrLoadAll(
+        keys: Collection<String>,
+        loader: suspend (List<String>) -> Map<String, String>?,
+    ): Map<String, String> {
+        val result = mutableMapOf<String, String>()
+        val awaiting = mutableMapOf<String, Deferred<String?>>()
+        val owned = mutableMapOf<String, CompletableDeferred<String?>>()
+
+        for (key in keys.distinct()) {
+            val cached = get(key)
+            if (cached != null) {
+                hits.incrementAndGet()
+                result[key] = cached
+                continue
+            }
+
+            val deferred = CompletableDeferred<String?>()
+            val existing = inFlight.putIfAbsent(key, deferred)
+            if (existing != null) {
+                awaiting[key] = existing
+            } else {
+                misses.incrementAndGet()
+                owned[key] = deferred
+            }
+        }
+
+        if (owned.isNotEmpty()) {
+            try {
+                val loaded = loader(owned.keys.toList()).orEmpty()
+                putAll(loaded.filterKeys { it in owned })
+                owned.forEach { (key, deferred) -> deferred.complete(loaded[key]) }
+                loaded.forEach { (key, value) -> if (key in owned) result[key] = value }
+            } catch (e: Throwable) {
+                owned.values.forEach { it.completeExceptionally(e) }
+                throw e
+            } finally {
+                owned.keys.forEach { inFlight.remove(it) }
+            }
+        }
+
+        awaiting.forEach { (key, deferred) ->
+            val value = try {
+                deferred.await()
+            } catch (e: Exception) {
+                // The other caller reports the failure; this key is just left out
+                null
+            }
+            if (value != null) result[key] = value
+        }
+
+        return result
+    }
+
+    /** Evicts the least recently used entries over [maxEntries], returning their keys. */
+    private fun trim(): List<String> {
+        val evicted = mutableListOf<String>()
+        val iterator = entries.values.iterator()
+        while (entries.size > maxEntries && iterator.hasNext()) {
+            evicted += iterator.next().key
+            iterator.remove()
+        }
+        return evicted
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        records = 0
+
+        val file = file ?: return
+        if (!file.exists()) return
+
+        try {
+            val now = clock()
+            file.forEachLine { line ->
+                if (line.isBlank()) return@forEachLine
+                val record = Json.decodeFromString(Record.serializer(), line)
+                records++
+                // Re-inserted so the file's order, oldest write first, becomes the access order
+                entries.remove(record.key)
+                if (record.value != null && now - record.storedAt <= ttlMillis) {
+                    entries[record.key] = Entry(record.key, record.value, record.storedAt)
+                }
+            }
+            trim()
+            Timber.tag("ResponseCache").d("Loaded ${entries.size} $name entries from disk")
+        } catch (e: Exception) {
+            Timber.tag("ResponseCache").w(e, "Discarding unreadable $name cache")
+            records = 0
+            file.delete()
+        }
+    }
+
+    private fun append(changed: List<Record>) {
+        val file = file ?: return
+        if (records + changed.size > entries.size * 2 + COMPACT_SLACK) {
+            compact()
+            return
+        }
+        try {
+            file.parentFile?.mkdirs()
+            file.appendText(changed.joinToString("") { Json.encodeToString(Record.serializer(), it) + "\n" })
+            records += changed.size
+        } catch (e: Exception) {
+            Timber.tag("ResponseCache").w(e, "Failed to persist $name cache")
+        }
+    }
+
+    /** Rewrites [file] with only the live entries. */
+    private fun compact() {
+        val file = file ?: return
+        try {
+            file.parentFile?.mkdirs()
+            val temp = File(file.parentFile, "${file.name}.tmp")
+            temp.writeText(
+                entries.values.joinToString("") {
+                    Json.encodeToString(Record.serializer(), Record(it.key, it.value, it.storedAt)) + "\n"
+                },
+            )
+            if (!temp.renameTo(file)) {
+                file.delete()
+                temp.renameTo(file)
+            }
+            records = entries.size
+        } catch (e: Exception) {
+            Timber.tag("ResponseCache").w(e, "Failed to persist $name cache")
+        }
+    }
+
+    companion object {
+        val DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24)
+        const val DEFAULT_MAX_ENTRIES = 5_000
+
+        /** Superseded lines tolerated on top of twice the live entries before compacting. */
+        private const val COMPACT_SLACK = 100
+    }
+}
@@ -48,6 +48,11 @@ object SteamUtils {
         .retryOnConnectionFailure(true)
         .build()
 
+    // steam_api DLLs deeper than this inside an install are left alone
+    private const val STEAM_API_MAX_DEPTH = 10
+    private val STEAM_API_DLL = Regex("""steam_api(64)?\.dll""", RegexOption.IGNORE_CASE)
+    private val STEAM_API_DLL_BACKUP = Regex("""steam_api(64)?\.dll\.orig""", RegexOption.IGNORE_CASE)
+
     private val sfd by lazy {
         SimpleDateFormat("MMM d - h:mm a", Locale.getDefault()).apply {
             timeZone = TimeZone.getDefault()
@@ -167,9 +172,11 @@ object SteamUtils {
         // Get ticket once for all DLLs
         val ticketBase64 = SteamService.instance?.getEncryptedAppTicketBase64(steamAppId)
 
-        rootPath.toFile().walkTopDown().maxDepth(10).forEach { file ->
+        val fileIndex = InstallFileIndex.forInstall(rootPath.toFile())
+        fileIndex.findByName(STEAM_API_DLL, maxDepth = STEAM_API_MAX_DEPTH).forEach { entry ->
+            val file = fileIndex.fileOf(entry)
             val path = file.toPath()
-            if (!file.isFile || !path.name.startsWith("steam_api", ignoreCase = true)) return@forEach
+            if (!file.isFile) return@forEach
 
             val is64Bit = path.name.equals("steam_api64.dll", ignoreCase = true)
             val is32Bit = path.name.equals("steam_api.dll", ignoreCase = true)
@@ -191,9 +198,12 @@ object SteamUtils {
                 }
                 Timber.i("Replaced $dllName")
                 if (is64Bit) replaced64Count++ else replaced32Count++
+                fileIndex.update(file)
+                fileIndex.update(File("${file.path}.orig"))
                 ensureSteamSettings(context, path, appId, ticketBase64)
             }
         }
+        fileIndex.save()
 
         // Write all collected backup paths to orig_dll_path.txt
         if (backupPaths.isNotEmpty()) {
@@ -576,18 +586,7 @@ object SteamUtils {
             return 0L
         }
 
-        var size = 0L
-        try {
-            directory.walkTopDown().forEach { file ->
-                if (file.isFile()) {
-                    size += file.length()
-                }
-            }
-        } catch (e: Exception) {
-            Timber.w(e, "Error calculating directory size")
-        }
-
-        return size
+        return InstallFileIndex.forInstall(directory).totalSize
     }
 
     /**
@@ -639,11 +638,12 @@ object SteamUtils {
     }
 
     fun putBackSteamDlls(appDirPath: String) {
-        val rootPath = Paths.get(appDirPath)
+        val fileIndex = InstallFileIndex.forInstall(File(appDirPath))
 
-        rootPath.toFile().walkTopDown().maxDepth(10).forEach { file ->
+        fileIndex.findByName(STEAM_API_DLL_BACKUP, maxDepth = STEAM_API_MAX_DEPTH).forEach { entry ->
+            val file = fileIndex.fileOf(entry)
             val path = file.toPath()
-            if (!file.isFile || !path.name.startsWith("steam_api", ignoreCase = true) || !path.name.endsWith(".orig", ignoreCase = true)) return@forEach
+            if (!file.isFile) return@forEach
 
             val is64Bit = path.name.equals("steam_api64.dll.orig", ignoreCase = true)
             val is32Bit = path.name.equals("steam_api.dll.orig", ignoreCase = true)
@@ -663,6 +663,7 @@ object SteamUtils {
 
                     // Copy the backup back to the original location
                     Files.copy(path, originalPath)
+                    fileIndex.update(originalPath.toFile())
 
                     Timber.i("Restored $dllName from backup")
                 } catch (e: IOException) {
@@ -670,6 +671,7 @@ object SteamUtils {
                 }
             }
         }
+        fileIndex.save()
     }
 
     /**
@@ -2,21 +2,12 @@ package app.gamenative.utils
 
 import android.os.StatFs
 import java.io.File
-import java.nio.ByteBuffer
-import java.nio.channels.FileChannel
-import java.nio.file.FileVisitResult
 import java.nio.file.Paths
-import java.nio.file.SimpleFileVisitor
-import java.nio.file.StandardCopyOption
-import java.nio.file.StandardOpenOption
-import java.nio.file.attribute.BasicFileAttributes
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.yield
 import timber.log.Timber
-import java.io.IOException
 import java.nio.file.Files
-import java.nio.file.Path
 
 object StorageUtils {
 
@@ -29,15 +20,20 @@ object StorageUtils {
         return stat.blockSizeLong * stat.availableBlocksLong
     }
 
+    /**
+     * Size of a folder. Game installs answer from their file index; other folders are walked.
+     */
     suspend fun getFolderSize(folderPath: String): Long {
         val folder = File(folderPath)
         if (folder.exists()) {
+            InstallFileIndex.peek(folder)?.let { return it.totalSize }
+
             var bytes = 0L
             val tree = folder.walk()
-            tree.forEach {
-                bytes += it.length()
+            tree.forEachIndexed { i, file ->
+                bytes += file.length()
                 // allow interruption if run as coroutine
-                yield()
+                if (i % 256 == 0) yield()
             }
             return bytes
         }
@@ -71,6 +67,9 @@ object StorageUtils {
      * Move games from internal only storage to user storage.
      * This should be removed after a few versions and just
      * remove the old path to free up space.
+     *
+     * Games are renamed into place when both paths are on the same volume and copied in
+     * parallel otherwise; an interrupted move resumes where it stopped when started again.
      */
     suspend fun moveGamesFromOldPath(
         sourceDir: String,
@@ -80,113 +79,15 @@ object StorageUtils {
     ) = withContext(Dispatchers.IO) {
         try {
             val sourcePath = Paths.get(sourceDir)
-            val targetPath = Paths.get(targetDir)
-
-            if (!Files.exists(targetPath)) {
-                Files.createDirectories(targetPath)
-            }
-
-            val allFiles = mutableListOf<Path>()
-            Files.walkFileTree(
-                sourcePath,
-                object : SimpleFileVisitor<Path>() {
-                    override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
-                        if (Files.isRegularFile(file)) {
-                            allFiles.add(file)
-                        }
-                        return FileVisitResult.CONTINUE
-                    }
-
-                    override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
-                        Timber.e(exc, "Failed to visit file: $file")
-                        return FileVisitResult.CONTINUE
-                    }
-                },
-            )
-
-            val totalFiles = allFiles.size
-            var filesMoved = 0
 
-            for (sourcePath in allFiles) {
-                val relativePath = sourcePath.subpath(Paths.get(sourceDir).nameCount, sourcePath.nameCount)
-                val targetFilePath = Paths.get(targetDir, relativePath.toString())
-
-                Files.createDirectories(targetFilePath.parent)
-
-                // val fileName = sourcePath.fileName.toString()
-
-                try {
-                    Files.move(sourcePath, targetFilePath, StandardCopyOption.ATOMIC_MOVE)
-
-                    withContext(Dispatchers.Main) {
-                        onProgressUpdate(relativePath.toString(), 1f, filesMoved++, totalFiles)
-                    }
-                } catch (e: Exception) {
-                    val fileSize = Files.size(sourcePath)
-                    var bytesCopied = 0L
-
-                    FileChannel.open(sourcePath, StandardOpenOption.READ).use { sourceChannel ->
-                        FileChannel.open(
-                            targetFilePath,
-                            StandardOpenOption.CREATE,
-                            StandardOpenOption.WRITE,
-                            StandardOpenOption.TRUNCATE_EXISTING,
-                        ).use { targetChannel ->
-                            val buffer = ByteBuffer.allocateDirect(8 * 1024 * 1024)
-                            var bytesRead: Int
-
-                            while (sourceChannel.read(buffer).also { bytesRead = it } > 0) {
-                                buffer.flip()
-                                targetChannel.write(buffer)
-                                buffer.compact()
-
-                                bytesCopied += bytesRead
-
-                                val fileProgress = if (fileSize > 0) {
-                                    bytesCopied.toFloat() / fileSize
-                                } else {
-                                    1f
-                                }
-
-                                withContext(Dispatchers.Main) {
-                                    onProgressUpdate(relativePath.toString(), fileProgress, filesMoved, totalFiles)
-                                }
-                            }
-
-                            targetChannel.force(true)
-                        }
-                    }
-
-                    Files.delete(sourcePath)
-                    withContext(Dispatchers.Main) {
-                        onProgressUpdate(relativePath.toString(), 1f, filesMoved++, totalFiles)
-                    }
+            val result = LibraryRelocator(sourcePath, Paths.get(targetDir)).run { progress ->
+                withContext(Dispatchers.Main) {
+                    onProgressUpdate(progress.currentFile, progress.fileProgress, progress.movedFiles, progress.totalFiles)
                 }
             }
-
-            Files.walkFileTree(
-                sourcePath,
-                object : SimpleFileVisitor<Path>() {
-                    override fun postVisitDirectory(dir: Path, exc: IOException?): FileVisitResult {
-                        if (exc == null) {
-                            try {
-                                var isEmpty = true
-                                Files.newDirectoryStream(dir).use { stream ->
-                                    if (stream.iterator().hasNext()) {
-                                        isEmpty = false
-                                    }
-                                }
-
-                                if (isEmpty && (dir != sourcePath)) {
-                                    Files.delete(dir)
-                                }
-                            } catch (e: Exception) {
-                                Timber.e(e, "Failed to delete directory: $dir")
-                            }
-                        }
-                        return FileVisitResult.CONTINUE
-                    }
-                },
+            Timber.i(
+                "Moved games to $targetDir: ${result.renamedEntries} renamed, ${result.copiedFiles} files copied " +
+                    "(${formatBinarySize(result.copiedBytes)}), ${result.resumedFiles} resumed",
             )
 
             try {
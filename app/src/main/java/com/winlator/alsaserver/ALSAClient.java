@@ -207,6 +207,20 @@ public class ALSAClient {
         return 0;
     }
 
+    /** Frames played since the track was created or last flushed. */
+    public long getPlaybackHeadPosition() {
+        AudioTrack audioTrack = this.audioTrack;
+        return audioTrack != null ? Integer.toUnsignedLong(audioTrack.getPlaybackHeadPosition()) : 0;
+    }
+
+    /** Sets the track volume, on top of the configured one. */
+    public void setVolume(float volume) {
+        AudioTrack audioTrack = this.audioTrack;
+        if (audioTrack != null) {
+            audioTrack.setVolume(volume * this.options.volume);
+        }
+    }
+
     public void setDataType(DataType dataType) {
         this.dataType = dataType;
     }
@@ -661,7 +661,9 @@ public class Container {
             data.put("useLegacyDRM", useLegacyDRM);
 
             if (!WineInfo.isMainWineVersion(wineVersion)) data.put("wineVersion", wineVersion);
-            FileUtils.writeString(getConfigFile(), data.toString());
+            String config = data.toString();
+            FileUtils.writeString(getConfigFile(), config);
+            ContainerRegistry.notifySaved(this, config);
         }
         catch (JSONException e) {
             Log.e("Container", "Failed to save data: " + e);
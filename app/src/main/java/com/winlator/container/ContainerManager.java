@@ -33,53 +33,18 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 public class ContainerManager {
-    private final ArrayList<Container> containers = new ArrayList<>();
+    private final ContainerRegistry registry;
     private final File homeDir;
     private final Context context;
 
     public ContainerManager(Context context) {
         this.context = context;
-        File rootDir = ImageFs.find(context).getRootDir();
-        homeDir = new File(rootDir, "home");
-        loadContainers();
+        registry = ContainerRegistry.get(context);
+        homeDir = registry.getHomeDir();
     }
 
     public ArrayList<Container> getContainers() {
-        return containers;
-    }
-
-    private void loadContainers() {
-        containers.clear();
-
-        File[] files = homeDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    if (file.getName().startsWith(ImageFs.USER+"-")) {
-                        String containerId = file.getName().replace(ImageFs.USER+"-", "");
-                        Container container = new Container(containerId);
-                        container.setRootDir(new File(homeDir, ImageFs.USER+"-"+container.id));
-                        try {
-                            File configFile = container.getConfigFile();
-                            String configContent = FileUtils.readString(configFile);
-                            
-                            if (configContent == null || configContent.trim().isEmpty()) {
-                                Log.w("ContainerManager", "Container config file is null or empty, skipping: " + containerId);
-                                continue;
-                            }
-                            
-                            JSONObject data = new JSONObject(configContent);
-                            container.loadData(data);
-                            containers.add(container);
-                        } catch (Exception e) {
-                            // Catch ALL exceptions (NullPointerException, JSONException, etc.)
-                            Log.w("ContainerManager", "Could not load container " + containerId + ": " + e.getMessage());
-                            // Continue loading other containers
-                        }
-                    }
-                }
-            }
-        }
+        return registry.getContainers();
     }
 
     public void activateContainer(Container container) {
@@ -184,7 +149,6 @@ public class ContainerManager {
             }
 
             container.saveData();
-            containers.add(container);
             return container;
         }
         catch (JSONException e) {
@@ -230,8 +194,6 @@ public class ContainerManager {
         dstContainer.setRcfileId(srcContainer.getRCFileId());
         dstContainer.setWineVersion(srcContainer.getWineVersion());
         dstContainer.saveData();
-
-        containers.add(dstContainer);
     }
 
     private String generateUniqueContainerId(String baseId) {
@@ -252,12 +214,12 @@ public class ContainerManager {
     }
 
     private void removeContainer(Container container) {
-        if (FileUtils.delete(container.getRootDir())) containers.remove(container);
+        if (FileUtils.delete(container.getRootDir())) registry.remove(container.id);
     }
 
     public ArrayList<Shortcut> loadShortcuts() {
         ArrayList<Shortcut> shortcuts = new ArrayList<>();
-        for (Container container : containers) {
+        for (Container container : getContainers()) {
             File desktopDir = container.getDesktopDir();
             File[] files = desktopDir.listFiles();
             if (files != null) {
@@ -272,13 +234,11 @@ public class ContainerManager {
     }
 
     public boolean hasContainer(String id) {
-        for (Container container : containers) if (container.id.equals(id)) return true;
-        return false;
+        return registry.hasContainer(id);
     }
 
     public Container getContainerById(String id) {
-        for (Container container : containers) if (container.id.equals(id)) return container;
-        return null;
+        return registry.getContainer(id);
     }
 
     /**
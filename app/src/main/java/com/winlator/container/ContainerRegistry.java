@@ -0,0 +1,155 @@
+package com.winlator.container;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.winlator.core.FileUtils;
+import com.winlator.xenvironment.ImageFs;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide index of the containers in the home directory, so looking one up does not list
+ * the directory and parse every container's config.
+ *
+ * A config is read the first time its container is asked for, and read again only when the
+ * file's size or modification time no longer match what was loaded. Saving through
+ * {@link Container#saveData()} updates the entry right away. Every lookup gets a Container of its
+ * own built from the cached config, so changes a caller makes without saving, such as temporary
+ * launch overrides, never reach other callers.
+ */
+public class ContainerRegistry {
+    private static final String TAG = "ContainerRegistry";
+    private static ContainerRegistry instance;
+    private final File homeDir;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final File rootDir;
+        private String config;
+        private long lastModified;
+        private long length;
+
+        private Entry(File rootDir) {
+            this.rootDir = rootDir;
+        }
+    }
+
+    ContainerRegistry(File homeDir) {
+        this.homeDir = homeDir;
+    }
+
+    public static synchronized ContainerRegistry get(Context context) {
+        if (instance == null) instance = new ContainerRegistry(new File(ImageFs.find(context).getRootDir(), "home"));
+        return instance;
+    }
+
+    public File getHomeDir() {
+        return homeDir;
+    }
+
+    public File getRootDir(String id) {
+        return new File(homeDir, ImageFs.USER+"-"+id);
+    }
+
+    public boolean hasContainer(String id) {
+        return getContainer(id) != null;
+    }
+
+    public Container getContainer(String id) {
+        if (id == null || id.isEmpty()) return null;
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            File rootDir = getRootDir(id);
+            if (!new File(rootDir, ".container").isFile()) return null;
+            entry = entries.computeIfAbsent(id, key -> new Entry(rootDir));
+        }
+        return load(id, entry);
+    }
+
+    /**
+     * All containers, in home directory order. Only configs that changed since they were last
+     * read are parsed.
+     */
+    public ArrayList<Container> getContainers() {
+        ArrayList<Container> containers = new ArrayList<>();
+        File[] files = homeDir.listFiles();
+        if (files == null) return containers;
+
+        String prefix = ImageFs.USER+"-";
+        for (File file : files) {
+            if (!file.isDirectory() || !file.getName().startsWith(prefix)) continue;
+            String id = file.getName().substring(prefix.length());
+            Container container = load(id, entries.computeIfAbsent(id, key -> new Entry(file)));
+            if (container != null) containers.add(container);
+        }
+        return containers;
+    }
+
+    /** Makes {@code config}, just written for {@code container}, the current one for its id. */
+    void onSaved(Container container, String config) {
+        Entry entry = entries.computeIfAbsent(container.id, key -> new Entry(container.getRootDir()));
+        synchronized (entry) {
+            File configFile = container.getConfigFile();
+            entry.config = config;
+            entry.lastModified = configFile.lastModified();
+            entry.length = configFile.length();
+        }
+    }
+
+    void remove(String id) {
+        entries.remove(id);
+    }
+
+    static void notifySaved(Container container, String config) {
+        ContainerRegistry registry;
+        synchronized (ContainerRegistry.class) {
+            registry = instance;
+        }
+        File rootDir = container.getRootDir();
+        if (registry != null && rootDir != null && registry.homeDir.equals(rootDir.getParentFile())) {
+            registry.onSaved(container, config);
+        }
+    }
+
+    private Container load(String id, Entry entry) {
+        String config;
+        synchronized (entry) {
+            File configFile = new File(entry.rootDir, ".container");
+            long lastModified = configFile.lastModified();
+            long length = configFile.length();
+            if (lastModified == 0) {
+                // Deleted behind our back
+                entries.remove(id, entry);
+                return null;
+            }
+            if (entry.config == null || entry.lastModified != lastModified || entry.length != length) {
+                entry.config = FileUtils.readString(configFile);
+                entry.lastModified = lastModified;
+                entry.length = length;
+            }
+            config = entry.config;
+        }
+
+        if (config == null || config.trim().isEmpty()) {
+            Log.w(TAG, "Container config file is null or empty, skipping: " + id);
+            return null;
+        }
+
+        try {
+            Container container = new Container(id);
+            container.setRootDir(entry.rootDir);
+            container.loadData(new JSONObject(config));
+            return container;
+        }
+        catch (Exception e) {
+            // Catch ALL exceptions (NullPointerException, JSONException, etc.)
+            Log.w(TAG, "Could not load container " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
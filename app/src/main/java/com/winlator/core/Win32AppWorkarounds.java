@@ -1,6 +1,7 @@
 package com.winlator.core;
 
 import com.winlator.core.envvars.EnvVars;
+import com.winlator.cpu.ThreadPlacementManager;
 import com.winlator.winhandler.WinHandler;
 import com.winlator.xserver.ScreenInfo;
 import com.winlator.xserver.Window;
@@ -132,7 +133,7 @@ public class Win32AppWorkarounds {
         if (window.isRenderable() && !window.getClassName().isEmpty() && windowGroup == window.id) {
             canApplyProcessAffinity = true;
         }
-        if (canApplyProcessAffinity) {
+        if (canApplyProcessAffinity && !ThreadPlacementManager.isActive()) {
             int processAffinity = window.isWoW64() ? this.taskAffinityMaskWoW64 : this.taskAffinityMask;
             if (processAffinity != 0) {
                 setProcessAffinity(window, processAffinity);
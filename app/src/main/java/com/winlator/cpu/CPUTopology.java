@@ -0,0 +1,127 @@
+package com.winlator.cpu;
+
+import com.winlator.core.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * The CPUs of the device grouped into clusters of equal capacity, from the most efficient to the
+ * fastest. On big.LITTLE devices the kernel reports each core's relative compute capacity in
+ * {@code cpu_capacity}; where it does not, the maximum frequency stands in for it.
+ */
+public class CPUTopology {
+    public static final String SYSFS_CPU_PATH = "/sys/devices/system/cpu";
+    private static final int DEFAULT_CAPACITY = 1024;
+    private final Cluster[] clusters;
+    private final int cpuCount;
+
+    public static class Cluster {
+        public final int mask;
+        public final int capacity;
+
+        public Cluster(int mask, int capacity) {
+            this.mask = mask;
+            this.capacity = capacity;
+        }
+
+        public int getCPUCount() {
+            return Integer.bitCount(mask);
+        }
+    }
+
+    private CPUTopology(Cluster[] clusters, int cpuCount) {
+        this.clusters = clusters;
+        this.cpuCount = cpuCount;
+    }
+
+    /** A topology with one CPU per entry of {@code capacities}, for simulating other devices. */
+    public static CPUTopology fromCapacities(int... capacities) {
+        TreeMap<Integer, Integer> masks = new TreeMap<>();
+        for (int cpu = 0; cpu < capacities.length && cpu < Integer.SIZE; cpu++) {
+            Integer mask = masks.get(capacities[cpu]);
+            masks.put(capacities[cpu], (mask != null ? mask : 0) | (1 << cpu));
+        }
+
+        ArrayList<Cluster> clusters = new ArrayList<>();
+        for (Integer capacity : masks.keySet()) clusters.add(new Cluster(masks.get(capacity), capacity));
+        return new CPUTopology(clusters.toArray(new Cluster[0]), Math.min(capacities.length, Integer.SIZE));
+    }
+
+    public static CPUTopology read() {
+        return read(new File(SYSFS_CPU_PATH));
+    }
+
+    /**
+     * Reads the topology below {@code cpuDir}, laid out like /sys/devices/system/cpu. Falls back
+     * to a single cluster of all available processors when nothing can be read.
+     */
+    public static CPUTopology read(File cpuDir) {
+        File[] cpuDirs = cpuDir.listFiles((dir, name) -> name.matches("cpu[0-9]+"));
+        if (cpuDirs == null || cpuDirs.length == 0) return uniform(Runtime.getRuntime().availableProcessors());
+
+        int cpuCount = 0;
+        for (File dir : cpuDirs) cpuCount = Math.max(cpuCount, Integer.parseInt(dir.getName().substring(3)) + 1);
+        int[] capacities = new int[cpuCount];
+
+        boolean hasCapacity = true;
+        for (File dir : cpuDirs) {
+            if (readInt(new File(dir, "cpu_capacity")) <= 0) hasCapacity = false;
+        }
+
+        for (File dir : cpuDirs) {
+            int cpu = Integer.parseInt(dir.getName().substring(3));
+            int capacity = hasCapacity ? readInt(new File(dir, "cpu_capacity")) : readInt(new File(dir, "cpufreq/cpuinfo_max_freq"));
+            capacities[cpu] = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        }
+        return fromCapacities(capacities);
+    }
+
+    private static CPUTopology uniform(int cpuCount) {
+        int[] capacities = new int[cpuCount];
+        Arrays.fill(capacities, DEFAULT_CAPACITY);
+        return fromCapacities(capacities);
+    }
+
+    private static int readInt(File file) {
+        byte[] value = file.isFile() ? FileUtils.read(file) : null;
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(new String(value).trim());
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public Cluster[] getClusters() {
+        return clusters;
+    }
+
+    public int getCPUCount() {
+        return cpuCount;
+    }
+
+    /** Whether the CPUs differ in capacity, i.e. where a thread runs matters. */
+    public boolean isHeterogeneous() {
+        return clusters.length > 1;
+    }
+
+    public int getAllMask() {
+        int mask = 0;
+        for (Cluster cluster : clusters) mask |= cluster.mask;
+        return mask;
+    }
+
+    /** The slowest cluster, where background work costs the least. */
+    public int getEfficiencyMask() {
+        return clusters[0].mask;
+    }
+
+    /** Every cluster but the slowest one, or all CPUs when they are alike. */
+    public int getPerformanceMask() {
+        return isHeterogeneous() ? getAllMask() & ~getEfficiencyMask() : getAllMask();
+    }
+}
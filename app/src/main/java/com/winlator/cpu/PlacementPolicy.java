@@ -0,0 +1,111 @@
+package com.winlator.cpu;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides which cores our own threads and the guest's processes run on.
+ *
+ * Guest processes start out on every allowed core. Once measured, a process busier than
+ * {@link #HEAVY_LOAD} cores moves to the performance cores, and one that stays below
+ * {@link #LIGHT_LOAD} for a few samples moves to the efficiency cores, so services such as
+ * wineserver and explorer stop competing with the game. When the heavy processes need more than
+ * the performance cores can give, they may spill onto every allowed core. Audio threads live on
+ * the efficiency cores, where they are rarely preempted by heavy work, while the X server and
+ * renderer share the performance cores with the game they serve.
+ *
+ * The policy only looks at the loads it is fed, which makes it usable to simulate other devices
+ * with {@link CPUTopology#fromCapacities}.
+ */
+public class PlacementPolicy {
+    public static final float HEAVY_LOAD = 0.5f;
+    public static final float LIGHT_LOAD = 0.15f;
+    private static final int DEMOTE_SAMPLES = 3;
+    private static final float SPILL_LOAD_PER_CORE = 0.9f;
+    private final CPUTopology topology;
+    private final int guestMask;
+    private final HashMap<Integer, ProcessState> processes = new HashMap<>();
+
+    private enum Placement {NEW, HEAVY, LIGHT}
+
+    private static class ProcessState {
+        private Placement placement = Placement.NEW;
+        private int quietSamples;
+    }
+
+    /**
+     * @param guestMask the cores the user allows guest processes on, 0 for all
+     */
+    public PlacementPolicy(CPUTopology topology, int guestMask) {
+        this.topology = topology;
+        int allMask = topology.getAllMask();
+        this.guestMask = (guestMask & allMask) != 0 ? guestMask & allMask : allMask;
+    }
+
+    public int getGuestMask() {
+        return guestMask;
+    }
+
+    public int getThreadMask(ThreadRole role) {
+        return role == ThreadRole.AUDIO ? topology.getEfficiencyMask() : topology.getPerformanceMask();
+    }
+
+    /**
+     * Takes one sample of the guest's processes, mapping each pid to the cores it kept busy since
+     * the previous sample (negative if not measured yet), and returns the affinity mask each of
+     * them should have. Processes missing from {@code loads} are forgotten.
+     */
+    public Map<Integer, Integer> update(Map<Integer, Float> loads) {
+        processes.keySet().retainAll(loads.keySet());
+
+        float heavyLoad = 0;
+        for (Map.Entry<Integer, Float> entry : loads.entrySet()) {
+            ProcessState state = processes.get(entry.getKey());
+            if (state == null) {
+                state = new ProcessState();
+                processes.put(entry.getKey(), state);
+            }
+            classify(state, entry.getValue());
+            if (state.placement == Placement.HEAVY) heavyLoad += entry.getValue();
+        }
+
+        int heavyMask = restrict(topology.getPerformanceMask());
+        if (heavyLoad > Integer.bitCount(heavyMask) * SPILL_LOAD_PER_CORE) heavyMask = guestMask;
+        int lightMask = restrict(topology.getEfficiencyMask());
+
+        LinkedHashMap<Integer, Integer> masks = new LinkedHashMap<>();
+        for (Integer pid : loads.keySet()) {
+            switch (processes.get(pid).placement) {
+                case HEAVY:
+                    masks.put(pid, heavyMask);
+                    break;
+                case LIGHT:
+                    masks.put(pid, lightMask);
+                    break;
+                default:
+                    masks.put(pid, guestMask);
+                    break;
+            }
+        }
+        return masks;
+    }
+
+    private static void classify(ProcessState state, float load) {
+        if (load < 0) return;
+        if (load >= HEAVY_LOAD) {
+            state.placement = Placement.HEAVY;
+            state.quietSamples = 0;
+        }
+        else if (load < LIGHT_LOAD) {
+            state.quietSamples++;
+            if (state.placement == Placement.NEW || state.quietSamples >= DEMOTE_SAMPLES) state.placement = Placement.LIGHT;
+        }
+        else state.quietSamples = 0;
+    }
+
+    private int restrict(int mask) {
+        mask &= guestMask;
+        return mask != 0 ? mask : guestMask;
+    }
+}
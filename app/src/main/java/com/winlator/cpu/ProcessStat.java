@@ -0,0 +1,39 @@
+package com.winlator.cpu;
+
+/** The parts of a /proc/[pid]/stat line the placement manager needs. */
+public class ProcessStat {
+    private static final int UTIME_FIELD = 11;
+    private static final int STIME_FIELD = 12;
+    public final String name;
+    /** User plus system time, in clock ticks. */
+    public final long cpuTime;
+
+    private ProcessStat(String name, long cpuTime) {
+        this.name = name;
+        this.cpuTime = cpuTime;
+    }
+
+    /** Returns null if {@code line} is not a stat line. */
+    public static ProcessStat parse(String line) {
+        if (line == null) return null;
+        int nameStart = line.indexOf('(');
+        int nameEnd = line.lastIndexOf(')');
+        if (nameStart == -1 || nameEnd < nameStart) return null;
+
+        // The name may hold spaces and parentheses, the fields after it are counted from the state
+        String[] fields = line.substring(nameEnd + 1).trim().split(" ");
+        if (fields.length <= STIME_FIELD) return null;
+        try {
+            long cpuTime = Long.parseLong(fields[UTIME_FIELD]) + Long.parseLong(fields[STIME_FIELD]);
+            return new ProcessStat(line.substring(nameStart + 1, nameEnd), cpuTime);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Matches the same processes as {@link com.winlator.core.ProcessHelper#listRunningWineProcesses}. */
+    public boolean isWineProcess() {
+        return name.contains("wine") || name.contains("exe");
+    }
+}
@@ -0,0 +1,149 @@
+package com.winlator.cpu;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.winlator.core.FileUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a {@link PlacementPolicy} while the environment runs: our own threads are pinned as
+ * they register, and the guest's processes are sampled from /proc every couple of seconds and
+ * re-pinned, thread by thread, whenever their placement changes or someone else changed it.
+ */
+public class ThreadPlacementManager {
+    private static final long SAMPLE_INTERVAL_MS = 2000;
+    private static final long DEFAULT_CLOCK_TICKS = 100;
+    private static final ConcurrentHashMap<Integer, ThreadRole> threads = new ConcurrentHashMap<>();
+    private static volatile ThreadPlacementManager activeManager;
+    private final CPUTopology topology;
+    private final PlacementPolicy policy;
+    private final long clockTicks;
+    private HashMap<Integer, Long> cpuTimes = new HashMap<>();
+    private long lastSampleTime;
+    private ScheduledExecutorService scheduler;
+
+    static {
+        System.loadLibrary("winlator");
+    }
+
+    private static native boolean setThreadAffinity(int tid, int mask);
+
+    private static native int getThreadAffinity(int tid);
+
+    public ThreadPlacementManager(CPUTopology topology, int guestMask) {
+        this.topology = topology;
+        this.policy = new PlacementPolicy(topology, guestMask);
+        long ticks = Os.sysconf(OsConstants._SC_CLK_TCK);
+        this.clockTicks = ticks > 0 ? ticks : DEFAULT_CLOCK_TICKS;
+    }
+
+    /**
+     * Marks the calling thread as doing {@code role}'s work. It is pinned right away if a manager
+     * is running, or as soon as one starts.
+     *
+     * @return the thread's id, for {@link #unregisterThread(int)} from another thread
+     */
+    public static int registerCurrentThread(ThreadRole role) {
+        int tid = Process.myTid();
+        threads.put(tid, role);
+        ThreadPlacementManager manager = activeManager;
+        if (manager != null) setThreadAffinity(tid, manager.policy.getThreadMask(role));
+        return tid;
+    }
+
+    public static void unregisterCurrentThread() {
+        threads.remove(Process.myTid());
+    }
+
+    public static void unregisterThread(int tid) {
+        threads.remove(tid);
+    }
+
+    /** Drops threads that exited without unregistering, before their ids can be pinned again. */
+    private static void forgetExitedThreads() {
+        threads.keySet().removeIf(tid -> !new File("/proc/self/task/" + tid).exists());
+    }
+
+    /** Whether a manager currently owns the affinity of guest processes. */
+    public static boolean isActive() {
+        return activeManager != null;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        activeManager = this;
+        forgetExitedThreads();
+        for (Map.Entry<Integer, ThreadRole> entry : threads.entrySet()) {
+            setThreadAffinity(entry.getKey(), policy.getThreadMask(entry.getValue()));
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+        if (activeManager == this) activeManager = null;
+
+        int allMask = topology.getAllMask();
+        forgetExitedThreads();
+        for (Integer tid : threads.keySet()) setThreadAffinity(tid, allMask);
+    }
+
+    private void sample() {
+        try {
+            long now = SystemClock.elapsedRealtime();
+            float seconds = (now - lastSampleTime) / 1000.0f;
+            HashMap<Integer, Float> loads = new HashMap<>();
+            HashMap<Integer, Long> newCpuTimes = new HashMap<>();
+
+            File[] procDirs = new File("/proc").listFiles((dir, name) -> name.matches("[0-9]+"));
+            if (procDirs == null) return;
+            for (File procDir : procDirs) {
+                ProcessStat stat = ProcessStat.parse(readLine(new File(procDir, "stat")));
+                if (stat == null || !stat.isWineProcess()) continue;
+
+                int pid = Integer.parseInt(procDir.getName());
+                Long lastCpuTime = cpuTimes.get(pid);
+                loads.put(pid, lastCpuTime != null && seconds > 0 ? (stat.cpuTime - lastCpuTime) / (float)clockTicks / seconds : -1.0f);
+                newCpuTimes.put(pid, stat.cpuTime);
+            }
+            cpuTimes = newCpuTimes;
+            lastSampleTime = now;
+
+            for (Map.Entry<Integer, Integer> entry : policy.update(loads).entrySet()) {
+                applyProcessAffinity(entry.getKey(), entry.getValue());
+            }
+        }
+        catch (Exception e) {
+            Log.w("ThreadPlacementManager", "Failed to sample guest processes", e);
+        }
+    }
+
+    private static void applyProcessAffinity(int pid, int mask) {
+        String[] tids = new File("/proc/" + pid + "/task").list();
+        if (tids == null) return;
+        for (String tid : tids) {
+            int id = Integer.parseInt(tid);
+            if (getThreadAffinity(id) != mask) setThreadAffinity(id, mask);
+        }
+    }
+
+    private static String readLine(File file) {
+        byte[] data = FileUtils.read(file);
+        return data != null ? new String(data).trim() : null;
+    }
+}
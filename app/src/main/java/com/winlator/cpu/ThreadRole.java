@@ -0,0 +1,11 @@
+package com.winlator.cpu;
+
+/** What one of our own latency critical threads does, which decides the cores it runs on. */
+public enum ThreadRole {
+    /** Epoll loop serving X11 requests. */
+    X_SERVER,
+    /** GL thread compositing and presenting windows. */
+    RENDERER,
+    /** Threads mixing and writing audio to the output tracks. */
+    AUDIO
+}
@@ -0,0 +1,53 @@
+package com.winlator.pulseserver;
+
+/**
+ * Playback buffer metrics, in bytes of the stream's sample spec. A client passes -1 for any
+ * value it leaves to the server.
+ */
+public class BufferAttr {
+    public static final int DEFAULT = -1;
+    private static final int MAX_LENGTH = 4 * 1024 * 1024;
+    private static final long MIN_TARGET_USEC = 20000;
+    public int maxLength;
+    public int targetLength;
+    public int prebuf;
+    public int minRequest;
+
+    public BufferAttr(int maxLength, int targetLength, int prebuf, int minRequest) {
+        this.maxLength = maxLength;
+        this.targetLength = targetLength;
+        this.prebuf = prebuf;
+        this.minRequest = minRequest;
+    }
+
+    /**
+     * Replaces defaults and out of range values with ones the server can honour: every value is
+     * a whole number of frames, the target length lies between 20 ms and the max length, and the
+     * minimum request and prebuffer fit in the target length.
+     */
+    public void fix(SampleSpec spec, long defaultTargetUsec) {
+        int frameSize = spec.frameSize();
+
+        if (maxLength == DEFAULT || Integer.compareUnsigned(maxLength, MAX_LENGTH) > 0) maxLength = MAX_LENGTH;
+        maxLength = Math.max(alignDown(maxLength, frameSize), frameSize);
+
+        long minTarget = Math.max(spec.usecToBytes(MIN_TARGET_USEC), frameSize);
+        if (targetLength == DEFAULT || Integer.compareUnsigned(targetLength, maxLength) > 0) {
+            targetLength = (int)Math.min(spec.usecToBytes(defaultTargetUsec), maxLength);
+        }
+        targetLength = (int)Math.min(Math.max(alignDown(targetLength, frameSize), minTarget), maxLength);
+
+        int maxRequest = Math.max(alignDown(targetLength / 2, frameSize), frameSize);
+        if (minRequest == DEFAULT || Integer.compareUnsigned(minRequest, maxRequest) > 0) {
+            minRequest = Math.min(alignDown(targetLength / 4, frameSize), maxRequest);
+        }
+        minRequest = Math.max(alignDown(minRequest, frameSize), frameSize);
+
+        if (prebuf == DEFAULT || Integer.compareUnsigned(prebuf, targetLength) > 0) prebuf = targetLength - minRequest;
+        prebuf = alignDown(prebuf, frameSize);
+    }
+
+    private static int alignDown(int value, int frameSize) {
+        return value / frameSize * frameSize;
+    }
+}
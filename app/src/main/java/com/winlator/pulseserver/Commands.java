@@ -0,0 +1,38 @@
+package com.winlator.pulseserver;
+
+public abstract class Commands {
+    public static final int ERROR = 0;
+    public static final int REPLY = 2;
+    public static final int CREATE_PLAYBACK_STREAM = 3;
+    public static final int DELETE_PLAYBACK_STREAM = 4;
+    public static final int CREATE_RECORD_STREAM = 5;
+    public static final int AUTH = 8;
+    public static final int SET_CLIENT_NAME = 9;
+    public static final int LOOKUP_SINK = 10;
+    public static final int DRAIN_PLAYBACK_STREAM = 12;
+    public static final int GET_PLAYBACK_LATENCY = 14;
+    public static final int GET_SERVER_INFO = 20;
+    public static final int GET_SINK_INFO = 21;
+    public static final int GET_SINK_INFO_LIST = 22;
+    public static final int GET_SOURCE_INFO = 23;
+    public static final int GET_SOURCE_INFO_LIST = 24;
+    public static final int GET_MODULE_INFO_LIST = 26;
+    public static final int GET_CLIENT_INFO_LIST = 28;
+    public static final int GET_SOURCE_OUTPUT_INFO_LIST = 32;
+    public static final int GET_SAMPLE_INFO_LIST = 34;
+    public static final int SUBSCRIBE = 35;
+    public static final int SET_SINK_INPUT_VOLUME = 37;
+    public static final int CORK_PLAYBACK_STREAM = 41;
+    public static final int FLUSH_PLAYBACK_STREAM = 42;
+    public static final int TRIGGER_PLAYBACK_STREAM = 43;
+    public static final int SET_PLAYBACK_STREAM_NAME = 46;
+    public static final int PREBUF_PLAYBACK_STREAM = 60;
+    public static final int REQUEST = 61;
+    public static final int SET_SINK_INPUT_MUTE = 69;
+    public static final int SET_PLAYBACK_STREAM_BUFFER_ATTR = 72;
+    public static final int UPDATE_PLAYBACK_STREAM_PROPLIST = 81;
+    public static final int UPDATE_CLIENT_PROPLIST = 82;
+    public static final int REMOVE_PLAYBACK_STREAM_PROPLIST = 84;
+    public static final int GET_CARD_INFO_LIST = 89;
+    public static final int REGISTER_MEMFD_SHMID = 103;
+}
@@ -0,0 +1,11 @@
+package com.winlator.pulseserver;
+
+public abstract class ErrorCodes {
+    public static final int ACCESS = 1;
+    public static final int INVALID = 3;
+    public static final int NOENTITY = 5;
+    public static final int PROTOCOL = 7;
+    public static final int INTERNAL = 10;
+    public static final int VERSION = 17;
+    public static final int NOTSUPPORTED = 19;
+}
@@ -0,0 +1,168 @@
+package com.winlator.pulseserver;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.winlator.alsaserver.ALSAClient;
+import com.winlator.sysvshm.SysVSharedMemory;
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xconnector.XStreamLock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PulseClient {
+    public static final int DESCRIPTOR_SIZE = 20;
+    public static final int CHANNEL_CONTROL = -1;
+    public static final int FLAG_SHMRELEASE = 0x40000000;
+    private static final long MIN_REQUEST_INTERVAL_USEC = 5000;
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+    public final int index = nextIndex.getAndIncrement();
+    public final ALSAClient.Options options;
+    public final String containerVariant;
+    public final SampleSpec sinkSpec;
+    private final ScheduledExecutorService scheduler;
+    private final XOutputStream outputStream;
+    private final SparseArray<PulseStream> streams = new SparseArray<>();
+    private final SparseArray<ByteBuffer> memfdPools = new SparseArray<>();
+    private int maxStreamIndex = 0;
+    public int version;
+    public boolean authorized;
+    public boolean shm;
+
+    public PulseClient(ALSAClient.Options options, String containerVariant, SampleSpec sinkSpec, ScheduledExecutorService scheduler, XOutputStream outputStream) {
+        this.options = options;
+        this.containerVariant = containerVariant;
+        this.sinkSpec = sinkSpec;
+        this.scheduler = scheduler;
+        this.outputStream = outputStream;
+    }
+
+    public PulseStream createStream(SampleSpec spec, byte[] channelMap, BufferAttr bufferAttr, boolean corked) {
+        PulseStream stream = new PulseStream(maxStreamIndex++, spec, channelMap, bufferAttr, new ALSAClient(options, containerVariant));
+        stream.open(corked);
+        streams.put(stream.index, stream);
+
+        long interval = Math.max(spec.bytesToUsec(bufferAttr.minRequest) / 2, MIN_REQUEST_INTERVAL_USEC);
+        stream.setRequestTimer(scheduler.scheduleAtFixedRate(() -> requestMissing(stream), interval, interval, TimeUnit.MICROSECONDS));
+        return stream;
+    }
+
+    public PulseStream getStream(int index) {
+        return streams.get(index);
+    }
+
+    public PulseStream getStreamBySinkInput(int sinkInputIndex) {
+        for (int i = 0; i < streams.size(); i++) {
+            if (streams.valueAt(i).sinkInputIndex == sinkInputIndex) return streams.valueAt(i);
+        }
+        return null;
+    }
+
+    public void deleteStream(PulseStream stream) {
+        streams.remove(stream.index);
+        stream.release();
+    }
+
+    /** Maps the client's memfd backed memory pool so memory blocks can be read in place. */
+    public void registerMemfdPool(int shmId, int fd) {
+        long size = SysVSharedMemory.getMemoryFdSize(fd);
+        ByteBuffer pool = size > 0 ? SysVSharedMemory.mapSHMSegment(fd, size, 0, true) : null;
+        if (pool == null) {
+            Log.w("PulseClient", "Failed to map memfd pool " + shmId);
+            return;
+        }
+        ByteBuffer previous = memfdPools.get(shmId);
+        if (previous != null) SysVSharedMemory.unmapSHMSegment(previous, previous.capacity());
+        memfdPools.put(shmId, pool);
+    }
+
+    /** The part of a registered pool holding a memory block, or null if the pool is unknown. */
+    public ByteBuffer getMemblock(int shmId, int offset, int length) {
+        ByteBuffer pool = memfdPools.get(shmId);
+        if (pool == null || offset < 0 || length < 0 || offset > pool.capacity() - length) return null;
+        ByteBuffer data = pool.duplicate();
+        data.limit(offset + length).position(offset);
+        return data;
+    }
+
+    private void requestMissing(PulseStream stream) {
+        int missing = stream.takeMissing();
+        if (missing == 0) return;
+
+        TagStruct t = TagStruct.command(Commands.REQUEST, -1);
+        t.putU32(stream.index);
+        t.putU32(missing);
+        try {
+            sendPacket(t);
+        }
+        catch (IOException e) {
+            // The connection is going away and takes the stream with it
+        }
+    }
+
+    /**
+     * Replies to a drain of {@code stream} once it has played out, checking again from the
+     * scheduler so the connection keeps being served in the meantime.
+     */
+    public void replyWhenDrained(PulseStream stream, int tag) {
+        if (!stream.isDrained()) {
+            long delay = Math.max(stream.getLatencyUsec(), MIN_REQUEST_INTERVAL_USEC);
+            scheduler.schedule(() -> replyWhenDrained(stream, tag), delay, TimeUnit.MICROSECONDS);
+            return;
+        }
+
+        try {
+            sendReply(tag);
+        }
+        catch (IOException e) {
+            // The connection is going away and takes the stream with it
+        }
+    }
+
+    public void sendPacket(TagStruct t) throws IOException {
+        ByteBuffer data = t.getData();
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeInt(data.remaining());
+            outputStream.writeInt(CHANNEL_CONTROL);
+            outputStream.writeInt(0);
+            outputStream.writeInt(0);
+            outputStream.writeInt(0);
+            outputStream.write(data);
+        }
+    }
+
+    /** Hands a memory block the client exported back to it. */
+    public void sendRelease(int blockId) throws IOException {
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeInt(0);
+            outputStream.writeInt(CHANNEL_CONTROL);
+            outputStream.writeInt(blockId);
+            outputStream.writeInt(0);
+            outputStream.writeInt(FLAG_SHMRELEASE);
+        }
+    }
+
+    public void sendReply(int tag) throws IOException {
+        sendPacket(TagStruct.command(Commands.REPLY, tag));
+    }
+
+    public void sendError(int tag, int error) throws IOException {
+        TagStruct t = TagStruct.command(Commands.ERROR, tag);
+        t.putU32(error);
+        sendPacket(t);
+    }
+
+    public void release() {
+        for (int i = 0; i < streams.size(); i++) streams.valueAt(i).release();
+        streams.clear();
+        for (int i = 0; i < memfdPools.size(); i++) {
+            ByteBuffer pool = memfdPools.valueAt(i);
+            SysVSharedMemory.unmapSHMSegment(pool, pool.capacity());
+        }
+        memfdPools.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package com.winlator.pulseserver;
+
+import com.winlator.alsaserver.ALSAClient;
+import com.winlator.xconnector.Client;
+import com.winlator.xconnector.ConnectionHandler;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class PulseClientConnectionHandler implements ConnectionHandler {
+    private final ALSAClient.Options options;
+    private final String containerVariant;
+    private final SampleSpec sinkSpec;
+    private final ScheduledExecutorService scheduler;
+
+    public PulseClientConnectionHandler(ALSAClient.Options options, String containerVariant, SampleSpec sinkSpec, ScheduledExecutorService scheduler) {
+        this.options = options;
+        this.containerVariant = containerVariant;
+        this.sinkSpec = sinkSpec;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void handleNewConnection(Client client) {
+        client.createIOStreams();
+        client.getInputStream().setByteOrder(ByteOrder.BIG_ENDIAN);
+        client.getOutputStream().setByteOrder(ByteOrder.BIG_ENDIAN);
+        client.setTag(new PulseClient(options, containerVariant, sinkSpec, scheduler, client.getOutputStream()));
+    }
+
+    @Override
+    public void handleConnectionShutdown(Client client) {
+        ((PulseClient)client.getTag()).release();
+    }
+}
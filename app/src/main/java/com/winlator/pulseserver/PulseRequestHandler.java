@@ -0,0 +1,487 @@
+package com.winlator.pulseserver;
+
+import android.util.Log;
+
+import com.winlator.xconnector.Client;
+import com.winlator.xconnector.RequestHandler;
+import com.winlator.xconnector.XConnectorEpoll;
+import com.winlator.xconnector.XInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the part of the PulseAudio native protocol that libpulse playback clients such as
+ * winepulse use: authentication, server and sink introspection, and creating, feeding, corking,
+ * flushing, draining and timing playback streams. There is one sink, backed by AudioTrack, and no
+ * sources.
+ *
+ * Clients older than protocol version 13 (PulseAudio 0.9.11) are turned away, so everything
+ * that version added to a message is always present.
+ *
+ * Every frame starts with a descriptor of five big-endian words: length, channel, the high and
+ * low words of a seek offset, and flags. Channel -1 carries a command as a tagstruct; any other
+ * channel carries audio for the stream with that index, either inline or, when the client
+ * negotiated shared memory, as a reference into a memfd pool it registered.
+ */
+public class PulseRequestHandler implements RequestHandler {
+    public static final int PROTOCOL_VERSION = 32;
+    private static final int MIN_PROTOCOL_VERSION = 13;
+    private static final int PROTOCOL_VERSION_MASK = 0x0000ffff;
+    private static final int PROTOCOL_FLAG_SHM = 0x80000000;
+    private static final int PROTOCOL_FLAG_MEMFD = 0x40000000;
+    private static final int FLAG_SHMMASK = 0xff000000;
+    private static final int FLAG_SHMDATA = 0x80000000;
+    private static final int FLAG_SHMDATA_MEMFD_BLOCK = 0x20000000;
+    private static final int FLAG_SEEKMASK = 0x000000ff;
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int INVALID_INDEX = -1;
+    private static final int ENCODING_PCM = 1;
+    private static final int VOLUME_NORM = 0x10000;
+    private static final int SINK_LATENCY = 0x0002;
+    private static final int SINK_DECIBEL_VOLUME = 0x0020;
+    private static final String SINK_NAME = "android";
+    private static final String DEFAULT_SINK = "@DEFAULT_SINK@";
+    private static final int COOKIE = (int)System.nanoTime();
+
+    @Override
+    public boolean handleRequest(Client client) throws IOException {
+        PulseClient pulseClient = (PulseClient)client.getTag();
+        XInputStream inputStream = client.getInputStream();
+        if (inputStream.available() < PulseClient.DESCRIPTOR_SIZE) return false;
+
+        int length = inputStream.readInt();
+        int channel = inputStream.readInt();
+        inputStream.skip(8);
+        int flags = inputStream.readInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) throw new IOException("Frame of " + Integer.toUnsignedString(length) + " bytes is too large");
+        if (inputStream.available() < length) return false;
+        ByteBuffer payload = inputStream.readByteBuffer(length);
+
+        if (channel == PulseClient.CHANNEL_CONTROL) {
+            // Memory block releases and revocations only concern blocks this server exported
+            if ((flags & FLAG_SHMMASK) == 0) handleCommand(client, pulseClient, new TagStruct(payload));
+        }
+        else handleMemblock(pulseClient, channel, flags, payload);
+        return true;
+    }
+
+    private void handleMemblock(PulseClient pulseClient, int channel, int flags, ByteBuffer payload) throws IOException {
+        PulseStream stream = pulseClient.getStream(channel);
+        if ((flags & FLAG_SEEKMASK) != 0) Log.w("PulseRequestHandler", "Ignoring seek mode " + (flags & FLAG_SEEKMASK) + " on stream " + channel);
+
+        if ((flags & FLAG_SHMDATA) != 0) {
+            if (payload.remaining() < 16) throw new IOException("Short memory block reference");
+            int blockId = payload.getInt();
+            int shmId = payload.getInt();
+            int offset = payload.getInt();
+            int blockLength = payload.getInt();
+
+            ByteBuffer data = (flags & FLAG_SHMDATA_MEMFD_BLOCK) != 0 ? pulseClient.getMemblock(shmId, offset, blockLength) : null;
+            if (data == null) Log.w("PulseRequestHandler", "Dropping memory block " + blockId + " from unknown pool " + shmId);
+            else if (stream != null) stream.write(data);
+            pulseClient.sendRelease(blockId);
+        }
+        else if (stream != null) stream.write(payload);
+    }
+
+    private void handleCommand(Client client, PulseClient pulseClient, TagStruct t) throws IOException {
+        int command = t.getU32();
+        int tag = t.getU32();
+        if (!pulseClient.authorized && command != Commands.AUTH) {
+            pulseClient.sendError(tag, ErrorCodes.ACCESS);
+            return;
+        }
+
+        switch (command) {
+            case Commands.AUTH:
+                auth(client, pulseClient, t, tag);
+                break;
+            case Commands.SET_CLIENT_NAME: {
+                t.skipRemaining();
+                TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+                reply.putU32(pulseClient.index);
+                pulseClient.sendPacket(reply);
+                break;
+            }
+            case Commands.REGISTER_MEMFD_SHMID: {
+                int shmId = t.getU32();
+                int fd = client.getInputStream().getAncillaryFd();
+                if (fd < 0) throw new IOException("Memfd pool registered without a file descriptor");
+                pulseClient.registerMemfdPool(shmId, fd);
+                XConnectorEpoll.closeFd(fd);
+                break;
+            }
+            case Commands.GET_SERVER_INFO:
+                getServerInfo(pulseClient, tag);
+                break;
+            case Commands.LOOKUP_SINK: {
+                if (!isSinkName(t.getString())) {
+                    pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+                    break;
+                }
+                TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+                reply.putU32(0);
+                pulseClient.sendPacket(reply);
+                break;
+            }
+            case Commands.GET_SINK_INFO: {
+                int index = t.getU32();
+                String name = t.getString();
+                if (index != 0 && !isSinkName(name)) {
+                    pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+                    break;
+                }
+                TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+                putSinkInfo(pulseClient, reply);
+                pulseClient.sendPacket(reply);
+                break;
+            }
+            case Commands.GET_SINK_INFO_LIST: {
+                TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+                putSinkInfo(pulseClient, reply);
+                pulseClient.sendPacket(reply);
+                break;
+            }
+            case Commands.GET_SOURCE_INFO:
+            case Commands.CREATE_RECORD_STREAM:
+                pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+                break;
+            case Commands.GET_SOURCE_INFO_LIST:
+            case Commands.GET_MODULE_INFO_LIST:
+            case Commands.GET_CLIENT_INFO_LIST:
+            case Commands.GET_SOURCE_OUTPUT_INFO_LIST:
+            case Commands.GET_SAMPLE_INFO_LIST:
+            case Commands.GET_CARD_INFO_LIST:
+                // Nothing of the kind exists, so the list is empty
+                pulseClient.sendReply(tag);
+                break;
+            case Commands.SUBSCRIBE:
+            case Commands.UPDATE_CLIENT_PROPLIST:
+                // The one sink never changes, so there are no events to subscribe to
+                t.skipRemaining();
+                pulseClient.sendReply(tag);
+                break;
+            case Commands.CREATE_PLAYBACK_STREAM:
+                createPlaybackStream(pulseClient, t, tag);
+                break;
+            case Commands.SET_SINK_INPUT_VOLUME:
+            case Commands.SET_SINK_INPUT_MUTE: {
+                PulseStream stream = pulseClient.getStreamBySinkInput(t.getU32());
+                if (stream == null) {
+                    pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+                    break;
+                }
+                if (command == Commands.SET_SINK_INPUT_MUTE) stream.setMuted(t.getBoolean());
+                else stream.setVolume(volumeToLinear(t.getCVolume()));
+                pulseClient.sendReply(tag);
+                break;
+            }
+            default:
+                if (isStreamCommand(command)) handleStreamCommand(pulseClient, command, t, tag);
+                else pulseClient.sendError(tag, ErrorCodes.NOTSUPPORTED);
+                break;
+        }
+    }
+
+    private static boolean isStreamCommand(int command) {
+        switch (command) {
+            case Commands.DELETE_PLAYBACK_STREAM:
+            case Commands.DRAIN_PLAYBACK_STREAM:
+            case Commands.GET_PLAYBACK_LATENCY:
+            case Commands.CORK_PLAYBACK_STREAM:
+            case Commands.FLUSH_PLAYBACK_STREAM:
+            case Commands.TRIGGER_PLAYBACK_STREAM:
+            case Commands.PREBUF_PLAYBACK_STREAM:
+            case Commands.SET_PLAYBACK_STREAM_NAME:
+            case Commands.SET_PLAYBACK_STREAM_BUFFER_ATTR:
+            case Commands.UPDATE_PLAYBACK_STREAM_PROPLIST:
+            case Commands.REMOVE_PLAYBACK_STREAM_PROPLIST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void handleStreamCommand(PulseClient pulseClient, int command, TagStruct t, int tag) throws IOException {
+        PulseStream stream = pulseClient.getStream(t.getU32());
+        if (stream == null) {
+            pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+            return;
+        }
+
+        switch (command) {
+            case Commands.DELETE_PLAYBACK_STREAM:
+                pulseClient.deleteStream(stream);
+                pulseClient.sendReply(tag);
+                break;
+            case Commands.DRAIN_PLAYBACK_STREAM:
+                // A corked stream never drains, so it is answered right away
+                pulseClient.replyWhenDrained(stream, tag);
+                break;
+            case Commands.GET_PLAYBACK_LATENCY:
+                getPlaybackLatency(pulseClient, stream, t, tag);
+                break;
+            case Commands.CORK_PLAYBACK_STREAM:
+                stream.setCorked(t.getBoolean());
+                pulseClient.sendReply(tag);
+                break;
+            case Commands.FLUSH_PLAYBACK_STREAM:
+                stream.flush();
+                pulseClient.sendReply(tag);
+                break;
+            case Commands.SET_PLAYBACK_STREAM_BUFFER_ATTR:
+                setPlaybackBufferAttr(pulseClient, stream, t, tag);
+                break;
+            default:
+                // Triggering and prebuffering are moot as data plays as soon as it arrives, and
+                // names and properties are not shown anywhere
+                t.skipRemaining();
+                pulseClient.sendReply(tag);
+                break;
+        }
+    }
+
+    private void auth(Client client, PulseClient pulseClient, TagStruct t, int tag) throws IOException {
+        int clientVersion = t.getU32();
+        t.skipRemaining(); // The cookie; every local client is trusted
+
+        int version = clientVersion & PROTOCOL_VERSION_MASK;
+        if (version < MIN_PROTOCOL_VERSION) {
+            pulseClient.sendError(tag, ErrorCodes.VERSION);
+            return;
+        }
+        pulseClient.version = Math.min(version, PROTOCOL_VERSION);
+        pulseClient.authorized = true;
+
+        // Audio is only read from shared memory the client hands over as a memfd; POSIX shared
+        // memory under /dev/shm is not reachable from here
+        pulseClient.shm = version >= 31 && (clientVersion & PROTOCOL_FLAG_SHM) != 0 && (clientVersion & PROTOCOL_FLAG_MEMFD) != 0;
+
+        TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+        reply.putU32(PROTOCOL_VERSION | (pulseClient.shm ? PROTOCOL_FLAG_SHM | PROTOCOL_FLAG_MEMFD : 0));
+        pulseClient.sendPacket(reply);
+    }
+
+    private void getServerInfo(PulseClient pulseClient, int tag) throws IOException {
+        TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+        reply.putString("pulseaudio");
+        reply.putString("12.0");
+        reply.putString("user");
+        reply.putString("localhost");
+        reply.putSampleSpec(pulseClient.sinkSpec);
+        reply.putString(SINK_NAME);
+        reply.putString(null);
+        reply.putU32(COOKIE);
+        if (pulseClient.version >= 15) reply.putChannelMap(getDefaultChannelMap(pulseClient.sinkSpec.channels));
+        pulseClient.sendPacket(reply);
+    }
+
+    private void putSinkInfo(PulseClient pulseClient, TagStruct reply) {
+        SampleSpec spec = pulseClient.sinkSpec;
+        int[] volume = new int[spec.channels];
+        for (int i = 0; i < volume.length; i++) volume[i] = VOLUME_NORM;
+
+        reply.putU32(0);
+        reply.putString(SINK_NAME);
+        reply.putString("Android Audio");
+        reply.putSampleSpec(spec);
+        reply.putChannelMap(getDefaultChannelMap(spec.channels));
+        reply.putU32(INVALID_INDEX);
+        reply.putCVolume(volume);
+        reply.putBoolean(false);
+        reply.putU32(INVALID_INDEX);
+        reply.putString(null);
+        reply.putUsec(0);
+        reply.putString("winlator");
+        reply.putU32(SINK_LATENCY | SINK_DECIBEL_VOLUME);
+
+        LinkedHashMap<String, byte[]> propList = new LinkedHashMap<>();
+        propList.put("device.description", TagStruct.stringProperty("Android Audio"));
+        propList.put("device.class", TagStruct.stringProperty("sound"));
+        propList.put("device.form_factor", TagStruct.stringProperty("speaker"));
+        reply.putPropList(propList);
+        reply.putUsec(0);
+
+        if (pulseClient.version >= 15) {
+            reply.putVolume(VOLUME_NORM);
+            reply.putU32(0); // Running
+            reply.putU32(VOLUME_NORM + 1);
+            reply.putU32(INVALID_INDEX);
+        }
+
+        if (pulseClient.version >= 16) {
+            reply.putU32(0);
+            reply.putString(null);
+        }
+
+        if (pulseClient.version >= 21) {
+            reply.putU8(1);
+            reply.putFormatInfo(ENCODING_PCM, getFormatProperties(spec));
+        }
+    }
+
+    private void createPlaybackStream(PulseClient pulseClient, TagStruct t, int tag) throws IOException {
+        SampleSpec spec = t.getSampleSpec();
+        byte[] channelMap = t.getChannelMap();
+        int sinkIndex = t.getU32();
+        String sinkName = t.getString();
+        int maxLength = t.getU32();
+        boolean corked = t.getBoolean();
+        int targetLength = t.getU32();
+        int prebuf = t.getU32();
+        int minRequest = t.getU32();
+        t.getU32(); // Sync group
+        int[] volume = t.getCVolume();
+
+        t.getBoolean(); // No remap
+        t.getBoolean(); // No remix
+        boolean fixFormat = t.getBoolean();
+        boolean fixRate = t.getBoolean();
+        boolean fixChannels = t.getBoolean();
+        t.getBoolean(); // No move
+        t.getBoolean(); // Variable rate
+        boolean muted = t.getBoolean();
+        t.getBoolean(); // Adjust latency
+        t.getPropList();
+
+        boolean volumeSet = true, mutedSet = false;
+        if (pulseClient.version >= 14) {
+            volumeSet = t.getBoolean();
+            t.getBoolean(); // Early requests
+        }
+        if (pulseClient.version >= 15) {
+            mutedSet = t.getBoolean();
+            t.getBoolean(); // Don't inhibit auto suspend
+            t.getBoolean(); // Fail on suspend
+        }
+        if (pulseClient.version >= 17) t.getBoolean(); // Relative volume
+        if (pulseClient.version >= 18) t.getBoolean(); // Passthrough
+        if (pulseClient.version >= 21) {
+            int formats = t.getU8();
+            for (int i = 0; i < formats; i++) {
+                if (t.getFormatInfo(new LinkedHashMap<>()) != ENCODING_PCM) {
+                    pulseClient.sendError(tag, ErrorCodes.NOTSUPPORTED);
+                    return;
+                }
+            }
+        }
+
+        if ((sinkIndex != INVALID_INDEX && sinkIndex != 0) || (sinkName != null && !isSinkName(sinkName))) {
+            pulseClient.sendError(tag, ErrorCodes.NOENTITY);
+            return;
+        }
+
+        SampleSpec sinkSpec = pulseClient.sinkSpec;
+        if (fixFormat) spec = spec.withFormat(sinkSpec.format);
+        if (fixRate) spec = spec.withRate(sinkSpec.rate);
+        if (fixChannels) {
+            spec = spec.withChannels(sinkSpec.channels);
+            channelMap = getDefaultChannelMap(sinkSpec.channels);
+        }
+        if (!spec.isValid() || channelMap.length != spec.channels) {
+            pulseClient.sendError(tag, ErrorCodes.INVALID);
+            return;
+        }
+
+        BufferAttr bufferAttr = new BufferAttr(maxLength, targetLength, prebuf, minRequest);
+        bufferAttr.fix(spec, pulseClient.options.latencyMillis * 2000L);
+
+        PulseStream stream;
+        try {
+            stream = pulseClient.createStream(spec, channelMap, bufferAttr, corked);
+        }
+        catch (RuntimeException e) {
+            Log.e("PulseRequestHandler", "Failed to create playback stream: " + e);
+            pulseClient.sendError(tag, ErrorCodes.INTERNAL);
+            return;
+        }
+        if (volumeSet && volume.length > 0) stream.setVolume(volumeToLinear(volume));
+        if (mutedSet && muted) stream.setMuted(true);
+
+        TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+        reply.putU32(stream.index);
+        reply.putU32(stream.sinkInputIndex);
+        reply.putU32(bufferAttr.targetLength);
+        reply.putU32(bufferAttr.maxLength);
+        reply.putU32(bufferAttr.targetLength);
+        reply.putU32(bufferAttr.prebuf);
+        reply.putU32(bufferAttr.minRequest);
+        reply.putSampleSpec(spec);
+        reply.putChannelMap(channelMap);
+        reply.putU32(0);
+        reply.putString(SINK_NAME);
+        reply.putBoolean(false);
+        reply.putUsec(spec.bytesToUsec(bufferAttr.targetLength));
+        if (pulseClient.version >= 21) reply.putFormatInfo(ENCODING_PCM, getFormatProperties(spec));
+        pulseClient.sendPacket(reply);
+    }
+
+    private void setPlaybackBufferAttr(PulseClient pulseClient, PulseStream stream, TagStruct t, int tag) throws IOException {
+        BufferAttr bufferAttr = new BufferAttr(t.getU32(), t.getU32(), t.getU32(), t.getU32());
+        t.skipRemaining(); // Adjust latency and early requests
+        bufferAttr.fix(stream.spec, pulseClient.options.latencyMillis * 2000L);
+
+        // The track keeps its size; a longer target just lets more wait in the client
+        synchronized (stream) {
+            stream.bufferAttr.maxLength = bufferAttr.maxLength;
+            stream.bufferAttr.targetLength = bufferAttr.targetLength;
+            stream.bufferAttr.prebuf = bufferAttr.prebuf;
+            stream.bufferAttr.minRequest = bufferAttr.minRequest;
+        }
+
+        TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+        reply.putU32(bufferAttr.maxLength);
+        reply.putU32(bufferAttr.targetLength);
+        reply.putU32(bufferAttr.prebuf);
+        reply.putU32(bufferAttr.minRequest);
+        reply.putUsec(stream.spec.bytesToUsec(bufferAttr.targetLength));
+        pulseClient.sendPacket(reply);
+    }
+
+    private void getPlaybackLatency(PulseClient pulseClient, PulseStream stream, TagStruct t, int tag) throws IOException {
+        long[] localTime = t.getTimeval();
+        long now = System.currentTimeMillis();
+        long writeIndex = stream.getWriteIndex();
+
+        TagStruct reply = TagStruct.command(Commands.REPLY, tag);
+        reply.putUsec(stream.getLatencyUsec());
+        reply.putUsec(0);
+        reply.putBoolean(!stream.isCorked());
+        reply.putTimeval(localTime[0], (int)localTime[1]);
+        reply.putTimeval(now / 1000, (int)(now % 1000) * 1000);
+        // Everything received has gone straight to the track, so nothing waits to be read
+        reply.putS64(writeIndex);
+        reply.putS64(writeIndex);
+        reply.putU64(0);
+        reply.putU64(stream.getPlayedBytes());
+        pulseClient.sendPacket(reply);
+    }
+
+    private static boolean isSinkName(String name) {
+        return SINK_NAME.equals(name) || DEFAULT_SINK.equals(name);
+    }
+
+    private static byte[] getDefaultChannelMap(int channels) {
+        if (channels == 1) return new byte[]{SampleConverter.POSITION_MONO};
+        return new byte[]{SampleConverter.POSITION_FRONT_LEFT, SampleConverter.POSITION_FRONT_RIGHT};
+    }
+
+    private static Map<String, byte[]> getFormatProperties(SampleSpec spec) {
+        LinkedHashMap<String, byte[]> propList = new LinkedHashMap<>();
+        propList.put("format.sample_format", TagStruct.stringProperty("\"" + spec.getFormatName() + "\""));
+        propList.put("format.rate", TagStruct.stringProperty(String.valueOf(spec.rate)));
+        propList.put("format.channels", TagStruct.stringProperty(String.valueOf(spec.channels)));
+        return propList;
+    }
+
+    /** PulseAudio volumes are cubic; the loudest channel sets the level of the whole track. */
+    private static float volumeToLinear(int[] volume) {
+        long max = 0;
+        for (int v : volume) max = Math.max(max, Integer.toUnsignedLong(v));
+        double level = (double)max / VOLUME_NORM;
+        return (float)(level * level * level);
+    }
+}
@@ -0,0 +1,170 @@
+package com.winlator.pulseserver;
+
+import com.winlator.alsaserver.ALSAClient;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A playback stream, played through its own ALSAClient track like an ALSA PCM.
+ *
+ * Data is written to the track as soon as it arrives, so the track's unplayed frames are the
+ * stream's whole server side queue. The client may only send what it has been asked for; more is
+ * requested whenever that queue plus the outstanding requests drop a minimum request below the
+ * target length.
+ */
+public class PulseStream {
+    private static final AtomicInteger nextSinkInputIndex = new AtomicInteger();
+    private static final int TRACK_FRAME_ALIGNMENT = 64;
+    private static final int MIN_TRACK_FRAMES = 256;
+    public final int index;
+    public final int sinkInputIndex = nextSinkInputIndex.getAndIncrement();
+    public final SampleSpec spec;
+    public final byte[] channelMap;
+    public final BufferAttr bufferAttr;
+    private final ALSAClient alsaClient;
+    private final SampleConverter converter;
+    private boolean corked;
+    private boolean muted;
+    private float volume = 1.0f;
+    private long writeIndex;
+    private long framesWritten;
+    private long requested;
+    private boolean released;
+    private ScheduledFuture<?> requestTimer;
+
+    public PulseStream(int index, SampleSpec spec, byte[] channelMap, BufferAttr bufferAttr, ALSAClient alsaClient) {
+        this.index = index;
+        this.spec = spec;
+        this.channelMap = channelMap;
+        this.bufferAttr = bufferAttr;
+        this.alsaClient = alsaClient;
+        this.converter = new SampleConverter(spec, channelMap);
+    }
+
+    private static ALSAClient.DataType getDataType(byte format) {
+        switch (format) {
+            case SampleSpec.FORMAT_U8:
+                return ALSAClient.DataType.U8;
+            case SampleSpec.FORMAT_S16LE:
+                return ALSAClient.DataType.S16LE;
+            default:
+                return ALSAClient.DataType.FLOATLE;
+        }
+    }
+
+    /** Creates the track, paused if the stream starts corked. */
+    public synchronized void open(boolean corked) {
+        int trackFrames = bufferAttr.targetLength / spec.frameSize();
+        trackFrames = Math.max((trackFrames + TRACK_FRAME_ALIGNMENT - 1) / TRACK_FRAME_ALIGNMENT * TRACK_FRAME_ALIGNMENT, MIN_TRACK_FRAMES);
+
+        alsaClient.setChannels(converter.getOutputChannels());
+        alsaClient.setDataType(getDataType(converter.getOutputFormat()));
+        alsaClient.setSampleRate(spec.rate);
+        alsaClient.setBufferSize(trackFrames);
+        alsaClient.prepare();
+
+        this.corked = corked;
+        if (corked) alsaClient.pause();
+        requested = bufferAttr.targetLength;
+    }
+
+    public synchronized void setRequestTimer(ScheduledFuture<?> requestTimer) {
+        this.requestTimer = requestTimer;
+    }
+
+    /**
+     * Plays {@code data}, blocking while the track is full. Called only from the client's own
+     * thread.
+     */
+    public void write(ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer output = converter.convert(data);
+        long frames = output.remaining() / converter.getOutputFrameSize();
+        if (frames > 0) alsaClient.writeDataToTrack(output);
+
+        synchronized (this) {
+            writeIndex += length;
+            framesWritten += frames;
+            requested = Math.max(requested - length, 0);
+        }
+    }
+
+    private long getQueuedFrames() {
+        return Math.max(framesWritten - alsaClient.getPlaybackHeadPosition(), 0);
+    }
+
+    /**
+     * How many more bytes the client should send, or 0 while less than a minimum request is
+     * missing. The returned amount counts as requested from then on.
+     */
+    public synchronized int takeMissing() {
+        if (released) return 0;
+        long missing = bufferAttr.targetLength - getQueuedFrames() * spec.frameSize() - requested;
+        if (missing < bufferAttr.minRequest) return 0;
+        requested += missing;
+        return (int)missing;
+    }
+
+    public synchronized long getLatencyUsec() {
+        return getQueuedFrames() * 1000000L / spec.rate;
+    }
+
+    public synchronized long getWriteIndex() {
+        return writeIndex;
+    }
+
+    public synchronized long getPlayedBytes() {
+        return writeIndex - getQueuedFrames() * spec.frameSize();
+    }
+
+    /** Whether everything written has been played, or never will be because the stream is corked or gone. */
+    public synchronized boolean isDrained() {
+        return released || corked || getQueuedFrames() == 0;
+    }
+
+    public synchronized boolean isCorked() {
+        return corked;
+    }
+
+    public synchronized void setCorked(boolean corked) {
+        if (corked == this.corked) return;
+        this.corked = corked;
+        if (corked) alsaClient.pause();
+        else alsaClient.start();
+    }
+
+    /**
+     * Drops everything that has not been played yet. The read index catches up with the write
+     * index, and what was requested before is dropped with the data, so the next request asks
+     * for the whole target again.
+     */
+    public synchronized void flush() {
+        alsaClient.pause();
+        alsaClient.drain();
+        // The track may or may not restart its head position; either way nothing is queued now
+        framesWritten = alsaClient.getPlaybackHeadPosition();
+        requested = 0;
+        if (!corked) alsaClient.start();
+    }
+
+    public synchronized void setVolume(float volume) {
+        this.volume = volume;
+        alsaClient.setVolume(muted ? 0 : volume);
+    }
+
+    public synchronized void setMuted(boolean muted) {
+        this.muted = muted;
+        alsaClient.setVolume(muted ? 0 : volume);
+    }
+
+    public synchronized void release() {
+        released = true;
+        if (requestTimer != null) {
+            requestTimer.cancel(false);
+            requestTimer = null;
+        }
+        alsaClient.release();
+    }
+}
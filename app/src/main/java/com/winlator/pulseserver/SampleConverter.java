@@ -0,0 +1,212 @@
+package com.winlator.pulseserver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Turns a stream's samples into something AudioTrack plays. Mono and stereo U8, S16LE and
+ * FLOAT32LE pass through untouched; every other format becomes FLOAT32LE, and more than two
+ * channels are mixed down to stereo by channel position.
+ */
+public class SampleConverter {
+    public static final byte POSITION_MONO = 0;
+    public static final byte POSITION_FRONT_LEFT = 1;
+    public static final byte POSITION_FRONT_RIGHT = 2;
+    public static final byte POSITION_FRONT_CENTER = 3;
+    public static final byte POSITION_REAR_CENTER = 4;
+    public static final byte POSITION_REAR_LEFT = 5;
+    public static final byte POSITION_REAR_RIGHT = 6;
+    public static final byte POSITION_LFE = 7;
+    public static final byte POSITION_FRONT_LEFT_OF_CENTER = 8;
+    public static final byte POSITION_FRONT_RIGHT_OF_CENTER = 9;
+    public static final byte POSITION_SIDE_LEFT = 10;
+    public static final byte POSITION_SIDE_RIGHT = 11;
+    public static final byte POSITION_TOP_CENTER = 44;
+    public static final byte POSITION_TOP_FRONT_LEFT = 45;
+    public static final byte POSITION_TOP_FRONT_RIGHT = 46;
+    public static final byte POSITION_TOP_FRONT_CENTER = 47;
+    public static final byte POSITION_TOP_REAR_LEFT = 48;
+    public static final byte POSITION_TOP_REAR_RIGHT = 49;
+    public static final byte POSITION_TOP_REAR_CENTER = 50;
+    private static final float CENTER_GAIN = 0.7071068f;
+    private static final float LFE_GAIN = 0.5f;
+    private final SampleSpec inputSpec;
+    private final byte outputFormat;
+    private final int outputChannels;
+    private final float[][] gains;
+    private final float[] frame;
+    private ByteBuffer outputBuffer;
+
+    public SampleConverter(SampleSpec inputSpec, byte[] channelMap) {
+        this.inputSpec = inputSpec;
+        boolean nativeFormat = inputSpec.format == SampleSpec.FORMAT_U8 || inputSpec.format == SampleSpec.FORMAT_S16LE || inputSpec.format == SampleSpec.FORMAT_FLOAT32LE;
+
+        if (inputSpec.channels <= 2) {
+            outputFormat = nativeFormat ? inputSpec.format : SampleSpec.FORMAT_FLOAT32LE;
+            outputChannels = inputSpec.channels;
+            gains = null;
+        }
+        else {
+            outputFormat = SampleSpec.FORMAT_FLOAT32LE;
+            outputChannels = 2;
+            gains = downmixGains(channelMap);
+        }
+        frame = new float[inputSpec.channels];
+    }
+
+    public boolean isPassthrough() {
+        return outputFormat == inputSpec.format && outputChannels == inputSpec.channels;
+    }
+
+    public byte getOutputFormat() {
+        return outputFormat;
+    }
+
+    public int getOutputChannels() {
+        return outputChannels;
+    }
+
+    public int getOutputFrameSize() {
+        return SampleSpec.sampleSize(outputFormat) * outputChannels;
+    }
+
+    /**
+     * Converts the whole frames between {@code input}'s position and limit. The result starts at
+     * position 0; it is {@code input} itself when no conversion is needed, and otherwise a
+     * buffer that is reused by the next call.
+     */
+    public ByteBuffer convert(ByteBuffer input) {
+        int frameSize = inputSpec.frameSize();
+        int frames = input.remaining() / frameSize;
+        if (isPassthrough()) {
+            ByteBuffer data = input.slice();
+            data.limit(frames * frameSize);
+            return data;
+        }
+
+        int outputSize = frames * outputChannels * 4;
+        if (outputBuffer == null || outputBuffer.capacity() < outputSize) {
+            outputBuffer = ByteBuffer.allocateDirect(Math.max(outputSize, 4096)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        outputBuffer.clear();
+
+        ByteBuffer in = input.slice().order(isBigEndian(inputSpec.format) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < frame.length; c++) frame[c] = readSample(in);
+            if (gains == null) {
+                for (float sample : frame) outputBuffer.putFloat(sample);
+            }
+            else {
+                for (float[] outputGains : gains) {
+                    float sum = 0;
+                    for (int c = 0; c < frame.length; c++) sum += frame[c] * outputGains[c];
+                    outputBuffer.putFloat(sum);
+                }
+            }
+        }
+
+        outputBuffer.flip();
+        return outputBuffer;
+    }
+
+    private float readSample(ByteBuffer in) {
+        switch (inputSpec.format) {
+            case SampleSpec.FORMAT_U8:
+                return (Byte.toUnsignedInt(in.get()) - 128) / 128.0f;
+            case SampleSpec.FORMAT_ALAW:
+                return alawToLinear(in.get()) / 32768.0f;
+            case SampleSpec.FORMAT_ULAW:
+                return ulawToLinear(in.get()) / 32768.0f;
+            case SampleSpec.FORMAT_S16LE:
+            case SampleSpec.FORMAT_S16BE:
+                return in.getShort() / 32768.0f;
+            case SampleSpec.FORMAT_FLOAT32LE:
+            case SampleSpec.FORMAT_FLOAT32BE:
+                return in.getFloat();
+            case SampleSpec.FORMAT_S32LE:
+            case SampleSpec.FORMAT_S32BE:
+                return in.getInt() / 2147483648.0f;
+            case SampleSpec.FORMAT_S24LE: {
+                int b0 = Byte.toUnsignedInt(in.get()), b1 = Byte.toUnsignedInt(in.get()), b2 = in.get();
+                return ((b2 << 16) | (b1 << 8) | b0) / 8388608.0f;
+            }
+            case SampleSpec.FORMAT_S24BE: {
+                int b2 = in.get(), b1 = Byte.toUnsignedInt(in.get()), b0 = Byte.toUnsignedInt(in.get());
+                return ((b2 << 16) | (b1 << 8) | b0) / 8388608.0f;
+            }
+            default:
+                // S24_32: 24 significant bits in the low bits of 32
+                return ((in.getInt() << 8) >> 8) / 8388608.0f;
+        }
+    }
+
+    private static boolean isBigEndian(byte format) {
+        return format == SampleSpec.FORMAT_S16BE || format == SampleSpec.FORMAT_FLOAT32BE || format == SampleSpec.FORMAT_S32BE ||
+               format == SampleSpec.FORMAT_S24_32BE;
+    }
+
+    private static short alawToLinear(byte value) {
+        int a = value ^ 0x55;
+        int t = (a & 0x0f) << 4;
+        int segment = (a & 0x70) >> 4;
+        if (segment == 0) t += 8;
+        else t = (t + 0x108) << (segment - 1);
+        return (short)((a & 0x80) != 0 ? t : -t);
+    }
+
+    private static short ulawToLinear(byte value) {
+        int u = ~value;
+        int t = ((u & 0x0f) << 3) + 0x84;
+        t <<= (u & 0x70) >> 4;
+        return (short)((u & 0x80) != 0 ? 0x84 - t : t - 0x84);
+    }
+
+    /**
+     * Left and right positions go to their side, centered ones to both at -3 dB and LFE to both
+     * at -6 dB; auxiliary channels are dropped. Each output is scaled so its gains sum to at most
+     * 1 and a full scale mix cannot clip.
+     */
+    private static float[][] downmixGains(byte[] channelMap) {
+        float[][] gains = new float[2][channelMap.length];
+        for (int c = 0; c < channelMap.length; c++) {
+            switch (channelMap[c]) {
+                case POSITION_FRONT_LEFT:
+                case POSITION_REAR_LEFT:
+                case POSITION_FRONT_LEFT_OF_CENTER:
+                case POSITION_SIDE_LEFT:
+                case POSITION_TOP_FRONT_LEFT:
+                case POSITION_TOP_REAR_LEFT:
+                    gains[0][c] = 1;
+                    break;
+                case POSITION_FRONT_RIGHT:
+                case POSITION_REAR_RIGHT:
+                case POSITION_FRONT_RIGHT_OF_CENTER:
+                case POSITION_SIDE_RIGHT:
+                case POSITION_TOP_FRONT_RIGHT:
+                case POSITION_TOP_REAR_RIGHT:
+                    gains[1][c] = 1;
+                    break;
+                case POSITION_MONO:
+                case POSITION_FRONT_CENTER:
+                case POSITION_REAR_CENTER:
+                case POSITION_TOP_CENTER:
+                case POSITION_TOP_FRONT_CENTER:
+                case POSITION_TOP_REAR_CENTER:
+                    gains[0][c] = gains[1][c] = CENTER_GAIN;
+                    break;
+                case POSITION_LFE:
+                    gains[0][c] = gains[1][c] = LFE_GAIN;
+                    break;
+            }
+        }
+
+        for (float[] outputGains : gains) {
+            float sum = 0;
+            for (float gain : outputGains) sum += gain;
+            if (sum > 1) {
+                for (int c = 0; c < outputGains.length; c++) outputGains[c] /= sum;
+            }
+        }
+        return gains;
+    }
+}
@@ -0,0 +1,81 @@
+package com.winlator.pulseserver;
+
+public class SampleSpec {
+    public static final byte FORMAT_U8 = 0;
+    public static final byte FORMAT_ALAW = 1;
+    public static final byte FORMAT_ULAW = 2;
+    public static final byte FORMAT_S16LE = 3;
+    public static final byte FORMAT_S16BE = 4;
+    public static final byte FORMAT_FLOAT32LE = 5;
+    public static final byte FORMAT_FLOAT32BE = 6;
+    public static final byte FORMAT_S32LE = 7;
+    public static final byte FORMAT_S32BE = 8;
+    public static final byte FORMAT_S24LE = 9;
+    public static final byte FORMAT_S24BE = 10;
+    public static final byte FORMAT_S24_32LE = 11;
+    public static final byte FORMAT_S24_32BE = 12;
+    public static final int CHANNELS_MAX = 32;
+    public static final int RATE_MAX = 384000;
+    private static final String[] FORMAT_NAMES = {
+        "u8", "aLaw", "uLaw", "s16le", "s16be", "float32le", "float32be", "s32le", "s32be", "s24le", "s24be", "s24-32le", "s24-32be"
+    };
+    public final byte format;
+    public final byte channels;
+    public final int rate;
+
+    public SampleSpec(byte format, byte channels, int rate) {
+        this.format = format;
+        this.channels = channels;
+        this.rate = rate;
+    }
+
+    public boolean isValid() {
+        return format >= FORMAT_U8 && format <= FORMAT_S24_32BE && channels > 0 && channels <= CHANNELS_MAX && rate > 0 && rate <= RATE_MAX;
+    }
+
+    public static int sampleSize(byte format) {
+        switch (format) {
+            case FORMAT_U8:
+            case FORMAT_ALAW:
+            case FORMAT_ULAW:
+                return 1;
+            case FORMAT_S16LE:
+            case FORMAT_S16BE:
+                return 2;
+            case FORMAT_S24LE:
+            case FORMAT_S24BE:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    public int frameSize() {
+        return sampleSize(format) * channels;
+    }
+
+    public long bytesToUsec(long bytes) {
+        return bytes / frameSize() * 1000000L / rate;
+    }
+
+    /** Rounded down to whole frames. */
+    public long usecToBytes(long usec) {
+        return usec * rate / 1000000L * frameSize();
+    }
+
+    public String getFormatName() {
+        return FORMAT_NAMES[format];
+    }
+
+    public SampleSpec withFormat(byte format) {
+        return new SampleSpec(format, channels, rate);
+    }
+
+    public SampleSpec withChannels(byte channels) {
+        return new SampleSpec(format, channels, rate);
+    }
+
+    public SampleSpec withRate(int rate) {
+        return new SampleSpec(format, channels, rate);
+    }
+}
@@ -0,0 +1,313 @@
+package com.winlator.pulseserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The typed, big-endian serialization PulseAudio uses for the payload of every control packet.
+ * Each value is preceded by a one byte tag naming its type, and a reader fails on any value that
+ * does not have the type it expects.
+ */
+public class TagStruct {
+    private static final byte TAG_STRING = 't';
+    private static final byte TAG_STRING_NULL = 'N';
+    private static final byte TAG_U32 = 'L';
+    private static final byte TAG_U8 = 'B';
+    private static final byte TAG_U64 = 'R';
+    private static final byte TAG_S64 = 'r';
+    private static final byte TAG_SAMPLE_SPEC = 'a';
+    private static final byte TAG_ARBITRARY = 'x';
+    private static final byte TAG_BOOLEAN_TRUE = '1';
+    private static final byte TAG_BOOLEAN_FALSE = '0';
+    private static final byte TAG_TIMEVAL = 'T';
+    private static final byte TAG_USEC = 'U';
+    private static final byte TAG_CHANNEL_MAP = 'm';
+    private static final byte TAG_CVOLUME = 'v';
+    private static final byte TAG_PROPLIST = 'P';
+    private static final byte TAG_VOLUME = 'V';
+    private static final byte TAG_FORMAT_INFO = 'f';
+    private ByteBuffer buffer;
+
+    public TagStruct() {
+        buffer = ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /** Reads the values in {@code data} from its position to its limit. */
+    public TagStruct(ByteBuffer data) {
+        buffer = data.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public static TagStruct command(int command, int tag) {
+        TagStruct t = new TagStruct();
+        t.putU32(command);
+        t.putU32(tag);
+        return t;
+    }
+
+    /** The serialized values, positioned at 0. */
+    public ByteBuffer getData() {
+        ByteBuffer data = buffer.duplicate();
+        data.flip();
+        return data;
+    }
+
+    public int length() {
+        return buffer.position();
+    }
+
+    public boolean isEOF() {
+        return !buffer.hasRemaining();
+    }
+
+    private void ensureSpaceIsAvailable(int length) {
+        if (buffer.remaining() >= length) return;
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length)).order(ByteOrder.BIG_ENDIAN);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    private void putTag(byte tag, int length) {
+        ensureSpaceIsAvailable(1 + length);
+        buffer.put(tag);
+    }
+
+    public void putString(String value) {
+        if (value == null) {
+            putTag(TAG_STRING_NULL, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putTag(TAG_STRING, bytes.length + 1);
+        buffer.put(bytes).put((byte)0);
+    }
+
+    public void putU32(int value) {
+        putTag(TAG_U32, 4);
+        buffer.putInt(value);
+    }
+
+    public void putU8(int value) {
+        putTag(TAG_U8, 1);
+        buffer.put((byte)value);
+    }
+
+    public void putU64(long value) {
+        putTag(TAG_U64, 8);
+        buffer.putLong(value);
+    }
+
+    public void putS64(long value) {
+        putTag(TAG_S64, 8);
+        buffer.putLong(value);
+    }
+
+    public void putSampleSpec(SampleSpec spec) {
+        putTag(TAG_SAMPLE_SPEC, 6);
+        buffer.put(spec.format).put(spec.channels).putInt(spec.rate);
+    }
+
+    public void putArbitrary(byte[] data) {
+        putTag(TAG_ARBITRARY, 4 + data.length);
+        buffer.putInt(data.length).put(data);
+    }
+
+    public void putBoolean(boolean value) {
+        putTag(value ? TAG_BOOLEAN_TRUE : TAG_BOOLEAN_FALSE, 0);
+    }
+
+    public void putTimeval(long sec, int usec) {
+        putTag(TAG_TIMEVAL, 8);
+        buffer.putInt((int)sec).putInt(usec);
+    }
+
+    public void putUsec(long value) {
+        putTag(TAG_USEC, 8);
+        buffer.putLong(value);
+    }
+
+    public void putChannelMap(byte[] map) {
+        putTag(TAG_CHANNEL_MAP, 1 + map.length);
+        buffer.put((byte)map.length).put(map);
+    }
+
+    public void putCVolume(int[] volumes) {
+        putTag(TAG_CVOLUME, 1 + volumes.length * 4);
+        buffer.put((byte)volumes.length);
+        for (int volume : volumes) buffer.putInt(volume);
+    }
+
+    public void putVolume(int volume) {
+        putTag(TAG_VOLUME, 4);
+        buffer.putInt(volume);
+    }
+
+    /** Values are stored as given; string properties carry their NUL terminator. */
+    public void putPropList(Map<String, byte[]> propList) {
+        putTag(TAG_PROPLIST, 0);
+        for (Map.Entry<String, byte[]> entry : propList.entrySet()) {
+            putString(entry.getKey());
+            putU32(entry.getValue().length);
+            putArbitrary(entry.getValue());
+        }
+        putString(null);
+    }
+
+    public void putFormatInfo(int encoding, Map<String, byte[]> propList) {
+        putTag(TAG_FORMAT_INFO, 0);
+        putU8(encoding);
+        putPropList(propList);
+    }
+
+    private void expectTag(byte tag) throws IOException {
+        byte actual = readTag();
+        if (actual != tag) throw new IOException("Expected tag '" + (char)tag + "' but found '" + (char)actual + "'");
+    }
+
+    private byte readTag() throws IOException {
+        if (!buffer.hasRemaining()) throw new IOException("Unexpected end of tagstruct");
+        return buffer.get();
+    }
+
+    private void require(int length) throws IOException {
+        if (buffer.remaining() < length) throw new IOException("Unexpected end of tagstruct");
+    }
+
+    public String getString() throws IOException {
+        byte tag = readTag();
+        if (tag == TAG_STRING_NULL) return null;
+        if (tag != TAG_STRING) throw new IOException("Expected a string but found '" + (char)tag + "'");
+
+        int start = buffer.position();
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != 0) end++;
+        if (end == buffer.limit()) throw new IOException("Unterminated string in tagstruct");
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getU32() throws IOException {
+        expectTag(TAG_U32);
+        require(4);
+        return buffer.getInt();
+    }
+
+    public int getU8() throws IOException {
+        expectTag(TAG_U8);
+        require(1);
+        return Byte.toUnsignedInt(buffer.get());
+    }
+
+    public long getU64() throws IOException {
+        expectTag(TAG_U64);
+        require(8);
+        return buffer.getLong();
+    }
+
+    public long getS64() throws IOException {
+        expectTag(TAG_S64);
+        require(8);
+        return buffer.getLong();
+    }
+
+    public SampleSpec getSampleSpec() throws IOException {
+        expectTag(TAG_SAMPLE_SPEC);
+        require(6);
+        byte format = buffer.get();
+        byte channels = buffer.get();
+        return new SampleSpec(format, channels, buffer.getInt());
+    }
+
+    public byte[] getArbitrary(int length) throws IOException {
+        expectTag(TAG_ARBITRARY);
+        require(4);
+        if (buffer.getInt() != length) throw new IOException("Arbitrary data has an unexpected length");
+        require(length);
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return data;
+    }
+
+    public boolean getBoolean() throws IOException {
+        byte tag = readTag();
+        if (tag == TAG_BOOLEAN_TRUE) return true;
+        if (tag == TAG_BOOLEAN_FALSE) return false;
+        throw new IOException("Expected a boolean but found '" + (char)tag + "'");
+    }
+
+    /** The seconds and microseconds of a timeval. */
+    public long[] getTimeval() throws IOException {
+        expectTag(TAG_TIMEVAL);
+        require(8);
+        return new long[]{Integer.toUnsignedLong(buffer.getInt()), Integer.toUnsignedLong(buffer.getInt())};
+    }
+
+    public long getUsec() throws IOException {
+        expectTag(TAG_USEC);
+        require(8);
+        return buffer.getLong();
+    }
+
+    public byte[] getChannelMap() throws IOException {
+        expectTag(TAG_CHANNEL_MAP);
+        require(1);
+        byte[] map = new byte[Byte.toUnsignedInt(buffer.get())];
+        require(map.length);
+        buffer.get(map);
+        return map;
+    }
+
+    public int[] getCVolume() throws IOException {
+        expectTag(TAG_CVOLUME);
+        require(1);
+        int[] volumes = new int[Byte.toUnsignedInt(buffer.get())];
+        require(volumes.length * 4);
+        for (int i = 0; i < volumes.length; i++) volumes[i] = buffer.getInt();
+        return volumes;
+    }
+
+    public int getVolume() throws IOException {
+        expectTag(TAG_VOLUME);
+        require(4);
+        return buffer.getInt();
+    }
+
+    public Map<String, byte[]> getPropList() throws IOException {
+        expectTag(TAG_PROPLIST);
+        LinkedHashMap<String, byte[]> propList = new LinkedHashMap<>();
+        String key;
+        while ((key = getString()) != null) {
+            int length = getU32();
+            if (length < 0 || length > buffer.remaining()) throw new IOException("Property " + key + " is too long");
+            propList.put(key, getArbitrary(length));
+        }
+        return propList;
+    }
+
+    /** Reads a format info, returning its encoding and storing its properties in {@code propList}. */
+    public int getFormatInfo(Map<String, byte[]> propList) throws IOException {
+        expectTag(TAG_FORMAT_INFO);
+        int encoding = getU8();
+        propList.putAll(getPropList());
+        return encoding;
+    }
+
+    /** Skips whatever values remain, for requests whose arguments are not needed. */
+    public void skipRemaining() {
+        buffer.position(buffer.limit());
+    }
+
+    public static byte[] stringProperty(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        return data;
+    }
+}
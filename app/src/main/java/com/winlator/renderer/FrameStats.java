@@ -0,0 +1,90 @@
+package com.winlator.renderer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Frame-time statistics over a run of frame timestamps. Lows are computed the way benchmarking
+ * tools report them: the 1% low is the frame rate of the average of the slowest 1% of frames.
+ * Gaps of {@link FrameTimeRecorder#PAUSE_NANOS} or more are left out as pauses.
+ */
+public class FrameStats {
+    public static final FrameStats EMPTY = new FrameStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    public final int frames;
+    public final float avgFPS;
+    public final float low1FPS;
+    public final float low01FPS;
+    public final float medianFrameMs;
+    public final float p95FrameMs;
+    public final float p99FrameMs;
+    public final float maxFrameMs;
+    public final float activeSec;
+    public final int stutters;
+
+    FrameStats(int frames, float avgFPS, float low1FPS, float low01FPS, float medianFrameMs, float p95FrameMs, float p99FrameMs, float maxFrameMs, float activeSec, int stutters) {
+        this.frames = frames;
+        this.avgFPS = avgFPS;
+        this.low1FPS = low1FPS;
+        this.low01FPS = low01FPS;
+        this.medianFrameMs = medianFrameMs;
+        this.p95FrameMs = p95FrameMs;
+        this.p99FrameMs = p99FrameMs;
+        this.maxFrameMs = maxFrameMs;
+        this.activeSec = activeSec;
+        this.stutters = stutters;
+    }
+
+    public static FrameStats of(long[] timestamps, int count, int stutters) {
+        long[] frameTimes = new long[Math.max(0, count - 1)];
+        int n = 0;
+        for (int i = 1; i < count; i++) frameTimes[n++] = timestamps[i] - timestamps[i-1];
+        return ofFrameTimes(frameTimes, n, stutters);
+    }
+
+    /**
+     * Statistics over the first {@code count} frame times (in nanoseconds) of {@code frameTimes},
+     * which is reordered in the process.
+     */
+    public static FrameStats ofFrameTimes(long[] frameTimes, int count, int stutters) {
+        int n = 0;
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long frameNanos = frameTimes[i];
+            if (frameNanos <= 0 || frameNanos >= FrameTimeRecorder.PAUSE_NANOS) continue;
+            frameTimes[n++] = frameNanos;
+            total += frameNanos;
+        }
+        if (n == 0) return EMPTY;
+
+        Arrays.sort(frameTimes, 0, n);
+        return new FrameStats(n,
+            n * 1e9f / total,
+            1e9f / slowestAverage(frameTimes, n, 0.01f),
+            1e9f / slowestAverage(frameTimes, n, 0.001f),
+            percentile(frameTimes, n, 0.5f) / 1e6f,
+            percentile(frameTimes, n, 0.95f) / 1e6f,
+            percentile(frameTimes, n, 0.99f) / 1e6f,
+            frameTimes[n-1] / 1e6f,
+            total / 1e9f,
+            stutters);
+    }
+
+    /** Nearest-rank percentile of the first {@code n} sorted values. */
+    private static long percentile(long[] sorted, int n, float fraction) {
+        int rank = (int)Math.ceil(fraction * n);
+        return sorted[Math.max(0, Math.min(n, rank) - 1)];
+    }
+
+    private static float slowestAverage(long[] sorted, int n, float fraction) {
+        int slowest = Math.max(1, (int)(n * fraction));
+        long sum = 0;
+        for (int i = n - slowest; i < n; i++) sum += sorted[i];
+        return (float)sum / slowest;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%d frames, avg %.1f fps, 1%% low %.1f, 0.1%% low %.1f, p50 %.2f ms, p99 %.2f ms, %d stutters",
+            frames, avgFPS, low1FPS, low01FPS, medianFrameMs, p99FrameMs, stutters);
+    }
+}
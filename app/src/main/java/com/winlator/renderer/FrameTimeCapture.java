@@ -0,0 +1,92 @@
+package com.winlator.renderer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-session frame-time capture. Frame times feed a {@link FrameTimeHistogram} for running
+ * statistics and are kept for exact ones at the end of the session. When given a file, they are
+ * also written as CSV so runs of different presets can be compared with any spreadsheet or
+ * plotting tool. The header carries the session's settings as {@code # key: value} comment
+ * lines, followed by one row per frame:
+ * <pre>
+ *   frame,time_ms,frame_time_ms
+ * </pre>
+ * where time_ms is relative to the first frame. Frames lost because the recorder's ring was
+ * overrun are noted as a {@code # dropped} comment. Not thread-safe; meant to be fed from one
+ * background thread.
+ */
+public class FrameTimeCapture implements Closeable {
+    /** The CSV file, or null when frames are only counted. */
+    public final File file;
+    private final BufferedWriter writer;
+    private final FrameTimeHistogram histogram = new FrameTimeHistogram();
+    private long[] frameTimes = new long[4096];
+    private int size = 0;
+    private long firstTime = 0;
+    private long lastTime = 0;
+    private long frame = 0;
+
+    public FrameTimeCapture(File file, Map<String, String> tags) throws IOException {
+        this.file = file;
+        if (file == null) {
+            writer = null;
+            return;
+        }
+        writer = new BufferedWriter(new FileWriter(file, false), 64 * 1024);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            writer.write("# " + tag.getKey() + ": " + String.valueOf(tag.getValue()).replace('\n', ' ') + "\n");
+        }
+        writer.write("frame,time_ms,frame_time_ms\n");
+    }
+
+    /** Appends {@code count} consecutive frame timestamps, in nanoseconds. */
+    public void append(long[] timestamps, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            long time = timestamps[i];
+            if (firstTime == 0) firstTime = time;
+            double frameMs = 0;
+            if (lastTime != 0) {
+                long frameNanos = time - lastTime;
+                if (size == frameTimes.length) frameTimes = Arrays.copyOf(frameTimes, size * 2);
+                frameTimes[size++] = frameNanos;
+                histogram.add(frameNanos);
+                frameMs = frameNanos / 1e6;
+            }
+            lastTime = time;
+            if (writer != null) writer.write(String.format(Locale.ENGLISH, "%d,%.3f,%.3f\n", frame++, (time - firstTime) / 1e6, frameMs));
+        }
+    }
+
+    /** Notes that {@code count} frames could not be captured. */
+    public void skip(long count) throws IOException {
+        if (count <= 0) return;
+        if (writer != null) writer.write("# dropped " + count + " frames\n");
+        frame += count;
+        lastTime = 0;
+    }
+
+    /** Statistics over the frames captured so far, from the histogram. */
+    public FrameStats getStats(int stutters) {
+        return histogram.getStats(stutters);
+    }
+
+    /**
+     * Exact statistics over every frame captured. Sorts the kept frame times in place, so it is
+     * meant to be called once, when the session ends.
+     */
+    public FrameStats getExactStats(int stutters) {
+        return FrameStats.ofFrameTimes(frameTimes, size, stutters);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) writer.close();
+    }
+}
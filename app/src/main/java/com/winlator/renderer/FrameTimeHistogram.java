@@ -0,0 +1,84 @@
+package com.winlator.renderer;
+
+/**
+ * Frame times of a whole session in a fixed number of log-linear buckets, so statistics can be
+ * taken as often as the overlay wants without copying or sorting every frame seen so far. Each
+ * power of two is split into 64 buckets, which keeps percentiles within 1.6% of the exact value;
+ * frame count, average and maximum are exact. Not thread-safe.
+ */
+public class FrameTimeHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^30 ns is above FrameTimeRecorder.PAUSE_NANOS, longer frames are not counted
+    private static final int MAX_OCTAVE = 30;
+    private final int[] counts = new int[(MAX_OCTAVE - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private final long[] sums = new long[counts.length];
+    private int frames = 0;
+    private long total = 0;
+    private long max = 0;
+
+    private static int bucketOf(long frameNanos) {
+        long value = Math.max(frameNanos, SUB_BUCKETS);
+        int octave = 63 - Long.numberOfLeadingZeros(value);
+        int shift = octave - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Adds one frame time, in nanoseconds. Pauses are left out like in {@link FrameStats}. */
+    public void add(long frameNanos) {
+        if (frameNanos <= 0 || frameNanos >= FrameTimeRecorder.PAUSE_NANOS) return;
+        int bucket = bucketOf(frameNanos);
+        counts[bucket]++;
+        sums[bucket] += frameNanos;
+        frames++;
+        total += frameNanos;
+        if (frameNanos > max) max = frameNanos;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public FrameStats getStats(int stutters) {
+        if (frames == 0) return FrameStats.EMPTY;
+        return new FrameStats(frames,
+            frames * 1e9f / total,
+            1e9f / slowestAverage(0.01f),
+            1e9f / slowestAverage(0.001f),
+            percentile(0.5f) / 1e6f,
+            percentile(0.95f) / 1e6f,
+            percentile(0.99f) / 1e6f,
+            max / 1e6f,
+            total / 1e9f,
+            stutters);
+    }
+
+    /** Nearest-rank percentile, as the average of the bucket the rank falls in. */
+    private float percentile(float fraction) {
+        int rank = Math.max(1, Math.min(frames, (int)Math.ceil(fraction * frames)));
+        int seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return (float)sums[i] / counts[i];
+        }
+        return max;
+    }
+
+    private float slowestAverage(float fraction) {
+        int slowest = Math.max(1, (int)(frames * fraction));
+        int remaining = slowest;
+        double sum = 0;
+        for (int i = counts.length - 1; i >= 0 && remaining > 0; i--) {
+            if (counts[i] == 0) continue;
+            if (counts[i] <= remaining) {
+                sum += sums[i];
+                remaining -= counts[i];
+            }
+            else {
+                sum += (double)sums[i] / counts[i] * remaining;
+                remaining = 0;
+            }
+        }
+        return (float)(sum / slowest);
+    }
+}
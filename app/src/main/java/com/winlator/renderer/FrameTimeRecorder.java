@@ -0,0 +1,113 @@
+package com.winlator.renderer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of the most recent frame timestamps, written by a single thread (the one presenting or
+ * drawing frames) and read without locking by any other, e.g. to show or export statistics.
+ *
+ * Readers copy a range of the ring and then check how far the writer got meanwhile; entries it
+ * may have overwritten are dropped from the copy, so a reader never sees a torn history.
+ */
+public class FrameTimeRecorder {
+    /** Gaps longer than this are pauses (loading, window hidden) rather than slow frames. */
+    public static final long PAUSE_NANOS = 1_000_000_000L;
+    private static final float STUTTER_FACTOR = 2.0f;
+    private static final long STUTTER_MIN_EXCESS_NANOS = 8_000_000L;
+    private final AtomicLongArray timestamps;
+    private final int mask;
+    private final AtomicLong count = new AtomicLong();
+    private volatile int stutters = 0;
+    private long lastTime = 0;
+    private float averageFrameNanos = 0;
+
+    public FrameTimeRecorder(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+        timestamps = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /** Total number of frames recorded so far. */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Number of frames that took well over the recent average (a hitch the player can see).
+     */
+    public int getStutters() {
+        return stutters;
+    }
+
+    /**
+     * Records a frame shown at {@code timeNanos}. Must only be called from the writing thread.
+     */
+    public void record(long timeNanos) {
+        if (lastTime != 0) {
+            long frameNanos = timeNanos - lastTime;
+            if (frameNanos >= PAUSE_NANOS) {
+                averageFrameNanos = 0;
+            }
+            else if (averageFrameNanos == 0) {
+                averageFrameNanos = frameNanos;
+            }
+            else {
+                if (frameNanos > averageFrameNanos * STUTTER_FACTOR && frameNanos - averageFrameNanos > STUTTER_MIN_EXCESS_NANOS) {
+                    stutters++;
+                }
+                averageFrameNanos += (frameNanos - averageFrameNanos) * 0.1f;
+            }
+        }
+        lastTime = timeNanos;
+
+        long n = count.get();
+        timestamps.lazySet((int)(n & mask), timeNanos);
+        count.lazySet(n + 1);
+    }
+
+    /**
+     * Copies the timestamps of frames {@code fromFrame} onwards that are still in the ring into
+     * {@code snapshot}, oldest first. At most {@code snapshot.timestamps.length} frames are copied.
+     */
+    public void copy(long fromFrame, Snapshot snapshot) {
+        long[] out = snapshot.timestamps;
+        while (true) {
+            long end = count.get();
+            long start = Math.max(fromFrame, end + 1 - getCapacity());
+            int n = (int)Math.max(0, Math.min(end - start, out.length));
+            for (int i = 0; i < n; i++) out[i] = timestamps.get((int)((start + i) & mask));
+
+            // The writer replaces the slot of frame (count - capacity) before it bumps count, so
+            // that one is never considered intact
+            long overwritten = count.get() + 1 - getCapacity();
+            if (overwritten <= start) {
+                snapshot.firstFrame = start;
+                snapshot.size = n;
+                return;
+            }
+            fromFrame = overwritten;
+        }
+    }
+
+    /** Statistics over the frames still in the ring. */
+    public FrameStats getStats() {
+        Snapshot snapshot = new Snapshot(getCapacity());
+        copy(0, snapshot);
+        return FrameStats.of(snapshot.timestamps, snapshot.size, stutters);
+    }
+
+    public static class Snapshot {
+        public final long[] timestamps;
+        public long firstFrame;
+        public int size;
+
+        public Snapshot(int capacity) {
+            timestamps = new long[capacity];
+        }
+    }
+}
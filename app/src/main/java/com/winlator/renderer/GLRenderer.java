@@ -9,6 +9,8 @@ import android.opengl.GLSurfaceView;
 // import com.winlator.R;
 // import com.winlator.XrActivity;
 import app.gamenative.R;
+import com.winlator.cpu.ThreadPlacementManager;
+import com.winlator.cpu.ThreadRole;
 import com.winlator.math.Mathf;
 import com.winlator.math.XForm;
 import com.winlator.renderer.material.CursorMaterial;
@@ -53,6 +55,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     private int surfaceWidth;
     private int surfaceHeight;
     private boolean sceneInitialized = false;
+    private volatile int rendererTid = -1;
+    public final FrameTimeRecorder frameTimes = new FrameTimeRecorder(1024);
 
     public GLRenderer(XServerView xServerView, XServer xServer) {
         this.xServerView = xServerView;
@@ -70,8 +74,20 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         xServer.pointer.addOnPointerMotionListener(this);
     }
 
+    /**
+     * Forgets the GL thread's placement. A new GL thread registers itself when it creates its
+     * surface, so the old id is never pinned after the thread is gone.
+     */
+    public void releaseRendererThread() {
+        int tid = rendererTid;
+        rendererTid = -1;
+        if (tid != -1) ThreadPlacementManager.unregisterThread(tid);
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        releaseRendererThread();
+        rendererTid = ThreadPlacementManager.registerCurrentThread(ThreadRole.RENDERER);
         GPUImage.checkIsSupported();
 
         GLES20.glFrontFace(GLES20.GL_CCW);
@@ -123,6 +139,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         }
 
         drawFrame();
+        frameTimes.record(System.nanoTime());
     }
 
     private void drawFrame() {
@@ -10,11 +10,14 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class SteamPipeServer {
     private static final int PORT = 34865;
     private ServerSocket serverSocket;
     private boolean running;
+    private final CountDownLatch bound = new CountDownLatch(1);
 
     private int readNetworkInt(DataInputStream input) throws IOException {
         return Integer.reverseBytes(input.readInt());
@@ -31,6 +34,7 @@ public class SteamPipeServer {
                 serverSocket = new ServerSocket();
                 serverSocket.setReuseAddress(true);
                 serverSocket.bind(new InetSocketAddress(PORT));
+                bound.countDown();
                 Log.d("SteamPipeServer", "Server started on port " + PORT);
 
                 while (running) {
@@ -41,10 +45,19 @@ public class SteamPipeServer {
                 }
             } catch (IOException e) {
                 Log.e("SteamPipeServer", "Server error", e);
+            } finally {
+                bound.countDown();
             }
         }).start();
     }
 
+    /**
+     * Waits until the server socket is bound (or failed to bind) after {@link #start()}.
+     */
+    public boolean awaitBound(long timeoutMs) throws InterruptedException {
+        return bound.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
     private void handleClient(Socket clientSocket) {
         new Thread(() -> {
             try {
@@ -8,6 +8,9 @@ import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
+import com.winlator.renderer.FrameStats;
+import com.winlator.renderer.FrameTimeCapture;
+import com.winlator.renderer.FrameTimeRecorder;
 import com.winlator.xenvironment.ImageFs;
 
 import app.gamenative.R;
@@ -17,10 +20,15 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class FrameRating extends FrameLayout implements Runnable {
     private long lastTime = 0;
@@ -37,6 +45,19 @@ public class FrameRating extends FrameLayout implements Runnable {
     private long lastReadingTime = 0;
     private long fpsSum = 0; // Sum of all FPS readings for average calculation
 
+    // Per-frame timing, recorded on the thread that reports frames and captured in the background
+    private static final int MAX_CAPTURES = 20;
+    private final FrameTimeRecorder recorder = new FrameTimeRecorder(8192);
+    private final ThreadPoolExecutor captureExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    private final FrameTimeRecorder.Snapshot captureSnapshot = new FrameTimeRecorder.Snapshot(8192);
+    private Map<String, String> sessionTags = new LinkedHashMap<>();
+    private FrameTimeRecorder compositorRecorder;
+    private FrameTimeCapture capture;
+    private long capturedFrames = 0;
+    private boolean captureClosed = false;
+    private boolean captureToFile = false;
+    private volatile FrameStats sessionStats = FrameStats.EMPTY;
+
     public FrameRating(Context context) {
         this(context, null);
     }
@@ -47,13 +68,42 @@ public class FrameRating extends FrameLayout implements Runnable {
 
     public FrameRating(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        captureExecutor.allowCoreThreadTimeOut(true);
 
         View view = LayoutInflater.from(context).inflate(R.layout.frame_rating, this, false);
         textView = view.findViewById(R.id.TVFPS);
         addView(view);
     }
 
+    /**
+     * Settings the session runs with (container, drivers, emulator presets), written to the
+     * header of the frame-time capture so captures from different devices can be compared.
+     */
+    public void setSessionTags(Map<String, String> tags) {
+        captureExecutor.execute(() -> sessionTags = new LinkedHashMap<>(tags));
+    }
+
+    /** Whether frame times are also written to a CSV file in frame_captures. */
+    public void setCaptureToFile(boolean captureToFile) {
+        captureExecutor.execute(() -> this.captureToFile = captureToFile);
+    }
+
+    /** Frames drawn by the renderer, reported in the session summary next to the game's. */
+    public void setCompositorRecorder(FrameTimeRecorder compositorRecorder) {
+        this.compositorRecorder = compositorRecorder;
+    }
+
+    /** Rolling statistics over the most recent frames. */
+    public FrameStats getStats() {
+        return recorder.getStats();
+    }
+
+    /**
+     * Reports a frame of the game window. Must always be called from the same thread, the one
+     * that receives Present completions and window content updates.
+     */
     public void update() {
+        recorder.record(System.nanoTime());
         if (lastTime == 0) {
             lastTime = SystemClock.elapsedRealtime();
             sessionStartTime = SystemClock.elapsedRealtime();
@@ -80,6 +130,7 @@ public class FrameRating extends FrameLayout implements Runnable {
             }
 
             post(this);
+            captureExecutor.execute(this::drainCapture);
             lastTime = time;
             frameCount = 0;
         }
@@ -88,10 +139,59 @@ public class FrameRating extends FrameLayout implements Runnable {
     }
 
     public float getAvgFPS() {
+        if (sessionStats.frames > 0) return sessionStats.avgFPS;
         if (readingCount == 0) return 0;
         return (float) fpsSum / readingCount;
     }
 
+    /** Statistics over all frames captured so far this session. */
+    public FrameStats getSessionStats() {
+        return sessionStats;
+    }
+
+    private File getCaptureDir() {
+        File dir = getContext().getExternalFilesDir("frame_captures");
+        if (dir == null) dir = new File(getContext().getFilesDir(), "frame_captures");
+        if (!dir.isDirectory()) dir.mkdirs();
+        return dir;
+    }
+
+    private void pruneCaptures(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".csv"));
+        if (files == null || files.length <= MAX_CAPTURES) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - MAX_CAPTURES; i++) files[i].delete();
+    }
+
+    /** Moves newly recorded frames into the capture file. Runs on captureExecutor. */
+    private void drainCapture() {
+        if (captureClosed) return;
+        try {
+            if (capture == null && captureToFile) {
+                File dir = getCaptureDir();
+                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ENGLISH).format(new Date());
+                capture = new FrameTimeCapture(new File(dir, "frames_" + timestamp + ".csv"), sessionTags);
+                pruneCaptures(dir);
+            }
+            else if (capture == null) {
+                capture = new FrameTimeCapture(null, sessionTags);
+            }
+
+            while (true) {
+                recorder.copy(capturedFrames, captureSnapshot);
+                capture.skip(captureSnapshot.firstFrame - capturedFrames);
+                capture.append(captureSnapshot.timestamps, captureSnapshot.size);
+                capturedFrames = captureSnapshot.firstFrame + captureSnapshot.size;
+                if (captureSnapshot.size < captureSnapshot.timestamps.length) break;
+            }
+            sessionStats = capture.getStats(recorder.getStutters());
+        }
+        catch (IOException e) {
+            Timber.e(e, "Failed to write frame-time capture");
+            captureClosed = true;
+        }
+    }
+
     public float getSessionLengthSec() {
         if (sessionStartTime == 0) return 0;
         return (SystemClock.elapsedRealtime() - sessionStartTime) / 1000.0f;
@@ -105,19 +205,28 @@ public class FrameRating extends FrameLayout implements Runnable {
         final float sessionLengthSec = sessionLengthMs / 1000.0f;
         final int max = maxFPS;
         final int min = minFPS == Integer.MAX_VALUE ? 0 : minFPS;
-        final float avgFPS = (float) fpsSum / readingCount;
+        final FrameStats compositorStats = compositorRecorder != null ? compositorRecorder.getStats() : FrameStats.EMPTY;
 
         Context context = getContext();
         ImageFs imageFs = ImageFs.find(context);
-
-        // Generate unique filename with timestamp
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ENGLISH);
-        String timestamp = dateFormat.format(new Date());
         File fpsLogFile = new File(imageFs.getTmpDir(), "fps_session" + ".json");
-        ExecutorService fileWriteExecutor = Executors.newSingleThreadExecutor();
 
-        fileWriteExecutor.execute(() -> {
+        captureExecutor.execute(() -> {
             try {
+                drainCapture();
+                String capturePath = "";
+                captureClosed = true;
+                if (capture != null) {
+                    capture.close();
+                    sessionStats = capture.getExactStats(recorder.getStutters());
+                    if (capture.file != null) {
+                        capturePath = capture.file.getAbsolutePath();
+                        Timber.i("Frame-time capture written to %s: %s", capturePath, sessionStats);
+                    }
+                }
+                FrameStats stats = sessionStats;
+                float avgFPS = stats.frames > 0 ? stats.avgFPS : (float) fpsSum / readingCount;
+
                 // Create file if it doesn't exist, or overwrite if it does
                 if (!fpsLogFile.exists()) {
                     fpsLogFile.createNewFile();
@@ -130,9 +239,22 @@ public class FrameRating extends FrameLayout implements Runnable {
                     "  \"avg_fps\": %.1f,\n" +
                     "  \"max_fps\": %d,\n" +
                     "  \"min_fps\": %d,\n" +
-                    "  \"readings\": %d\n" +
+                    "  \"readings\": %d,\n" +
+                    "  \"frames\": %d,\n" +
+                    "  \"low_1_fps\": %.1f,\n" +
+                    "  \"low_0_1_fps\": %.1f,\n" +
+                    "  \"p50_frame_ms\": %.2f,\n" +
+                    "  \"p95_frame_ms\": %.2f,\n" +
+                    "  \"p99_frame_ms\": %.2f,\n" +
+                    "  \"max_frame_ms\": %.2f,\n" +
+                    "  \"stutters\": %d,\n" +
+                    "  \"compositor_avg_fps\": %.1f,\n" +
+                    "  \"compositor_low_1_fps\": %.1f,\n" +
+                    "  \"capture\": \"%s\"\n" +
                     "}\n",
-                    sessionLengthSec, avgFPS, max, min, readingCount);
+                    sessionLengthSec, avgFPS, max, min, readingCount,
+                    stats.frames, stats.low1FPS, stats.low01FPS, stats.medianFrameMs, stats.p95FrameMs, stats.p99FrameMs, stats.maxFrameMs, stats.stutters,
+                    compositorStats.avgFPS, compositorStats.low1FPS, capturePath.replace("\\", "\\\\"));
                 try (FileWriter fw = new FileWriter(fpsLogFile, false)) {
                     fw.write(json);
                     fw.flush();
@@ -140,8 +262,6 @@ public class FrameRating extends FrameLayout implements Runnable {
                 Timber.d("Session summary written to: %s", fpsLogFile.getAbsolutePath());
             } catch (IOException e) {
                 Timber.e(e, "Failed to write session summary");
-            } finally {
-                fileWriteExecutor.shutdown();
             }
         });
     }
@@ -504,7 +504,7 @@ public class TouchpadView extends View implements View.OnCapturedPointerListener
                         this.scrollAccumY = 0.0f;
                     }
                     scrolling = true;
-                } else if (currDistance >= MAX_TWO_FINGERS_SCROLL_DISTANCE && !this.xServer.pointer.isButtonPressed(Pointer.Button.BUTTON_LEFT) && finger2.travelDistance() < MAX_TAP_TRAVEL_DISTANCE) {
+                } else if (currDistance >= MAX_TWO_FINGERS_SCROLL_DISTANCE && !this.xServer.isPointerButtonPressed(Pointer.Button.BUTTON_LEFT) && finger2.travelDistance() < MAX_TAP_TRAVEL_DISTANCE) {
                     pressPointerButtonLeft(finger1);
                     skipPointerMove = true;
                 }
@@ -539,9 +539,8 @@ public class TouchpadView extends View implements View.OnCapturedPointerListener
 
     private void pressPointerButtonLeft(Finger finger) {
         if (isEnabled() && this.pointerButtonLeftEnabled) {
-            Pointer pointer = this.xServer.pointer;
             Pointer.Button button = Pointer.Button.BUTTON_LEFT;
-            if (!pointer.isButtonPressed(button)) {
+            if (!this.xServer.isPointerButtonPressed(button)) {
                 this.xServer.injectPointerButtonPress(button);
                 this.fingerPointerButtonLeft = finger;
             }
@@ -550,9 +549,8 @@ public class TouchpadView extends View implements View.OnCapturedPointerListener
 
     private void pressPointerButtonRight(Finger finger) {
         if (isEnabled() && this.pointerButtonRightEnabled) {
-            Pointer pointer = this.xServer.pointer;
             Pointer.Button button = Pointer.Button.BUTTON_RIGHT;
-            if (!pointer.isButtonPressed(button)) {
+            if (!this.xServer.isPointerButtonPressed(button)) {
                 this.xServer.injectPointerButtonPress(button);
                 this.fingerPointerButtonRight = finger;
             }
@@ -560,7 +558,7 @@ public class TouchpadView extends View implements View.OnCapturedPointerListener
     }
 
     private void releasePointerButtonLeft(Finger finger) {
-        if (isEnabled() && this.pointerButtonLeftEnabled && finger == this.fingerPointerButtonLeft && this.xServer.pointer.isButtonPressed(Pointer.Button.BUTTON_LEFT)) {
+        if (isEnabled() && this.pointerButtonLeftEnabled && finger == this.fingerPointerButtonLeft && this.xServer.isPointerButtonPressed(Pointer.Button.BUTTON_LEFT)) {
             postDelayed(() -> {
                 xServer.injectPointerButtonRelease(Pointer.Button.BUTTON_LEFT);
                 fingerPointerButtonLeft = null;
@@ -569,7 +567,7 @@ public class TouchpadView extends View implements View.OnCapturedPointerListener
     }
 
     private void releasePointerButtonRight(Finger finger) {
-        if (isEnabled() && this.pointerButtonRightEnabled && finger == this.fingerPointerButtonRight && this.xServer.pointer.isButtonPressed(Pointer.Button.BUTTON_RIGHT)) {
+        if (isEnabled() && this.pointerButtonRightEnabled && finger == this.fingerPointerButtonRight && this.xServer.isPointerButtonPressed(Pointer.Button.BUTTON_RIGHT)) {
             postDelayed(() -> {
                 xServer.injectPointerButtonRelease(Pointer.Button.BUTTON_RIGHT);
                 fingerPointerButtonRight = null;
@@ -54,6 +54,13 @@ public class XServerView extends GLSurfaceView {
         return renderer;
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // The GL thread exits with the view
+        renderer.releaseRendererThread();
+    }
+
     // public void addPointerEventListener(Callback<MotionEvent> listener) {
     //     mouseEventCallbacks.add(listener);
     // }
@@ -14,7 +14,8 @@ public class Client {
     private Object tag;
     protected Thread pollThread;
     protected int shutdownFd;
-    protected boolean connected;
+    protected volatile boolean connected;
+    protected boolean killed;
 
     public Client(XConnectorEpoll connector, ClientSocket clientSocket) {
         this.connector = connector;
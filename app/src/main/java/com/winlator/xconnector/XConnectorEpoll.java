@@ -3,6 +3,10 @@ import android.util.Log;
 
 import android.util.SparseArray;
 import androidx.annotation.Keep;
+
+import com.winlator.cpu.ThreadPlacementManager;
+import com.winlator.cpu.ThreadRole;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -13,10 +17,17 @@ public class XConnectorEpoll implements Runnable {
     private final RequestHandler requestHandler;
     private final int serverFd;
     private final int shutdownFd;
+    private final int wakeupFd;
+    private final ByteBuffer wakeupData = ByteBuffer.allocateDirect(8);
+    private final ByteBuffer wakeupCounter = ByteBuffer.allocateDirect(8);
+    private final Object wakeupLock = new Object();
+    private boolean wakeupFdOpen = true;
+    private Runnable wakeupHandler;
     private boolean running = false;
     private boolean multithreadedClients = false;
     private boolean canReceiveAncillaryMessages = false;
     private boolean monitorClients = true;
+    private ThreadRole threadRole;
     private int initialInputBufferCapacity = 128;
     private int initialOutputBufferCapacity = 128;
     private final SparseArray<Client> connectedClients = new SparseArray<>();
@@ -68,6 +79,15 @@ public class XConnectorEpoll implements Runnable {
             closeFd(createEpollFd);
             throw new RuntimeException("Failed to add shutdown fd to epoll.");
         }
+        this.wakeupFd = createEventFd();
+        if (!addFdToEpoll(createEpollFd, this.wakeupFd)) {
+            closeFd(createAFUnixSocket);
+            closeFd(createEventFd);
+            closeFd(this.wakeupFd);
+            closeFd(createEpollFd);
+            throw new RuntimeException("Failed to add wakeup fd to epoll.");
+        }
+        wakeupData.asLongBuffer().put(1L);
         this.epollThread = new Thread(this);
     }
 
@@ -95,36 +115,46 @@ public class XConnectorEpoll implements Runnable {
 
     @Override // java.lang.Runnable
     public void run() {
+        if (threadRole != null) ThreadPlacementManager.registerCurrentThread(threadRole);
         while (this.running) {
             if (!doEpollIndefinitely(this.epollFd, this.serverFd, !this.multithreadedClients && this.monitorClients)) {
                 break;
             }
         }
         shutdown();
+        if (threadRole != null) ThreadPlacementManager.unregisterCurrentThread();
     }
 
     @Keep
     private void handleNewConnection(int fd) {
         final Client client = new Client(this, new ClientSocket(fd));
         client.connected = true;
+        synchronized (this.connectedClients) {
+            this.connectedClients.put(fd, client);
+        }
         if (this.multithreadedClients) {
             client.shutdownFd = createEventFd();
             client.pollThread = new Thread(() -> {
+                if (threadRole != null) ThreadPlacementManager.registerCurrentThread(threadRole);
                 connectionHandler.handleNewConnection(client);
                 while (client.connected &&                        // stay in loop
                         waitForSocketRead(client.clientSocket.fd,  // until socket readable
                                 client.shutdownFd)) { }  //   or shutdown signalled
+                if (threadRole != null) ThreadPlacementManager.unregisterCurrentThread();
             });
             client.pollThread.start();
         } else {
             this.connectionHandler.handleNewConnection(client);
         }
-        this.connectedClients.put(fd, client);
     }
 
     @Keep
     private void handleExistingConnection(int fd) {
-        Client client = this.connectedClients.get(fd);
+        if (fd == this.wakeupFd) {
+            handleWakeup();
+            return;
+        }
+        Client client = getClient(fd);
         if (client == null) {
             return;
         }
@@ -148,11 +178,49 @@ public class XConnectorEpoll implements Runnable {
         }
     }
 
+    private void handleWakeup() {
+        try {
+            wakeupCounter.clear();
+            new ClientSocket(this.wakeupFd).read(wakeupCounter);
+        } catch (IOException e) {
+        }
+        if (this.wakeupHandler != null) this.wakeupHandler.run();
+    }
+
+    /**
+     * Runs {@code wakeupHandler} on the epoll thread, between two rounds of requests, after
+     * {@link #wakeUp()} was called from any thread. Several wakeups may be handled at once.
+     */
+    public void setWakeupHandler(Runnable wakeupHandler) {
+        this.wakeupHandler = wakeupHandler;
+    }
+
+    public void wakeUp() {
+        synchronized (wakeupLock) {
+            if (!wakeupFdOpen) return;
+            try {
+                new ClientSocket(this.wakeupFd).write(wakeupData.duplicate());
+            } catch (IOException e) {
+            }
+        }
+    }
+
     public Client getClient(int fd) {
-        return this.connectedClients.get(fd);
+        synchronized (this.connectedClients) {
+            return this.connectedClients.get(fd);
+        }
     }
 
+    /**
+     * Releases {@code client} exactly once, whether it hung up or the connector is shutting down.
+     * A multithreaded client that hangs up is released by its own poll thread, which exits right
+     * after; otherwise the poll thread is stopped first.
+     */
     public void killConnection(Client client) {
+        synchronized (client) {
+            if (client.killed) return;
+            client.killed = true;
+        }
         client.connected = false;
         if (this.multithreadedClients) {
             if (Thread.currentThread() != client.pollThread) {
@@ -166,24 +234,41 @@ public class XConnectorEpoll implements Runnable {
                 this.connectionHandler.handleConnectionShutdown(client);
                 client.pollThread = null;
             }
+            else this.connectionHandler.handleConnectionShutdown(client);
             closeFd(client.shutdownFd);
         } else {
             this.connectionHandler.handleConnectionShutdown(client);
             removeFdFromEpoll(this.epollFd, client.clientSocket.fd);
         }
+        synchronized (this.connectedClients) {
+            // shutdown() takes clients out of the map before killing them
+            if (this.connectedClients.get(client.clientSocket.fd) == client) {
+                this.connectedClients.remove(client.clientSocket.fd);
+            }
+        }
         closeFd(client.clientSocket.fd);
-        this.connectedClients.remove(client.clientSocket.fd);
     }
 
     private void shutdown() {
-        while (this.connectedClients.size() > 0) {
-            Client client = this.connectedClients.valueAt(this.connectedClients.size() - 1);
+        while (true) {
+            Client client;
+            synchronized (this.connectedClients) {
+                if (this.connectedClients.size() == 0) break;
+                int index = this.connectedClients.size() - 1;
+                client = this.connectedClients.valueAt(index);
+                this.connectedClients.removeAt(index);
+            }
             killConnection(client);
         }
         removeFdFromEpoll(this.epollFd, this.serverFd);
         removeFdFromEpoll(this.epollFd, this.shutdownFd);
+        removeFdFromEpoll(this.epollFd, this.wakeupFd);
         closeFd(this.serverFd);
         closeFd(this.shutdownFd);
+        synchronized (wakeupLock) {
+            wakeupFdOpen = false;
+            closeFd(this.wakeupFd);
+        }
         closeFd(this.epollFd);
     }
 
@@ -211,6 +296,11 @@ public class XConnectorEpoll implements Runnable {
         this.canReceiveAncillaryMessages = canReceiveAncillaryMessages;
     }
 
+    /** Lets the thread placement manager pin the epoll thread and client threads for {@code threadRole}. */
+    public void setThreadRole(ThreadRole threadRole) {
+        this.threadRole = threadRole;
+    }
+
     private void requestShutdown() {
         try {
             ByteBuffer data = ByteBuffer.allocateDirect(8);
@@ -1,9 +1,36 @@
 package com.winlator.xenvironment;
 
+import java.util.Collections;
+import java.util.List;
+
 public abstract class EnvironmentComponent {
     protected XEnvironment environment;
 
+    /**
+     * Work that needs none of the other components, such as unpacking files. Runs while the
+     * other components start, before {@link #start()}.
+     */
+    public void prepare() {}
+
     public abstract void start();
 
     public abstract void stop();
-}
\ No newline at end of file
+
+    /**
+     * Components that must be started and ready before this one starts.
+     */
+    public List<EnvironmentComponent> getDependencies() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Blocks after {@link #start()} until the component serves requests, e.g. its socket accepts
+     * connections. Components whose socket is bound and listening when start returns are ready
+     * right away.
+     *
+     * @return false if the component was not ready within {@code timeoutMs}
+     */
+    public boolean awaitReady(long timeoutMs) throws InterruptedException {
+        return true;
+    }
+}
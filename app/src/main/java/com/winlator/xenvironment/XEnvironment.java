@@ -13,16 +13,27 @@ import com.winlator.xenvironment.components.ALSAServerComponent;
 import com.winlator.xenvironment.components.BionicProgramLauncherComponent;
 import com.winlator.xenvironment.components.GlibcProgramLauncherComponent;
 import com.winlator.xenvironment.components.GuestProgramLauncherComponent;
-import com.winlator.xenvironment.components.PulseAudioComponent;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class XEnvironment implements Iterable<EnvironmentComponent> {
     private final Context context;
     private final ImageFs imageFs;
+    private static final long READY_TIMEOUT_MS = 5000;
     private final ArrayList<EnvironmentComponent> components = new ArrayList<>();
+    private final Map<String, Long> startupTimes = Collections.synchronizedMap(new LinkedHashMap<>());
 
     private boolean winetricksRunning = false;
 
@@ -73,9 +84,81 @@ public class XEnvironment implements Iterable<EnvironmentComponent> {
         return tmpDir;
     }
 
+    /**
+     * Starts all components, each as soon as the components it depends on are ready, and returns
+     * once all of them are. Independent components start concurrently, and every component's
+     * {@link EnvironmentComponent#prepare()} runs right away.
+     */
     public void startEnvironmentComponents() {
         FileUtils.clear(getTmpDir(getContext()));
-        for (EnvironmentComponent environmentComponent : this) environmentComponent.start();
+        startupTimes.clear();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            long origin = System.nanoTime();
+            HashMap<EnvironmentComponent, CompletableFuture<Void>> scheduled = new HashMap<>();
+            for (EnvironmentComponent component : components) schedule(component, scheduled, new HashSet<>(), executor, origin);
+            CompletableFuture.allOf(scheduled.values().toArray(new CompletableFuture[0])).join();
+            Log.d("XEnvironment", "All components ready after " + (System.nanoTime() - origin) / 1000000 + " ms");
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            throw new RuntimeException(cause);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private CompletableFuture<Void> schedule(EnvironmentComponent component, Map<EnvironmentComponent, CompletableFuture<Void>> scheduled, HashSet<EnvironmentComponent> visiting, ExecutorService executor, long origin) {
+        CompletableFuture<Void> future = scheduled.get(component);
+        if (future != null) return future;
+        if (!visiting.add(component)) throw new IllegalStateException("Dependency cycle at " + component.getClass().getSimpleName());
+
+        List<EnvironmentComponent> dependencies = component.getDependencies();
+        CompletableFuture<?>[] prerequisites = new CompletableFuture[dependencies.size() + 1];
+        prerequisites[0] = CompletableFuture.runAsync(component::prepare, executor);
+        for (int i = 0; i < dependencies.size(); i++) {
+            prerequisites[i + 1] = schedule(dependencies.get(i), scheduled, visiting, executor, origin);
+        }
+
+        future = CompletableFuture.allOf(prerequisites).thenRunAsync(() -> startAndAwaitReady(component, origin), executor);
+        scheduled.put(component, future);
+        visiting.remove(component);
+        return future;
+    }
+
+    private void startAndAwaitReady(EnvironmentComponent component, long origin) {
+        String name = component.getClass().getSimpleName();
+        long startTime = System.nanoTime();
+        component.start();
+        long startedTime = System.nanoTime();
+
+        boolean ready;
+        try {
+            ready = component.awaitReady(READY_TIMEOUT_MS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        long readyTime = System.nanoTime();
+
+        if (!ready) Log.w("XEnvironment", name + " was not ready within " + READY_TIMEOUT_MS + " ms, continuing");
+        Log.d("XEnvironment", name + " started in " + (startedTime - startTime) / 1000000 + " ms, ready after " +
+            (readyTime - startedTime) / 1000000 + " ms more (" + (readyTime - origin) / 1000000 + " ms since launch)");
+        startupTimes.put(name, (readyTime - origin) / 1000000);
+    }
+
+    /**
+     * Milliseconds from the start of {@link #startEnvironmentComponents()} until each component
+     * was ready, keyed by component class name, in the order they became ready.
+     */
+    public Map<String, Long> getStartupTimes() {
+        synchronized (startupTimes) {
+            return new LinkedHashMap<>(startupTimes);
+        }
     }
 
     public void stopEnvironmentComponents() {
@@ -5,6 +5,7 @@ import android.util.Log;
 import com.winlator.alsaserver.ALSAClientConnectionHandler;
 import com.winlator.alsaserver.ALSARequestHandler;
 import com.winlator.core.KeyValueSet;
+import com.winlator.cpu.ThreadRole;
 import com.winlator.xconnector.UnixSocketConfig;
 import com.winlator.xconnector.XConnectorEpoll;
 import com.winlator.xenvironment.EnvironmentComponent;
@@ -32,6 +33,7 @@ public class ALSAServerComponent extends EnvironmentComponent {
         XConnectorEpoll xConnectorEpoll = new XConnectorEpoll(this.socketConfig, new ALSAClientConnectionHandler(this.options, imagefs.getVariant()), new ALSARequestHandler());
         this.connector = xConnectorEpoll;
         xConnectorEpoll.setMultithreadedClients(true);
+        xConnectorEpoll.setThreadRole(ThreadRole.AUDIO);
         this.connector.start();
     }
 
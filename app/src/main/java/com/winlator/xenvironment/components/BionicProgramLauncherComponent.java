@@ -88,12 +88,18 @@ public class BionicProgramLauncherComponent extends GuestProgramLauncherComponen
     private Runnable preUnpack;
     public void setPreUnpack(Runnable r) { this.preUnpack = r; }
     @Override
-    public void start() {
+    public void prepare() {
         synchronized (lock) {
             if (wineInfo.isArm64EC())
                 extractEmulatorsDlls();
             else
                 extractBox64Files();
+        }
+    }
+
+    @Override
+    public void start() {
+        synchronized (lock) {
             if (preUnpack != null) preUnpack.run();
             PluviaApp.events.emitJava(new AndroidEvent.SetBootingSplashText("Launching game..."));
             pid = execGuestProgram();
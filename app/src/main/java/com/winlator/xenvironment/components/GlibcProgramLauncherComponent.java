@@ -64,13 +64,19 @@ public class GlibcProgramLauncherComponent extends GuestProgramLauncherComponent
 
     private Runnable preUnpack;
     public void setPreUnpack(Runnable r) { this.preUnpack = r; }
+    @Override
+    public void prepare() {
+        synchronized (lock) {
+            extractBox64Files();
+            copyDefaultBox64RCFile();
+        }
+    }
+
     @Override
     public void start() {
         Log.d("GlibcProgramLauncherComponent", "Starting...");
         synchronized (lock) {
             stop();
-            extractBox64Files();
-            copyDefaultBox64RCFile();
             if (preUnpack != null) preUnpack.run();
             PluviaApp.events.emitJava(new AndroidEvent.SetBootingSplashText("Launching game..."));
             pid = execGuestProgram();
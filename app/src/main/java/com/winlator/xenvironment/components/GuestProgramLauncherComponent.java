@@ -22,6 +22,7 @@ import com.winlator.xenvironment.ImageFs;
 import com.winlator.xenvironment.XEnvironment;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -55,12 +56,31 @@ public class GuestProgramLauncherComponent extends EnvironmentComponent {
     public void setContainer(Container container) { this.container = container; }
 
     public void setPreUnpack(Runnable r) { this.preUnpack = r; }
+
+    /**
+     * The guest may connect to any server as soon as it runs, so it waits for all of them.
+     */
+    @Override
+    public List<EnvironmentComponent> getDependencies() {
+        ArrayList<EnvironmentComponent> dependencies = new ArrayList<>();
+        for (EnvironmentComponent component : environment) {
+            if (!(component instanceof GuestProgramLauncherComponent)) dependencies.add(component);
+        }
+        return dependencies;
+    }
+
+    @Override
+    public void prepare() {
+        synchronized (lock) {
+            extractBox86_64Files();
+        }
+    }
+
     @Override
     public void start() {
         // Log.d("GuestProgramLauncherComponent", "Starting...");
         synchronized (lock) {
             stop();
-            extractBox86_64Files();
             pid = execGuestProgram();
             Log.d("GuestProgramLauncherComponent", "Process " + pid + " started");
         }
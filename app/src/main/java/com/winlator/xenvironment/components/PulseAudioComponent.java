@@ -1,6 +1,8 @@
 package com.winlator.xenvironment.components;
 
 import android.content.Context;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
 import android.os.Process;
 import android.util.Log;
 
@@ -14,6 +16,7 @@ import com.winlator.xenvironment.ImageFs;
 import com.winlator.xenvironment.XEnvironment;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class PulseAudioComponent extends EnvironmentComponent {
@@ -22,6 +25,7 @@ public class PulseAudioComponent extends EnvironmentComponent {
     private static final Object lock = new Object();
     private float volume = 1.0f;
     private byte performanceMode = 1;
+    private static final long READY_POLL_INTERVAL_MS = 10;
 
     public PulseAudioComponent(UnixSocketConfig socketConfig) {
         this.socketConfig = socketConfig;
@@ -36,6 +40,28 @@ public class PulseAudioComponent extends EnvironmentComponent {
         }
     }
 
+    /**
+     * PulseAudio runs as its own process; it is ready once its native protocol socket accepts a
+     * connection.
+     */
+    @Override
+    public boolean awaitReady(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            synchronized (lock) {
+                if (pid == -1) return false;
+            }
+            try (LocalSocket socket = new LocalSocket()) {
+                socket.connect(new LocalSocketAddress(socketConfig.path, LocalSocketAddress.Namespace.FILESYSTEM));
+                return true;
+            }
+            catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline) return false;
+                Thread.sleep(READY_POLL_INTERVAL_MS);
+            }
+        }
+    }
+
     @Override
     public void stop() {
         Log.d("PulseAudioComponent", "Stopping...");
@@ -0,0 +1,74 @@
+package com.winlator.xenvironment.components;
+
+import android.content.Context;
+import android.media.AudioManager;
+
+import com.winlator.alsaserver.ALSAClient;
+import com.winlator.cpu.ThreadRole;
+import com.winlator.pulseserver.PulseClientConnectionHandler;
+import com.winlator.pulseserver.PulseRequestHandler;
+import com.winlator.pulseserver.SampleSpec;
+import com.winlator.xconnector.UnixSocketConfig;
+import com.winlator.xconnector.XConnectorEpoll;
+import com.winlator.xenvironment.EnvironmentComponent;
+import com.winlator.xenvironment.ImageFs;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Serves PulseAudio clients from inside the app, playing their streams through the same
+ * AudioTrack path as the ALSA server instead of bridging through a separate pulseaudio process.
+ */
+public class PulseServerComponent extends EnvironmentComponent {
+    private static final int DEFAULT_SAMPLE_RATE = 48000;
+    private XConnectorEpoll connector;
+    private ScheduledExecutorService scheduler;
+    private final ALSAClient.Options options;
+    private final UnixSocketConfig socketConfig;
+
+    public PulseServerComponent(UnixSocketConfig socketConfig, ALSAClient.Options options) {
+        this.socketConfig = socketConfig;
+        this.options = options;
+    }
+
+    @Override
+    public void start() {
+        if (connector != null) return;
+        Context context = environment.getContext();
+        ALSAClient.assignFramesPerBuffer(context);
+        ImageFs imageFs = ImageFs.find(context);
+
+        SampleSpec sinkSpec = new SampleSpec(SampleSpec.FORMAT_FLOAT32LE, (byte)2, getOutputSampleRate(context));
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        connector = new XConnectorEpoll(socketConfig, new PulseClientConnectionHandler(options, imageFs.getVariant(), sinkSpec, scheduler), new PulseRequestHandler());
+        connector.setMultithreadedClients(true);
+        connector.setCanReceiveAncillaryMessages(true);
+        connector.setInitialInputBufferCapacity(16384);
+        connector.setThreadRole(ThreadRole.AUDIO);
+        connector.start();
+    }
+
+    @Override
+    public void stop() {
+        if (connector != null) {
+            connector.stop();
+            connector = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static int getOutputSampleRate(Context context) {
+        try {
+            AudioManager audioManager = (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
+            int sampleRate = Integer.parseInt(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+            return sampleRate > 0 ? sampleRate : DEFAULT_SAMPLE_RATE;
+        }
+        catch (Exception e) {
+            return DEFAULT_SAMPLE_RATE;
+        }
+    }
+}
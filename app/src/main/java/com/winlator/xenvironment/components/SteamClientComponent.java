@@ -46,6 +46,12 @@ public class SteamClientComponent extends EnvironmentComponent implements Connec
         connector.start();
     }
 
+    @Override
+    public boolean awaitReady(long timeoutMs) throws InterruptedException {
+        SteamPipeServer connector = this.connector;
+        return connector == null || connector.awaitBound(timeoutMs);
+    }
+
     @Override
     public void stop() {
         Log.d("SteamClientComponent", "Stopping...");
@@ -0,0 +1,42 @@
+package com.winlator.xenvironment.components;
+
+import com.winlator.cpu.CPUTopology;
+import com.winlator.cpu.ThreadPlacementManager;
+import com.winlator.xenvironment.EnvironmentComponent;
+
+/**
+ * Places our latency critical threads and the guest's processes on the device's clusters while
+ * the environment runs. Does nothing on devices whose cores are all alike.
+ */
+public class ThreadPlacementComponent extends EnvironmentComponent {
+    private final int guestAffinityMask;
+    private ThreadPlacementManager manager;
+
+    /**
+     * @param guestAffinityMask the cores the container allows guest processes on, 0 for all
+     */
+    public ThreadPlacementComponent(int guestAffinityMask) {
+        this.guestAffinityMask = guestAffinityMask;
+    }
+
+    @Override
+    public void start() {
+        if (manager != null) return;
+        CPUTopology topology = CPUTopology.read();
+        if (!topology.isHeterogeneous()) return;
+        manager = new ThreadPlacementManager(topology, guestAffinityMask);
+        manager.start();
+    }
+
+    @Override
+    public void stop() {
+        if (manager != null) {
+            manager.stop();
+            manager = null;
+        }
+    }
+
+    public boolean isActive() {
+        return manager != null;
+    }
+}
@@ -2,6 +2,7 @@ package com.winlator.xenvironment.components;
 
 import android.util.Log;
 
+import com.winlator.cpu.ThreadRole;
 import com.winlator.xenvironment.EnvironmentComponent;
 import com.winlator.xconnector.XConnectorEpoll;
 import com.winlator.xconnector.UnixSocketConfig;
@@ -26,15 +27,22 @@ public class XServerComponent extends EnvironmentComponent {
         connector = new XConnectorEpoll(socketConfig, new XClientConnectionHandler(xServer), new XClientRequestHandler());
         connector.setInitialInputBufferCapacity(262144);
         connector.setCanReceiveAncillaryMessages(true);
+        connector.setThreadRole(ThreadRole.X_SERVER);
+        connector.setWakeupHandler(xServer.inputEventQueue::drain);
         connector.start();
+        xServer.inputEventQueue.setWakeupListener(connector::wakeUp);
     }
 
     @Override
     public void stop() {
         Log.d("XServerComponent", "Stopping...");
         if (connector != null) {
+            xServer.inputEventQueue.setWakeupListener(null);
             connector.stop();
             connector = null;
+            Log.d("XServerComponent", String.format("Resource arena %.0f%% occupied (%d of %d bytes), cursor image cache hit rate %.0f%%",
+                xServer.resourceArena.getOccupancy() * 100, xServer.resourceArena.getUsedBytes(), xServer.resourceArena.getCapacity(),
+                xServer.cursorManager.getImageCacheHitRate() * 100));
         }
     }
 
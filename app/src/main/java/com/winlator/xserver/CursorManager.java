@@ -2,11 +2,43 @@ package com.winlator.xserver;
 
 import android.util.SparseArray;
 
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Cursors with the same pixels share one image. Wine creates a new cursor for every frame of an
+ * animated cursor and often recreates identical ones on focus changes, so images are looked up by
+ * a hash of their content and the images of freed cursors are kept around for a while.
+ */
 public class CursorManager extends XResourceManager {
+    private static final int MAX_RECENT_IMAGES = 32;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
     private final SparseArray<Cursor> cursors = new SparseArray<>();
+    private final HashMap<Long, CursorImage> images = new HashMap<>();
+    private final LinkedHashMap<Long, CursorImage> recentImages = new LinkedHashMap<Long, CursorImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CursorImage> eldest) {
+            return size() > MAX_RECENT_IMAGES;
+        }
+    };
     private final DrawableManager drawableManager;
+    private int imageLookups;
+    private int imageHits;
+
+    private static class CursorImage {
+        private final Drawable drawable;
+        private final boolean visible;
+        private int refCount;
+
+        private CursorImage(Drawable drawable, boolean visible) {
+            this.drawable = drawable;
+            this.visible = visible;
+        }
+    }
 
     public CursorManager(DrawableManager drawableManager) {
         this.drawableManager = drawableManager;
@@ -16,18 +48,73 @@ public class CursorManager extends XResourceManager {
         return cursors.get(id);
     }
 
-    public Cursor createCursor(int id, short x, short y, Pixmap sourcePixmap, Pixmap maskPixmap) {
+    public Cursor createCursor(int id, short x, short y, Pixmap sourcePixmap, Pixmap maskPixmap, byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue) {
         if (cursors.indexOfKey(id) >= 0) return null;
-        Drawable drawable = drawableManager.createDrawable(0, sourcePixmap.drawable.width, sourcePixmap.drawable.height, sourcePixmap.drawable.visual);
-        Cursor cursor = new Cursor(id, x, y, drawable, sourcePixmap.drawable, maskPixmap != null ? maskPixmap.drawable : null);
+        Drawable sourceImage = sourcePixmap.drawable;
+        Drawable maskImage = maskPixmap != null ? maskPixmap.drawable : null;
+
+        long key = FNV_OFFSET_BASIS;
+        key = hash(key, sourceImage.width | (long)sourceImage.height << 16 | (maskImage != null ? 1L << 32 : 0));
+        key = hash(key, (foreRed & 0xffL) | (foreGreen & 0xffL) << 8 | (foreBlue & 0xffL) << 16 | (backRed & 0xffL) << 24 | (backGreen & 0xffL) << 32 | (backBlue & 0xffL) << 40);
+        key = hash(key, sourceImage.getData());
+        if (maskImage != null) key = hash(key, maskImage.getData());
+
+        imageLookups++;
+        CursorImage image = images.get(key);
+        if (image == null) image = recentImages.remove(key);
+        if (image != null) {
+            imageHits++;
+        }
+        else image = createCursorImage(sourceImage, maskImage, foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue);
+
+        if (image.refCount++ == 0) images.put(key, image);
+        Cursor cursor = new Cursor(id, x, y, image.drawable, key);
+        cursor.setVisible(image.visible);
         cursors.put(id, cursor);
         triggerOnCreateResourceListener(cursor);
         return cursor;
     }
 
+    private CursorImage createCursorImage(Drawable sourceImage, Drawable maskImage, byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue) {
+        Drawable drawable = drawableManager.createDrawable(0, sourceImage.width, sourceImage.height, sourceImage.visual);
+        boolean visible = true;
+        if (maskImage != null) {
+            visible = !isEmptyMaskImage(maskImage);
+            if (visible) drawable.drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, sourceImage, maskImage);
+        }
+        return new CursorImage(drawable, visible);
+    }
+
     public void freeCursor(int id) {
-        triggerOnFreeResourceListener(cursors.get(id));
+        Cursor cursor = cursors.get(id);
+        if (cursor == null) return;
+        triggerOnFreeResourceListener(cursor);
         cursors.remove(id);
+
+        // Windows may still show a freed cursor, so its image is left to the garbage collector
+        CursorImage image = images.get(cursor.imageKey);
+        if (image != null && --image.refCount == 0) recentImages.put(cursor.imageKey, images.remove(cursor.imageKey));
+    }
+
+    /** The share of created cursors whose image was already known, between 0 and 1. */
+    public float getImageCacheHitRate() {
+        return imageLookups > 0 ? (float)imageHits / imageLookups : 0;
+    }
+
+    public int getCachedImageCount() {
+        return images.size() + recentImages.size();
+    }
+
+    private static long hash(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private static long hash(long hash, ByteBuffer data) {
+        if (data == null) return hash;
+        int i = 0;
+        for (int limit = data.limit() - 7; i < limit; i += 8) hash = hash(hash, data.getLong(i));
+        for (; i < data.limit(); i++) hash = hash(hash, data.get(i));
+        return hash;
     }
 
     private static boolean isEmptyMaskImage(Drawable maskImage) {
@@ -41,12 +128,4 @@ public class CursorManager extends XResourceManager {
         }
         return result;
     }
-
-    public void recolorCursor(Cursor cursor, byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue) {
-        if (cursor.maskImage != null) {
-            boolean visible = !isEmptyMaskImage(cursor.maskImage);
-            cursor.setVisible(visible);
-            if (visible) cursor.cursorImage.drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, cursor.sourceImage, cursor.maskImage);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package com.winlator.xserver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Accumulates drawing commands for one drawable so they reach native code in a single call
+ * (see {@link Drawable#submit(DrawCommandBuffer)}) instead of one JNI transition and texture
+ * update per rectangle or line segment.
+ *
+ * Every command is a fixed 16-byte record in native byte order:
+ * <pre>
+ *   int16 op, int16 a, int16 b, int16 c, int16 d, int16 e, int32 color
+ * </pre>
+ * FILL_RECT uses a..d as x, y, width, height; LINE uses a..e as x0, y0, x1, y1, lineWidth.
+ */
+public class DrawCommandBuffer {
+    public static final short OP_FILL_RECT = 1;
+    public static final short OP_LINE = 2;
+    public static final int RECORD_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 256;
+    private ByteBuffer buffer = allocate(INITIAL_CAPACITY);
+    private int count = 0;
+
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void clear() {
+        buffer.clear();
+        count = 0;
+    }
+
+    public void fillRect(int x, int y, int width, int height, int color) {
+        put(OP_FILL_RECT, x, y, width, height, 0, color);
+    }
+
+    public void line(int x0, int y0, int x1, int y1, int color, int lineWidth) {
+        put(OP_LINE, x0, y0, x1, y1, lineWidth, color);
+    }
+
+    private void put(short op, int a, int b, int c, int d, int e, int color) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = allocate(buffer.capacity() / RECORD_SIZE * 2);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.putShort(op);
+        buffer.putShort((short)a);
+        buffer.putShort((short)b);
+        buffer.putShort((short)c);
+        buffer.putShort((short)d);
+        buffer.putShort((short)e);
+        buffer.putInt(color);
+        count++;
+    }
+}
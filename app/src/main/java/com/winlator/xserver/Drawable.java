@@ -24,12 +24,14 @@ public class Drawable extends XResource {
 
     private static native void copyArea(short s, short s2, short s3, short s4, short s5, short s6, short s7, short s8, ByteBuffer byteBuffer, ByteBuffer byteBuffer2);
 
-    private static native void copyAreaOp(short s, short s2, short s3, short s4, short s5, short s6, short s7, short s8, ByteBuffer byteBuffer, ByteBuffer byteBuffer2, int i);
+    private static native void copyAreaOp(short s, short s2, short s3, short s4, short s5, short s6, short s7, short s8, ByteBuffer byteBuffer, ByteBuffer byteBuffer2, int gcFunction, int planeMask);
 
     private static native void drawAlphaMaskedBitmap(byte b, byte b2, byte b3, byte b4, byte b5, byte b6, ByteBuffer byteBuffer, ByteBuffer byteBuffer2, ByteBuffer byteBuffer3);
 
     private static native void drawBitmap(short s, short s2, ByteBuffer byteBuffer, ByteBuffer byteBuffer2);
 
+    private static native void drawCommands(ByteBuffer commands, int count, short width, short height, short stride, ByteBuffer data);
+
     private static native void drawLine(short s, short s2, short s3, short s4, int i, short s5, short s6, ByteBuffer byteBuffer);
 
     private static native void fillRect(short s, short s2, short s3, short s4, int i, short s5, ByteBuffer byteBuffer);
@@ -103,31 +105,51 @@ public class Drawable extends XResource {
     }
 
     public void drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight) {
+        drawImage(srcX, srcY, dstX, dstY, width, height, depth, data, totalWidth, totalHeight, GraphicsContext.Function.COPY, -1);
+    }
+
+    public void drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight, GraphicsContext.Function gcFunction, int planeMask) {
         ByteBuffer byteBuffer = this.data;
         if (byteBuffer == null) {
             return;
         }
         if (depth == 1) {
-            drawBitmap(width, height, data, byteBuffer);
-        }
-        else {
-            if (depth == 24 || depth == 32) {
-                dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
-                dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
-                if ((dstX + width) > this.width) width = (short)((this.width - dstX));
-                if ((dstY + height) > this.height) height = (short)((this.height - dstY));
-
-                copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
+            if (isPlainCopy(gcFunction, planeMask)) {
+                drawBitmap(width, height, data, byteBuffer);
             }
-            this.data.rewind();
-            data.rewind();
-            forceUpdate();
+            else {
+                // Expand to pixels first, then combine them like any other image
+                ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+                drawBitmap(width, height, data, pixels);
+                data.rewind();
+                drawPixels((short)0, (short)0, dstX, dstY, width, height, width, pixels, gcFunction, planeMask);
+            }
+        }
+        else if (depth == 24 || depth == 32) {
+            drawPixels(srcX, srcY, dstX, dstY, width, height, totalWidth, data, gcFunction, planeMask);
         }
         this.data.rewind();
         data.rewind();
         forceUpdate();
     }
 
+    private void drawPixels(short srcX, short srcY, short dstX, short dstY, short width, short height, short srcStride, ByteBuffer data, GraphicsContext.Function gcFunction, int planeMask) {
+        dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
+        dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
+        if ((dstX + width) > this.width) width = (short)((this.width - dstX));
+        if ((dstY + height) > this.height) height = (short)((this.height - dstY));
+
+        if (isPlainCopy(gcFunction, planeMask)) {
+            copyArea(srcX, srcY, dstX, dstY, width, height, srcStride, this.getStride(), data, this.data);
+        }
+        else copyAreaOp(srcX, srcY, dstX, dstY, width, height, srcStride, this.getStride(), data, this.data, gcFunction.ordinal(), planeMask);
+    }
+
+    /** Whether the function and plane mask reduce to a plain copy of the color bits. */
+    private static boolean isPlainCopy(GraphicsContext.Function gcFunction, int planeMask) {
+        return gcFunction == GraphicsContext.Function.COPY && (planeMask & RasterOp.COLOR_BITS) == RasterOp.COLOR_BITS;
+    }
+
     public ByteBuffer getImage(short x, short y, short width, short height) {
         ByteBuffer dstData = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
         if (this.data == null) {
@@ -150,16 +172,20 @@ public class Drawable extends XResource {
     }
 
     public void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, Drawable drawable, GraphicsContext.Function gcFunction) {
+        copyArea(srcX, srcY, dstX, dstY, width, height, drawable, gcFunction, -1);
+    }
+
+    public void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, Drawable drawable, GraphicsContext.Function gcFunction, int planeMask) {
         if (this.data != null && drawable.data != null) {
             dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
             dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
             if ((dstX + width) > this.width) width = (short)(this.width - dstX);
             if ((dstY + height) > this.height) height = (short)(this.height - dstY);
 
-            if (gcFunction == GraphicsContext.Function.COPY) {
+            if (isPlainCopy(gcFunction, planeMask)) {
                 copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
             }
-            else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
+            else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal(), planeMask);
 
             this.data.rewind();
             drawable.data.rewind();
@@ -185,6 +211,20 @@ public class Drawable extends XResource {
         forceUpdate();
     }
 
+    /**
+     * Executes all commands of {@code commands} in one native call, then clears it. The texture
+     * is updated once for the whole batch.
+     */
+    public void submit(DrawCommandBuffer commands) {
+        if (commands.isEmpty()) return;
+        if (this.data != null) {
+            drawCommands(commands.getBuffer(), commands.getCount(), width, height, this.getStride(), this.data);
+            this.data.rewind();
+            forceUpdate();
+        }
+        commands.clear();
+    }
+
     public void drawLines(int color, int lineWidth, short... points) {
         for (int i = 2; i < points.length; i += 2) {
             drawLine(points[i-2], points[i-1], points[i+0], points[i+1], color, (short)lineWidth);
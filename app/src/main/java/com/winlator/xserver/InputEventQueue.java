@@ -0,0 +1,159 @@
+package com.winlator.xserver;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pointer and keyboard input on its way from the UI to the X server.
+ *
+ * Posting never takes an X lock: events are queued and the X server is woken up once per burst,
+ * then applies everything queued so far under a single lock, on its own thread, between two
+ * rounds of requests. Runs of pointer motion collapse into one move while buttons and keys keep
+ * their order relative to the motion around them. Until a wakeup listener is set, events are
+ * applied right away on the posting thread.
+ */
+public class InputEventQueue {
+    private static final byte POINTER_MOVE = 0;
+    private static final byte POINTER_MOVE_DELTA = 1;
+    private static final byte POINTER_BUTTON_PRESS = 2;
+    private static final byte POINTER_BUTTON_RELEASE = 3;
+    private static final byte KEY_PRESS = 4;
+    private static final byte KEY_RELEASE = 5;
+    private final ConcurrentLinkedQueue<InputEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Target target;
+    private final AtomicInteger postedButtonMask = new AtomicInteger();
+    private volatile Runnable wakeupListener;
+
+    /** Where drained events end up, the X server's pointer and keyboard. */
+    public interface Target {
+        XLock lock();
+
+        void movePointer(int x, int y);
+
+        void movePointerBy(int dx, int dy);
+
+        void setPointerButton(Pointer.Button button, boolean pressed);
+
+        void pressKey(byte keycode, int keysym);
+
+        void releaseKey(byte keycode);
+    }
+
+    private static class InputEvent {
+        private final byte type;
+        private final int value1;
+        private final int value2;
+
+        private InputEvent(byte type, int value1, int value2) {
+            this.type = type;
+            this.value1 = value1;
+            this.value2 = value2;
+        }
+    }
+
+    public InputEventQueue(Target target) {
+        this.target = target;
+    }
+
+    /** Called, from the posting thread, whenever events are waiting to be drained. */
+    public void setWakeupListener(Runnable wakeupListener) {
+        this.wakeupListener = wakeupListener;
+        if (wakeupListener == null) drain();
+    }
+
+    public void postPointerMove(int x, int y) {
+        post(new InputEvent(POINTER_MOVE, x, y));
+    }
+
+    public void postPointerMoveDelta(int dx, int dy) {
+        post(new InputEvent(POINTER_MOVE_DELTA, dx, dy));
+    }
+
+    public void postPointerButton(Pointer.Button button, boolean pressed) {
+        postedButtonMask.getAndUpdate((mask) -> pressed ? mask | button.flag() : mask & ~button.flag());
+        post(new InputEvent(pressed ? POINTER_BUTTON_PRESS : POINTER_BUTTON_RELEASE, button.ordinal(), 0));
+    }
+
+    public void postKeyPress(byte keycode, int keysym) {
+        post(new InputEvent(KEY_PRESS, keycode, keysym));
+    }
+
+    public void postKeyRelease(byte keycode) {
+        post(new InputEvent(KEY_RELEASE, keycode, 0));
+    }
+
+    /** Whether {@code button} is down once every posted event is applied. */
+    public boolean isButtonPressed(Pointer.Button button) {
+        return (postedButtonMask.get() & button.flag()) != 0;
+    }
+
+    private void post(InputEvent event) {
+        events.offer(event);
+        Runnable listener = wakeupListener;
+        if (listener == null) {
+            drain();
+        }
+        else if (wakeupPending.compareAndSet(false, true)) listener.run();
+    }
+
+    /** Applies every event posted so far, returns how many there were. */
+    public synchronized int drain() {
+        wakeupPending.set(false);
+        if (events.isEmpty()) return 0;
+
+        int count = 0;
+        boolean moved = false;
+        boolean absolute = false;
+        int x = 0;
+        int y = 0;
+        try (XLock lock = target.lock()) {
+            InputEvent event;
+            while ((event = events.poll()) != null) {
+                count++;
+                if (event.type == POINTER_MOVE) {
+                    moved = absolute = true;
+                    x = event.value1;
+                    y = event.value2;
+                    continue;
+                }
+                else if (event.type == POINTER_MOVE_DELTA) {
+                    if (!moved) x = y = 0;
+                    moved = true;
+                    x += event.value1;
+                    y += event.value2;
+                    continue;
+                }
+
+                if (moved) {
+                    movePointer(absolute, x, y);
+                    moved = absolute = false;
+                }
+
+                switch (event.type) {
+                    case POINTER_BUTTON_PRESS:
+                    case POINTER_BUTTON_RELEASE:
+                        target.setPointerButton(Pointer.Button.values()[event.value1], event.type == POINTER_BUTTON_PRESS);
+                        break;
+                    case KEY_PRESS:
+                        target.pressKey((byte)event.value1, event.value2);
+                        break;
+                    case KEY_RELEASE:
+                        target.releaseKey((byte)event.value1);
+                        break;
+                }
+            }
+
+            if (moved) movePointer(absolute, x, y);
+        }
+        return count;
+    }
+
+    private void movePointer(boolean absolute, int x, int y) {
+        if (absolute) {
+            target.movePointer(x, y);
+        }
+        else target.movePointerBy(x, y);
+    }
+}
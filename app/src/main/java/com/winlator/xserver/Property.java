@@ -2,11 +2,9 @@ package com.winlator.xserver;
 
 import androidx.annotation.NonNull;
 
-import com.winlator.core.ArrayUtils;
 import com.winlator.core.StringUtils;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
 public class Property {
@@ -31,37 +29,114 @@ public class Property {
     public final int name;
     public final int type;
     public final Format format;
-    public ByteBuffer data;
+    private final ResourceArena arena;
+    // Swapped under the arena lock, and never null so readers on other threads can't see it go away
+    private volatile ResourceArena.Block block;
 
-    public Property(int name, int type, Format format, byte[] data) {
+    public Property(ResourceArena arena, int name, int type, Format format, ByteBuffer data) {
+        this.arena = arena;
         this.name = name;
         this.type = type;
         this.format = format;
+        this.block = arena.getEmptyBlock();
         replace(data);
     }
 
-    public void replace(byte[] data) {
-        this.data = ByteBuffer.wrap(data != null ? data : new byte[0]).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * A view of the current value, only valid until the property is modified or released. The
+     * block under it goes back to the arena for other properties then, so this is for the X server
+     * thread only; other threads use {@link #retainData()} or the typed getters.
+     */
+    public ByteBuffer getData() {
+        return block.getData();
     }
 
-    public void prepend(byte[] values) {
-        replace(ArrayUtils.concat(values, this.data.array()));
+    /**
+     * Keeps the current value alive past later modifications of the property, for readers
+     * outside the X server thread. The caller must release the returned block.
+     */
+    public ResourceArena.Block retainData() {
+        synchronized (arena) {
+            ResourceArena.Block block = this.block;
+            block.retain();
+            return block;
+        }
+    }
+
+    public int getSize() {
+        return block.getSize();
+    }
+
+    public void replace(ByteBuffer data) {
+        int size = data != null ? data.remaining() : 0;
+        if (!block.isShared() && size <= block.getCapacity()) {
+            block.setSize(size);
+            if (size > 0) block.getData().put(data.duplicate());
+        }
+        else {
+            ResourceArena.Block newBlock = arena.allocate(size);
+            if (size > 0) newBlock.getData().put(data.duplicate());
+            setBlock(newBlock);
+        }
+    }
+
+    public void prepend(ByteBuffer values) {
+        ByteBuffer oldData = block.getData();
+        ResourceArena.Block newBlock = arena.allocate(values.remaining() + oldData.remaining());
+        newBlock.getData().put(values.duplicate()).put(oldData);
+        setBlock(newBlock);
+    }
+
+    public void append(ByteBuffer values) {
+        int oldSize = block.getSize();
+        int size = oldSize + values.remaining();
+        if (!block.isShared() && size <= block.getCapacity()) {
+            block.setSize(size);
+            ByteBuffer data = block.getData();
+            data.position(oldSize);
+            data.put(values.duplicate());
+        }
+        else {
+            ResourceArena.Block newBlock = arena.allocate(size);
+            newBlock.getData().put(block.getData()).put(values.duplicate());
+            setBlock(newBlock);
+        }
+    }
+
+    /** Leaves the property empty; readers that still hold it see no data instead of failing. */
+    public void release() {
+        setBlock(arena.getEmptyBlock());
     }
 
-    public void append(byte[] values) {
-        replace(ArrayUtils.concat(this.data.array(), values));
+    /** Swaps in {@code newBlock} and drops the old one, atomically with respect to {@link #retainData()}. */
+    private void setBlock(ResourceArena.Block newBlock) {
+        synchronized (arena) {
+            ResourceArena.Block oldBlock = block;
+            block = newBlock;
+            oldBlock.release();
+        }
     }
 
     @NonNull
     @Override
     public String toString() {
+        ResourceArena.Block block = retainData();
+        try {
+            return toString(block.getData());
+        }
+        finally {
+            block.release();
+        }
+    }
+
+    private String toString(ByteBuffer data) {
         String type = Atom.getName(this.type);
-        data.rewind();
+        if (!data.hasRemaining()) return "";
         switch (type) {
             case "UTF8_STRING":
-                return StringUtils.fromANSIString(data.array(), StandardCharsets.UTF_8);
+                return StringUtils.fromANSIString(toByteArray(data), StandardCharsets.UTF_8);
             case "STRING":
-                return StringUtils.fromANSIString(data.array(), XServer.LATIN1_CHARSET);
+                return StringUtils.fromANSIString(toByteArray(data), XServer.LATIN1_CHARSET);
             case "ATOM":
                 return Atom.getName(data.getInt(0));
             default:
@@ -80,17 +155,47 @@ public class Property {
                             break;
                     }
                 }
-                data.rewind();
                 return sb.toString();
         }
     }
 
+    private static byte[] toByteArray(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+    // The typed getters hold the block while reading, so they are safe from any thread; values
+    // past the end, as of a released property, read as 0
+
+    public byte getByte(int index) {
+        ResourceArena.Block block = retainData();
+        try {
+            return index < block.getSize() ? block.getData().get(index) : 0;
+        }
+        finally {
+            block.release();
+        }
+    }
+
     public int getInt(int index) {
-        return data.getInt(index * 4);
+        ResourceArena.Block block = retainData();
+        try {
+            return (index + 1) * 4 <= block.getSize() ? block.getData().getInt(index * 4) : 0;
+        }
+        finally {
+            block.release();
+        }
     }
 
     public long getLong(int index) {
-        return data.getLong(index * 8);
+        ResourceArena.Block block = retainData();
+        try {
+            return (index + 1) * 8 <= block.getSize() ? block.getData().getLong(index * 8) : 0;
+        }
+        finally {
+            block.release();
+        }
     }
 
     public String nameAsString() {
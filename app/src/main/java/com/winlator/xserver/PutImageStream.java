@@ -0,0 +1,124 @@
+package com.winlator.xserver;
+
+import com.winlator.xconnector.XInputStream;
+import com.winlator.xserver.requests.DrawRequests;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Z_PIXMAP PutImage that is drawn while its data is still arriving.
+ *
+ * With BIG-REQUESTS a single PutImage can carry a whole software rendered frame. Waiting for all
+ * of it makes the client's input buffer grow (and be copied) until the request fits; instead the
+ * rows that have arrived are drawn straight out of the input buffer and released, so the buffer
+ * only ever has to hold a partial row.
+ */
+public class PutImageStream {
+    /** Smaller requests are simply buffered, they fit the initial input buffer anyway. */
+    public static final int MIN_STREAMED_LENGTH = 65536;
+    private static final int HEADER_SIZE = 20;
+    private static final int BYTES_PER_PIXEL = 4;
+    public final int drawableId;
+    public final int gcId;
+    public final short width;
+    public final short height;
+    public final short dstX;
+    public final short dstY;
+    public final byte depth;
+    private final int rowStride;
+    private int rowsDone;
+    private int remainingLength;
+    private boolean discarding;
+
+    public PutImageStream(int drawableId, int gcId, short width, short height, short dstX, short dstY, byte depth, int length) {
+        this.drawableId = drawableId;
+        this.gcId = gcId;
+        this.width = width;
+        this.height = height;
+        this.dstX = dstX;
+        this.dstY = dstY;
+        this.depth = depth;
+        this.rowStride = width * BYTES_PER_PIXEL;
+        this.remainingLength = length;
+    }
+
+    /**
+     * Whether a PutImage of {@code requestLength} bytes should be streamed. Looks at the request
+     * header without consuming it.
+     */
+    public static boolean canStream(byte format, int requestLength, XInputStream inputStream) {
+        if (format != DrawRequests.Format.Z_PIXMAP.ordinal() || requestLength < MIN_STREAMED_LENGTH) return false;
+        if (inputStream.available() < HEADER_SIZE) return false;
+
+        int position = inputStream.getActivePosition();
+        inputStream.skip(8);
+        short width = inputStream.readShort();
+        short height = inputStream.readShort();
+        inputStream.skip(4);
+        byte leftPad = inputStream.readByte();
+        byte depth = inputStream.readByte();
+        inputStream.setActivePosition(position);
+
+        return leftPad == 0 && (depth == 24 || depth == 32) && width > 0 && height > 0 &&
+               (long)width * BYTES_PER_PIXEL * height <= requestLength - HEADER_SIZE;
+    }
+
+    /** Drops the rest of the image, consuming its data without drawing it. */
+    public void discard() {
+        discarding = true;
+    }
+
+    public boolean isFinished() {
+        return remainingLength == 0;
+    }
+
+    /** How many whole rows of the image can be drawn from {@code available} bytes. */
+    public int getDrawableRows(int available) {
+        if (discarding) return 0;
+        return Math.min(available / rowStride, height - rowsDone);
+    }
+
+    /** How many of {@code available} bytes are padding or discarded data that can be skipped. */
+    public int getSkippableLength(int available) {
+        if (!discarding && rowsDone < height) return 0;
+        return Math.min(available, remainingLength);
+    }
+
+    /**
+     * Draws the rows that have arrived and skips trailing data. The caller holds the drawable and
+     * graphics context locks.
+     *
+     * @return whether any data was consumed
+     */
+    public boolean drawAvailableRows(XClient client, XInputStream inputStream) {
+        int rows = getDrawableRows(inputStream.available());
+        if (rows > 0) {
+            ByteBuffer data = inputStream.readByteBuffer(rows * rowStride);
+            Drawable drawable = client.xServer.drawableManager.getDrawable(drawableId);
+            GraphicsContext graphicsContext = client.xServer.graphicsContextManager.getGraphicsContext(gcId);
+            if (drawable != null && graphicsContext != null) {
+                drawRows(drawable, graphicsContext, data, rows);
+            }
+            else discarding = true;
+            rowsDone += rows;
+            remainingLength -= rows * rowStride;
+        }
+
+        int skipLength = getSkippableLength(inputStream.available());
+        if (skipLength > 0) {
+            inputStream.skip(skipLength);
+            remainingLength -= skipLength;
+        }
+        return rows > 0 || skipLength > 0;
+    }
+
+    private void drawRows(Drawable drawable, GraphicsContext graphicsContext, ByteBuffer data, int rows) {
+        int top = dstY + rowsDone;
+        int visibleTop = Math.max(top, 0);
+        int visibleBottom = Math.min(top + rows, drawable.height);
+        if (visibleTop >= visibleBottom) return;
+
+        drawable.drawImage((short)0, (short)(visibleTop - top), dstX, (short)visibleTop, width, (short)(visibleBottom - visibleTop), depth, data, width, (short)rows,
+                           graphicsContext.getFunction(), graphicsContext.getPlaneMask());
+    }
+}
@@ -0,0 +1,60 @@
+package com.winlator.xserver;
+
+/**
+ * Reference definition of the X11 raster operations ({@link GraphicsContext.Function}) on 32-bit
+ * BGRA pixels, matching the native engine in raster_op.c pixel for pixel. Only the 24 color bits
+ * are combined and masked by the plane mask; the alpha byte of the destination is preserved.
+ */
+public final class RasterOp {
+    public static final int COLOR_BITS = 0x00ffffff;
+
+    private RasterOp() {}
+
+    public static int combine(GraphicsContext.Function function, int src, int dst) {
+        switch (function) {
+            case CLEAR: return 0;
+            case AND: return src & dst;
+            case AND_REVERSE: return src & ~dst;
+            case COPY: return src;
+            case AND_INVERTED: return ~src & dst;
+            case NO_OP: return dst;
+            case XOR: return src ^ dst;
+            case OR: return src | dst;
+            case NOR: return ~(src | dst);
+            case EQUIV: return ~src ^ dst;
+            case INVERT: return ~dst;
+            case OR_REVERSE: return src | ~dst;
+            case COPY_INVERTED: return ~src;
+            case OR_INVERTED: return ~src | dst;
+            case NAND: return ~(src & dst);
+            case SET: return ~0;
+            default: throw new IllegalArgumentException("Unknown function " + function);
+        }
+    }
+
+    public static int apply(GraphicsContext.Function function, int src, int dst, int planeMask) {
+        int mask = planeMask & COLOR_BITS;
+        return (dst & ~mask) | (combine(function, src, dst) & mask);
+    }
+
+    /**
+     * Applies {@code function} to a width x height area. {@code src} may be {@code dst}, with the
+     * areas overlapping; the result is as if the whole source had been read first.
+     */
+    public static void apply(GraphicsContext.Function function, int planeMask, int[] src, int srcX, int srcY, int srcStride, int[] dst, int dstX, int dstY, int dstStride, int width, int height) {
+        if (src == dst) {
+            int[] copy = new int[width * height];
+            for (int y = 0; y < height; y++) System.arraycopy(src, srcX + (srcY + y) * srcStride, copy, y * width, width);
+            src = copy;
+            srcX = 0;
+            srcY = 0;
+            srcStride = width;
+        }
+
+        for (int y = 0; y < height; y++) {
+            int s = srcX + (srcY + y) * srcStride;
+            int d = dstX + (dstY + y) * dstStride;
+            for (int x = 0; x < width; x++, s++, d++) dst[d] = apply(function, src[s], dst[d], planeMask);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.winlator.xserver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Direct memory for variable size X resources such as window properties.
+ *
+ * Blocks are carved out of large slabs in power of two size classes and go back to the free list
+ * of their class once their last reference is released, so payloads that are replaced over and
+ * over (Wine updates _NET_WM_ICON with every icon change) keep reusing the same memory instead of
+ * allocating new buffers. Payloads larger than the biggest class get a buffer of their own.
+ */
+public class ResourceArena {
+    public static final int MIN_BLOCK_SIZE = 64;
+    public static final int MAX_BLOCK_SIZE = 256 * 1024;
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int MIN_SIZE_CLASS = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+    private static final int MAX_SIZE_CLASS = Integer.numberOfTrailingZeros(MAX_BLOCK_SIZE);
+    private final ArrayDeque<ByteBuffer>[] freeBlocks;
+    private ByteBuffer slab;
+    private long slabBytes;
+    private long largeBytes;
+    private long usedBytes;
+    private int liveBlocks;
+    private final Block emptyBlock = new Block(ByteBuffer.allocateDirect(0), 0, false);
+
+    public class Block {
+        private final ByteBuffer buffer;
+        private final boolean pooled;
+        private int size;
+        private int refCount = 1;
+
+        private Block(ByteBuffer buffer, int size, boolean pooled) {
+            this.buffer = buffer;
+            this.size = size;
+            this.pooled = pooled;
+        }
+
+        /** A little endian view of the first {@link #getSize()} bytes, positioned at 0. */
+        public ByteBuffer getData() {
+            ByteBuffer data = buffer.duplicate();
+            data.limit(size).position(0);
+            return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /** How far the block can grow in place. */
+        public int getCapacity() {
+            return buffer.capacity();
+        }
+
+        public void setSize(int size) {
+            if (size < 0 || size > buffer.capacity()) throw new IllegalArgumentException("Size " + size + " exceeds block capacity " + buffer.capacity());
+            this.size = size;
+        }
+
+        public boolean isShared() {
+            synchronized (ResourceArena.this) {
+                return refCount > 1;
+            }
+        }
+
+        public void retain() {
+            if (this == emptyBlock) return;
+            synchronized (ResourceArena.this) {
+                if (refCount == 0) throw new IllegalStateException("Block was already freed.");
+                refCount++;
+            }
+        }
+
+        public void release() {
+            if (this == emptyBlock) return;
+            synchronized (ResourceArena.this) {
+                if (refCount == 0) throw new IllegalStateException("Block was already freed.");
+                if (--refCount > 0) return;
+                free(this);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ResourceArena() {
+        freeBlocks = new ArrayDeque[MAX_SIZE_CLASS + 1];
+        for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++) freeBlocks[i] = new ArrayDeque<>();
+    }
+
+    private static int getSizeClass(int size) {
+        return Math.max(32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1), MIN_SIZE_CLASS);
+    }
+
+    /** Allocates a block holding {@code size} bytes, with one reference owned by the caller. */
+    public synchronized Block allocate(int size) {
+        if (size < 0) throw new IllegalArgumentException("Negative size " + size);
+        liveBlocks++;
+        if (size > MAX_BLOCK_SIZE) {
+            largeBytes += size;
+            usedBytes += size;
+            return new Block(ByteBuffer.allocateDirect(size), size, false);
+        }
+
+        int sizeClass = getSizeClass(size);
+        ByteBuffer buffer = freeBlocks[sizeClass].poll();
+        if (buffer == null) buffer = carve(1 << sizeClass);
+        usedBytes += buffer.capacity();
+        return new Block(buffer, size, true);
+    }
+
+    /** A block of no bytes that is never freed; retaining and releasing it does nothing. */
+    public Block getEmptyBlock() {
+        return emptyBlock;
+    }
+
+    private ByteBuffer carve(int blockSize) {
+        if (slab == null || slab.remaining() < blockSize) {
+            if (slab != null) retireSlab();
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabBytes += SLAB_SIZE;
+        }
+
+        ByteBuffer buffer = slab.duplicate();
+        buffer.limit(slab.position() + blockSize);
+        slab.position(slab.position() + blockSize);
+        return buffer.slice();
+    }
+
+    /** Hands the unused tail of the current slab to the free lists. */
+    private void retireSlab() {
+        while (slab.remaining() >= MIN_BLOCK_SIZE) {
+            int sizeClass = Math.min(31 - Integer.numberOfLeadingZeros(slab.remaining()), MAX_SIZE_CLASS);
+            freeBlocks[sizeClass].push(carve(1 << sizeClass));
+        }
+        slab = null;
+    }
+
+    private void free(Block block) {
+        liveBlocks--;
+        if (block.pooled) {
+            usedBytes -= block.buffer.capacity();
+            block.buffer.clear();
+            freeBlocks[Integer.numberOfTrailingZeros(block.buffer.capacity())].push(block.buffer);
+        }
+        else {
+            usedBytes -= block.buffer.capacity();
+            largeBytes -= block.buffer.capacity();
+        }
+    }
+
+    /** Bytes of direct memory held by the arena, including free blocks. */
+    public synchronized long getCapacity() {
+        return slabBytes + largeBytes;
+    }
+
+    /** Bytes of live blocks, rounded up to their size class. */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getLiveBlocks() {
+        return liveBlocks;
+    }
+
+    /** The share of the arena's memory that live blocks use, between 0 and 1. */
+    public synchronized float getOccupancy() {
+        long capacity = slabBytes + largeBytes;
+        return capacity > 0 ? (float)usedBytes / capacity : 0;
+    }
+}
@@ -5,6 +5,7 @@ import android.util.SparseArray;
 import com.winlator.xserver.events.Event;
 import com.winlator.xserver.events.PropertyNotify;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -110,22 +111,32 @@ public class Window extends XResource {
     }
 
     public void removeProperty(int id) {
+        Property property = properties.get(id);
+        if (property != null) property.release();
         properties.remove(id);
         sendEvent(Event.PROPERTY_CHANGE, new PropertyNotify(this, id, true));
     }
 
-    public Property modifyProperty(int atom, int type, Property.Format format, Property.Mode mode, byte[] data) {
+    public void releaseProperties() {
+        for (int i = 0; i < properties.size(); i++) properties.valueAt(i).release();
+        properties.clear();
+    }
+
+    public Property modifyProperty(ResourceArena arena, int atom, int type, Property.Format format, Property.Mode mode, ByteBuffer data) {
         Property property = getProperty(atom);
         boolean modified = false;
         if (property == null) {
-            addProperty((property = new Property(atom, type, format, data)));
+            addProperty((property = new Property(arena, atom, type, format, data)));
             modified = true;
         }
         else if (mode == Property.Mode.REPLACE) {
             if (property.format == format) {
                 property.replace(data);
             }
-            else properties.put(atom, new Property(atom, type, format, data));
+            else {
+                property.release();
+                addProperty((property = new Property(arena, atom, type, format, data)));
+            }
             modified = true;
         }
         else if (property.format == format && property.type == type) {
@@ -167,7 +178,7 @@ public class Window extends XResource {
 
     public boolean isWoW64() {
         Property property = getProperty(Atom.getId("_NET_WM_WOW64"));
-        return property != null && property.data.get(0) == 1;
+        return property != null && property.getByte(0) == 1;
     }
 
     public long getHandle() {
@@ -83,6 +83,7 @@ public class WindowManager extends XResourceManager {
         windows.remove(window.id);
         if (window.isInputOutput()) drawableManager.removeDrawable(window.getContent().id);
         triggerOnFreeResourceListener(window);
+        window.releaseProperties();
         if (window == focusedWindow) revertFocus();
         parent.removeChild(window);
     }
@@ -21,6 +21,8 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     private final XOutputStream outputStream;
     private final ArrayMap<Window, EventListener> eventListeners = new ArrayMap<>();
     private final ArrayList<XResource> resources = new ArrayList<>();
+    public final DrawCommandBuffer drawCommands = new DrawCommandBuffer();
+    private PutImageStream putImageStream;
 
     public XClient(XServer xServer, XInputStream inputStream, XOutputStream outputStream) {
         this.xServer = xServer;
@@ -127,6 +129,15 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
         this.requestData = requestData;
     }
 
+    /** The PutImage whose data is still arriving, or null. */
+    public PutImageStream getPutImageStream() {
+        return putImageStream;
+    }
+
+    public void setPutImageStream(PutImageStream putImageStream) {
+        this.putImageStream = putImageStream;
+    }
+
     public int getRemainingRequestLength() {
         int actualLength = initialLength - inputStream.available();
         return requestLength - actualLength;
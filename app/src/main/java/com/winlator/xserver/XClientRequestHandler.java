@@ -150,6 +150,7 @@ public class XClientRequestHandler implements RequestHandler {
     }
 
     private boolean handleNormalRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException {
+        if (client.getPutImageStream() != null) return continuePutImage(client, inputStream);
         if (inputStream.available() < 4) return false;
         byte opcode = inputStream.readByte();
         byte requestData = inputStream.readByte();
@@ -162,7 +163,12 @@ public class XClientRequestHandler implements RequestHandler {
             return false;
         }
         else requestLength = inputStream.readInt() * 4 - 8;
-        if (inputStream.available() < requestLength) return false;
+        if (inputStream.available() < requestLength) {
+            if (opcode == ClientOpcodes.PUT_IMAGE && PutImageStream.canStream(requestData, requestLength, inputStream)) {
+                return beginPutImage(client, inputStream, requestData, requestLength);
+            }
+            return false;
+        }
 
         client.generateSequenceNumber();
         client.setRequestData(requestData);
@@ -461,4 +467,30 @@ public class XClientRequestHandler implements RequestHandler {
 
         return true;
     }
+
+    private boolean beginPutImage(XClient client, XInputStream inputStream, byte requestData, int requestLength) throws IOException {
+        client.generateSequenceNumber();
+        client.setRequestData(requestData);
+        client.setRequestLength(requestLength);
+
+        try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+            DrawRequests.beginPutImage(client, inputStream);
+        }
+        catch (XRequestError e) {
+            client.getPutImageStream().discard();
+            Log.w("XClientRequestHandler", "beginPutImage error " + e);
+            e.sendError(client, ClientOpcodes.PUT_IMAGE);
+        }
+        return true;
+    }
+
+    private boolean continuePutImage(XClient client, XInputStream inputStream) {
+        PutImageStream stream = client.getPutImageStream();
+        boolean consumed;
+        try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+            consumed = stream.drawAvailableRows(client, inputStream);
+        }
+        if (stream.isFinished()) client.setPutImageStream(null);
+        return consumed;
+    }
 }
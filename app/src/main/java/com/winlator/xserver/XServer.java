@@ -27,6 +27,7 @@ public class XServer {
     public final PixmapManager pixmapManager;
     public final ResourceIDs resourceIDs = new ResourceIDs(128);
     public final GraphicsContextManager graphicsContextManager = new GraphicsContextManager();
+    public final ResourceArena resourceArena = new ResourceArena();
     public final SelectionManager selectionManager;
     public final DrawableManager drawableManager;
     public final WindowManager windowManager;
@@ -35,6 +36,7 @@ public class XServer {
     public final Pointer pointer = new Pointer(this);
     public final InputDeviceManager inputDeviceManager;
     public final GrabManager grabManager;
+    public final InputEventQueue inputEventQueue;
     private boolean isGrabbed = false;
     private XClient grabbingClient = null;
     public final CursorLocker cursorLocker;
@@ -58,6 +60,37 @@ public class XServer {
         selectionManager = new SelectionManager(windowManager);
         inputDeviceManager = new InputDeviceManager(this);
         grabManager = new GrabManager(this);
+        inputEventQueue = new InputEventQueue(new InputEventQueue.Target() {
+            @Override
+            public XLock lock() {
+                return XServer.this.lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE);
+            }
+
+            @Override
+            public void movePointer(int x, int y) {
+                pointer.setPosition(x, y);
+            }
+
+            @Override
+            public void movePointerBy(int dx, int dy) {
+                pointer.setPosition(pointer.getX() + dx, pointer.getY() + dy);
+            }
+
+            @Override
+            public void setPointerButton(Pointer.Button button, boolean pressed) {
+                pointer.setButton(button, pressed);
+            }
+
+            @Override
+            public void pressKey(byte keycode, int keysym) {
+                keyboard.setKeyPress(keycode, keysym);
+            }
+
+            @Override
+            public void releaseKey(byte keycode) {
+                keyboard.setKeyRelease(keycode);
+            }
+        });
 
         DesktopHelper.attachTo(this);
         setupExtensions();
@@ -153,27 +186,24 @@ public class XServer {
     }
 
     public void injectPointerMove(int x, int y) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(x, y);
-        }
+        inputEventQueue.postPointerMove(x, y);
     }
 
     public void injectPointerMoveDelta(int dx, int dy) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(pointer.getX() + dx, pointer.getY() + dy);
-        }
+        inputEventQueue.postPointerMoveDelta(dx, dy);
     }
 
     public void injectPointerButtonPress(Pointer.Button buttonCode) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setButton(buttonCode, true);
-        }
+        inputEventQueue.postPointerButton(buttonCode, true);
     }
 
     public void injectPointerButtonRelease(Pointer.Button buttonCode) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setButton(buttonCode, false);
-        }
+        inputEventQueue.postPointerButton(buttonCode, false);
+    }
+
+    /** The button state as the UI sees it, including injected events not yet applied. */
+    public boolean isPointerButtonPressed(Pointer.Button buttonCode) {
+        return inputEventQueue.isButtonPressed(buttonCode);
     }
 
     public void injectKeyPress(XKeycode xKeycode) {
@@ -181,15 +211,11 @@ public class XServer {
     }
 
     public void injectKeyPress(XKeycode xKeycode, int keysym) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            keyboard.setKeyPress(xKeycode.getId(), keysym);
-        }
+        inputEventQueue.postKeyPress(xKeycode.getId(), keysym);
     }
 
     public void injectKeyRelease(XKeycode xKeycode) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            keyboard.setKeyRelease(xKeycode.getId());
-        }
+        inputEventQueue.postKeyRelease(xKeycode.getId());
     }
 
     private void setupExtensions() {
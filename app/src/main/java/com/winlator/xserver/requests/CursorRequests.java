@@ -43,9 +43,8 @@ public abstract class CursorRequests {
         short x = inputStream.readShort();
         short y = inputStream.readShort();
 
-        Cursor cursor = client.xServer.cursorManager.createCursor(cursorId, x, y, sourcePixmap, maskPixmap);
+        Cursor cursor = client.xServer.cursorManager.createCursor(cursorId, x, y, sourcePixmap, maskPixmap, foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue);
         if (cursor == null) throw new BadIdChoice(cursorId);
-        client.xServer.cursorManager.recolorCursor(cursor, foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue);
         client.registerAsOwnerOfResource(cursor);
     }
 
@@ -5,8 +5,10 @@ import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
+import com.winlator.xserver.DrawCommandBuffer;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.GraphicsContext;
+import com.winlator.xserver.PutImageStream;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.errors.BadDrawable;
 import com.winlator.xserver.errors.BadGraphicsContext;
@@ -40,15 +42,14 @@ public abstract class DrawRequests {
         GraphicsContext graphicsContext = client.xServer.graphicsContextManager.getGraphicsContext(gcId);
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
 
-        if (!(graphicsContext.getFunction() == GraphicsContext.Function.COPY || format == Format.Z_PIXMAP)) {
-            throw new UnsupportedOperationException("GC Function other than COPY is not supported.");
-        }
+        GraphicsContext.Function function = graphicsContext.getFunction();
+        int planeMask = graphicsContext.getPlaneMask();
 
         switch (format) {
             case BITMAP:
                 if (leftPad != 0) throw new UnsupportedOperationException("PutImage.leftPad cannot be != 0.");
                 if (depth == 1) {
-                    drawable.drawImage((short)0, (short)0, dstX, dstY, width, height, (byte)1, data, width, height);
+                    drawable.drawImage((short)0, (short)0, dstX, dstY, width, height, (byte)1, data, width, height, function, planeMask);
                 }
                 else throw new BadMatch();
                 break;
@@ -57,13 +58,34 @@ public abstract class DrawRequests {
                 break;
             case Z_PIXMAP:
                 if (leftPad == 0) {
-                    drawable.drawImage((short)0, (short)0, dstX, dstY, width, height, depth, data, width, height);
+                    drawable.drawImage((short)0, (short)0, dstX, dstY, width, height, depth, data, width, height, function, planeMask);
                 }
                 else throw new BadMatch();
                 break;
         }
     }
 
+    /**
+     * Starts a Z_PIXMAP PutImage whose data has not all arrived yet. Its rows are drawn by the
+     * client's {@link PutImageStream} as they come in.
+     */
+    public static void beginPutImage(XClient client, XInputStream inputStream) throws XRequestError {
+        int drawableId = inputStream.readInt();
+        int gcId = inputStream.readInt();
+        short width = inputStream.readShort();
+        short height = inputStream.readShort();
+        short dstX = inputStream.readShort();
+        short dstY = inputStream.readShort();
+        inputStream.skip(1);
+        byte depth = inputStream.readByte();
+        inputStream.skip(2);
+
+        client.setPutImageStream(new PutImageStream(drawableId, gcId, width, height, dstX, dstY, depth, client.getRemainingRequestLength()));
+
+        if (client.xServer.drawableManager.getDrawable(drawableId) == null) throw new BadDrawable(drawableId);
+        if (client.xServer.graphicsContextManager.getGraphicsContext(gcId) == null) throw new BadGraphicsContext(gcId);
+    }
+
     public static void getImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         Format format = Format.values()[client.getRequestData()];
         int drawableId = inputStream.readInt();
@@ -115,7 +137,7 @@ public abstract class DrawRequests {
 
         if (srcDrawable.visual.depth != dstDrawable.visual.depth) throw new BadMatch();
 
-        dstDrawable.copyArea(srcX, srcY, dstX, dstY, width, height, srcDrawable, graphicsContext.getFunction());
+        dstDrawable.copyArea(srcX, srcY, dstX, dstY, width, height, srcDrawable, graphicsContext.getFunction(), graphicsContext.getPlaneMask());
     }
 
     public static void polyLine(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
@@ -129,17 +151,21 @@ public abstract class DrawRequests {
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
         int length = client.getRemainingRequestLength();
 
-        short[] points = new short[length / 2];
-        int i = 0;
-        while (length != 0) {
-            points[i++] = inputStream.readShort();
-            points[i++] = inputStream.readShort();
-            length -= 4;
-        }
+        boolean draw = coordinateMode == CoordinateMode.ORIGIN && graphicsContext.getLineWidth() > 0;
+        int color = graphicsContext.getForeground();
+        int lineWidth = graphicsContext.getLineWidth();
+        DrawCommandBuffer commands = client.drawCommands;
 
-        if (coordinateMode == CoordinateMode.ORIGIN && graphicsContext.getLineWidth() > 0) {
-            drawable.drawLines(graphicsContext.getForeground(), graphicsContext.getLineWidth(), points);
+        short prevX = 0, prevY = 0;
+        for (int i = 0; length != 0; i++, length -= 4) {
+            short x = inputStream.readShort();
+            short y = inputStream.readShort();
+            if (draw && i > 0) commands.line(prevX, prevY, x, y, color, lineWidth);
+            prevX = x;
+            prevY = y;
         }
+
+        drawable.submit(commands);
     }
 
     public static void polyFillRectangle(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
@@ -151,14 +177,18 @@ public abstract class DrawRequests {
         GraphicsContext graphicsContext = client.xServer.graphicsContextManager.getGraphicsContext(gcId);
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
         int length = client.getRemainingRequestLength();
+        int color = graphicsContext.getBackground();
+        DrawCommandBuffer commands = client.drawCommands;
 
         while (length != 0) {
             short x = inputStream.readShort();
             short y = inputStream.readShort();
             short width = inputStream.readShort();
             short height = inputStream.readShort();
-            drawable.fillRect(x, y, width, height, graphicsContext.getBackground());
+            commands.fillRect(x, y, width, height, color);
             length -= 8;
         }
+
+        drawable.submit(commands);
     }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import com.winlator.xserver.errors.XRequestError;
 import com.winlator.xserver.events.RawEvent;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public abstract class WindowRequests {
@@ -183,14 +184,10 @@ public abstract class WindowRequests {
         int length  = inputStream.readInt();
         int totalSize = length * (format >> 3);
 
-        byte[] data = null;
-        if (totalSize > 0) {
-            data = new byte[totalSize];
-            inputStream.read(data);
-            inputStream.skip(-totalSize & 3);
-        }
+        ByteBuffer data = inputStream.readByteBuffer(totalSize);
+        inputStream.skip(-totalSize & 3);
 
-        Property property = window.modifyProperty(atom, type, Property.Format.valueOf(format), mode, data);
+        Property property = window.modifyProperty(client.xServer.resourceArena, atom, type, Property.Format.valueOf(format), mode, data);
         if (property == null) throw new BadMatch();
 
         client.xServer.windowManager.triggerOnModifyWindowProperty(window, property);
@@ -239,11 +236,11 @@ public abstract class WindowRequests {
                 outputStream.writePad(12);
             }
             else {
-                byte[] data = property.data.array();
+                ByteBuffer data = property.getData();
                 int offset = longOffset * 4;
-                int length = Math.min(data.length - offset, longLength * 4);
+                int length = Math.min(data.remaining() - offset, longLength * 4);
                 if (length < 0) throw new BadValue(longOffset);
-                bytesAfter = data.length - (offset + length);
+                bytesAfter = data.remaining() - (offset + length);
 
                 outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                 outputStream.writeByte(property.format.value);
@@ -253,7 +250,8 @@ public abstract class WindowRequests {
                 outputStream.writeInt(bytesAfter);
                 outputStream.writeInt(length / (property.format.value / 8));
                 outputStream.writePad(12);
-                outputStream.write(data, offset, length);
+                data.limit(offset + length).position(offset);
+                outputStream.write(data);
                 if ((-length & 3) > 0) outputStream.writePad(-length & 3);
             }
         }
@@ -0,0 +1,150 @@
+/*
+ * Differential test and throughput benchmark for the raster-op engine, runnable on any Linux
+ * host:
+ *
+ *   cc -O2 -I app/src/main/cpp/winlator app/src/test/cpp/raster_op_bench.c \
+ *       app/src/main/cpp/winlator/raster_op.c -o /tmp/raster_op_bench && /tmp/raster_op_bench
+ *
+ * Every GC function is checked against a scalar per-pixel reference (the same definitions as
+ * the Java RasterOp) for random pixels, plane masks and overlapping copies, then timed on
+ * several image sizes. Exits non-zero on the first mismatch.
+ */
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "raster_op.h"
+
+static const char *NAMES[16] = {
+    "CLEAR", "AND", "AND_REVERSE", "COPY", "AND_INVERTED", "NO_OP", "XOR", "OR",
+    "NOR", "EQUIV", "INVERT", "OR_REVERSE", "COPY_INVERTED", "OR_INVERTED", "NAND", "SET"
+};
+
+static uint32_t reference_pixel(int op, uint32_t s, uint32_t d, uint32_t planeMask) {
+    uint32_t r;
+    switch (op) {
+        case ROP_CLEAR: r = 0; break;
+        case ROP_AND: r = s & d; break;
+        case ROP_AND_REVERSE: r = s & ~d; break;
+        case ROP_COPY: r = s; break;
+        case ROP_AND_INVERTED: r = ~s & d; break;
+        case ROP_NO_OP: r = d; break;
+        case ROP_XOR: r = s ^ d; break;
+        case ROP_OR: r = s | d; break;
+        case ROP_NOR: r = ~s & ~d; break;
+        case ROP_EQUIV: r = ~s ^ d; break;
+        case ROP_INVERT: r = ~d; break;
+        case ROP_OR_REVERSE: r = s | ~d; break;
+        case ROP_COPY_INVERTED: r = ~s; break;
+        case ROP_OR_INVERTED: r = ~s | d; break;
+        case ROP_NAND: r = ~s | ~d; break;
+        default: r = ~0u; break;
+    }
+    uint32_t mask = planeMask & 0x00ffffffu;
+    return (d & ~mask) | (r & mask);
+}
+
+static uint32_t next_random(uint32_t *state) {
+    *state ^= *state << 13;
+    *state ^= *state >> 17;
+    *state ^= *state << 5;
+    return *state;
+}
+
+static double now_seconds(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec + ts.tv_nsec / 1e9;
+}
+
+static int check_rect(int op, uint32_t planeMask, uint32_t *state) {
+    enum {W = 67, H = 23, STRIDE = 80};
+    uint32_t src[STRIDE * H], dst[STRIDE * H], expected[STRIDE * H];
+    for (int i = 0; i < STRIDE * H; i++) {
+        src[i] = next_random(state);
+        dst[i] = expected[i] = next_random(state);
+    }
+    for (int y = 0; y < H - 3; y++) {
+        for (int x = 0; x < W; x++) {
+            int d = (x + 5) + (y + 3) * STRIDE;
+            expected[d] = reference_pixel(op, src[x + y * STRIDE], dst[d], planeMask);
+        }
+    }
+    raster_op_rect(dst, 5, 3, STRIDE, src, 0, 0, STRIDE, W, H - 3, op, planeMask);
+    if (memcmp(dst, expected, sizeof(dst)) != 0) {
+        fprintf(stderr, "Mismatch for %s, plane mask %08x\n", NAMES[op], planeMask);
+        return 1;
+    }
+
+    /* Overlapping copy within one buffer, in both directions */
+    for (int dir = 0; dir < 2; dir++) {
+        memcpy(expected, dst, sizeof(dst));
+        uint32_t snapshot[STRIDE * H];
+        memcpy(snapshot, dst, sizeof(dst));
+        int sx = dir ? 4 : 1, sy = dir ? 2 : 0, dx = dir ? 1 : 4, dy = dir ? 0 : 2;
+        for (int y = 0; y < H - 2; y++) {
+            for (int x = 0; x < W; x++) {
+                int d = (x + dx) + (y + dy) * STRIDE;
+                expected[d] = reference_pixel(op, snapshot[(x + sx) + (y + sy) * STRIDE], snapshot[d], planeMask);
+            }
+        }
+        raster_op_rect(dst, dx, dy, STRIDE, dst, sx, sy, STRIDE, W, H - 2, op, planeMask);
+        if (memcmp(dst, expected, sizeof(dst)) != 0) {
+            fprintf(stderr, "Overlap mismatch for %s, plane mask %08x\n", NAMES[op], planeMask);
+            return 1;
+        }
+    }
+    return 0;
+}
+
+int main(void) {
+    uint32_t state = 0x9e3779b9u;
+    const uint32_t masks[] = {0xffffffffu, 0x00ffffffu, 0x00ff00ffu, 0x000000f0u, 0x00000000u, 0xff000000u};
+
+    for (int op = 0; op < 16; op++) {
+        for (size_t m = 0; m < sizeof(masks) / sizeof(masks[0]); m++) {
+            for (int round = 0; round < 8; round++) {
+                if (check_rect(op, masks[m], &state)) return 1;
+            }
+        }
+    }
+    printf("All 16 functions match the reference, with plane masks and overlapping copies\n\n");
+
+    const int sizes[][2] = {{32, 32}, {256, 256}, {1280, 720}, {1920, 1080}};
+    printf("%-14s", "function");
+    for (size_t s = 0; s < sizeof(sizes) / sizeof(sizes[0]); s++) printf("%11dx%-5d", sizes[s][0], sizes[s][1]);
+    printf("   (Mpixel/s, engine / scalar reference)\n");
+
+    for (int op = 0; op < 16; op++) {
+        printf("%-14s", NAMES[op]);
+        for (size_t s = 0; s < sizeof(sizes) / sizeof(sizes[0]); s++) {
+            int w = sizes[s][0], h = sizes[s][1];
+            size_t pixels = (size_t)w * h;
+            uint32_t *src = malloc(pixels * 4), *dst = malloc(pixels * 4);
+            for (size_t i = 0; i < pixels; i++) {
+                src[i] = next_random(&state);
+                dst[i] = next_random(&state);
+            }
+            int iterations = (int)(200000000 / pixels / 16) + 1;
+
+            double start = now_seconds();
+            for (int it = 0; it < iterations; it++) raster_op_rect(dst, 0, 0, w, src, 0, 0, w, w, h, op, 0xffffffffu);
+            double engine = pixels * (double)iterations / (now_seconds() - start) / 1e6;
+
+            volatile uint32_t *vdst = dst;
+            start = now_seconds();
+            for (int it = 0; it < iterations; it++) {
+                for (size_t i = 0; i < pixels; i++) vdst[i] = reference_pixel(op, src[i], vdst[i], 0xffffffffu);
+            }
+            double scalar = pixels * (double)iterations / (now_seconds() - start) / 1e6;
+
+            printf("%9.0f /%6.0f", engine, scalar);
+            free(src);
+            free(dst);
+        }
+        printf("\n");
+    }
+    return 0;
+}
@@ -0,0 +1,171 @@
+package app.gamenative.data
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
+import org.junit.Assert.*
+import org.junit.Test
+
+class DownloadInfoTest {
+
+    private fun downloadInfo(jobCount: Int) = DownloadInfo(jobCount, gameId = 1, downloadingAppIds = CopyOnWriteArrayList())
+
+    /**
+     * Reports chunk completions from many threads at once, the way DepotDownloader does, and
+     * checks that no bytes are lost, listeners see a bounded number of updates ending at 100%,
+     * and the hot path does not allocate per chunk.
+     */
+    @Test
+    fun concurrentChunkCompletions() {
+        val info = downloadInfo(THREADS)
+        info.setTotalExpectedBytes(THREADS.toLong() * CHUNKS_PER_THREAD * CHUNK_BYTES)
+
+        val notifications = AtomicInteger()
+        val outOfOrder = AtomicInteger()
+        var lastNotified = -1f
+        info.addProgressListener { progress ->
+            notifications.incrementAndGet()
+            if (progress < lastNotified) outOfOrder.incrementAndGet()
+            lastNotified = progress
+        }
+
+        val start = CountDownLatch(1)
+        val maxAllocated = AtomicLong()
+        val startNanos = System.nanoTime()
+        val threads = (0 until THREADS).map { index ->
+            thread {
+                start.await()
+                val allocatedBefore = threadAllocatedBytes()
+                for (n in 1..CHUNKS_PER_THREAD) {
+                    info.updateBytesDownloaded(CHUNK_BYTES, System.currentTimeMillis())
+                    info.setProgress(n.toFloat() / CHUNKS_PER_THREAD, index)
+                }
+                val allocatedAfter = threadAllocatedBytes()
+                if (allocatedBefore != null && allocatedAfter != null) {
+                    maxAllocated.accumulateAndGet(allocatedAfter - allocatedBefore, ::maxOf)
+                }
+            }
+        }
+        start.countDown()
+        threads.forEach { it.join() }
+        val elapsedMs = (System.nanoTime() - startNanos) / 1_000_000
+
+        val completions = THREADS * CHUNKS_PER_THREAD
+        println(
+            "$completions chunk completions in ${elapsedMs}ms, ${notifications.get()} notifications, " +
+                "max ${maxAllocated.get() / 1024} KiB allocated per thread",
+        )
+        assertEquals(THREADS.toLong() * CHUNKS_PER_THREAD * CHUNK_BYTES, info.getBytesDownloaded())
+        assertEquals(1f, info.getProgress(), 0f)
+        assertEquals(1f, info.progressFlow.value, 0f)
+        assertEquals(1f, lastNotified, 0f)
+        assertEquals(0, outOfOrder.get())
+        // One notification per 0.1% step at most
+        assertTrue("${notifications.get()} notifications", notifications.get() <= 1001)
+        // Well below one allocation per chunk
+        assertTrue("Allocated ${maxAllocated.get()} bytes", maxAllocated.get() < CHUNKS_PER_THREAD / 2)
+    }
+
+    @Test
+    fun listenersCanBeAddedAndRemovedWhileDispatching() {
+        val info = downloadInfo(1)
+        info.setTotalExpectedBytes(1_000_000)
+        val calls = AtomicInteger()
+        val writer = thread {
+            repeat(1_000_000) { info.updateBytesDownloaded(1); info.emitProgressChange() }
+        }
+        while (writer.isAlive) {
+            val listener: (Float) -> Unit = { calls.incrementAndGet() }
+            info.addProgressListener(listener)
+            info.removeProgressListener(listener)
+        }
+        writer.join()
+
+        assertEquals(1f, info.progressFlow.value, 0f)
+    }
+
+    @Test
+    fun depotProgressIsWeighted() {
+        val info = downloadInfo(2)
+        info.setWeight(0, 300)
+        info.setWeight(1, 100)
+
+        info.setProgress(1f, 0)
+        assertEquals(0.75f, info.getProgress(), 1e-6f)
+
+        info.setProgress(0.5f, 1)
+        assertEquals(0.875f, info.getProgress(), 1e-6f)
+
+        // Weights changed after progress was reported
+        info.setWeight(1, 300)
+        assertEquals(0.75f, info.getProgress(), 1e-6f)
+    }
+
+    @Test
+    fun failureIsReportedWhileProgressComesFromBytes() {
+        val info = downloadInfo(1)
+        info.setTotalExpectedBytes(1_000)
+        info.updateBytesDownloaded(400)
+
+        info.markFailed()
+
+        assertTrue(info.isFailed())
+        assertTrue(info.failedFlow.value)
+        assertFalse(info.isActive())
+        assertEquals(0.4f, info.getProgress(), 1e-6f)
+    }
+
+    @Test
+    fun estimatesTimeFromRecentSpeed() {
+        val info = downloadInfo(1)
+        val now = System.currentTimeMillis()
+        // 10 KB/s for the last 10 seconds, half of the download left
+        for (t in 100 downTo 0) {
+            info.updateBytesDownloaded(1_000, now - t * 100L)
+        }
+        info.setTotalExpectedBytes(2 * info.getBytesDownloaded())
+
+        val eta = info.getEstimatedTimeRemaining()
+
+        assertNotNull(eta)
+        assertTrue("ETA was $eta ms", eta!! in 9_000L..11_500L)
+
+        info.setActive(false)
+        assertNull(info.getEstimatedTimeRemaining())
+    }
+
+    @Test
+    fun chunkSnapshotsAreWrittenAtMostOncePerSecond() {
+        val appDir = Files.createTempDirectory("download_info_").toFile()
+        try {
+            val info = downloadInfo(1)
+            info.setPersistencePath(appDir.absolutePath)
+
+            info.updateBytesDownloaded(100)
+            info.persistProgressSnapshotThrottled(timestampMs = 10_000)
+            info.updateBytesDownloaded(100)
+            info.persistProgressSnapshotThrottled(timestampMs = 10_900)
+            assertEquals(100L, info.loadPersistedBytesDownloaded(appDir.absolutePath))
+
+            info.persistProgressSnapshotThrottled(timestampMs = 11_000)
+            assertEquals(200L, info.loadPersistedBytesDownloaded(appDir.absolutePath))
+        } finally {
+            appDir.deleteRecursively()
+        }
+    }
+
+    private fun threadAllocatedBytes(): Long? {
+        val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean ?: return null
+        return bean.getThreadAllocatedBytes(Thread.currentThread().id).takeIf { it >= 0 }
+    }
+
+    companion object {
+        private const val THREADS = 8
+        private const val CHUNKS_PER_THREAD = 250_000
+        private const val CHUNK_BYTES = 1024L * 1024
+    }
+}
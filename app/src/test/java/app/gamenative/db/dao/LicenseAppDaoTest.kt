@@ -0,0 +1,191 @@
+package app.gamenative.db.dao
+
+import android.content.Context
+import androidx.room.Room
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.DepotInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamLicense
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.enums.AppType
+import app.gamenative.enums.OS
+import app.gamenative.enums.OSArch
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import `in`.dragonbra.javasteam.enums.ELicenseType
+import `in`.dragonbra.javasteam.enums.EPaymentMethod
+import java.util.Date
+import java.util.EnumSet
+import kotlin.system.measureNanoTime
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class LicenseAppDaoTest {
+
+    private lateinit var db: PluviaDatabase
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun license(packageId: Int, appIds: List<Int>, type: ELicenseType = ELicenseType.SinglePurchase) = SteamLicense(
+        packageId = packageId,
+        lastChangeNumber = 0,
+        timeCreated = Date(0),
+        timeNextProcess = Date(0),
+        minuteLimit = 0,
+        minutesUsed = 0,
+        paymentMethod = EPaymentMethod.None,
+        licenseFlags = EnumSet.noneOf(ELicenseFlags::class.java),
+        purchaseCode = "",
+        licenseType = type,
+        territoryCode = 0,
+        accessToken = 0L,
+        ownerAccountId = listOf(1),
+        masterPackageID = 0,
+        appIds = appIds,
+    )
+
+    private fun dlc(id: Int, baseAppId: Int, downloadable: Boolean) = SteamApp(
+        id = id,
+        type = AppType.dlc,
+        dlcForAppId = baseAppId,
+        depots = if (downloadable) {
+            mapOf(
+                id to DepotInfo(
+                    depotId = id,
+                    dlcAppId = id,
+                    depotFromApp = baseAppId,
+                    sharedInstall = false,
+                    osList = EnumSet.of(OS.windows),
+                    osArch = OSArch.Arch64,
+                    manifests = emptyMap(),
+                    encryptedManifests = emptyMap(),
+                ),
+            )
+        } else {
+            emptyMap()
+        },
+    )
+
+    /**
+     * Stores licenses the way SteamService does: the JSON app id list on the license and
+     * the normalized rows in license_app.
+     */
+    private suspend fun storeLicenses(licenses: List<SteamLicense>) {
+        db.steamLicenseDao().insertAll(licenses)
+        licenses.forEach { db.licenseAppDao().replaceApps(it.packageId, it.appIds) }
+    }
+
+    @Test
+    fun dlcQueriesOnlyReturnLicensedDlc() = runBlocking {
+        db.steamAppDao().insertAll(
+            listOf(
+                SteamApp(id = BASE_APP_ID, type = AppType.game),
+                dlc(101, BASE_APP_ID, downloadable = true),
+                dlc(102, BASE_APP_ID, downloadable = false),
+                dlc(103, BASE_APP_ID, downloadable = true), // not licensed
+                dlc(104, BASE_APP_ID, downloadable = true), // only on a NoLicense package
+                dlc(201, 200, downloadable = true), // another game's DLC
+            ),
+        )
+        storeLicenses(
+            listOf(
+                license(1, listOf(BASE_APP_ID, 101, 102, 201)),
+                license(2, listOf(104), type = ELicenseType.NoLicense),
+            ),
+        )
+
+        assertEquals(listOf(101), db.steamAppDao().findDownloadableDLCApps(BASE_APP_ID)!!.map { it.id })
+        assertEquals(listOf(102), db.steamAppDao().findHiddenDLCApps(BASE_APP_ID)!!.map { it.id })
+    }
+
+    @Test
+    fun replaceAppsDropsAppsNoLongerInThePackage() = runBlocking {
+        db.licenseAppDao().replaceApps(1, listOf(10, 11, 11))
+        db.licenseAppDao().replaceApps(1, listOf(11, 12))
+        db.licenseAppDao().replaceApps(2, listOf(11))
+
+        assertEquals(setOf(11, 12), db.licenseAppDao().getAppIds(1).toSet())
+        assertEquals(setOf(1, 2), db.licenseAppDao().getPackageIds(11).toSet())
+
+        db.licenseAppDao().deleteByPackageIds(listOf(1))
+        assertEquals(listOf(2), db.licenseAppDao().getPackageIds(11))
+    }
+
+    /**
+     * Compares DLC resolution on a synthetic large library against the previous
+     * string-matching query over steam_license.app_ids.
+     */
+    @Test
+    fun dlcResolution_largeLibrary() = runBlocking {
+        val baseApps = (0 until GAMES).map { 1_000_000 + it * 10 }
+        val apps = baseApps.flatMap { base ->
+            listOf(SteamApp(id = base, type = AppType.game)) +
+                (1..DLC_PER_GAME).map { dlc(base + it, base, downloadable = it % 3 != 0) }
+        }
+        db.steamAppDao().insertAll(apps)
+
+        // Every game and its DLC on its own package, plus bundles granting many apps at once
+        val licenses = baseApps.mapIndexed { index, base ->
+            license(index + 1, listOf(base) + (1..DLC_PER_GAME).filter { it % 4 != 0 }.map { base + it })
+        } + (0 until BUNDLES).map { bundle ->
+            license(GAMES + bundle + 1, baseApps.shuffled(kotlin.random.Random(bundle)).take(40))
+        }
+        storeLicenses(licenses)
+
+        val legacyQuery = "SELECT * FROM steam_app AS app WHERE dlc_for_app_id = ? AND depots <> '{}' AND " +
+            " EXISTS (" +
+            "   SELECT * FROM steam_license AS license " +
+            "     WHERE license.license_type <> 0 AND " +
+            "       REPLACE(REPLACE(license.app_ids, '[', ','), ']', ',') LIKE ('%,' || app.id || ',%') " +
+            ")"
+
+        val sample = baseApps.shuffled(kotlin.random.Random(30)).take(SAMPLE)
+        var legacyNanos = 0L
+        var indexedNanos = 0L
+
+        sample.forEach { base ->
+            val legacyIds = mutableListOf<Int>()
+            legacyNanos += measureNanoTime {
+                db.query(SimpleSQLiteQuery(legacyQuery, arrayOf(base))).use { cursor ->
+                    val idColumn = cursor.getColumnIndexOrThrow("id")
+                    while (cursor.moveToNext()) legacyIds += cursor.getInt(idColumn)
+                }
+            }
+
+            var indexed: List<SteamApp>? = null
+            indexedNanos += measureNanoTime { indexed = db.steamAppDao().findDownloadableDLCApps(base) }
+
+            assertEquals(legacyIds.sorted(), indexed!!.map { it.id }.sorted())
+        }
+
+        println(
+            "DLC resolution over ${licenses.size} licenses / ${apps.size} apps, $SAMPLE lookups: " +
+                "LIKE scan=${legacyNanos / 1_000_000}ms, license_app=${indexedNanos / 1_000_000}ms",
+        )
+    }
+
+    companion object {
+        private const val BASE_APP_ID = 100
+        private const val GAMES = 2_000
+        private const val DLC_PER_GAME = 6
+        private const val BUNDLES = 200
+        private const val SAMPLE = 50
+    }
+}
@@ -0,0 +1,141 @@
+package app.gamenative.service
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class DownloadJournalTest {
+
+    private lateinit var dir: File
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("download_journal_").toFile()
+        file = File(dir, "build.journal")
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun completedChunksSurviveReopening() {
+        DownloadJournal(file).use { journal ->
+            journal.complete("bin/game.exe", 0)
+            journal.complete("bin/game.exe", 3)
+            journal.complete("readme.txt", 0)
+            journal.completeGroup("readme.txt")
+        }
+
+        DownloadJournal(file).use { journal ->
+            assertTrue(journal.isComplete("bin/game.exe", 0))
+            assertFalse(journal.isComplete("bin/game.exe", 1))
+            assertTrue(journal.isComplete("bin/game.exe", 3))
+            assertTrue(journal.isGroupComplete("readme.txt"))
+            assertTrue(journal.isComplete("readme.txt", 7))
+            assertEquals(2, journal.completedChunks("bin/game.exe"))
+        }
+    }
+
+    @Test
+    fun forgottenGroupsStartOver() {
+        DownloadJournal(file).use { journal ->
+            journal.complete("data.pak", 0)
+            journal.completeGroup("other.pak")
+            journal.forget("data.pak")
+            journal.forget("other.pak")
+        }
+
+        DownloadJournal(file).use { journal ->
+            assertFalse(journal.isComplete("data.pak", 0))
+            assertFalse(journal.isGroupComplete("other.pak"))
+        }
+    }
+
+    /**
+     * A crash while a record was being appended leaves a partial record at the end, and a crash
+     * in between syncs may leave garbage there. Both are cut off; the records before survive and
+     * new records are appended after them.
+     */
+    @Test
+    fun tornTailIsDropped() {
+        DownloadJournal(file).use { journal ->
+            repeat(10) { journal.complete("data.pak", it) }
+        }
+        val intactLength = file.length()
+
+        RandomAccessFile(file, "rw").use { raf ->
+            raf.seek(intactLength)
+            raf.write(byteArrayOf(1, 0, 8, 'd'.code.toByte(), 'a'.code.toByte()))
+        }
+
+        DownloadJournal(file).use { journal ->
+            assertEquals(10, journal.completedChunks("data.pak"))
+            journal.complete("data.pak", 10)
+        }
+        DownloadJournal(file).use { journal ->
+            assertEquals(11, journal.completedChunks("data.pak"))
+        }
+
+        // Flip a byte inside the last record: its checksum no longer matches
+        RandomAccessFile(file, "rw").use { raf ->
+            raf.seek(file.length() - 6)
+            val b = raf.read()
+            raf.seek(file.length() - 6)
+            raf.write(b xor 0xFF)
+        }
+        DownloadJournal(file).use { journal ->
+            assertEquals(10, journal.completedChunks("data.pak"))
+        }
+    }
+
+    @Test
+    fun dataIsSyncedBeforeEachJournalBatch() {
+        val dataSyncs = AtomicInteger()
+        DownloadJournal(file, syncEvery = 8, syncIntervalMs = Long.MAX_VALUE, syncData = { dataSyncs.incrementAndGet() }).use { journal ->
+            repeat(20) { journal.complete("data.pak", it) }
+            assertEquals(2, dataSyncs.get())
+        }
+        // The remaining records are synced on close
+        assertEquals(3, dataSyncs.get())
+    }
+
+    @Test
+    fun completedGroupsAreCompacted() {
+        DownloadJournal(file, syncEvery = 1_000).use { journal ->
+            for (group in 0 until 50) {
+                repeat(40) { journal.complete("file$group", it) }
+                journal.completeGroup("file$group")
+            }
+            journal.complete("last", 0)
+        }
+
+        // 50 group records and one chunk record instead of 2,050 records
+        assertTrue("Journal is ${file.length()} bytes", file.length() < 51 * 20 + 64)
+        DownloadJournal(file).use { journal ->
+            assertTrue(journal.isGroupComplete("file49"))
+            assertTrue(journal.isComplete("last", 0))
+            assertFalse(journal.isComplete("last", 1))
+        }
+    }
+
+    @Test
+    fun unknownFormatStartsEmpty() {
+        file.writeText("bin/game.exe|0\nbin/game.exe|1\n")
+
+        DownloadJournal(file).use { journal ->
+            assertFalse(journal.isComplete("bin/game.exe", 0))
+            journal.complete("bin/game.exe", 0)
+        }
+        DownloadJournal(file).use { journal ->
+            assertTrue(journal.isComplete("bin/game.exe", 0))
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package app.gamenative.service
+
+import com.sun.net.httpserver.HttpServer
+import java.io.File
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.file.Files
+import java.util.Collections
+import java.util.PriorityQueue
+import kotlin.concurrent.thread
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.junit.Assert.*
+import org.junit.Test
+
+class DownloadSchedulerTest {
+
+    /**
+     * Runs [workers] download loops against a simulated CDN link for [millis] of [clock] time
+     * and returns the largest number of requests that were in flight at once. Every chunk costs
+     * a fixed round trip plus its share of the bandwidth, which is split between the chunks
+     * transferring at the same time. Requests still in flight at the end are completed.
+     */
+    private fun download(
+        scheduler: DownloadScheduler,
+        clock: FakeClock,
+        workers: Int,
+        millis: Long,
+        roundTripMicros: Long,
+        transferMicrosPerChunk: Long,
+    ): Int {
+        val end = clock.nanos + millis * 1_000_000
+        val inFlight = PriorityQueue<Pair<Long, DownloadScheduler.Ticket>>(compareBy { it.first })
+        var peak = 0
+        while (true) {
+            // Workers start a request whenever the scheduler has a slot for it
+            while (inFlight.size < workers && inFlight.size < scheduler.inFlightLimit) {
+                val ticket = scheduler.acquire(DownloadScheduler.Priority.FOREGROUND)
+                val micros = roundTripMicros + transferMicrosPerChunk * (inFlight.size + 1)
+                inFlight += clock.nanos + micros * 1_000 to ticket
+            }
+            peak = maxOf(peak, inFlight.size)
+            if (clock.nanos >= end) break
+            val (finish, ticket) = inFlight.poll()!!
+            clock.nanos = finish
+            scheduler.release(ticket, CHUNK_BYTES, success = true)
+        }
+        while (inFlight.isNotEmpty()) {
+            val (finish, ticket) = inFlight.poll()!!
+            clock.nanos = maxOf(clock.nanos, finish)
+            scheduler.release(ticket, CHUNK_BYTES, success = true)
+        }
+        return peak
+    }
+
+    private class FakeClock {
+        var nanos = 1L
+    }
+
+    /** Takes background slots until the scheduler would make the next request wait. */
+    private fun acquireAllBackground(scheduler: DownloadScheduler): List<DownloadScheduler.Ticket> {
+        val tickets = mutableListOf<DownloadScheduler.Ticket>()
+        while (true) {
+            try {
+                tickets += scheduler.acquire(DownloadScheduler.Priority.BACKGROUND) { true }
+            } catch (e: IOException) {
+                return tickets
+            }
+        }
+    }
+
+    @Test
+    fun windowFollowsTheAvailableBandwidth() {
+        val clock = FakeClock()
+        val scheduler = DownloadScheduler(maxInFlight = 32, initialInFlight = 8, nanoTime = { clock.nanos })
+
+        // Fast link: a chunk takes 4 ms round trip and 0.2 ms of the link, so many fit in flight
+        val fastPeak = download(scheduler, clock, workers = 48, millis = 1_500, roundTripMicros = 4_000, transferMicrosPerChunk = 200)
+        val fastWindow = scheduler.inFlightLimit
+
+        // The link degrades: a chunk now occupies it for 6 ms, more parallel requests only queue up
+        download(scheduler, clock, workers = 48, millis = 2_000, roundTripMicros = 4_000, transferMicrosPerChunk = 6_000)
+        val slowWindow = scheduler.inFlightLimit
+
+        assertTrue("Window should grow on a fast link, was $fastWindow", fastWindow > 8)
+        assertTrue("Peak in flight $fastPeak exceeds the ceiling", fastPeak <= 32)
+        assertTrue("Window should shrink on a slow link, was $slowWindow", slowWindow < fastWindow)
+        assertTrue("Window should approach the minimum, was $slowWindow", slowWindow <= 6)
+    }
+
+    @Test
+    fun failuresBackOffMultiplicatively() {
+        val scheduler = DownloadScheduler(maxInFlight = 32, initialInFlight = 16)
+
+        repeat(2) {
+            val ticket = scheduler.acquire(DownloadScheduler.Priority.FOREGROUND)
+            scheduler.release(ticket, 0, success = false)
+        }
+
+        assertEquals(9, scheduler.inFlightLimit)
+        repeat(10) {
+            scheduler.release(scheduler.acquire(DownloadScheduler.Priority.FOREGROUND), 0, success = false)
+        }
+        assertEquals(2, scheduler.inFlightLimit)
+    }
+
+    @Test
+    fun ceilingChangesApplyToTheWindow() {
+        val scheduler = DownloadScheduler(maxInFlight = 32, initialInFlight = 16)
+
+        scheduler.setMaxInFlight(4)
+
+        assertEquals(4, scheduler.maxInFlight)
+        assertEquals(4, scheduler.inFlightLimit)
+    }
+
+    @Test
+    fun foregroundChunksGoFirst() {
+        val scheduler = DownloadScheduler(maxInFlight = 2, initialInFlight = 2)
+        scheduler.register(1, DownloadScheduler.Priority.FOREGROUND, listOf(11))
+        scheduler.register(2, DownloadScheduler.Priority.BACKGROUND, listOf(21))
+        assertEquals(DownloadScheduler.Priority.BACKGROUND, scheduler.priorityOfDepot(21))
+        assertEquals(DownloadScheduler.Priority.FOREGROUND, scheduler.priorityOfDepot(99))
+
+        val held = List(2) { scheduler.acquire(DownloadScheduler.Priority.FOREGROUND) }
+        val order = Collections.synchronizedList(mutableListOf<DownloadScheduler.Priority>())
+        val waiters = listOf(DownloadScheduler.Priority.BACKGROUND, DownloadScheduler.Priority.FOREGROUND).mapIndexed { index, priority ->
+            thread {
+                val ticket = scheduler.acquire(priority)
+                order += priority
+                scheduler.release(ticket, CHUNK_BYTES, success = true)
+            }.also {
+                // Queue the background request first
+                while (scheduler.waitingRequests <= index) Thread.yield()
+            }
+        }
+
+        scheduler.release(held[0], CHUNK_BYTES, success = true)
+        waiters.forEach { it.join(5_000) }
+        scheduler.release(held[1], CHUNK_BYTES, success = true)
+
+        assertEquals(listOf(DownloadScheduler.Priority.FOREGROUND, DownloadScheduler.Priority.BACKGROUND), order)
+    }
+
+    @Test
+    fun sharedDepotsKeepTheirForegroundOwner() {
+        val scheduler = DownloadScheduler(maxInFlight = 8)
+        scheduler.register(1, DownloadScheduler.Priority.FOREGROUND, listOf(11, 12))
+        // An update of another app that shares depot 11
+        scheduler.register(2, DownloadScheduler.Priority.BACKGROUND, listOf(11))
+
+        assertEquals(DownloadScheduler.Priority.FOREGROUND, scheduler.priorityOfDepot(11))
+        scheduler.unregister(1)
+        assertEquals(DownloadScheduler.Priority.BACKGROUND, scheduler.priorityOfDepot(11))
+        assertEquals(DownloadScheduler.Priority.FOREGROUND, scheduler.priorityOfDepot(12))
+        scheduler.unregister(2)
+        assertEquals(DownloadScheduler.Priority.FOREGROUND, scheduler.priorityOfDepot(11))
+    }
+
+    @Test
+    fun backgroundKeepsToItsShareWhileForegroundRuns() {
+        val scheduler = DownloadScheduler(maxInFlight = 16, initialInFlight = 16)
+        scheduler.register(1, DownloadScheduler.Priority.FOREGROUND, listOf(11))
+        scheduler.register(2, DownloadScheduler.Priority.BACKGROUND, listOf(21))
+
+        val shared = acquireAllBackground(scheduler)
+        assertEquals(16 / 4, shared.size)
+
+        scheduler.unregister(1)
+        val alone = acquireAllBackground(scheduler)
+        assertEquals(16, shared.size + alone.size)
+    }
+
+    @Test
+    fun interceptorHoldsTheSlotUntilTheBodyIsRead() {
+        val chunk = ByteArray(256 * 1024) { it.toByte() }
+        val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.sendResponseHeaders(200, chunk.size.toLong())
+            exchange.responseBody.use { it.write(chunk) }
+        }
+        server.start()
+        try {
+            val scheduler = DownloadScheduler(maxInFlight = 2, initialInFlight = 2)
+            val client = OkHttpClient.Builder().addInterceptor(scheduler.interceptor).build()
+            val request = Request.Builder().url("http://127.0.0.1:${server.address.port}/depot/11/chunk/abc").build()
+
+            client.newCall(request).execute().use { response ->
+                // One slot is taken by the unread body
+                val other = scheduler.acquire(DownloadScheduler.Priority.FOREGROUND) { true }
+                assertEquals(0, acquireAllBackground(scheduler).size)
+                scheduler.release(other, 0, success = true)
+
+                assertArrayEquals(chunk, response.body.bytes())
+            }
+            val tickets = List(2) { scheduler.acquire(DownloadScheduler.Priority.FOREGROUND) { true } }
+            tickets.forEach { scheduler.release(it, 0, success = true) }
+        } finally {
+            server.stop(0)
+        }
+    }
+
+    @Test
+    fun canceledWaitGivesUp() {
+        val scheduler = DownloadScheduler(maxInFlight = 2, initialInFlight = 2)
+        repeat(2) { scheduler.acquire(DownloadScheduler.Priority.FOREGROUND) }
+
+        try {
+            scheduler.acquire(DownloadScheduler.Priority.FOREGROUND) { true }
+            fail("Expected the wait to be canceled")
+        } catch (e: IOException) {
+            // expected
+        }
+    }
+
+    @Test
+    fun fileWritersAreMeasuredPerVolume() {
+        val dir = Files.createTempDirectory("write_probe_").toFile()
+        try {
+            val writers = DownloadScheduler.fileWritersFor(File(dir, "not/created/yet"))
+            assertTrue(writers in 1..4)
+            assertEquals(writers, DownloadScheduler.fileWritersFor(dir))
+            assertEquals(0, dir.listFiles()!!.size)
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    companion object {
+        private const val CHUNK_BYTES = 1024L * 1024
+    }
+}
@@ -0,0 +1,147 @@
+package app.gamenative.service
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.SteamApp
+import app.gamenative.data.SteamAppPicsState
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.utils.generateSteamApp
+import `in`.dragonbra.javasteam.enums.ELicenseFlags
+import `in`.dragonbra.javasteam.types.KeyValue
+import java.io.File
+import java.util.EnumSet
+import kotlin.system.measureTimeMillis
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Runs the decode and persist stages of [PicsIngestor] against the recorded PICS
+ * app info in the repository's keyvalues/ directory.
+ */
+@RunWith(RobolectricTestRunner::class)
+class PicsIngestorTest {
+
+    private lateinit var db: PluviaDatabase
+    private lateinit var fixtures: List<KeyValue>
+
+    @Before
+    fun setUp() {
+        val dir = listOf(File("keyvalues"), File("../keyvalues")).firstOrNull { it.isDirectory }
+        assumeTrue("keyvalues/ fixtures not found", dir != null)
+        fixtures = dir!!.listFiles { file -> file.extension == "txt" }!!.sortedBy { it.name }.map { parseFixture(it) }
+
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        if (::db.isInitialized) db.close()
+    }
+
+    private fun picsApps(changeNumber: Int = 1) = fixtures.map {
+        PicsIngestor.PicsApp(it["appid"].asInteger(), changeNumber, it)
+    }
+
+    @Test
+    fun decodeApps_matchesSerialDecoding() = runBlocking {
+        val decoded = PicsIngestor.decodeApps(picsApps(), emptyMap(), emptyMap(), parallelism = 4)
+
+        val expected = fixtures.map { it.generateSteamApp() }
+        assertEquals(expected.map { it.id }, decoded.map { it.id })
+        decoded.zip(expected).forEach { (actual, serial) ->
+            val expectedApp = serial.copy(
+                packageId = SteamService.INVALID_PKG_ID,
+                ownerAccountId = emptyList(),
+                licenseFlags = EnumSet.noneOf(ELicenseFlags::class.java),
+                receivedPICS = true,
+                lastChangeNumber = 1,
+            )
+            assertEquals(expectedApp, actual)
+        }
+    }
+
+    @Test
+    fun decodeApps_skipsUnchangedApps() = runBlocking {
+        val apps = picsApps(changeNumber = 7)
+        val states = mapOf(apps[0].id to SteamAppPicsState(apps[0].id, 55, 7))
+
+        val decoded = PicsIngestor.decodeApps(apps, states, emptyMap())
+
+        assertEquals(apps.size - 1, decoded.size)
+        assertFalse(decoded.any { it.id == apps[0].id })
+    }
+
+    @Test
+    fun ingestPackagesThenApps_keepsPackageAndStoresDecodedApps() = runBlocking {
+        val ingestor = PicsIngestor(db)
+        val appIds = picsApps().map { it.id }
+        db.steamAppDao().insert(SteamApp(id = appIds[0], name = "stale"))
+
+        val queued = ingestor.ingestPackages(listOf(PicsIngestor.PicsPackage(42, appIds, emptyList())))
+        assertEquals(appIds, queued)
+        assertTrue(db.steamAppDao().findPicsStates(appIds).all { it.packageId == 42 })
+        assertEquals("stale", db.steamAppDao().findApp(appIds[0])!!.name)
+
+        assertEquals(appIds.size, ingestor.ingestApps(picsApps()))
+        appIds.forEach { id ->
+            val app = db.steamAppDao().findApp(id)!!
+            assertEquals(42, app.packageId)
+            assertTrue(app.receivedPICS)
+            assertTrue(app.name.isNotEmpty())
+        }
+
+        // A second delivery of the same change numbers writes nothing
+        assertEquals(0, ingestor.ingestApps(picsApps()))
+    }
+
+    @Test
+    fun decodeThroughput_replicatedFixtures() = runBlocking {
+        val apps = (0 until 50).flatMap { picsApps(changeNumber = it) }
+
+        val serialMillis = measureTimeMillis { apps.forEach { it.keyValues.generateSteamApp() } }
+        val parallelMillis = measureTimeMillis { PicsIngestor.decodeApps(apps, emptyMap(), emptyMap(), parallelism = 4) }
+
+        println(
+            "Decoded ${apps.size} PICS apps: serial=${serialMillis}ms, parallel=${parallelMillis}ms " +
+                "(${apps.size * 1000L / parallelMillis.coerceAtLeast(1)} apps/s)",
+        )
+    }
+
+    companion object {
+        /**
+         * Parses the tab-indented "key: value" dumps in keyvalues/ back into a [KeyValue] tree,
+         * returning the appinfo node.
+         */
+        fun parseFixture(file: File): KeyValue {
+            val root = KeyValue("root")
+            val stack = ArrayDeque<Pair<Int, KeyValue>>().apply { addLast(-1 to root) }
+
+            file.readLines().drop(1).filter { it.isNotBlank() }.forEach { line ->
+                val depth = line.takeWhile { it == '\t' }.length
+                val content = line.substring(depth)
+                val separator = content.indexOf(": ")
+                val node = when {
+                    separator >= 0 -> KeyValue(content.substring(0, separator), content.substring(separator + 2))
+                    content.endsWith(":") -> KeyValue(content.dropLast(1), "")
+                    else -> KeyValue(content)
+                }
+
+                while (stack.last().first >= depth) stack.removeLast()
+                stack.last().second.children.add(node)
+                stack.addLast(depth to node)
+            }
+
+            return root.children.single()
+        }
+    }
+}
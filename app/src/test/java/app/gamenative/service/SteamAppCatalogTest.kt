@@ -0,0 +1,133 @@
+package app.gamenative.service
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import app.gamenative.data.AppInfo
+import app.gamenative.data.SteamApp
+import app.gamenative.db.PluviaDatabase
+import app.gamenative.enums.AppType
+import kotlin.system.measureNanoTime
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SteamAppCatalogTest {
+
+    private lateinit var db: PluviaDatabase
+    private lateinit var catalog: SteamAppCatalog
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, PluviaDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+        catalog = SteamAppCatalog(db)
+    }
+
+    @After
+    fun tearDown() {
+        catalog.stopObserving()
+        db.close()
+    }
+
+    @Test
+    fun repeatedLookupsAreServedFromMemory() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 10, name = "Portal"))
+
+        assertEquals("Portal", catalog.app(10)!!.name)
+        assertEquals("Portal", catalog.app(10)!!.name)
+        assertNull(catalog.app(11))
+        assertNull(catalog.app(11))
+
+        assertEquals(2, catalog.missCount)
+        assertEquals(2, catalog.hitCount)
+        assertTrue(catalog.isAppCached(11))
+        assertEquals("Portal", catalog.peekApp(10)!!.name)
+    }
+
+    @Test
+    fun invalidatedEntriesAreReloaded() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 10, name = "Portal"))
+        db.appInfoDao().insert(AppInfo(10, isDownloaded = false))
+        catalog.app(10)
+        catalog.installedApp(10)
+
+        db.steamAppDao().insert(SteamApp(id = 10, name = "Portal 2"))
+        db.appInfoDao().insert(AppInfo(10, isDownloaded = true))
+        catalog.invalidateApps(listOf(10))
+        catalog.invalidateInstalledApps(listOf(10))
+
+        assertEquals("Portal 2", catalog.app(10)!!.name)
+        assertTrue(catalog.installedApp(10)!!.isDownloaded)
+    }
+
+    @Test
+    fun picsIngestionDropsTheAppsItWrites() = runBlocking {
+        db.steamAppDao().insert(SteamApp(id = 10, name = "Portal"))
+        assertEquals(SteamService.INVALID_PKG_ID, catalog.app(10)!!.packageId)
+
+        PicsIngestor(db, catalog = catalog).ingestPackages(listOf(PicsIngestor.PicsPackage(42, listOf(10), emptyList())))
+
+        assertFalse(catalog.isAppCached(10))
+        assertEquals(42, catalog.app(10)!!.packageId)
+    }
+
+    @Test
+    fun roomWritesInvalidateTheCatalog() = runBlocking {
+        catalog.startObserving()
+        assertNull(catalog.installedApp(10))
+
+        db.appInfoDao().insert(AppInfo(10, isDownloaded = true))
+
+        // The invalidation tracker notifies observers asynchronously after the write commits
+        val deadline = System.currentTimeMillis() + 5_000
+        while (catalog.isInstalledAppCached(10) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertTrue(catalog.installedApp(10)!!.isDownloaded)
+    }
+
+    /**
+     * Binds a 2,000 app library the way the library screen does, one lookup per item, straight
+     * from the DAO and through a preloaded catalog.
+     */
+    @Test
+    fun libraryBinding_twoThousandApps() = runBlocking {
+        val appIds = (0 until LIBRARY_SIZE).map { 100_000 + it }
+        db.steamAppDao().insertAll(appIds.map { SteamApp(id = it, name = "Game $it", type = AppType.game) })
+        db.appInfoDao().insertAll(appIds.filter { it % 5 == 0 }.map { AppInfo(it, isDownloaded = true) })
+
+        val daoNanos = measureNanoTime {
+            appIds.forEach { id ->
+                runBlocking(Dispatchers.IO) { db.steamAppDao().findApp(id) }
+                runBlocking(Dispatchers.IO) { db.appInfoDao().getInstalledApp(id) }
+            }
+        }
+
+        val preloadNanos = measureNanoTime { catalog.preload(appIds) }
+        val bindNanos = measureNanoTime {
+            appIds.forEach { id ->
+                assertNotNull(catalog.peekApp(id))
+                assertTrue(catalog.isInstalledAppCached(id))
+            }
+        }
+        assertEquals(LIBRARY_SIZE / 5, appIds.count { catalog.peekInstalledApp(it) != null })
+
+        println(
+            "Bound $LIBRARY_SIZE apps: DAO per item=${daoNanos / 1_000_000}ms, " +
+                "catalog preload=${preloadNanos / 1_000_000}ms + bind=${bindNanos / 1_000}us",
+        )
+    }
+
+    companion object {
+        private const val LIBRARY_SIZE = 2_000
+    }
+}
@@ -0,0 +1,117 @@
+package app.gamenative.service
+
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
+import java.security.MessageDigest
+import kotlin.random.Random
+import kotlin.system.measureTimeMillis
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class UserFileHashJournalTest {
+
+    private lateinit var saveRoot: File
+    private lateinit var saveFiles: List<Path>
+
+    /**
+     * Builds a synthetic save tree resembling a game that keeps many slots and screenshots.
+     */
+    @Before
+    fun setUp() {
+        saveRoot = Files.createTempDirectory("user_file_hash_journal_").toFile()
+
+        val random = Random(26)
+        saveFiles = (0 until SLOT_DIRS).flatMap { slot ->
+            val slotDir = File(saveRoot, "slot$slot/screenshots").apply { mkdirs() }
+            (0 until FILES_PER_SLOT).map { index ->
+                val size = if (index % 10 == 0) LARGE_FILE_SIZE else random.nextInt(512, 16 * 1024)
+                File(slotDir, "save_$index.sav").apply { writeBytes(random.nextBytes(size)) }.toPath()
+            }
+        }
+    }
+
+    @After
+    fun tearDown() {
+        saveRoot.deleteRecursively()
+    }
+
+    @Test
+    fun hashAll_matchesFullFileSha1() = runBlocking {
+        val journal = UserFileHashJournal(appId = APP_ID, previousEntries = emptyList())
+
+        val hashes = journal.hashAll(saveFiles)
+
+        saveFiles.zip(hashes).forEach { (path, sha) ->
+            val expected = MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(path))
+            assertArrayEquals("SHA-1 mismatch for $path", expected, sha)
+        }
+        assertEquals(saveFiles.size, journal.filesHashed)
+        assertEquals(0, journal.filesReused)
+    }
+
+    @Test
+    fun hashAll_reusesJournaledHashesForUnchangedFiles() = runBlocking {
+        val firstSync = UserFileHashJournal(APP_ID, emptyList())
+        val firstHashes = firstSync.hashAll(saveFiles)
+
+        val changed = saveFiles[3].toFile()
+        changed.writeBytes(Random(1).nextBytes(changed.length().toInt() + 1))
+
+        val secondSync = UserFileHashJournal(APP_ID, firstSync.entries())
+        val secondHashes = secondSync.hashAll(saveFiles)
+
+        assertEquals(1, secondSync.filesHashed)
+        assertEquals(saveFiles.size - 1, secondSync.filesReused)
+        saveFiles.indices.filter { it != 3 }.forEach {
+            assertArrayEquals(firstHashes[it], secondHashes[it])
+        }
+        assertFalse(firstHashes[3].contentEquals(secondHashes[3]))
+    }
+
+    @Test
+    fun entries_dropFilesThatWereNotSeen() = runBlocking {
+        val firstSync = UserFileHashJournal(APP_ID, emptyList())
+        firstSync.hashAll(saveFiles)
+
+        val remaining = saveFiles.drop(5)
+        val secondSync = UserFileHashJournal(APP_ID, firstSync.entries())
+        secondSync.hashAll(remaining)
+
+        assertEquals(remaining.size, secondSync.entries().size)
+        assertTrue(secondSync.entries().all { it.appId == APP_ID })
+    }
+
+    @Test
+    fun syncPreparationTime_syntheticSaveTree() = runBlocking {
+        val totalBytes = saveFiles.sumOf { Files.size(it) }
+
+        val legacyMillis = measureTimeMillis {
+            saveFiles.forEach { MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(it)) }
+        }
+
+        val coldJournal = UserFileHashJournal(APP_ID, emptyList())
+        val coldMillis = measureTimeMillis { coldJournal.hashAll(saveFiles) }
+
+        val warmJournal = UserFileHashJournal(APP_ID, coldJournal.entries())
+        val warmMillis = measureTimeMillis { warmJournal.hashAll(saveFiles) }
+
+        println(
+            "Sync preparation for ${saveFiles.size} files (${totalBytes / 1024} KiB): " +
+                "readAllBytes=${legacyMillis}ms, journal cold=${coldMillis}ms, journal warm=${warmMillis}ms",
+        )
+
+        assertEquals(0, warmJournal.filesHashed)
+        assertEquals(saveFiles.size, warmJournal.filesReused)
+    }
+
+    companion object {
+        private const val APP_ID = 123456
+        private const val SLOT_DIRS = 20
+        private const val FILES_PER_SLOT = 25
+        private const val LARGE_FILE_SIZE = 512 * 1024
+    }
+}
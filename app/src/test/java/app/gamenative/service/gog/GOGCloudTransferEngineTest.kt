@@ -0,0 +1,239 @@
+package app.gamenative.service.gog
+
+import com.sun.net.httpserver.HttpServer
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.net.InetSocketAddress
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPOutputStream
+import kotlin.concurrent.thread
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Exercises [GOGCloudTransferEngine] against a local HTTP stand-in for cloudstorage.gog.com.
+ */
+class GOGCloudTransferEngineTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var baseUrl: String
+    private lateinit var workDir: File
+
+    /** Objects stored by the stand-in server, keyed by request path. */
+    private val objects = ConcurrentHashMap<String, ByteArray>()
+
+    /** Paths that have already been failed once with a 503. */
+    private val failedOnce = ConcurrentHashMap.newKeySet<String>()
+
+    private val requests = AtomicInteger()
+    private val inFlight = AtomicInteger()
+    private val peakInFlight = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        workDir = Files.createTempDirectory("gog_cloud_transfer_").toFile()
+
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.executor = Executors.newFixedThreadPool(16)
+        server.createContext("/") { exchange ->
+            val path = exchange.requestURI.path
+            requests.incrementAndGet()
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), ::maxOf)
+
+            try {
+                // Every object fails once so that the retry path is always exercised
+                if (failedOnce.add("${exchange.requestMethod} $path")) {
+                    exchange.sendResponseHeaders(503, -1)
+                    return@createContext
+                }
+
+                when (exchange.requestMethod) {
+                    "PUT" -> {
+                        objects[path] = exchange.requestBody.readBytes()
+                        exchange.sendResponseHeaders(201, -1)
+                    }
+
+                    "GET" -> {
+                        val body = objects[path]
+                        if (body == null) {
+                            exchange.sendResponseHeaders(404, -1)
+                        } else {
+                            exchange.sendResponseHeaders(200, body.size.toLong())
+                            exchange.responseBody.use { it.write(body) }
+                        }
+                    }
+
+                    else -> exchange.sendResponseHeaders(405, -1)
+                }
+            } finally {
+                inFlight.decrementAndGet()
+                exchange.close()
+            }
+        }
+        server.start()
+
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+        workDir.deleteRecursively()
+    }
+
+    private fun engine(digestCacheFile: File? = null) = GOGCloudTransferEngine(
+        httpClient = OkHttpClient(),
+        baseUrl = baseUrl,
+        digestCacheFile = digestCacheFile,
+        maxParallelTransfers = PARALLEL_TRANSFERS,
+    )
+
+    private fun createSaves(dir: File, count: Int, size: Int): List<GOGCloudSavesManager.SyncFile> {
+        val random = Random(27)
+        return (0 until count).map { index ->
+            val relativePath = "slot${index % 4}/save_$index.dat"
+            val file = File(dir, relativePath).apply {
+                parentFile?.mkdirs()
+                writeBytes(random.nextBytes(size))
+            }
+            GOGCloudSavesManager.SyncFile(relativePath, file.absolutePath)
+        }
+    }
+
+    @Test
+    fun gzipMd5_matchesBufferedGzipDigest() {
+        val file = File(workDir, "save.dat").apply { writeBytes(Random(1).nextBytes(300_000)) }
+
+        val buffer = ByteArrayOutputStream()
+        GZIPOutputStream(buffer).use { it.write(file.readBytes()) }
+        val expected = MessageDigest.getInstance("MD5").digest(buffer.toByteArray())
+            .joinToString("") { "%02x".format(it) }
+
+        assertEquals(expected, GOGCloudTransferEngine.gzipMd5(file))
+    }
+
+    @Test
+    fun digest_isCachedBySizeAndModificationTime() {
+        val cacheFile = File(workDir, "digests.json")
+        val file = File(workDir, "save.dat").apply { writeBytes(ByteArray(4096) { 1 }) }
+        val lastModified = file.lastModified()
+
+        val first = engine(cacheFile)
+        val digest = first.digest(file)
+        first.saveDigestCache()
+
+        // Same size and mtime but different contents: the persisted digest is trusted
+        file.writeBytes(ByteArray(4096) { 2 })
+        file.setLastModified(lastModified)
+        assertEquals(digest, engine(cacheFile).digest(file))
+
+        // A changed mtime invalidates the cached digest
+        file.setLastModified(lastModified + 2000)
+        assertNotEquals(digest, engine(cacheFile).digest(file))
+    }
+
+    @Test
+    fun uploadAndDownload_roundTripWithRetries() = runBlocking {
+        val uploadDir = File(workDir, "upload")
+        val downloadDir = File(workDir, "download")
+        val saves = createSaves(uploadDir, count = 32, size = 64 * 1024)
+        val engine = engine()
+
+        engine.calculateMetadata(saves)
+        val uploaded = engine.uploadAll("user", "client", "saves", saves, "token")
+
+        assertEquals(saves.size, uploaded.filesTransferred)
+        assertEquals(0, uploaded.filesFailed)
+        assertEquals(saves.size, objects.size)
+
+        val cloudFiles = saves.map { GOGCloudSavesManager.CloudFile(it.relativePath, it.md5Hash!!, it.updateTime, it.updateTimestamp) }
+        val downloaded = engine.downloadAll("user", "client", "saves", cloudFiles, downloadDir, "token")
+
+        assertEquals(saves.size, downloaded.filesTransferred)
+        saves.forEach { save ->
+            val restored = File(downloadDir, save.relativePath)
+            assertArrayEquals(File(save.absolutePath).readBytes(), restored.readBytes())
+            assertEquals(save.md5Hash, GOGCloudTransferEngine.gzipMd5(restored))
+        }
+        assertTrue(downloadDir.walkTopDown().none { it.name.endsWith(".part") })
+        assertTrue(peakInFlight.get() <= PARALLEL_TRANSFERS)
+    }
+
+    @Test
+    fun permanentFailure_isReportedWithoutRetrying() = runBlocking {
+        val missing = listOf(GOGCloudSavesManager.CloudFile("missing.dat", "0", null, null))
+        // Pre-fail so the stand-in answers with a plain 404
+        failedOnce.add("GET /v1/user/client/saves/missing.dat")
+
+        val stats = engine().downloadAll("user", "client", "saves", missing, workDir, "token")
+
+        assertEquals(0, stats.filesTransferred)
+        assertEquals(1, stats.filesFailed)
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    fun unexpectedFailure_failsOnlyThatFile() = runBlocking {
+        objects["/v1/user/client/saves/good.dat"] = byteArrayOf(1, 2, 3)
+        objects["/v1/user/client/saves/bad.dat"] = byteArrayOf(4, 5, 6)
+        val files = listOf(
+            GOGCloudSavesManager.CloudFile("good.dat", "0", null, null),
+            // A negative timestamp makes setLastModified throw IllegalArgumentException
+            GOGCloudSavesManager.CloudFile("bad.dat", "0", null, -1L),
+        )
+
+        val stats = engine().downloadAll("user", "client", "saves", files, workDir, "token")
+
+        assertEquals(1, stats.filesTransferred)
+        assertEquals(1, stats.filesFailed)
+        assertArrayEquals(byteArrayOf(1, 2, 3), File(workDir, "good.dat").readBytes())
+    }
+
+    @Test
+    fun throughputAndPeakHeap_largeSaves() = runBlocking {
+        val saves = createSaves(File(workDir, "large"), count = 8, size = 8 * 1024 * 1024)
+        val totalBytes = saves.sumOf { File(it.absolutePath).length() }
+        val engine = engine()
+
+        val runtime = Runtime.getRuntime()
+        System.gc()
+        val baseline = runtime.totalMemory() - runtime.freeMemory()
+        var peak = baseline
+        val sampling = AtomicBoolean(true)
+        val sampler = thread {
+            while (sampling.get()) {
+                peak = maxOf(peak, runtime.totalMemory() - runtime.freeMemory())
+                Thread.sleep(5)
+            }
+        }
+
+        val digestStart = System.currentTimeMillis()
+        engine.calculateMetadata(saves)
+        val digestMillis = System.currentTimeMillis() - digestStart
+        val stats = engine.uploadAll("user", "client", "saves", saves, "token")
+
+        sampling.set(false)
+        sampler.join()
+
+        println(
+            "Digested ${totalBytes / 1024 / 1024} MiB in ${digestMillis}ms; uploaded ${stats.filesTransferred} file(s) " +
+                "at ${stats.bytesPerSecond / 1024} KiB/s; peak heap growth ${(peak - baseline) / 1024 / 1024} MiB",
+        )
+
+        assertEquals(saves.size, stats.filesTransferred)
+    }
+
+    companion object {
+        private const val PARALLEL_TRANSFERS = 4
+    }
+}
@@ -0,0 +1,330 @@
+package app.gamenative.service.gog
+
+import app.gamenative.data.DownloadInfo
+import com.sun.net.httpserver.HttpServer
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.RandomAccessFile
+import java.net.InetSocketAddress
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.DeflaterOutputStream
+import kotlin.random.Random
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Exercises [GOGDepotDownloader] against a local stand-in for the content system and CDN
+ * serving a small generation 2 build.
+ */
+class GOGDepotDownloaderTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var baseUrl: String
+    private lateinit var workDir: File
+
+    /** Responses served by the stand-in, keyed by request path. */
+    private val routes = ConcurrentHashMap<String, ByteArray>()
+
+    /** Expected contents of every game file, keyed by relative path. */
+    private val expectedFiles = mutableMapOf<String, ByteArray>()
+
+    /** Chunk paths that answer with a 404 until removed. */
+    private val brokenChunks = ConcurrentHashMap.newKeySet<String>()
+
+    private val chunkRequests = AtomicInteger()
+
+    /** Every secure link handed out carries a new token, `t1` for the first one. */
+    private val secureLinkRequests = AtomicInteger()
+
+    /** When set, chunk requests without this token are rejected with a 403. */
+    @Volatile
+    private var validToken: String? = null
+
+    /** Expiry, in epoch seconds, stamped on the first secure link only. */
+    @Volatile
+    private var firstLinkExpiresAt = 0L
+    private val rejectedChunks = AtomicInteger()
+
+    /** When set, chunk requests past this count hang until [releaseChunks] is counted down. */
+    @Volatile
+    private var chunkLimit = Int.MAX_VALUE
+    private val releaseChunks = CountDownLatch(1)
+    private val limitReached = CountDownLatch(1)
+
+    @Before
+    fun setUp() {
+        workDir = Files.createTempDirectory("gog_depot_download_").toFile()
+
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.executor = Executors.newFixedThreadPool(8)
+        server.createContext("/") { exchange ->
+            val path = exchange.requestURI.path
+            try {
+                if (path.startsWith("/store/") && chunkRequests.incrementAndGet() > chunkLimit) {
+                    limitReached.countDown()
+                    releaseChunks.await(10, TimeUnit.SECONDS)
+                }
+
+                val body = if (path == "/products/$PRODUCT_ID/secure_link") secureLink() else routes[path]
+                val token = validToken
+                if (path.startsWith("/store/") && token != null && exchange.requestURI.query != "token=$token") {
+                    rejectedChunks.incrementAndGet()
+                    exchange.sendResponseHeaders(403, -1)
+                } else if (body == null || path in brokenChunks) {
+                    exchange.sendResponseHeaders(404, -1)
+                } else {
+                    exchange.sendResponseHeaders(200, body.size.toLong())
+                    exchange.responseBody.use { it.write(body) }
+                }
+            } finally {
+                exchange.close()
+            }
+        }
+        server.start()
+
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+        publishBuild()
+    }
+
+    @After
+    fun tearDown() {
+        releaseChunks.countDown()
+        server.stop(0)
+        workDir.deleteRecursively()
+    }
+
+    /**
+     * Publishes a build of [PRODUCT_ID] with files split over several chunks, a directory,
+     * a support file and a depot for a language that must be skipped.
+     */
+    private fun publishBuild() {
+        val random = Random(28)
+        val items = mutableListOf<String>()
+
+        listOf("bin/game.exe" to 5, "data/level1.pak" to 3, "readme.txt" to 1, "empty.cfg" to 0).forEach { (path, chunkCount) ->
+            val chunks = (0 until chunkCount).map { random.nextBytes(random.nextInt(CHUNK_SIZE / 2, CHUNK_SIZE)) }
+            expectedFiles[path] = chunks.fold(ByteArray(0)) { acc, bytes -> acc + bytes }
+            items += depotFile(path.replace('/', '\\'), chunks, flags = "")
+        }
+        items += """{"type":"DepotDirectory","path":"saves"}"""
+
+        val supportChunk = random.nextBytes(1024)
+        items += depotFile("redist\\setup.exe", listOf(supportChunk), flags = "\"support\"")
+
+        routes["/content-system/v2/meta/aa/aa/aaaamanifest"] = zlib("""{"depot":{"items":[${items.joinToString(",")}]}}""")
+        routes["/content-system/v2/meta/bb/bb/bbbbmanifest"] = zlib(
+            """{"depot":{"items":[${depotFile("german.pak", listOf(random.nextBytes(64)), "")}]}}""",
+        )
+
+        routes["/meta/build"] = zlib(
+            """
+            {
+              "installDirectory": "Test Game",
+              "baseProductId": "$PRODUCT_ID",
+              "products": [{"productId": "$PRODUCT_ID", "name": "Test Game"}],
+              "dependencies": [],
+              "depots": [
+                {"productId": "$PRODUCT_ID", "languages": ["*"], "manifest": "aaaamanifest"},
+                {"productId": "$PRODUCT_ID", "languages": ["de-DE"], "manifest": "bbbbmanifest"}
+              ]
+            }
+            """.trimIndent(),
+        )
+        routes["/products/$PRODUCT_ID/os/windows/builds"] =
+            """{"items":[{"build_id":"$BUILD_ID","generation":2,"link":"$baseUrl/meta/build"}]}""".toByteArray()
+        routes["/userData.json"] = """{"owned":[$PRODUCT_ID]}""".toByteArray()
+    }
+
+    private fun secureLink(): ByteArray {
+        val n = secureLinkRequests.incrementAndGet()
+        val expiry = if (n == 1 && firstLinkExpiresAt > 0) ",\"expires_at\":$firstLinkExpiresAt" else ""
+        val parameters = """{"base":"$baseUrl","path":"/store","token":"t$n"$expiry}"""
+        return """{"urls":[{"url_format":"{base}{path}?token={token}","parameters":$parameters}]}""".toByteArray()
+    }
+
+    private fun depotFile(path: String, chunks: List<ByteArray>, flags: String): String {
+        val chunkJson = chunks.joinToString(",") { chunk ->
+            val compressed = zlib(chunk)
+            val compressedMd5 = md5(compressed)
+            routes["/store/${GOGDepotDownloader.galaxyPath(compressedMd5)}"] = compressed
+            """{"md5":"${md5(chunk)}","compressedMd5":"$compressedMd5","size":${chunk.size},"compressedSize":${compressed.size}}"""
+        }
+        val escapedPath = path.replace("\\", "\\\\")
+        return """{"type":"DepotFile","path":"$escapedPath","flags":[$flags],"chunks":[$chunkJson]}"""
+    }
+
+    private fun downloader(parallelChunks: Int = 4) = GOGDepotDownloader(
+        accessToken = "token",
+        httpClient = OkHttpClient(),
+        contentSystemUrl = baseUrl,
+        cdnUrl = baseUrl,
+        embedUrl = baseUrl,
+        maxParallelChunks = parallelChunks,
+    )
+
+    private fun download(downloadInfo: DownloadInfo? = null) = runBlocking {
+        downloader().download(
+            productId = PRODUCT_ID,
+            installPath = File(workDir, "games").absolutePath,
+            supportDir = File(workDir, "support"),
+            manifestsDir = File(workDir, "manifests"),
+            downloadInfo = downloadInfo,
+        )
+    }
+
+    private fun assertInstalled(installDir: File) {
+        expectedFiles.forEach { (path, bytes) ->
+            assertArrayEquals("Contents of $path", bytes, File(installDir, path).readBytes())
+        }
+        assertTrue(File(installDir, "saves").isDirectory)
+        assertFalse(File(installDir, "german.pak").exists())
+        assertTrue(File(workDir, "support/$PRODUCT_ID/redist/setup.exe").isFile)
+        assertFalse(File(installDir, ".gogdl-native").exists())
+    }
+
+    @Test
+    fun download_writesVerifiedFilesAndReportsByteProgress() {
+        val downloadInfo = DownloadInfo(gameId = 1, downloadingAppIds = CopyOnWriteArrayList())
+
+        val result = download(downloadInfo).getOrThrow()
+
+        val installDir = File(workDir, "games/Test Game")
+        assertEquals(installDir.absolutePath, result.installPath)
+        assertInstalled(installDir)
+
+        assertEquals(downloadInfo.getTotalExpectedBytes(), downloadInfo.getBytesDownloaded())
+        assertEquals(1f, downloadInfo.getProgress(), 0f)
+        assertEquals(0, result.chunksResumed)
+
+        val manifest = File(workDir, "manifests/$PRODUCT_ID").readText()
+        assertTrue(manifest.contains("\"HGLInstallLanguage\":\"en-US\""))
+    }
+
+    @Test
+    fun download_resumesFromJournaledChunks() {
+        val brokenPath = routes.keys.filter { it.startsWith("/store/") }.sorted().last()
+        brokenChunks.add(brokenPath)
+
+        assertTrue(download().isFailure)
+        val firstRunRequests = chunkRequests.getAndSet(0)
+
+        brokenChunks.clear()
+        val result = download().getOrThrow()
+
+        assertInstalled(File(workDir, "games/Test Game"))
+        assertTrue("Expected completed chunks to be skipped", result.chunksResumed > 0)
+        assertEquals(result.chunksDownloaded, chunkRequests.get())
+        println("First attempt: $firstRunRequests chunk request(s); resumed ${result.chunksResumed}, fetched ${result.chunksDownloaded}")
+    }
+
+    /**
+     * Kills a download half way, leaving a torn record at the end of its journal as a crash
+     * during an append would, and checks the restart only fetches what was not journaled.
+     */
+    @Test
+    fun download_resumesAfterBeingKilledMidway() = runBlocking {
+        chunkLimit = 4
+        val firstRun = async(Dispatchers.IO) {
+            downloader(parallelChunks = 2).download(
+                productId = PRODUCT_ID,
+                installPath = File(workDir, "games").absolutePath,
+                supportDir = File(workDir, "support"),
+                manifestsDir = File(workDir, "manifests"),
+                downloadInfo = null,
+            )
+        }
+        assertTrue(limitReached.await(10, TimeUnit.SECONDS))
+        firstRun.cancel()
+        releaseChunks.countDown()
+        firstRun.join()
+
+        val journal = File(workDir, "games/Test Game/.gogdl-native").listFiles()!!.single()
+        RandomAccessFile(journal, "rw").use { raf ->
+            raf.seek(raf.length())
+            raf.write(byteArrayOf(1, 0, 40))
+        }
+
+        chunkLimit = Int.MAX_VALUE
+        chunkRequests.set(0)
+        val result = download().getOrThrow()
+
+        assertInstalled(File(workDir, "games/Test Game"))
+        assertTrue("Expected journaled chunks to be skipped, resumed ${result.chunksResumed}", result.chunksResumed >= 2)
+        assertEquals(result.chunksDownloaded, chunkRequests.get())
+        println("Killed after 4 chunk requests; resumed ${result.chunksResumed}, fetched ${result.chunksDownloaded}")
+    }
+
+    @Test
+    fun download_refreshesALinkTheCdnRejects() {
+        validToken = "t2"
+
+        download().getOrThrow()
+
+        assertInstalled(File(workDir, "games/Test Game"))
+        assertTrue(rejectedChunks.get() > 0)
+        // Chunks rejected at the same time share one refresh
+        assertEquals(2, secureLinkRequests.get())
+    }
+
+    @Test
+    fun download_refreshesALinkAboutToExpire() {
+        validToken = "t2"
+        firstLinkExpiresAt = System.currentTimeMillis() / 1000 + 10
+
+        download().getOrThrow()
+
+        assertInstalled(File(workDir, "games/Test Game"))
+        assertEquals(0, rejectedChunks.get())
+        assertEquals(2, secureLinkRequests.get())
+    }
+
+    @Test
+    fun download_existingManifestIsLeftToGogdl() {
+        File(workDir, "manifests").mkdirs()
+        File(workDir, "manifests/$PRODUCT_ID").writeText("{}")
+
+        val error = download().exceptionOrNull()
+
+        assertTrue(error is GOGDepotDownloader.UnsupportedBuildException)
+    }
+
+    @Test
+    fun download_generationOneBuildIsLeftToGogdl() {
+        routes["/products/$PRODUCT_ID/os/windows/builds"] =
+            """{"items":[{"build_id":"1","generation":1,"link":"$baseUrl/meta/build"}]}""".toByteArray()
+
+        val error = download().exceptionOrNull()
+
+        assertTrue(error is GOGDepotDownloader.UnsupportedBuildException)
+    }
+
+    companion object {
+        private const val PRODUCT_ID = "1207658924"
+        private const val BUILD_ID = "5551"
+        private const val CHUNK_SIZE = 256 * 1024
+
+        private fun zlib(text: String): ByteArray = zlib(text.toByteArray())
+
+        private fun zlib(bytes: ByteArray): ByteArray {
+            val out = ByteArrayOutputStream()
+            DeflaterOutputStream(out).use { it.write(bytes) }
+            return out.toByteArray()
+        }
+
+        private fun md5(bytes: ByteArray): String =
+            MessageDigest.getInstance("MD5").digest(bytes).joinToString("") { "%02x".format(it) }
+    }
+}
@@ -0,0 +1,156 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import kotlin.system.measureNanoTime
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class CustomGameDiscoveryTest {
+
+    private lateinit var root: File
+    private lateinit var storeFile: File
+    private val discoveries = mutableListOf<CustomGameDiscovery>()
+
+    @Before
+    fun setUp() {
+        root = Files.createTempDirectory("custom_games_").toFile()
+        storeFile = File(root, "discovery.bin")
+    }
+
+    @After
+    fun tearDown() {
+        discoveries.forEach { it.close() }
+        root.deleteRecursively()
+    }
+
+    private fun newDiscovery() = CustomGameDiscovery(
+        storeFile = storeFile,
+        readGameId = { folder -> File(folder, ".gamenative").takeIf { it.isFile }?.readText()?.trim()?.toIntOrNull() },
+    ).also { discoveries += it }
+
+    private fun write(path: String, bytes: Int = 1): File =
+        File(root, path).apply {
+            parentFile!!.mkdirs()
+            writeBytes(ByteArray(bytes))
+        }
+
+    @Test
+    fun scanFindsExecutablesImagesAndStoredId() {
+        write("Game/game.exe")
+        write("Game/unins000.exe")
+        write("Game/Binaries/Launcher.exe")
+        write("Game/Binaries/Deep/Hidden.exe")
+        write("Game/icon.ico")
+        write("Game/steamgriddb_logo.png")
+        File(root, "Game/.gamenative").writeText("1234")
+
+        val record = newDiscovery().discover(File(root, "Game"))!!
+
+        assertEquals(setOf("game.exe", "Binaries/Launcher.exe"), record.executables.toSet())
+        assertNull(record.uniqueExecutable)
+        assertEquals(setOf("icon.ico", "steamgriddb_logo.png"), record.images.toSet())
+        assertEquals("steamgriddb_logo.png", record.logo)
+        assertEquals(1234, record.gameId)
+        assertFalse(record.hasExtractedIcon)
+    }
+
+    @Test
+    fun deletedFoldersAreDropped() {
+        write("Game/game.exe")
+        val discovery = newDiscovery()
+        assertNotNull(discovery.discover(File(root, "Game")))
+
+        File(root, "Game").deleteRecursively()
+
+        assertNull(discovery.discover(File(root, "Game")))
+        assertEquals(0, discovery.size)
+    }
+
+    /**
+     * Discovers a library of several hundred game folders, then does it again from the stored
+     * cache the way the next app start does, and finally after a few folders changed.
+     */
+    @Test
+    fun unchangedFoldersAreNotListedAgain_severalHundredGames() {
+        val folders = (0 until GAME_COUNT).map { i ->
+            write("Game $i/Game$i.exe")
+            write("Game $i/Binaries/Helper$i.dll")
+            write("Game $i/Content/data.pak")
+            File(root, "Game $i")
+        }
+
+        val naiveNanos = measureNanoTime {
+            folders.forEach { folder ->
+                folder.listFiles()
+                folder.listFiles { f -> f.isDirectory }?.forEach { it.listFiles() }
+            }
+        }
+
+        val first = newDiscovery()
+        val firstNanos = measureNanoTime { folders.forEach { assertNotNull(first.discover(it)) } }
+        assertEquals(GAME_COUNT, first.scanCount)
+        first.save()
+
+        // Next start: everything comes from the stored cache
+        val second = newDiscovery()
+        val cachedNanos = measureNanoTime {
+            folders.forEach { assertEquals(1, second.discover(it)!!.executables.size) }
+        }
+        assertEquals(0, second.scanCount)
+
+        // A new executable in a subfolder only re-lists that game
+        val changed = listOf(3, 150, GAME_COUNT - 1)
+        changed.forEach { i ->
+            write("Game $i/Binaries/Tool$i.exe")
+            val binaries = File(folders[i], "Binaries")
+            binaries.setLastModified(binaries.lastModified() + 5_000)
+        }
+        folders.forEach { second.discover(it) }
+        assertEquals(changed.size, second.scanCount)
+        changed.forEach { i -> assertNull(second.discover(folders[i])!!.uniqueExecutable) }
+        assertEquals("Game0.exe", second.discover(folders[0])!!.uniqueExecutable)
+
+        println(
+            "$GAME_COUNT game folders: listing=${naiveNanos / 1_000_000}ms, " +
+                "first discovery=${firstNanos / 1_000_000}ms, from cache=${cachedNanos / 1_000_000}ms",
+        )
+    }
+
+    @Test
+    fun watchedFoldersReportChanges() {
+        write("Game/game.exe")
+        val folder = File(root, "Game")
+        val discovery = newDiscovery()
+        assertTrue(discovery.startWatching())
+        discovery.discover(folder)
+        val before = discovery.changes.value
+
+        write("Game/editor.exe")
+
+        // The watcher reports changes from its own thread
+        val deadline = System.currentTimeMillis() + 10_000
+        while (discovery.changes.value == before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertNotEquals(before, discovery.changes.value)
+        assertEquals(setOf("game.exe", "editor.exe"), discovery.discover(folder)!!.executables.toSet())
+    }
+
+    @Test
+    fun filesWithoutIconsAreNotParsedAgain() {
+        val exe = write("Game/game.exe", 16)
+        val outIco = File(exe.parentFile, "game" + CustomGameDiscovery.EXTRACTED_ICON_SUFFIX)
+        val discovery = newDiscovery()
+
+        assertFalse(discovery.extractIcon(exe, outIco))
+        assertTrue(discovery.extractIconAsync(exe, outIco).isCompleted)
+        assertFalse(outIco.exists())
+    }
+
+    companion object {
+        private const val GAME_COUNT = 400
+    }
+}
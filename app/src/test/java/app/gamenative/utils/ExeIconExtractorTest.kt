@@ -0,0 +1,185 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+import kotlin.system.measureNanoTime
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class ExeIconExtractorTest {
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("exe_icons_").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun extractsTheIconGroupIntoAnIcoFile() {
+        val image = ByteArray(2_000) { (it % 251).toByte() }
+        val exe = writePe(File(dir, "game.exe"), image, fileSize = 64 * 1024)
+        val ico = File(dir, "game.extracted.ico")
+
+        assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, ico))
+
+        val bytes = ico.readBytes()
+        val header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals(0, header.getShort(0).toInt())
+        assertEquals(1, header.getShort(2).toInt())
+        assertEquals(1, header.getShort(4).toInt())
+        assertEquals(32, bytes[6].toInt())
+        assertEquals(image.size, header.getInt(6 + 8))
+        assertEquals(22, header.getInt(6 + 12))
+        assertArrayEquals(image, bytes.copyOfRange(22, bytes.size))
+    }
+
+    @Test
+    fun rejectsFilesThatAreNotPeImages() {
+        val notPe = File(dir, "readme.exe").apply { writeBytes(ByteArray(4_096) { 'x'.code.toByte() }) }
+        val truncated = File(dir, "tiny.exe").apply { writeBytes(ByteArray(16)) }
+
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(notPe, File(dir, "a.ico")))
+        assertFalse(ExeIconExtractor.tryExtractMainIcon(truncated, File(dir, "b.ico")))
+    }
+
+    @Test
+    fun batchExtractionCoversEveryRequest() = runBlocking {
+        val requests = (0 until 24).map { i ->
+            val exe = if (i % 6 == 0) {
+                File(dir, "broken$i.exe").apply { writeBytes(ByteArray(512)) }
+            } else {
+                writePe(File(dir, "game$i.exe"), ByteArray(100 + i), fileSize = 32 * 1024)
+            }
+            ExeIconExtractor.IconRequest(exe, File(dir, "game$i.extracted.ico"))
+        }
+
+        val results = ExeIconExtractor.extractIcons(requests, parallelism = 4)
+
+        assertEquals(requests.map { !it.exeFile.name.startsWith("broken") }, results)
+        requests.filterIndexed { i, _ -> results[i] }.forEach { assertTrue(it.outIcoFile.isFile) }
+    }
+
+    /**
+     * Extracts the icon of a large executable, with its resources at the end as linkers lay them
+     * out, and compares against reading the whole file the way extraction used to.
+     */
+    @Test
+    fun largeExecutable_timeAndAllocation() {
+        val image = ByteArray(40_000) { it.toByte() }
+        val exe = writePe(File(dir, "huge.exe"), image, fileSize = LARGE_FILE_SIZE)
+        val ico = File(dir, "huge.extracted.ico")
+
+        val wholeFileNanos = measureNanoTime {
+            RandomAccessFile(exe, "r").use { raf ->
+                val buf = ByteArray(raf.length().toInt())
+                raf.readFully(buf)
+            }
+        }
+
+        val allocatedBefore = threadAllocatedBytes()
+        val streamingNanos = measureNanoTime { assertTrue(ExeIconExtractor.tryExtractMainIcon(exe, ico)) }
+        val allocated = threadAllocatedBytes()?.let { after -> after - allocatedBefore!! }
+
+        assertArrayEquals(image, ico.readBytes().copyOfRange(22, 22 + image.size))
+        // Headers, a few resource pages and the icon itself, nowhere near the file size
+        if (allocated != null) assertTrue("Allocated $allocated bytes", allocated < 4L * 1024 * 1024)
+
+        println(
+            "Icon from ${LARGE_FILE_SIZE / (1024 * 1024)} MiB exe: whole-file read=${wholeFileNanos / 1_000_000}ms " +
+                "(${LARGE_FILE_SIZE / 1024} KiB heap), streaming=${streamingNanos / 1_000}us " +
+                "(${allocated?.let { "${it / 1024} KiB" } ?: "n/a"} allocated)",
+        )
+    }
+
+    private fun threadAllocatedBytes(): Long? {
+        val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean ?: return null
+        return bean.getThreadAllocatedBytes(Thread.currentThread().id).takeIf { it >= 0 }
+    }
+
+    /**
+     * Writes a PE32 file of [fileSize] bytes with a single .rsrc section at its end holding one
+     * RT_GROUP_ICON entry that points at one RT_ICON image.
+     */
+    private fun writePe(file: File, image: ByteArray, fileSize: Int): File {
+        val rsrcVa = 0x10000
+        val rsrcSize = 0x200 + image.size
+        val rsrcOff = fileSize - rsrcSize
+
+        val headers = ByteBuffer.allocate(0x400).order(ByteOrder.LITTLE_ENDIAN)
+        headers.put(0, 'M'.code.toByte()).put(1, 'Z'.code.toByte())
+        headers.putInt(0x3C, 0x80)
+        headers.put(0x80, 'P'.code.toByte()).put(0x81, 'E'.code.toByte())
+        val coff = 0x84
+        headers.putShort(coff, 0x14C.toShort())
+        headers.putShort(coff + 2, 1) // sections
+        headers.putShort(coff + 16, 224) // optional header size
+        val optional = coff + 20
+        headers.putShort(optional, 0x10B.toShort())
+        headers.putInt(optional + 96 + 2 * 8, rsrcVa)
+        headers.putInt(optional + 96 + 2 * 8 + 4, rsrcSize)
+        val section = optional + 224
+        ".rsrc".forEachIndexed { i, c -> headers.put(section + i, c.code.toByte()) }
+        headers.putInt(section + 8, rsrcSize)
+        headers.putInt(section + 12, rsrcVa)
+        headers.putInt(section + 16, rsrcSize)
+        headers.putInt(section + 20, rsrcOff)
+
+        // Directories: root(0x00) -> RT_ICON(0x20) -> lang(0x38), RT_GROUP_ICON(0x50) -> lang(0x68)
+        val rsrc = ByteBuffer.allocate(rsrcSize).order(ByteOrder.LITTLE_ENDIAN)
+        fun directory(at: Int, vararg entries: Pair<Int, Int>) {
+            rsrc.putShort(at + 14, entries.size.toShort())
+            entries.forEachIndexed { i, (id, target) ->
+                rsrc.putInt(at + 16 + i * 8, id)
+                rsrc.putInt(at + 20 + i * 8, target)
+            }
+        }
+        val subdir = 0x80000000.toInt()
+        directory(0x00, 3 to (0x20 or subdir), 14 to (0x50 or subdir))
+        directory(0x20, 1 to (0x38 or subdir))
+        directory(0x38, 0x409 to 0x80) // data entry
+        directory(0x50, 1 to (0x68 or subdir))
+        directory(0x68, 0x409 to 0x90) // data entry
+
+        val groupAt = 0xA0
+        val imageAt = 0x200
+        rsrc.putInt(0x80, rsrcVa + imageAt).putInt(0x84, image.size)
+        rsrc.putInt(0x90, rsrcVa + groupAt).putInt(0x94, 6 + 14)
+
+        rsrc.putShort(groupAt + 2, 1) // type icon
+        rsrc.putShort(groupAt + 4, 1) // count
+        rsrc.put(groupAt + 6, 32).put(groupAt + 7, 32)
+        rsrc.putShort(groupAt + 10, 1) // planes
+        rsrc.putShort(groupAt + 12, 32) // bit count
+        rsrc.putInt(groupAt + 14, image.size)
+        rsrc.putShort(groupAt + 18, 1) // RT_ICON id
+        rsrc.position(imageAt)
+        rsrc.put(image)
+
+        RandomAccessFile(file, "rw").use { raf ->
+            // Sparse in between, like the code and data sections of a real game binary
+            raf.setLength(fileSize.toLong())
+            raf.seek(0)
+            raf.write(headers.array())
+            raf.seek(rsrcOff.toLong())
+            raf.write(rsrc.array())
+        }
+        return file
+    }
+
+    companion object {
+        private const val LARGE_FILE_SIZE = 256 * 1024 * 1024
+    }
+}
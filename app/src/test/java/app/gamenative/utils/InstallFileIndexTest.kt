@@ -0,0 +1,205 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import kotlin.system.measureNanoTime
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class InstallFileIndexTest {
+
+    private lateinit var installDir: File
+
+    @Before
+    fun setUp() {
+        installDir = Files.createTempDirectory("install_index_").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        InstallFileIndex.forget(installDir)
+        installDir.deleteRecursively()
+    }
+
+    /** Makes every directory look older, so changes made right after indexing move their mtime. */
+    private fun backdateDirectories() {
+        installDir.walkTopDown().filter { it.isDirectory }.forEach { it.setLastModified(it.lastModified() - 10_000) }
+    }
+
+    private fun write(path: String, bytes: Int): File =
+        File(installDir, path).apply {
+            parentFile!!.mkdirs()
+            writeBytes(ByteArray(bytes))
+        }
+
+    @Test
+    fun rebuildIndexesEveryFileAndIsReloadedFromDisk() {
+        write("game.exe", 100)
+        write("bin/steam_api64.dll", 20)
+        write("data/level1/pak0.pak", 1_000)
+
+        val index = InstallFileIndex.rebuild(installDir)
+        assertEquals(3, index.fileCount)
+        assertEquals(1_120L, index.totalSize)
+        assertTrue(File(installDir, InstallFileIndex.INDEX_FILE_NAME).isFile)
+
+        // A fresh process only has the stored index
+        InstallFileIndex.release(installDir)
+
+        val reloaded = InstallFileIndex.peek(installDir)!!
+        assertEquals(1_120L, reloaded.totalSize)
+        assertEquals(listOf("bin/steam_api64.dll"), reloaded.findByName(Regex("steam_api(64)?\\.dll")).map { it.path })
+    }
+
+    @Test
+    fun updatesKeepTheTotalSizeInStep() {
+        val dll = write("bin/steam_api.dll", 50)
+        val index = InstallFileIndex.rebuild(installDir)
+
+        dll.writeBytes(ByteArray(10))
+        index.update(dll)
+        val backup = write("bin/steam_api.dll.orig", 50)
+        index.update(backup)
+        assertEquals(60L, index.totalSize)
+
+        backup.delete()
+        index.update(backup)
+        assertEquals(10L, index.totalSize)
+        assertNull(index.get("bin/steam_api.dll.orig"))
+
+        index.save()
+        InstallFileIndex.forget(installDir)
+        assertNull(InstallFileIndex.peek(installDir))
+    }
+
+    @Test
+    fun storedIndexCatchesUpWithFilesWrittenFromOutside() {
+        write("game.exe", 100)
+        write("bin/steam_api64.dll", 20)
+        write("data/pak0.pak", 1_000)
+        backdateDirectories()
+        InstallFileIndex.rebuild(installDir)
+        InstallFileIndex.release(installDir)
+
+        // A launcher update and a mod, both behind the index's back
+        File(installDir, "bin/steam_api64.dll").delete()
+        write("bin/steam_api64.dll", 30)
+        File(installDir, "data/pak0.pak").delete()
+        write("steam_settings/configs.user.ini", 5)
+        write("mod.dll", 7)
+
+        val index = InstallFileIndex.peek(installDir)!!
+        assertEquals(100L + 30 + 5 + 7, index.totalSize)
+        assertNull(index.get("data/pak0.pak"))
+        assertEquals(5L, index.get("steam_settings/configs.user.ini")!!.size)
+        assertFalse(index.validate())
+
+        // The caught up index is what gets stored
+        InstallFileIndex.release(installDir)
+        assertEquals(4, InstallFileIndex.peek(installDir)!!.fileCount)
+    }
+
+    @Test
+    fun filesInUnchangedDirectoriesAreNotReadAgain() {
+        write("game.exe", 100)
+        val pak = write("data/pak0.pak", 1_000)
+        backdateDirectories()
+        InstallFileIndex.rebuild(installDir)
+        InstallFileIndex.release(installDir)
+
+        // Rewritten in place: the directory does not change, so only an update picks it up
+        pak.writeBytes(ByteArray(10))
+        val index = InstallFileIndex.peek(installDir)!!
+        assertEquals(1_100L, index.totalSize)
+
+        index.update(pak)
+        assertEquals(110L, index.totalSize)
+    }
+
+    @Test
+    fun getOutsideAnInstallDoesNotStoreAnIndex() {
+        write("save/slot1.sav", 10)
+
+        assertEquals(10L, InstallFileIndex.get(installDir).totalSize)
+        assertFalse(File(installDir, InstallFileIndex.INDEX_FILE_NAME).exists())
+        assertNull(InstallFileIndex.peek(installDir))
+
+        assertEquals(10L, InstallFileIndex.forInstall(installDir).totalSize)
+        assertTrue(File(installDir, InstallFileIndex.INDEX_FILE_NAME).isFile)
+    }
+
+    @Test
+    fun nameLookupsRespectMaxDepthAndIgnoreCase() {
+        write("STEAM_API.DLL", 1)
+        var dir = ""
+        for (i in 1..12) dir += "level$i/"
+        write("${dir}steam_api.dll", 1)
+
+        val index = InstallFileIndex.get(installDir)
+
+        assertEquals(listOf("STEAM_API.DLL"), index.findByName(Regex("steam_api\\.dll"), maxDepth = 10).map { it.path })
+        assertEquals(2, index.findByName(Regex("steam_api\\.dll")).size)
+    }
+
+    @Test
+    fun manifestIndexKeepsExecutableFlags() {
+        write("Binaries/Win64/Game-Win64-Shipping.exe", 10)
+        write("tools/helper", 10)
+
+        val index = InstallFileIndex.create(
+            installDir,
+            listOf(
+                InstallFileIndex.Entry("Binaries\\Win64\\Game-Win64-Shipping.exe", 5_000_000, 0L, InstallFileIndex.FLAG_EXECUTABLE),
+                InstallFileIndex.Entry("tools\\helper", 10, 0L, InstallFileIndex.FLAG_EXECUTABLE),
+                InstallFileIndex.Entry("readme.txt", 10, 0L),
+            ),
+        )
+
+        assertTrue(index.fromManifest)
+        assertEquals(
+            listOf("Binaries/Win64/Game-Win64-Shipping.exe", "tools/helper"),
+            index.executables().map { it.path },
+        )
+        assertTrue(index.get("tools/helper")!!.mtime > 0)
+        assertEquals(0L, index.get("readme.txt")!!.mtime)
+    }
+
+    /**
+     * Compares the repeated walks the launch path used to do against one index build followed
+     * by index queries.
+     */
+    @Test
+    fun walkVersusIndex_largeInstall() {
+        for (dir in 0 until 100) {
+            for (file in 0 until 50) write("content/d$dir/f$file.bin", 16)
+        }
+        write("bin/steam_api64.dll", 16)
+
+        val walkNanos = measureNanoTime {
+            repeat(QUERIES) {
+                installDir.walkTopDown().maxDepth(10).count { it.isFile && it.name.startsWith("steam_api", ignoreCase = true) }
+                installDir.walkTopDown().filter { it.isFile }.sumOf { it.length() }
+            }
+        }
+
+        val buildNanos = measureNanoTime { InstallFileIndex.rebuild(installDir) }
+        val index = InstallFileIndex.get(installDir)
+        val queryNanos = measureNanoTime {
+            repeat(QUERIES) {
+                assertEquals(1, index.findByName(Regex("steam_api(64)?\\.dll"), maxDepth = 10).size)
+                assertEquals(5_001L * 16, index.totalSize)
+            }
+        }
+
+        println(
+            "${index.fileCount} files, $QUERIES launches: walks=${walkNanos / 1_000_000}ms, " +
+                "index build=${buildNanos / 1_000_000}ms + queries=${queryNanos / 1_000_000}ms",
+        )
+    }
+
+    companion object {
+        private const val QUERIES = 5
+    }
+}
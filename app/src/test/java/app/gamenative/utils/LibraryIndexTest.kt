@@ -0,0 +1,187 @@
+package app.gamenative.utils
+
+import app.gamenative.data.GameSource
+import app.gamenative.data.LibraryItem
+import app.gamenative.enums.AppType
+import kotlin.random.Random
+import kotlin.system.measureNanoTime
+import org.junit.Assert.*
+import org.junit.Test
+
+class LibraryIndexTest {
+
+    private fun entry(
+        source: GameSource,
+        id: Int,
+        name: String,
+        installed: Boolean = false,
+        type: AppType = AppType.game,
+        owners: List<Int> = emptyList(),
+    ) = LibraryIndex.Entry(
+        item = LibraryItem(appId = "${source.name}_$id", name = name, gameSource = source),
+        type = type,
+        installed = installed,
+        ownerAccountIds = owners,
+    )
+
+    /**
+     * The filtering and ordering LibraryViewModel used before the index: filter every list,
+     * then sort installed first and by lower-cased name.
+     */
+    private fun naiveQuery(all: List<LibraryIndex.Entry>, query: LibraryIndex.Query): List<String> {
+        val text = query.text.trim()
+        return all.asSequence()
+            .filter { it.source in query.sources && it.source !in query.excludedSources }
+            .filter { it.source != GameSource.STEAM || it.type in query.steamTypes }
+            .filter { it.source != GameSource.STEAM || query.steamFilter?.invoke(it) != false }
+            .filter { text.isEmpty() || it.item.name.contains(text, ignoreCase = true) }
+            .filter { !query.installedOnly || it.installed }
+            .sortedWith(compareBy<LibraryIndex.Entry> { if (it.installed) 0 else 1 }.thenBy { it.item.name.lowercase() }.thenBy { it.key })
+            .map { it.key }
+            .toList()
+    }
+
+    @Test
+    fun queriesMatchTheNaiveFilterAndOrder() {
+        val random = Random(34)
+        val all = syntheticLibrary(2_000, random)
+        val index = LibraryIndex()
+        GameSource.entries.forEach { source -> index.replaceSource(source, all.filter { it.source == source }) }
+
+        val queries = listOf(
+            LibraryIndex.Query(),
+            LibraryIndex.Query(text = "wi"),
+            LibraryIndex.Query(text = "Dark "),
+            LibraryIndex.Query(text = "legend", installedOnly = true),
+            LibraryIndex.Query(text = "xyz-not-there"),
+            LibraryIndex.Query(steamTypes = setOf(AppType.game, AppType.demo), sources = setOf(GameSource.STEAM, GameSource.GOG)),
+            LibraryIndex.Query(excludedSources = setOf(GameSource.CUSTOM_GAME), steamFilter = { 7 in it.ownerAccountIds }),
+        )
+
+        queries.forEach { query ->
+            val expected = naiveQuery(all, query)
+            val result = index.query(query)
+            assertEquals(expected, result.items.map { it.appId })
+            assertEquals(expected.size, result.total)
+            assertEquals((0 until expected.size).toList(), result.items.map { it.index })
+
+            // A limited query returns the same prefix
+            assertEquals(expected.take(25), index.query(query, limit = 25).items.map { it.appId })
+        }
+    }
+
+    @Test
+    fun replacingASourceOnlyReportsRealChanges() {
+        val index = LibraryIndex()
+        val games = listOf(entry(GameSource.GOG, 1, "Witcher 3"), entry(GameSource.GOG, 2, "Gwent"))
+
+        assertTrue(index.replaceSource(GameSource.GOG, games))
+        assertFalse(index.replaceSource(GameSource.GOG, games.toList()))
+
+        assertTrue(index.replaceSource(GameSource.GOG, listOf(games[0].copy(installed = true))))
+        val result = index.query(LibraryIndex.Query(text = "w"))
+        assertEquals(listOf("GOG_1"), result.items.map { it.appId })
+        assertEquals(1, result.installedCountBySource[GameSource.GOG])
+        assertEquals(0, index.query(LibraryIndex.Query(text = "gwent")).total)
+    }
+
+    @Test
+    fun renamedEntriesAreFoundByTheirNewName() {
+        val index = LibraryIndex()
+        index.put(entry(GameSource.STEAM, 10, "Portal"))
+        index.put(entry(GameSource.STEAM, 10, "Portal 2"))
+
+        assertEquals(listOf("STEAM_10"), index.query(LibraryIndex.Query(text = "tal 2")).items.map { it.appId })
+        index.remove("STEAM_10")
+        assertEquals(0, index.size)
+        assertEquals(0, index.query(LibraryIndex.Query(text = "portal")).total)
+    }
+
+    @Test
+    fun installStateUpdatesReorderTheSource() {
+        val index = LibraryIndex()
+        index.replaceSource(
+            GameSource.STEAM,
+            listOf(
+                entry(GameSource.STEAM, 1, "Alpha").copy(installDirName = "Alpha"),
+                entry(GameSource.STEAM, 2, "Beta").copy(installDirName = "Beta"),
+            ),
+        )
+        assertEquals(listOf("STEAM_1", "STEAM_2"), index.query(LibraryIndex.Query()).items.map { it.appId })
+
+        index.updateInstalled(GameSource.STEAM) { it.installDirName == "Beta" }
+
+        assertEquals(listOf("STEAM_2", "STEAM_1"), index.query(LibraryIndex.Query()).items.map { it.appId })
+        assertEquals(listOf("STEAM_2"), index.query(LibraryIndex.Query(installedOnly = true)).items.map { it.appId })
+    }
+
+    /**
+     * Types a search into a 10,000 entry library one key at a time, comparing the naive
+     * filter-and-sort against index queries for the first page.
+     */
+    @Test
+    fun perKeystrokeLatency_tenThousandEntries() {
+        val all = syntheticLibrary(10_000, Random(10))
+        val index = LibraryIndex()
+        val buildNanos = measureNanoTime {
+            GameSource.entries.forEach { source -> index.replaceSource(source, all.filter { it.source == source }) }
+        }
+
+        val typed = "the legend of dark"
+        val keystrokes = (1..typed.length).map { typed.substring(0, it) }
+
+        // Warm both paths up once so the JIT does not skew the first keystrokes
+        keystrokes.forEach {
+            naiveQuery(all, LibraryIndex.Query(text = it))
+            index.query(LibraryIndex.Query(text = it), limit = PAGE_SIZE)
+        }
+
+        val naiveNanos = keystrokes.map { text ->
+            measureNanoTime { naiveQuery(all, LibraryIndex.Query(text = text)).take(PAGE_SIZE) }
+        }
+        val indexNanos = keystrokes.map { text ->
+            measureNanoTime { index.query(LibraryIndex.Query(text = text), limit = PAGE_SIZE) }
+        }
+
+        keystrokes.forEach { text ->
+            assertEquals(
+                naiveQuery(all, LibraryIndex.Query(text = text)).take(PAGE_SIZE),
+                index.query(LibraryIndex.Query(text = text), limit = PAGE_SIZE).items.map { it.appId },
+            )
+        }
+
+        println(
+            "Library of ${all.size}, build=${buildNanos / 1_000_000}ms; per keystroke: " +
+                "naive avg=${naiveNanos.average().toLong() / 1_000}us max=${naiveNanos.max() / 1_000}us, " +
+                "index avg=${indexNanos.average().toLong() / 1_000}us max=${indexNanos.max() / 1_000}us",
+        )
+    }
+
+    private fun syntheticLibrary(size: Int, random: Random): List<LibraryIndex.Entry> {
+        val words = listOf(
+            "The", "Legend", "of", "Dark", "Souls", "Witcher", "Portal", "Half-Life", "Space", "Quest",
+            "Tales", "Kingdom", "Wild", "Hunt", "Age", "Empires", "Star", "Wars", "Doom", "Eternal",
+        )
+        val types = listOf(AppType.game, AppType.game, AppType.game, AppType.demo, AppType.application, AppType.tool)
+        return (0 until size).map { id ->
+            val source = when (id % 10) {
+                0 -> GameSource.GOG
+                1 -> GameSource.CUSTOM_GAME
+                else -> GameSource.STEAM
+            }
+            val name = (0 until random.nextInt(1, 5)).joinToString(" ") { words.random(random) } + " $id"
+            entry(
+                source = source,
+                id = id,
+                name = name,
+                installed = random.nextInt(8) == 0,
+                type = if (source == GameSource.STEAM) types.random(random) else AppType.game,
+                owners = listOf(random.nextInt(10)),
+            )
+        }
+    }
+
+    companion object {
+        private const val PAGE_SIZE = 50
+    }
+}
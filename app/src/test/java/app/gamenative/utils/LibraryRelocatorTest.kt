@@ -0,0 +1,151 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.LinkOption
+import kotlin.system.measureNanoTime
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class LibraryRelocatorTest {
+
+    private lateinit var root: File
+    private lateinit var source: File
+    private lateinit var target: File
+
+    @Before
+    fun setUp() {
+        root = Files.createTempDirectory("relocation_").toFile()
+        source = File(root, "old").apply { mkdirs() }
+        target = File(root, "new")
+    }
+
+    @After
+    fun tearDown() {
+        root.deleteRecursively()
+    }
+
+    private fun write(dir: File, path: String, bytes: Int): File =
+        File(dir, path).apply {
+            parentFile!!.mkdirs()
+            writeBytes(ByteArray(bytes) { (it * 31 + path.length).toByte() })
+        }
+
+    private fun library(games: Int, filesPerGame: Int, bytes: Int): Map<String, ByteArray> {
+        val files = mutableMapOf<String, ByteArray>()
+        for (g in 0 until games) {
+            for (f in 0 until filesPerGame) {
+                val path = "Game $g/data/file$f.bin"
+                files[path] = write(source, path, bytes).readBytes()
+            }
+        }
+        return files
+    }
+
+    private fun assertMoved(files: Map<String, ByteArray>) {
+        files.forEach { (path, bytes) ->
+            assertArrayEquals(path, bytes, File(target, path).readBytes())
+            assertFalse(path, File(source, path).exists())
+        }
+        assertFalse(File(target, LibraryRelocator.JOURNAL_FILE_NAME).exists())
+        assertTrue(target.walkTopDown().none { it.name.endsWith(".part") })
+    }
+
+    @Test
+    fun sameVolumeGamesAreRenamedWhole() = runBlocking {
+        val files = library(games = 3, filesPerGame = 5, bytes = 1_000)
+
+        val result = LibraryRelocator(source.toPath(), target.toPath()).run()
+
+        assertEquals(3, result.renamedEntries)
+        assertEquals(0, result.copiedFiles)
+        assertMoved(files)
+        assertEquals(0, source.listFiles()!!.size)
+    }
+
+    @Test
+    fun gamesAreCopiedWhenRenameIsNotPossible() = runBlocking {
+        val files = library(games = 3, filesPerGame = 5, bytes = 100_000)
+        // An earlier move already created one of the games at the target
+        File(target, "Game 1").mkdirs()
+        val progress = mutableListOf<LibraryRelocator.Progress>()
+
+        val result = LibraryRelocator(source.toPath(), target.toPath(), transferSize = 16 * 1024, allowRename = true)
+            .run { synchronized(progress) { progress += it } }
+
+        assertEquals(2, result.renamedEntries)
+        assertEquals(5, result.copiedFiles)
+        assertEquals(5 * 100_000L, result.copiedBytes)
+        assertMoved(files)
+        assertFalse(File(source, "Game 1").exists())
+        // Renamed games count their files, so both phases report against one total
+        assertEquals(setOf(15), progress.map { it.totalFiles }.toSet())
+        assertEquals(15, progress.maxOf { it.movedFiles })
+    }
+
+    @Test
+    fun symbolicLinksAreRecreatedWhenCopying() = runBlocking {
+        val files = library(games = 1, filesPerGame = 2, bytes = 1_000)
+        val link = File(source, "Game 0/current").toPath()
+        Files.createSymbolicLink(link, File("data").toPath())
+
+        val result = LibraryRelocator(source.toPath(), target.toPath(), allowRename = false).run()
+
+        assertEquals(3, result.copiedFiles)
+        assertMoved(files)
+        val moved = File(target, "Game 0/current").toPath()
+        assertTrue(Files.isSymbolicLink(moved))
+        assertEquals(File("data").toPath(), Files.readSymbolicLink(moved))
+        assertFalse(Files.exists(link, LinkOption.NOFOLLOW_LINKS))
+    }
+
+    @Test
+    fun interruptedMoveResumesFromTheJournal() = runBlocking {
+        val files = library(games = 2, filesPerGame = 3, bytes = 10_000)
+
+        // State after a crash: one file reached the target but its source was not deleted yet,
+        // another was cut off half way through its copy
+        val done = "Game 0/data/file0.bin"
+        File(target, done).apply { parentFile!!.mkdirs() }.writeBytes(files.getValue(done))
+        File(target, "Game 0/data/file1.bin.part").writeBytes(ByteArray(123))
+        File(target, LibraryRelocator.JOURNAL_FILE_NAME).writeText("${source.toPath().toAbsolutePath()}\n$done\n")
+
+        val result = LibraryRelocator(source.toPath(), target.toPath(), allowRename = false).run()
+
+        assertEquals(1, result.resumedFiles)
+        assertEquals(files.size - 1, result.copiedFiles)
+        assertMoved(files)
+    }
+
+    /**
+     * Moves a library of many small files, one file at a time the way the move used to work and
+     * with the parallel copy.
+     */
+    @Test
+    fun parallelCopy_manyFiles() = runBlocking {
+        val files = library(games = 20, filesPerGame = 50, bytes = 32 * 1024)
+
+        val parallelNanos = measureNanoTime {
+            LibraryRelocator(source.toPath(), target.toPath(), parallelism = 4, allowRename = false).run()
+        }
+        assertMoved(files)
+
+        // Move it back one file at a time
+        val serialNanos = measureNanoTime {
+            LibraryRelocator(target.toPath(), source.toPath(), parallelism = 1, allowRename = false).run()
+        }
+        assertEquals(files.size, source.walkTopDown().count { it.isFile })
+
+        val renameNanos = measureNanoTime {
+            LibraryRelocator(source.toPath(), target.toPath()).run()
+        }
+
+        println(
+            "${files.size} files: serial copy=${serialNanos / 1_000_000}ms, " +
+                "parallel copy=${parallelNanos / 1_000_000}ms, rename=${renameNanos / 1_000}us",
+        )
+    }
+}
@@ -0,0 +1,152 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class ResponseCacheTest {
+
+    private lateinit var cacheDir: File
+    private var now = 1_000_000L
+
+    @Before
+    fun setUp() {
+        cacheDir = Files.createTempDirectory("response_cache_").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        cacheDir.deleteRecursively()
+    }
+
+    private fun cache(maxEntries: Int = 100) = ResponseCache(
+        name = "test",
+        ttlMillis = TTL,
+        maxEntries = maxEntries,
+        clock = { now },
+    ).apply { attach(File(cacheDir, "cache.json")) }
+
+    @Test
+    fun entriesSurviveANewInstanceUntilTheyExpire() {
+        cache().putAll(mapOf("Adreno|Portal" to "a", "Adreno|Half-Life" to "b"))
+
+        val reopened = cache()
+        assertEquals("a", reopened.get("Adreno|Portal"))
+        assertEquals(2, reopened.size())
+
+        now += TTL + 1
+        assertNull(cache().get("Adreno|Portal"))
+    }
+
+    @Test
+    fun leastRecentlyUsedEntriesAreEvicted() {
+        val cache = cache(maxEntries = 3)
+        cache.put("a", "1")
+        cache.put("b", "2")
+        cache.put("c", "3")
+        cache.get("a")
+        cache.put("d", "4")
+
+        assertNull(cache.get("b"))
+        assertEquals("1", cache.get("a"))
+        assertEquals(3, cache.size())
+    }
+
+    @Test
+    fun removalsAndEvictionsSurviveANewInstance() {
+        val cache = cache(maxEntries = 2)
+        cache.put("a", "1")
+        cache.put("b", "2")
+        cache.put("c", "3")
+        cache.remove("b")
+
+        val reopened = cache(maxEntries = 2)
+        assertNull(reopened.get("a"))
+        assertNull(reopened.get("b"))
+        assertEquals("3", reopened.get("c"))
+        assertEquals(1, reopened.size())
+    }
+
+    @Test
+    fun fileIsCompactedAsEntriesAreRewritten() {
+        val cache = cache()
+        repeat(1_000) { cache.put("key${it % 10}", "value$it") }
+
+        val file = File(cacheDir, "cache.json")
+        assertTrue(file.readLines().size <= 10 * 2 + 100)
+        val reopened = cache()
+        assertEquals(10, reopened.size())
+        assertEquals("value999", reopened.get("key9"))
+    }
+
+    @Test
+    fun missesOfABatchAreLoadedInOneCall() = runBlocking {
+        val cache = cache()
+        cache.put("cached", "hit")
+        val requested = mutableListOf<List<String>>()
+
+        val result = cache.getOrLoadAll(listOf("cached", "x", "y", "x")) { keys ->
+            requested += keys
+            keys.associateWith { "loaded-$it" }
+        }
+
+        assertEquals(listOf(listOf("x", "y")), requested)
+        assertEquals(mapOf("cached" to "hit", "x" to "loaded-x", "y" to "loaded-y"), result)
+        assertEquals(1, cache.hitCount)
+        assertEquals(2, cache.missCount)
+    }
+
+    @Test
+    fun concurrentLoadsOfTheSameKeyShareOneRequest() = runBlocking {
+        val cache = cache()
+        val loads = AtomicInteger()
+        val release = CompletableDeferred<Unit>()
+
+        val callers = (0 until 16).map {
+            async(Dispatchers.Default) {
+                cache.getOrLoad("Adreno|Portal") {
+                    loads.incrementAndGet()
+                    release.await()
+                    "response"
+                }
+            }
+        }
+        // Let every caller register before the single load completes
+        while (cache.hitCount + cache.missCount == 0) Thread.sleep(1)
+        Thread.sleep(50)
+        release.complete(Unit)
+
+        assertTrue(callers.awaitAll().all { it == "response" })
+        assertEquals(1, loads.get())
+    }
+
+    @Test
+    fun failedLoadsAreNotCached() = runBlocking {
+        val cache = cache()
+
+        assertNull(cache.getOrLoad("key") { null })
+        assertEquals("value", cache.getOrLoad("key") { "value" })
+        assertEquals(2, cache.missCount)
+    }
+
+    @Test
+    fun unreadableCacheFileIsDiscarded() {
+        File(cacheDir, "cache.json").writeText("not json")
+
+        assertEquals(0, cache().size())
+        assertFalse(File(cacheDir, "cache.json").exists())
+    }
+
+    companion object {
+        private const val TTL = 60_000L
+    }
+}
@@ -0,0 +1,127 @@
+package com.winlator.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.winlator.core.FileUtils;
+import com.winlator.xenvironment.ImageFs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContainerRegistryTest {
+    private File homeDir;
+    private ContainerRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        homeDir = Files.createTempDirectory("container_registry_").toFile();
+        registry = new ContainerRegistry(homeDir);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(homeDir);
+    }
+
+    private Container createOnDisk(String id, String name) {
+        File rootDir = new File(homeDir, ImageFs.USER+"-"+id);
+        rootDir.mkdirs();
+        Container container = new Container(id);
+        container.setRootDir(rootDir);
+        container.setName(name);
+        container.saveData();
+        return container;
+    }
+
+    @Test
+    public void looksUpContainersById() {
+        createOnDisk("STEAM_1", "One");
+        createOnDisk("STEAM_2", "Two");
+
+        Container first = registry.getContainer("STEAM_1");
+        assertEquals("One", first.getName());
+        assertTrue(registry.hasContainer("STEAM_2"));
+        assertFalse(registry.hasContainer("STEAM_3"));
+        assertNull(registry.getContainer(""));
+
+        ArrayList<Container> all = registry.getContainers();
+        assertEquals(2, all.size());
+        assertTrue(all.stream().anyMatch(container -> container.getName().equals("One")));
+    }
+
+    @Test
+    public void unsavedChangesStayWithTheirCaller() {
+        createOnDisk("STEAM_1", "One");
+
+        Container overridden = registry.getContainer("STEAM_1");
+        overridden.setName("Temporary override");
+
+        Container other = registry.getContainer("STEAM_1");
+        assertNotSame(overridden, other);
+        assertEquals("One", other.getName());
+    }
+
+    @Test
+    public void reparsesConfigsChangedOnDisk() throws Exception {
+        Container writer = createOnDisk("STEAM_1", "Before");
+        Container before = registry.getContainer("STEAM_1");
+        assertEquals("Before", before.getName());
+
+        writer.setName("After, with a longer name");
+        writer.saveData();
+
+        Container after = registry.getContainer("STEAM_1");
+        assertNotSame(before, after);
+        assertEquals("After, with a longer name", after.getName());
+    }
+
+    @Test
+    public void savesThroughTheRegistryReplaceTheCachedConfig() {
+        createOnDisk("STEAM_1", "Old");
+        Container loaded = registry.getContainer("STEAM_1");
+
+        Container other = new Container("STEAM_1");
+        other.setRootDir(loaded.getRootDir());
+        other.setName("New");
+        other.saveData();
+        registry.onSaved(other, FileUtils.readString(other.getConfigFile()));
+
+        assertEquals("New", registry.getContainer("STEAM_1").getName());
+    }
+
+    @Test
+    public void forgetsDeletedAndPicksUpNewContainers() {
+        Container container = createOnDisk("STEAM_1", "One");
+        assertTrue(registry.hasContainer("STEAM_1"));
+
+        FileUtils.delete(container.getRootDir());
+        assertFalse(registry.hasContainer("STEAM_1"));
+        assertTrue(registry.getContainers().isEmpty());
+
+        createOnDisk("STEAM_2", "Two");
+        assertEquals("Two", registry.getContainer("STEAM_2").getName());
+    }
+
+    @Test
+    public void skipsUnreadableConfigs() throws Exception {
+        createOnDisk("STEAM_1", "One");
+        File broken = new File(homeDir, ImageFs.USER+"-STEAM_2");
+        broken.mkdirs();
+        FileUtils.writeString(new File(broken, ".container"), "{not json");
+
+        assertNull(registry.getContainer("STEAM_2"));
+        assertEquals(1, registry.getContainers().size());
+    }
+}
@@ -0,0 +1,62 @@
+package com.winlator.cpu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class CPUTopologyTest {
+    private static void write(File file, String value) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(value + "\n");
+        }
+    }
+
+    @Test
+    public void groupsCoresByCapacity() {
+        // 4 little, 3 big and 1 prime core, as on most current phones
+        CPUTopology topology = CPUTopology.fromCapacities(325, 325, 325, 325, 828, 828, 828, 1024);
+        assertTrue(topology.isHeterogeneous());
+        assertEquals(3, topology.getClusters().length);
+        assertEquals(0x0f, topology.getEfficiencyMask());
+        assertEquals(0xf0, topology.getPerformanceMask());
+        assertEquals(0x80, topology.getClusters()[2].mask);
+        assertEquals(0xff, topology.getAllMask());
+    }
+
+    @Test
+    public void uniformCoresFormOneCluster() {
+        CPUTopology topology = CPUTopology.fromCapacities(1024, 1024, 1024, 1024);
+        assertTrue(!topology.isHeterogeneous());
+        assertEquals(0x0f, topology.getEfficiencyMask());
+        assertEquals(0x0f, topology.getPerformanceMask());
+    }
+
+    @Test
+    public void readsCapacityOrFallsBackToFrequency() throws IOException {
+        File root = Files.createTempDirectory("cpu").toFile();
+        int[] frequencies = {1800000, 1800000, 2400000, 3000000};
+        for (int cpu = 0; cpu < frequencies.length; cpu++) {
+            write(new File(root, "cpu" + cpu + "/cpufreq/cpuinfo_max_freq"), String.valueOf(frequencies[cpu]));
+        }
+        write(new File(root, "cpufreq/policy0/scaling_governor"), "schedutil");
+
+        CPUTopology topology = CPUTopology.read(root);
+        assertEquals(4, topology.getCPUCount());
+        assertEquals(0x3, topology.getEfficiencyMask());
+        assertEquals(0xc, topology.getPerformanceMask());
+
+        for (int cpu = 0; cpu < frequencies.length; cpu++) {
+            write(new File(root, "cpu" + cpu + "/cpu_capacity"), cpu < 3 ? "512" : "1024");
+        }
+        topology = CPUTopology.read(root);
+        assertEquals(0x7, topology.getEfficiencyMask());
+        assertEquals(0x8, topology.getPerformanceMask());
+    }
+}
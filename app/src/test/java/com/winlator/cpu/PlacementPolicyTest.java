@@ -0,0 +1,100 @@
+package com.winlator.cpu;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PlacementPolicyTest {
+    private static final CPUTopology PHONE = CPUTopology.fromCapacities(325, 325, 325, 325, 828, 828, 828, 1024);
+    private static final int ALL = 0xff;
+    private static final int LITTLE = 0x0f;
+    private static final int BIG = 0xf0;
+    private static final int GAME = 100;
+    private static final int WINESERVER = 101;
+
+    private static Map<Integer, Integer> sample(PlacementPolicy policy, float gameLoad, float wineserverLoad) {
+        HashMap<Integer, Float> loads = new HashMap<>();
+        loads.put(GAME, gameLoad);
+        loads.put(WINESERVER, wineserverLoad);
+        return policy.update(loads);
+    }
+
+    @Test
+    public void ownThreadsFollowTheirRole() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0);
+        assertEquals(BIG, policy.getThreadMask(ThreadRole.X_SERVER));
+        assertEquals(BIG, policy.getThreadMask(ThreadRole.RENDERER));
+        assertEquals(LITTLE, policy.getThreadMask(ThreadRole.AUDIO));
+    }
+
+    @Test
+    public void processesSettleOnTheirClusters() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0);
+
+        Map<Integer, Integer> masks = sample(policy, -1, -1);
+        assertEquals(ALL, (int)masks.get(GAME));
+        assertEquals(ALL, (int)masks.get(WINESERVER));
+
+        masks = sample(policy, 2.5f, 0.05f);
+        assertEquals(BIG, (int)masks.get(GAME));
+        assertEquals(LITTLE, (int)masks.get(WINESERVER));
+    }
+
+    @Test
+    public void heavyProcessesAreDemotedOnlyAfterStayingQuiet() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0);
+        sample(policy, 2.0f, 0.05f);
+
+        // A loading screen: the game idles for a moment, then picks up again
+        assertEquals(BIG, (int)sample(policy, 0.1f, 0.05f).get(GAME));
+        assertEquals(BIG, (int)sample(policy, 0.1f, 0.05f).get(GAME));
+        assertEquals(BIG, (int)sample(policy, 1.5f, 0.05f).get(GAME));
+
+        for (int i = 0; i < 2; i++) sample(policy, 0.1f, 0.05f);
+        assertEquals(LITTLE, (int)sample(policy, 0.1f, 0.05f).get(GAME));
+        assertEquals(BIG, (int)sample(policy, 0.8f, 0.05f).get(GAME));
+    }
+
+    @Test
+    public void saturatedPerformanceCoresSpillOntoAllCores() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0);
+        assertEquals(ALL, (int)sample(policy, 3.9f, 0.05f).get(GAME));
+        assertEquals(LITTLE, (int)sample(policy, 3.9f, 0.05f).get(WINESERVER));
+        assertEquals(BIG, (int)sample(policy, 2.0f, 0.05f).get(GAME));
+    }
+
+    @Test
+    public void userCPUListIsTheCeiling() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0x3c);
+        Map<Integer, Integer> masks = sample(policy, 1.5f, 0.05f);
+        assertEquals(0x30, (int)masks.get(GAME));
+        assertEquals(0x0c, (int)masks.get(WINESERVER));
+
+        policy = new PlacementPolicy(PHONE, 0xf0);
+        assertEquals(0xf0, (int)sample(policy, 2.0f, 0.05f).get(WINESERVER));
+    }
+
+    @Test
+    public void uniformCoresLeaveProcessesAlone() {
+        PlacementPolicy policy = new PlacementPolicy(CPUTopology.fromCapacities(1024, 1024, 1024, 1024), 0);
+        Map<Integer, Integer> masks = sample(policy, 2.0f, 0.05f);
+        assertEquals(0x0f, (int)masks.get(GAME));
+        assertEquals(0x0f, (int)masks.get(WINESERVER));
+    }
+
+    @Test
+    public void exitedProcessesAreForgotten() {
+        PlacementPolicy policy = new PlacementPolicy(PHONE, 0);
+        sample(policy, 2.0f, 0.05f);
+
+        HashMap<Integer, Float> loads = new HashMap<>();
+        loads.put(WINESERVER, 0.05f);
+        assertEquals(1, policy.update(loads).size());
+
+        loads.put(GAME, -1.0f);
+        assertEquals(ALL, (int)policy.update(loads).get(GAME));
+    }
+}
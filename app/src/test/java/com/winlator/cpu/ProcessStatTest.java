@@ -0,0 +1,23 @@
+package com.winlator.cpu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProcessStatTest {
+    @Test
+    public void parsesNameAndCPUTime() {
+        ProcessStat stat = ProcessStat.parse("4242 (Game (x64).exe) S 1 4242 4242 0 -1 4194560 52417 0 0 0 1234 567 0 0 20 0 31 0 123456 0 0");
+        assertEquals("Game (x64).exe", stat.name);
+        assertEquals(1234 + 567, stat.cpuTime);
+        assertTrue(stat.isWineProcess());
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        assertEquals(null, ProcessStat.parse(null));
+        assertEquals(null, ProcessStat.parse("4242 (sh) S 1"));
+        assertTrue(!ProcessStat.parse("1 (init) S 0 1 1 0 -1 0 0 0 0 0 10 20 0 0").isWineProcess());
+    }
+}
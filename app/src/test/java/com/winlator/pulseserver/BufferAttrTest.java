@@ -0,0 +1,32 @@
+package com.winlator.pulseserver;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BufferAttrTest {
+    @Test
+    public void defaultsFitTheTarget() {
+        SampleSpec spec = new SampleSpec(SampleSpec.FORMAT_S16LE, (byte)2, 48000);
+        BufferAttr attr = new BufferAttr(BufferAttr.DEFAULT, BufferAttr.DEFAULT, BufferAttr.DEFAULT, BufferAttr.DEFAULT);
+        attr.fix(spec, 40000);
+
+        assertEquals(spec.usecToBytes(40000), attr.targetLength);
+        assertEquals(attr.targetLength / 4, attr.minRequest);
+        assertEquals(attr.targetLength - attr.minRequest, attr.prebuf);
+        assertEquals(0, attr.minRequest % spec.frameSize());
+
+        attr = new BufferAttr(BufferAttr.DEFAULT, 6, BufferAttr.DEFAULT, BufferAttr.DEFAULT);
+        attr.fix(spec, 40000);
+        assertEquals(spec.usecToBytes(20000), attr.targetLength);
+    }
+
+    @Test
+    public void minRequestIsCappedAtHalfTheTarget() {
+        SampleSpec spec = new SampleSpec(SampleSpec.FORMAT_FLOAT32LE, (byte)2, 48000);
+        BufferAttr attr = new BufferAttr(BufferAttr.DEFAULT, 19200, BufferAttr.DEFAULT, 19200);
+        attr.fix(spec, 40000);
+        assertEquals(19200, attr.targetLength);
+        assertEquals(4800, attr.minRequest);
+    }
+}
@@ -0,0 +1,60 @@
+package com.winlator.pulseserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class SampleConverterTest {
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void nativeStereoPassesThrough() {
+        SampleConverter converter = new SampleConverter(new SampleSpec(SampleSpec.FORMAT_S16LE, (byte)2, 48000), new byte[]{1, 2});
+        assertTrue(converter.isPassthrough());
+
+        ByteBuffer input = ByteBuffer.allocate(10);
+        ByteBuffer output = converter.convert(input);
+        assertEquals(8, output.remaining());
+    }
+
+    @Test
+    public void bigEndianIsConvertedToFloat() {
+        SampleConverter converter = new SampleConverter(new SampleSpec(SampleSpec.FORMAT_S16BE, (byte)1, 48000), new byte[]{0});
+        assertEquals(SampleSpec.FORMAT_FLOAT32LE, converter.getOutputFormat());
+
+        ByteBuffer input = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        input.putShort((short)16384).putShort((short)-32768).flip();
+        ByteBuffer output = converter.convert(input);
+        assertEquals(0.5f, output.getFloat(), EPSILON);
+        assertEquals(-1.0f, output.getFloat(), EPSILON);
+    }
+
+    @Test
+    public void surroundIsDownmixedToStereo() {
+        byte[] map = {
+            SampleConverter.POSITION_FRONT_LEFT, SampleConverter.POSITION_FRONT_RIGHT,
+            SampleConverter.POSITION_FRONT_CENTER, SampleConverter.POSITION_LFE,
+            SampleConverter.POSITION_REAR_LEFT, SampleConverter.POSITION_REAR_RIGHT
+        };
+        SampleConverter converter = new SampleConverter(new SampleSpec(SampleSpec.FORMAT_FLOAT32LE, (byte)6, 48000), map);
+        assertEquals(2, converter.getOutputChannels());
+
+        ByteBuffer input = ByteBuffer.allocate(48).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 6; i++) input.putFloat(1.0f);
+        input.putFloat(1.0f);
+        for (int i = 1; i < 6; i++) input.putFloat(0.0f);
+        input.flip();
+
+        ByteBuffer output = converter.convert(input);
+        assertEquals(16, output.remaining());
+        float left = output.getFloat(), right = output.getFloat();
+        assertTrue(left <= 1.0f + EPSILON);
+        assertEquals(left, right, EPSILON);
+        assertTrue(output.getFloat() > 0);
+        assertEquals(0.0f, output.getFloat(), EPSILON);
+    }
+}
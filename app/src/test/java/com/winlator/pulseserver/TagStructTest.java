@@ -0,0 +1,83 @@
+package com.winlator.pulseserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TagStructTest {
+    private static TagStruct reread(TagStruct t) {
+        ByteBuffer data = t.getData();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new TagStruct(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void commandHeaderIsTwoTaggedU32s() {
+        ByteBuffer data = TagStruct.command(Commands.REPLY, 7).getData();
+        assertEquals(10, data.remaining());
+        assertEquals('L', data.get(0));
+        assertEquals(Commands.REPLY, data.getInt(1));
+        assertEquals('L', data.get(5));
+        assertEquals(7, data.getInt(6));
+    }
+
+    @Test
+    public void valuesRoundTrip() throws IOException {
+        Map<String, byte[]> props = new LinkedHashMap<>();
+        props.put("media.name", TagStruct.stringProperty("Playback"));
+
+        TagStruct t = new TagStruct();
+        t.putString("sink");
+        t.putString(null);
+        t.putU32(0xfffffffe);
+        t.putU8(200);
+        t.putU64(1L << 40);
+        t.putS64(-5);
+        t.putSampleSpec(new SampleSpec(SampleSpec.FORMAT_S16LE, (byte)2, 44100));
+        t.putBoolean(true);
+        t.putTimeval(12, 345);
+        t.putUsec(20000);
+        t.putChannelMap(new byte[]{1, 2});
+        t.putCVolume(new int[]{0x10000, 0x8000});
+        t.putPropList(props);
+
+        TagStruct r = reread(t);
+        assertEquals("sink", r.getString());
+        assertEquals(null, r.getString());
+        assertEquals(0xfffffffe, r.getU32());
+        assertEquals(200, r.getU8());
+        assertEquals(1L << 40, r.getU64());
+        assertEquals(-5, r.getS64());
+        SampleSpec spec = r.getSampleSpec();
+        assertEquals(SampleSpec.FORMAT_S16LE, spec.format);
+        assertEquals(2, spec.channels);
+        assertEquals(44100, spec.rate);
+        assertTrue(r.getBoolean());
+        assertArrayEquals(new long[]{12, 345}, r.getTimeval());
+        assertEquals(20000, r.getUsec());
+        assertArrayEquals(new byte[]{1, 2}, r.getChannelMap());
+        assertArrayEquals(new int[]{0x10000, 0x8000}, r.getCVolume());
+        assertArrayEquals(TagStruct.stringProperty("Playback"), r.getPropList().get("media.name"));
+        assertTrue(r.isEOF());
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongTagIsRejected() throws IOException {
+        TagStruct t = new TagStruct();
+        t.putU32(1);
+        reread(t).getString();
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedValueIsRejected() throws IOException {
+        reread(new TagStruct()).getU32();
+    }
+}
@@ -0,0 +1,51 @@
+package com.winlator.renderer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FrameTimeHistogramTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void statsStayCloseToTheExactOnes() {
+        Random random = new Random(42);
+        int count = 100_000;
+        long[] frameTimes = new long[count];
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        for (int i = 0; i < count; i++) {
+            // Mostly 60 fps with a long tail of hitches
+            long frameNanos = (long)(16.6 * MS + Math.abs(random.nextGaussian()) * 2 * MS);
+            if (i % 97 == 0) frameNanos += random.nextInt(80) * MS;
+            frameTimes[i] = frameNanos;
+            histogram.add(frameNanos);
+        }
+
+        FrameStats approximate = histogram.getStats(3);
+        FrameStats exact = FrameStats.ofFrameTimes(frameTimes, count, 3);
+
+        assertEquals(exact.frames, approximate.frames);
+        assertEquals(exact.avgFPS, approximate.avgFPS, 0.001f);
+        assertEquals(exact.maxFrameMs, approximate.maxFrameMs, 0.001f);
+        assertEquals(exact.medianFrameMs, approximate.medianFrameMs, exact.medianFrameMs * 0.016f);
+        assertEquals(exact.p95FrameMs, approximate.p95FrameMs, exact.p95FrameMs * 0.016f);
+        assertEquals(exact.p99FrameMs, approximate.p99FrameMs, exact.p99FrameMs * 0.016f);
+        assertEquals(exact.low1FPS, approximate.low1FPS, exact.low1FPS * 0.016f);
+        assertEquals(exact.low01FPS, approximate.low01FPS, exact.low01FPS * 0.016f);
+        assertEquals(3, approximate.stutters);
+    }
+
+    @Test
+    public void pausesAndEmptySessionsAreLeftOut() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        assertEquals(FrameStats.EMPTY, histogram.getStats(0));
+
+        histogram.add(FrameTimeRecorder.PAUSE_NANOS);
+        histogram.add(0);
+        histogram.add(16 * MS);
+        assertEquals(1, histogram.getFrames());
+        assertEquals(16f, histogram.getStats(0).p99FrameMs, 0.001f);
+    }
+}
@@ -0,0 +1,160 @@
+package com.winlator.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class FrameTimeRecorderTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void steadyFramesHaveNoLowsOrStutters() {
+        FrameTimeRecorder recorder = new FrameTimeRecorder(1024);
+        long time = 1;
+        for (int i = 0; i <= 600; i++, time += 16 * MS) recorder.record(time);
+
+        FrameStats stats = recorder.getStats();
+        assertEquals(600, stats.frames);
+        assertEquals(62.5f, stats.avgFPS, 0.01f);
+        assertEquals(62.5f, stats.low1FPS, 0.01f);
+        assertEquals(16f, stats.p99FrameMs, 0.001f);
+        assertEquals(0, recorder.getStutters());
+    }
+
+    @Test
+    public void hitchesShowInLowsAndStuttersButNotInAverage() {
+        FrameTimeRecorder recorder = new FrameTimeRecorder(2048);
+        long time = 1;
+        for (int i = 1; i <= 1000; i++) {
+            time += (i % 100 == 0 ? 66 : 16) * MS;
+            recorder.record(time);
+        }
+
+        FrameStats stats = recorder.getStats();
+        assertEquals(999, stats.frames);
+        assertTrue(stats.avgFPS > 58);
+        // The slowest 1% (9 frames) are all hitches
+        assertEquals(1000f / 66, stats.low1FPS, 0.01f);
+        assertEquals(16f, stats.medianFrameMs, 0.001f);
+        assertEquals(66f, stats.maxFrameMs, 0.001f);
+        assertEquals(10, recorder.getStutters());
+    }
+
+    @Test
+    public void pausesAreNeitherFramesNorStutters() {
+        FrameTimeRecorder recorder = new FrameTimeRecorder(256);
+        long time = 1;
+        for (int i = 0; i < 100; i++, time += 16 * MS) recorder.record(time);
+        time += 5000 * MS;
+        for (int i = 0; i < 100; i++, time += 16 * MS) recorder.record(time);
+
+        FrameStats stats = recorder.getStats();
+        assertEquals(198, stats.frames);
+        assertEquals(0, recorder.getStutters());
+        assertEquals(198 * 0.016f, stats.activeSec, 0.001f);
+    }
+
+    @Test
+    public void copyReturnsOnlyIntactFramesAfterWrapping() {
+        FrameTimeRecorder recorder = new FrameTimeRecorder(16);
+        for (int i = 1; i <= 40; i++) recorder.record(i);
+
+        FrameTimeRecorder.Snapshot snapshot = new FrameTimeRecorder.Snapshot(64);
+        recorder.copy(0, snapshot);
+        assertEquals(25, snapshot.firstFrame);
+        assertEquals(15, snapshot.size);
+        for (int i = 0; i < snapshot.size; i++) assertEquals(snapshot.firstFrame + i + 1, snapshot.timestamps[i]);
+
+        recorder.copy(38, snapshot);
+        assertEquals(38, snapshot.firstFrame);
+        assertEquals(2, snapshot.size);
+        assertEquals(39, snapshot.timestamps[0]);
+    }
+
+    @Test
+    public void concurrentReadersNeverSeeTornHistory() throws InterruptedException {
+        FrameTimeRecorder recorder = new FrameTimeRecorder(64);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            for (long i = 1; i <= 2_000_000; i++) recorder.record(i);
+            done.set(true);
+        });
+        Thread reader = new Thread(() -> {
+            FrameTimeRecorder.Snapshot snapshot = new FrameTimeRecorder.Snapshot(64);
+            while (!done.get()) {
+                recorder.copy(0, snapshot);
+                for (int i = 0; i < snapshot.size; i++) {
+                    // Frame n was recorded with timestamp n + 1
+                    if (snapshot.timestamps[i] != snapshot.firstFrame + i + 1) {
+                        failure.set("frame " + (snapshot.firstFrame + i) + " read as " + snapshot.timestamps[i]);
+                        return;
+                    }
+                }
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertEquals(null, failure.get());
+        assertEquals(2_000_000, recorder.getCount());
+    }
+
+    @Test
+    public void captureWithoutFileOnlyCountsFrames() throws IOException {
+        FrameTimeCapture capture = new FrameTimeCapture(null, new LinkedHashMap<>());
+        capture.append(new long[]{10 * MS, 26 * MS, 42 * MS}, 3);
+        capture.skip(1);
+        capture.close();
+
+        assertEquals(2, capture.getStats(0).frames);
+        assertEquals(2, capture.getExactStats(0).frames);
+    }
+
+    @Test
+    public void captureWritesTaggedCsvAndSessionStats() throws IOException {
+        File file = File.createTempFile("frames", ".csv");
+        try {
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("dx_wrapper", "dxvk-2.3");
+            tags.put("box64", "0.3.2 PERFORMANCE");
+
+            FrameTimeCapture capture = new FrameTimeCapture(file, tags);
+            capture.append(new long[]{10 * MS, 26 * MS, 42 * MS}, 3);
+            capture.skip(5);
+            capture.append(new long[]{200 * MS, 216 * MS}, 2);
+            FrameStats stats = capture.getStats(0);
+            capture.close();
+
+            assertEquals(3, stats.frames);
+            assertEquals(16f, stats.maxFrameMs, 0.001f);
+            assertEquals(16f, capture.getExactStats(0).p99FrameMs, 0.001f);
+
+            List<String> lines = Files.readAllLines(file.toPath());
+            assertEquals("# dx_wrapper: dxvk-2.3", lines.get(0));
+            assertEquals("# box64: 0.3.2 PERFORMANCE", lines.get(1));
+            assertEquals("frame,time_ms,frame_time_ms", lines.get(2));
+            assertEquals("0,0.000,0.000", lines.get(3));
+            assertEquals("1,16.000,16.000", lines.get(4));
+            assertEquals("# dropped 5 frames", lines.get(6));
+            assertEquals("8,190.000,0.000", lines.get(7));
+            assertEquals("9,206.000,16.000", lines.get(8));
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
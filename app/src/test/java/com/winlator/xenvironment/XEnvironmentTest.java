@@ -0,0 +1,159 @@
+package com.winlator.xenvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class XEnvironmentTest {
+    private XEnvironment environment;
+
+    private static class TestComponent extends EnvironmentComponent {
+        final List<EnvironmentComponent> dependencies = new ArrayList<>();
+        volatile boolean started = false;
+        volatile boolean ready = false;
+
+        @Override
+        public void start() {
+            for (EnvironmentComponent dependency : dependencies) {
+                if (!((TestComponent)dependency).ready) throw new IllegalStateException("started before a dependency was ready");
+            }
+            started = true;
+        }
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public List<EnvironmentComponent> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public boolean awaitReady(long timeoutMs) throws InterruptedException {
+            ready = true;
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        environment = new XEnvironment(context, null);
+    }
+
+    @Test
+    public void independentComponentsStartConcurrently() {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        TestComponent[] servers = new TestComponent[2];
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new TestComponent() {
+                @Override
+                public void start() {
+                    // Both must be inside start at the same time, or this times out
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    super.start();
+                }
+            };
+            environment.addComponent(servers[i]);
+        }
+
+        environment.startEnvironmentComponents();
+        assertTrue(servers[0].started && servers[1].started);
+    }
+
+    @Test
+    public void dependentsWaitForReadinessWhilePreparingEarly() {
+        CountDownLatch prepared = new CountDownLatch(1);
+        TestComponent server = new TestComponent() {
+            @Override
+            public boolean awaitReady(long timeoutMs) throws InterruptedException {
+                // Only becomes ready once the launcher has prepared, proving prepare() runs first
+                assertTrue(prepared.await(5, TimeUnit.SECONDS));
+                return super.awaitReady(timeoutMs);
+            }
+        };
+        TestComponent launcher = new TestComponent() {
+            @Override
+            public void prepare() {
+                prepared.countDown();
+            }
+        };
+        launcher.dependencies.add(server);
+
+        // Added in reverse order on purpose
+        environment.addComponent(launcher);
+        environment.addComponent(server);
+        environment.startEnvironmentComponents();
+
+        assertTrue(launcher.started);
+        // Startup times are recorded in the order the components became ready
+        assertEquals(2, environment.getStartupTimes().size());
+        long serverReady = environment.getStartupTimes().values().iterator().next();
+        assertTrue(serverReady >= 0);
+    }
+
+    @Test
+    public void failuresPropagateAndSkipDependents() {
+        RuntimeException failure = new RuntimeException("Failed to create an AF_UNIX socket.");
+        TestComponent server = new TestComponent() {
+            @Override
+            public void start() {
+                throw failure;
+            }
+        };
+        TestComponent launcher = new TestComponent();
+        launcher.dependencies.add(server);
+        environment.addComponent(server);
+        environment.addComponent(launcher);
+
+        try {
+            environment.startEnvironmentComponents();
+            fail("expected the start failure to propagate");
+        }
+        catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+        assertFalse(launcher.started);
+    }
+
+    @Test
+    public void dependencyCyclesAreRejected() {
+        TestComponent a = new TestComponent();
+        TestComponent b = new TestComponent();
+        a.dependencies.add(b);
+        b.dependencies.add(a);
+        environment.addComponent(a);
+        environment.addComponent(b);
+
+        try {
+            environment.startEnvironmentComponents();
+            fail("expected a dependency cycle error");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Dependency cycle"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DrawCommandBufferTest {
+    @Test
+    public void recordsMatchTheNativeLayout() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.fillRect(1, 2, 3, 4, 0x00ff8040);
+        commands.line(-5, 6, 7, 8, 0x123456, 2);
+
+        ByteBuffer buffer = commands.getBuffer();
+        assertEquals(2, commands.getCount());
+        assertEquals(2 * DrawCommandBuffer.RECORD_SIZE, buffer.position());
+
+        assertEquals(DrawCommandBuffer.OP_FILL_RECT, buffer.getShort(0));
+        assertEquals(1, buffer.getShort(2));
+        assertEquals(2, buffer.getShort(4));
+        assertEquals(3, buffer.getShort(6));
+        assertEquals(4, buffer.getShort(8));
+        assertEquals(0x00ff8040, buffer.getInt(12));
+
+        int line = DrawCommandBuffer.RECORD_SIZE;
+        assertEquals(DrawCommandBuffer.OP_LINE, buffer.getShort(line));
+        assertEquals(-5, buffer.getShort(line + 2));
+        assertEquals(8, buffer.getShort(line + 8));
+        assertEquals(2, buffer.getShort(line + 10));
+        assertEquals(0x123456, buffer.getInt(line + 12));
+
+        commands.clear();
+        assertTrue(commands.isEmpty());
+        assertEquals(0, commands.getBuffer().position());
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        for (int i = 0; i < 10_000; i++) commands.fillRect(i, i, 1, 1, i);
+
+        assertEquals(10_000, commands.getCount());
+        ByteBuffer buffer = commands.getBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(9_999, buffer.getShort(9_999 * DrawCommandBuffer.RECORD_SIZE + 2));
+        assertEquals(9_999, buffer.getInt(9_999 * DrawCommandBuffer.RECORD_SIZE + 12));
+    }
+
+    /**
+     * Replays a stream shaped like a GDI-heavy Wine frame (many small PolyFillRectangle and
+     * PolyLine requests) and reports the native transitions with per-primitive calls, as
+     * before, against one submission per request.
+     */
+    @Test
+    public void gdiRequestStreamReplay() {
+        Random random = new Random(41);
+        int requests = 20_000;
+        int[] primitives = new int[requests];
+        boolean[] isLine = new boolean[requests];
+        for (int i = 0; i < requests; i++) {
+            isLine[i] = random.nextInt(4) == 0;
+            primitives[i] = 1 + random.nextInt(isLine[i] ? 12 : 24);
+        }
+
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        long perPrimitiveCalls = 0;
+        long batchedCalls = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            for (int p = 0; p < primitives[i]; p++) {
+                if (isLine[i]) commands.line(p, p, p + 10, p + 3, 0x808080, 1);
+                else commands.fillRect(p * 4, p * 2, 16, 16, 0xc0c0c0);
+            }
+            perPrimitiveCalls += primitives[i];
+            batchedCalls++;
+            commands.clear();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(requests + " requests: " + perPrimitiveCalls + " native calls per primitive vs " +
+            batchedCalls + " batched, encoding " + (elapsed / requests) + " ns/request");
+        assertEquals(requests, batchedCalls);
+        assertTrue(perPrimitiveCalls > 5 * batchedCalls);
+    }
+}
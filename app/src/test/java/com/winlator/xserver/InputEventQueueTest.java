@@ -0,0 +1,114 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class InputEventQueueTest {
+    private static class RecordingTarget implements InputEventQueue.Target {
+        private final ArrayList<String> calls = new ArrayList<>();
+        private int locks;
+
+        @Override
+        public XLock lock() {
+            locks++;
+            return () -> {};
+        }
+
+        @Override
+        public void movePointer(int x, int y) {
+            calls.add("move " + x + "," + y);
+        }
+
+        @Override
+        public void movePointerBy(int dx, int dy) {
+            calls.add("moveBy " + dx + "," + dy);
+        }
+
+        @Override
+        public void setPointerButton(Pointer.Button button, boolean pressed) {
+            calls.add((pressed ? "press " : "release ") + button);
+        }
+
+        @Override
+        public void pressKey(byte keycode, int keysym) {
+            calls.add("keyPress " + keycode + "," + keysym);
+        }
+
+        @Override
+        public void releaseKey(byte keycode) {
+            calls.add("keyRelease " + keycode);
+        }
+    }
+
+    private static InputEventQueue createQueue(RecordingTarget target, int[] wakeups) {
+        InputEventQueue queue = new InputEventQueue(target);
+        queue.setWakeupListener(() -> wakeups[0]++);
+        return queue;
+    }
+
+    @Test
+    public void motionIsCoalescedAroundButtons() {
+        RecordingTarget target = new RecordingTarget();
+        InputEventQueue queue = createQueue(target, new int[1]);
+        queue.postPointerMove(10, 10);
+        queue.postPointerMove(20, 30);
+        queue.postPointerMoveDelta(1, 2);
+        queue.postPointerButton(Pointer.Button.BUTTON_LEFT, true);
+        queue.postPointerMoveDelta(5, 5);
+        queue.postPointerMoveDelta(-2, 1);
+        queue.postPointerButton(Pointer.Button.BUTTON_LEFT, false);
+        queue.postKeyPress((byte)38, 97);
+
+        assertEquals(8, queue.drain());
+        assertEquals(1, target.locks);
+        assertEquals("[move 21,32, press BUTTON_LEFT, moveBy 3,6, release BUTTON_LEFT, keyPress 38,97]", target.calls.toString());
+    }
+
+    @Test
+    public void wakesUpOncePerDrain() {
+        int[] wakeups = new int[1];
+        RecordingTarget target = new RecordingTarget();
+        InputEventQueue queue = createQueue(target, wakeups);
+        for (int i = 0; i < 10; i++) queue.postPointerMoveDelta(1, 0);
+        assertEquals(1, wakeups[0]);
+        assertTrue(target.calls.isEmpty());
+
+        assertEquals(10, queue.drain());
+        queue.postKeyRelease((byte)38);
+        assertEquals(2, wakeups[0]);
+        assertEquals(1, queue.drain());
+        assertEquals(0, queue.drain());
+        assertEquals(2, target.locks);
+    }
+
+    @Test
+    public void eventsApplyImmediatelyWithoutListener() {
+        RecordingTarget target = new RecordingTarget();
+        InputEventQueue queue = new InputEventQueue(target);
+        queue.postPointerButton(Pointer.Button.BUTTON_RIGHT, true);
+        assertEquals("[press BUTTON_RIGHT]", target.calls.toString());
+    }
+
+    @Test
+    public void removingTheListenerDrainsPendingEvents() {
+        RecordingTarget target = new RecordingTarget();
+        InputEventQueue queue = createQueue(target, new int[1]);
+        queue.postPointerMove(5, 6);
+        queue.setWakeupListener(null);
+        assertEquals("[move 5,6]", target.calls.toString());
+    }
+
+    @Test
+    public void buttonStateIncludesPendingEvents() {
+        InputEventQueue queue = createQueue(new RecordingTarget(), new int[1]);
+        queue.postPointerButton(Pointer.Button.BUTTON_LEFT, true);
+        assertTrue(queue.isButtonPressed(Pointer.Button.BUTTON_LEFT));
+        assertTrue(!queue.isButtonPressed(Pointer.Button.BUTTON_RIGHT));
+        queue.postPointerButton(Pointer.Button.BUTTON_LEFT, false);
+        assertTrue(!queue.isButtonPressed(Pointer.Button.BUTTON_LEFT));
+    }
+}
@@ -0,0 +1,111 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PropertyTest {
+    private static ByteBuffer bytes(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (int value : values) buffer.put((byte)value);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] toArray(Property property) {
+        ByteBuffer data = property.getData();
+        byte[] result = new byte[data.remaining()];
+        data.get(result);
+        return result;
+    }
+
+    @Test
+    public void modesConcatenateValues() {
+        Property property = new Property(new ResourceArena(), 1, 2, Property.Format.BYTE_ARRAY, bytes(3, 4));
+        property.append(bytes(5));
+        property.prepend(bytes(1, 2));
+        assertEquals(5, property.getSize());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, toArray(property));
+
+        property.replace(bytes(9));
+        assertArrayEquals(new byte[]{9}, toArray(property));
+    }
+
+    @Test
+    public void retainedDataSurvivesModification() {
+        ResourceArena arena = new ResourceArena();
+        Property property = new Property(arena, 1, 2, Property.Format.BYTE_ARRAY, bytes(1, 2));
+        ResourceArena.Block view = property.retainData();
+        property.append(bytes(3));
+        property.replace(bytes(7, 7));
+        assertEquals(2, view.getSize());
+        assertEquals(1, view.getData().get(0));
+
+        view.release();
+        property.release();
+        assertEquals(0, arena.getLiveBlocks());
+    }
+
+    @Test
+    public void replacingReusesTheBlock() {
+        ResourceArena arena = new ResourceArena();
+        Property property = new Property(arena, 1, 2, Property.Format.INT_ARRAY, ByteBuffer.allocate(1000));
+        long capacity = arena.getCapacity();
+        for (int i = 0; i < 100; i++) property.replace(ByteBuffer.allocate(500 + i));
+        assertEquals(capacity, arena.getCapacity());
+        assertEquals(1, arena.getLiveBlocks());
+        assertEquals(599, property.getSize());
+    }
+
+    @Test
+    public void releasedPropertyReadsAsEmpty() {
+        ResourceArena arena = new ResourceArena();
+        Property property = new Property(arena, 1, 2, Property.Format.INT_ARRAY, ByteBuffer.allocate(8));
+        property.release();
+
+        assertEquals(0, property.getSize());
+        assertEquals("", property.toString());
+        assertEquals(0, property.getInt(1));
+        ResourceArena.Block view = property.retainData();
+        assertEquals(0, view.getSize());
+        view.release();
+        property.release();
+        assertEquals(0, arena.getLiveBlocks());
+    }
+
+    @Test
+    public void readersOnOtherThreadsSurviveRelease() throws InterruptedException {
+        ResourceArena arena = new ResourceArena();
+        Property property = new Property(arena, 1, 2, Property.Format.BYTE_ARRAY, bytes(1));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100000; i++) {
+                    property.toString();
+                    property.getByte(0);
+                    property.getInt(0);
+                    property.retainData().release();
+                }
+            }
+            catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        while (reader.isAlive()) {
+            property.replace(ByteBuffer.allocate(1000));
+            property.release();
+            property.append(bytes(1, 2));
+        }
+        reader.join();
+
+        assertNull(failure.get());
+        property.release();
+        assertEquals(0, arena.getLiveBlocks());
+    }
+}
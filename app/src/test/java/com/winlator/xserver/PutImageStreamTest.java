@@ -0,0 +1,31 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PutImageStreamTest {
+    private static PutImageStream createStream(int width, int height, int length) {
+        return new PutImageStream(1, 2, (short)width, (short)height, (short)0, (short)0, (byte)24, length);
+    }
+
+    @Test
+    public void onlyWholeRowsAreDrawn() {
+        PutImageStream stream = createStream(640, 480, 640 * 4 * 480);
+        assertEquals(0, stream.getDrawableRows(640 * 4 - 1));
+        assertEquals(3, stream.getDrawableRows(640 * 4 * 3 + 100));
+        assertEquals(480, stream.getDrawableRows(Integer.MAX_VALUE));
+        assertEquals(0, stream.getSkippableLength(640 * 4));
+    }
+
+    @Test
+    public void discardedDataIsSkippedUpToTheRequestEnd() {
+        PutImageStream stream = createStream(640, 480, 640 * 4 * 480);
+        stream.discard();
+        assertEquals(0, stream.getDrawableRows(640 * 4 * 10));
+        assertEquals(1000, stream.getSkippableLength(1000));
+        assertEquals(640 * 4 * 480, stream.getSkippableLength(Integer.MAX_VALUE));
+        assertTrue(!stream.isFinished());
+    }
+}
@@ -0,0 +1,70 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RasterOpTest {
+    /**
+     * X11 encodes each function as its truth table: bit ((!src << 1) | !dst) of the function
+     * value is the result for that pair of input bits.
+     */
+    private static int fromTruthTable(GraphicsContext.Function function, int src, int dst) {
+        int code = function.ordinal();
+        int result = 0;
+        for (int bit = 0; bit < 32; bit++) {
+            int s = (src >>> bit) & 1;
+            int d = (dst >>> bit) & 1;
+            result |= ((code >> (((s ^ 1) << 1) | (d ^ 1))) & 1) << bit;
+        }
+        return result;
+    }
+
+    @Test
+    public void allFunctionsMatchTheirTruthTable() {
+        Random random = new Random(42);
+        for (GraphicsContext.Function function : GraphicsContext.Function.values()) {
+            for (int i = 0; i < 1000; i++) {
+                int src = random.nextInt();
+                int dst = random.nextInt();
+                assertEquals(function.name(), fromTruthTable(function, src, dst), RasterOp.combine(function, src, dst));
+            }
+        }
+    }
+
+    @Test
+    public void planeMaskLimitsTheBitsWritten() {
+        int src = 0xff123456;
+        int dst = 0x80abcdef;
+
+        assertEquals(0x80123456, RasterOp.apply(GraphicsContext.Function.COPY, src, dst, -1));
+        assertEquals(0x80ab34ef, RasterOp.apply(GraphicsContext.Function.COPY, src, dst, 0x00ff00));
+        assertEquals(dst, RasterOp.apply(GraphicsContext.Function.SET, src, dst, 0));
+        assertEquals(0x80ffffef, RasterOp.apply(GraphicsContext.Function.SET, src, dst, 0xffff00));
+    }
+
+    @Test
+    public void alphaOfTheDestinationIsPreserved() {
+        for (GraphicsContext.Function function : GraphicsContext.Function.values()) {
+            int result = RasterOp.apply(function, 0x00ffffff, 0xff000000, -1);
+            assertEquals(function.name(), 0xff000000, result & 0xff000000);
+        }
+    }
+
+    @Test
+    public void overlappingAreasReadTheSourceFirst() {
+        int stride = 8;
+        int[] pixels = new int[stride * 4];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = i;
+        int[] expected = pixels.clone();
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 6; x++) expected[(x + 2) + (y + 1) * stride] = pixels[x + y * stride] ^ pixels[(x + 2) + (y + 1) * stride];
+        }
+
+        RasterOp.apply(GraphicsContext.Function.XOR, -1, pixels, 0, 0, stride, pixels, 2, 1, stride, 6, 3);
+        assertArrayEquals(expected, pixels);
+    }
+}
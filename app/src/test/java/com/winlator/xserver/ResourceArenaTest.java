@@ -0,0 +1,89 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ResourceArenaTest {
+    @Test
+    public void blocksAreRoundedUpToTheirSizeClass() {
+        ResourceArena arena = new ResourceArena();
+        assertEquals(ResourceArena.MIN_BLOCK_SIZE, arena.allocate(0).getCapacity());
+        assertEquals(128, arena.allocate(65).getCapacity());
+        assertEquals(4096, arena.allocate(4096).getCapacity());
+
+        ResourceArena.Block block = arena.allocate(100);
+        assertEquals(100, block.getSize());
+        assertEquals(100, block.getData().remaining());
+    }
+
+    @Test
+    public void releasedBlocksAreReused() {
+        ResourceArena arena = new ResourceArena();
+        ResourceArena.Block block = arena.allocate(1000);
+        block.getData().put(0, (byte)7);
+        block.release();
+        assertEquals(0, arena.getUsedBytes());
+
+        long capacity = arena.getCapacity();
+        for (int i = 0; i < 1000; i++) arena.allocate(1000).release();
+        assertEquals(capacity, arena.getCapacity());
+        assertEquals(0, arena.getLiveBlocks());
+    }
+
+    @Test
+    public void sharedBlocksLiveUntilTheLastRelease() {
+        ResourceArena arena = new ResourceArena();
+        ResourceArena.Block block = arena.allocate(256);
+        block.retain();
+        assertTrue(block.isShared());
+
+        block.release();
+        assertEquals(256, arena.getUsedBytes());
+        block.release();
+        assertEquals(0, arena.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasingAFreedBlockFails() {
+        ResourceArena.Block block = new ResourceArena().allocate(16);
+        block.release();
+        block.release();
+    }
+
+    @Test
+    public void largeBlocksAreAllocatedOnTheirOwn() {
+        ResourceArena arena = new ResourceArena();
+        ResourceArena.Block block = arena.allocate(ResourceArena.MAX_BLOCK_SIZE + 1);
+        assertEquals(ResourceArena.MAX_BLOCK_SIZE + 1, arena.getCapacity());
+        assertEquals(1.0f, arena.getOccupancy(), 0.0001f);
+
+        block.release();
+        assertEquals(0, arena.getCapacity());
+    }
+
+    @Test
+    public void retiredSlabTailsAreNotLost() {
+        ResourceArena arena = new ResourceArena();
+        for (int i = 0; i < 3; i++) arena.allocate(ResourceArena.MAX_BLOCK_SIZE);
+        arena.allocate(64 * 1024);
+        // Does not fit the first slab's 192 KB tail, which goes to the free lists
+        for (int i = 0; i < 4; i++) arena.allocate(ResourceArena.MAX_BLOCK_SIZE);
+        long capacity = arena.getCapacity();
+        arena.allocate(128 * 1024);
+        arena.allocate(64 * 1024);
+        assertEquals(capacity, arena.getCapacity());
+    }
+
+    @Test
+    public void blockDataIsLittleEndian() {
+        ResourceArena.Block block = new ResourceArena().allocate(4);
+        block.getData().putInt(0x01020304);
+        ByteBuffer data = block.getData();
+        assertEquals(4, data.get(0));
+        assertEquals(1, data.get(3));
+    }
+}
@@ -0,0 +1,207 @@
+package com.winlator.xserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.winlator.xconnector.Client;
+import com.winlator.xconnector.ClientSocket;
+import com.winlator.xconnector.XInputStream;
+import com.winlator.xconnector.XOutputStream;
+import com.winlator.xserver.requests.DrawRequests;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Feeds streamed PutImage requests through {@link XClientRequestHandler} the way the connector
+ * does, a read at a time. The winlator classes are instrumented so their native libraries are
+ * not loaded; drawing is checked through a drawable that records the rows it is given.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(instrumentedPackages = "com.winlator")
+public class XClientRequestHandlerPutImageTest {
+    private static final int DRAWABLE_ID = 0x200001;
+    private static final int GC_ID = 0x200002;
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 200;
+    private final XClientRequestHandler handler = new XClientRequestHandler();
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private ByteBuffer pending = ByteBuffer.allocate(0);
+    private XServer xServer;
+    private XClient xClient;
+    private Client client;
+    private XInputStream inputStream;
+
+    private static class RecordingDrawable extends Drawable {
+        final int[] drawnRows;
+        int draws = 0;
+
+        RecordingDrawable(int id, int width, int height) {
+            super(id, width, height, null);
+            drawnRows = new int[height];
+            Arrays.fill(drawnRows, -1);
+        }
+
+        @Override
+        public void drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight, GraphicsContext.Function gcFunction, int planeMask) {
+            assertEquals(totalWidth * 4 * totalHeight, data.limit());
+            draws++;
+            for (int y = 0; y < height; y++) {
+                assertEquals("Row " + (dstY + y) + " drawn twice", -1, drawnRows[dstY + y]);
+                drawnRows[dstY + y] = data.getInt(((srcY + y) * totalWidth + srcX) * 4);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ClientSocket socket = new ClientSocket(-1) {
+            @Override
+            public int read(ByteBuffer data) {
+                if (!pending.hasRemaining()) return -1;
+                int length = Math.min(data.remaining(), pending.remaining());
+                ByteBuffer slice = pending.slice();
+                slice.limit(length);
+                data.put(slice);
+                pending.position(pending.position() + length);
+                return length;
+            }
+
+            @Override
+            public void write(ByteBuffer data) {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                written.write(bytes, 0, bytes.length);
+            }
+        };
+
+        inputStream = new XInputStream(socket, 4096);
+        inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        XOutputStream outputStream = new XOutputStream(socket, 256);
+        outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+
+        xServer = new XServer(new ScreenInfo(800, 600));
+        xClient = new XClient(xServer, inputStream, outputStream);
+        xClient.setAuthenticated(true);
+
+        client = new Client(null, socket) {
+            @Override
+            public XInputStream getInputStream() {
+                return inputStream;
+            }
+
+            @Override
+            public XOutputStream getOutputStream() {
+                return outputStream;
+            }
+        };
+        client.setTag(xClient);
+    }
+
+    private RecordingDrawable addDrawable(int width, int height) {
+        RecordingDrawable drawable = new RecordingDrawable(DRAWABLE_ID, width, height);
+        xServer.drawableManager.all().put(DRAWABLE_ID, drawable);
+        xServer.graphicsContextManager.createGraphicsContext(GC_ID, drawable);
+        return drawable;
+    }
+
+    /**
+     * A BIG-REQUESTS PutImage of WIDTH x HEIGHT pixels whose every pixel holds its row index,
+     * followed by {@code padding} bytes and a NoOperation request.
+     */
+    private static byte[] putImage(int drawableId, int dstY, int padding) {
+        int length = 8 + 20 + WIDTH * 4 * HEIGHT + padding;
+        ByteBuffer request = ByteBuffer.allocate(length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        request.put(ClientOpcodes.PUT_IMAGE).put((byte)DrawRequests.Format.Z_PIXMAP.ordinal()).putShort((short)0).putInt(length / 4);
+        request.putInt(drawableId).putInt(GC_ID).putShort((short)WIDTH).putShort((short)HEIGHT);
+        request.putShort((short)0).putShort((short)dstY).put((byte)0).put((byte)24).putShort((short)0);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) request.putInt(y);
+        }
+        request.position(length);
+        request.put(ClientOpcodes.NO_OPERATION).put((byte)0).putShort((short)1);
+        return request.array();
+    }
+
+    /** Hands {@code data} to the handler in reads of at most {@code readSize} bytes. */
+    private void receive(byte[] data, int readSize) throws IOException {
+        for (int offset = 0; offset < data.length; offset += readSize) {
+            pending = ByteBuffer.wrap(data, offset, Math.min(readSize, data.length - offset));
+            while (pending.hasRemaining()) {
+                assertTrue(inputStream.readMoreData(false) > 0);
+                int activePosition = 0;
+                while (handler.handleRequest(client)) activePosition = inputStream.getActivePosition();
+                inputStream.setActivePosition(activePosition);
+            }
+        }
+    }
+
+    private void assertRequestsCompleted() {
+        assertNull(xClient.getPutImageStream());
+        assertEquals(0, inputStream.available());
+        assertEquals(2, xClient.getSequenceNumber());
+    }
+
+    @Test
+    public void requestSplitAcrossReadsIsDrawnAsRowsArrive() throws IOException {
+        RecordingDrawable drawable = addDrawable(WIDTH, HEIGHT);
+
+        receive(putImage(DRAWABLE_ID, 0, 0), 1000);
+
+        assertTrue("Expected the image to be drawn in several parts", drawable.draws > 1);
+        for (int y = 0; y < HEIGHT; y++) assertEquals(y, drawable.drawnRows[y]);
+        assertEquals(0, written.size());
+        assertRequestsCompleted();
+    }
+
+    @Test
+    public void dataPastTheImageIsSkipped() throws IOException {
+        RecordingDrawable drawable = addDrawable(WIDTH, HEIGHT);
+
+        receive(putImage(DRAWABLE_ID, 0, 4096), 1500);
+
+        for (int y = 0; y < HEIGHT; y++) assertEquals(y, drawable.drawnRows[y]);
+        assertRequestsCompleted();
+    }
+
+    @Test
+    public void badDrawableIsReportedAndItsDataDiscarded() throws IOException {
+        RecordingDrawable drawable = addDrawable(WIDTH, HEIGHT);
+
+        receive(putImage(DRAWABLE_ID + 10, 0, 0), 1000);
+
+        assertEquals(0, drawable.draws);
+        byte[] error = written.toByteArray();
+        assertEquals(32, error.length);
+        ByteBuffer reply = ByteBuffer.wrap(error).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(XClientRequestHandler.RESPONSE_CODE_ERROR, reply.get(0));
+        assertEquals(9, reply.get(1));
+        assertEquals(1, reply.getShort(2));
+        assertEquals(DRAWABLE_ID + 10, reply.getInt(4));
+        assertEquals(ClientOpcodes.PUT_IMAGE, reply.get(10));
+        assertRequestsCompleted();
+    }
+
+    @Test
+    public void rowsOutsideTheDrawableAreClipped() throws IOException {
+        RecordingDrawable drawable = addDrawable(WIDTH, 64);
+
+        receive(putImage(DRAWABLE_ID, -20, 0), 3000);
+
+        int[] expected = new int[64];
+        for (int y = 0; y < expected.length; y++) expected[y] = y + 20;
+        assertArrayEquals(expected, drawable.drawnRows);
+        assertRequestsCompleted();
+    }
+}